@@ -0,0 +1,93 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.pfl.benchmarks;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/** Runs the benchmarks in benchmarks.jar.  This accepts the same options
+ * as the JMH Main class, but writes the results to jmh-result.json in 
+ * JSON format unless the -rf or -rff option is given, so that the 
+ * results of different runs can be compared by tools.
+ */
+public class Main {
+    public static final String DEFAULT_RESULT_FILE = "jmh-result.json" ;
+
+    private Main() {}
+
+    public static void main( String[] args ) throws RunnerException, 
+        IOException {
+
+        CommandLineOptions cmdOptions ;
+        try {
+            cmdOptions = new CommandLineOptions( args ) ;
+        } catch (CommandLineOptionException exc) {
+            // Let JMH report the error in its usual way.
+            org.openjdk.jmh.Main.main( args ) ;
+            return ;
+        }
+
+        if (cmdOptions.shouldHelp() || cmdOptions.shouldList()
+            || cmdOptions.shouldListWithParams() 
+            || cmdOptions.shouldListProfilers()
+            || cmdOptions.shouldListResultFormats()) {
+            org.openjdk.jmh.Main.main( args ) ;
+            return ;
+        }
+
+        ChainedOptionsBuilder builder = new OptionsBuilder()
+            .parent( cmdOptions ) ;
+        if (!cmdOptions.getResultFormat().hasValue()) {
+            builder.resultFormat( ResultFormatType.JSON ) ;
+        }
+        if (!cmdOptions.getResult().hasValue()) {
+            builder.result( DEFAULT_RESULT_FILE ) ;
+        }
+
+        new Runner( builder.build() ).run() ;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.pfl.benchmarks.copyobject;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.glassfish.pfl.dynamic.copyobject.impl.IdentityAliasMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Compares IdentityAliasMap with IdentityHashMap as the oldToNew alias
+ * table of a copy operation.  Each operation simulates copying a graph of
+ * graphSize distinct objects: a get (which misses) followed by a put for
+ * every object, followed by a get (which hits) for a quarter of them to 
+ * model aliasing.  The reuse benchmark resets one IdentityAliasMap
+ * between operations instead of allocating a new map.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AliasTableBenchmark {
+    @Param({ "16", "256", "4096", "65536" })
+    public int graphSize ;
+
+    private Object[] sources ;
+    private Object[] copies ;
+    private IdentityAliasMap reused ;
+
+    @Setup
+    public void setUp() {
+        sources = new Object[graphSize] ;
+        copies = new Object[graphSize] ;
+        for (int ctr=0; ctr<graphSize; ctr++) {
+            sources[ctr] = new Object() ;
+            copies[ctr] = new Object() ;
+        }
+        reused = new IdentityAliasMap() ;
+    }
+
+    private Object copyGraph( Map<Object,Object> oldToNew ) {
+        Object last = null ;
+        for (int ctr=0; ctr<sources.length; ctr++) {
+            Object source = sources[ctr] ;
+            if (oldToNew.get( source ) == null) {
+                oldToNew.put( source, copies[ctr] ) ;
+            }
+        }
+        for (int ctr=0; ctr<sources.length; ctr+=4) {
+            last = oldToNew.get( sources[ctr] ) ;
+        }
+        return last ;
+    }
+
+    @Benchmark
+    public Object identityHashMap() {
+        return copyGraph( new IdentityHashMap<Object,Object>() ) ;
+    }
+
+    @Benchmark
+    public Object identityAliasMap() {
+        return copyGraph( new IdentityAliasMap() ) ;
+    }
+
+    @Benchmark
+    public Object identityAliasMapReused() {
+        reused.reset( Integer.MAX_VALUE ) ;
+        return copyGraph( reused ) ;
+    }
+}
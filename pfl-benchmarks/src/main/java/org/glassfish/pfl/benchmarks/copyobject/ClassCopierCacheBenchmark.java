@@ -0,0 +1,130 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.pfl.benchmarks.copyobject;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+
+import org.glassfish.pfl.dynamic.copyobject.impl.CachingClassCopierFactory;
+import org.glassfish.pfl.dynamic.copyobject.impl.ClassCopier;
+import org.glassfish.pfl.dynamic.copyobject.impl.ClassCopierFactoryPipelineImpl;
+import org.glassfish.pfl.dynamic.copyobject.impl.DefaultClassCopierFactories;
+import org.glassfish.pfl.dynamic.copyobject.impl.PipelineClassCopierFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures ClassCopier lookups through ClassCopierFactoryPipelineImpl,
+ * which every ObjectCopierImpl.copy call (and every non-primitive field
+ * copy) performs.  The lookup is run with one thread and with as many
+ * threads as there are processors, for both the ClassValue cache and
+ * the read/write locked WeakHashMap cache, so that the scaling of the
+ * two can be compared.  All lookups are cache hits.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClassCopierCacheBenchmark {
+    private static final Class<?>[] CLASSES = new Class<?>[] {
+        String.class, Integer.class, Long.class, Date.class, 
+        ArrayList.class, HashMap.class, LinkedList.class, BigDecimal.class,
+        Object[].class, int[].class, byte[].class, StringBuilder.class
+    } ;
+
+    @Param({ "classValue", "weakHashMap" })
+    public String cache ;
+
+    private PipelineClassCopierFactory factory ;
+
+    @Setup
+    public void setUp() {
+        CachingClassCopierFactory ccf = cache.equals( "classValue" )
+            ? DefaultClassCopierFactories.makeClassValueCachingClassCopierFactory()
+            : DefaultClassCopierFactories.makeWeakHashMapCachingClassCopierFactory() ;
+        factory = new ClassCopierFactoryPipelineImpl( ccf ) ;
+
+        // Make sure every lookup in the benchmark is a cache hit.
+        for (Class<?> cls : CLASSES) {
+            factory.getClassCopier( cls ) ;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next ;
+
+        Class<?> nextClass() {
+            int index = next++ ;
+            if (next == CLASSES.length) {
+                next = 0 ;
+            }
+            return CLASSES[index] ;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public ClassCopier lookupSingleThread( Cursor cursor ) {
+        return factory.getClassCopier( cursor.nextClass() ) ;
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public ClassCopier lookupAllThreads( Cursor cursor ) {
+        return factory.getClassCopier( cursor.nextClass() ) ;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.pfl.benchmarks.copyobject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.glassfish.pfl.dynamic.copyobject.impl.ObjectCopierImpl;
+import org.glassfish.pfl.dynamic.copyobject.spi.ReflectiveCopyException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Copies a map-heavy DTO: a HashMap of String keys to small objects that
+ * each hold an ArrayList and a TreeMap.  The reflective benchmark runs in
+ * a VM with the collection copiers disabled, so that HashMap, ArrayList
+ * and TreeMap are copied field by field as before.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CollectionCopierBenchmark {
+    public static class Item {
+        String sku ;
+        int quantity ;
+        List<String> tags ;
+        Map<String,Integer> counts ;
+    }
+
+    public static class Order {
+        long id ;
+        Map<String,Item> items ;
+    }
+
+    @Param({ "10", "100", "1000" })
+    public int size ;
+
+    private Order order ;
+
+    @Setup
+    public void setUp() {
+        order = new Order() ;
+        order.id = 42 ;
+        order.items = new HashMap<String,Item>() ;
+        for (int ctr=0; ctr<size; ctr++) {
+            Item item = new Item() ;
+            item.sku = "sku-" + ctr ;
+            item.quantity = ctr ;
+            item.tags = new ArrayList<String>() ;
+            item.tags.add( "tag-" + (ctr % 7) ) ;
+            item.tags.add( "tag-" + (ctr % 11) ) ;
+            item.counts = new TreeMap<String,Integer>() ;
+            item.counts.put( "a", ctr ) ;
+            item.counts.put( "b", ctr + 1 ) ;
+            order.items.put( item.sku, item ) ;
+        }
+    }
+
+    @Benchmark
+    @Fork(1)
+    public Object collectionCopiers() throws ReflectiveCopyException {
+        return new ObjectCopierImpl().copy( order ) ;
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = 
+        "-Dorg.glassfish.dynamic.copyobject.DisableCollectionCopiers=true")
+    public Object reflective() throws ReflectiveCopyException {
+        return new ObjectCopierImpl().copy( order ) ;
+    }
+}
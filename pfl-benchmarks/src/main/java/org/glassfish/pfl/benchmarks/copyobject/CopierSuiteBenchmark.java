@@ -0,0 +1,118 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.pfl.benchmarks.copyobject;
+
+import java.util.concurrent.TimeUnit;
+
+import org.glassfish.pfl.dynamic.copyobject.spi.CopyobjectDefaults;
+import org.glassfish.pfl.dynamic.copyobject.spi.ObjectCopierFactory;
+import org.glassfish.pfl.dynamic.copyobject.spi.ReflectiveCopyException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Compares the ObjectCopiers on the graphs of Graphs:
+ * <ul>
+ * <li>codegen: ObjectCopierImpl with generated field copiers (the 
+ * default);
+ * <li>unsafe: ObjectCopierImpl with the Unsafe field copiers;
+ * <li>stream: JavaStreamObjectCopierImpl;
+ * <li>fallback: the fallback factory from reflective to stream copying,
+ * as used by DefaultCopier.  All of the graphs can be copied
+ * reflectively, so this shows the cost of the fallback wrapper.
+ * </ul>
+ * The field copier type of the shared ClassCopierFactory of 
+ * ObjectCopierImpl is set through a system property in setUp, so this
+ * must be run forked (the default), with one JVM per parameter set.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CopierSuiteBenchmark {
+    private static final String FIELD_COPIER_TYPE_PROPERTY =
+        "org.glassfish.dynamic.copyobject.FieldCopierType" ;
+
+    @Param({ "codegen", "unsafe", "stream", "fallback" })
+    public String copier ;
+
+    @Param({ "flatDto", "deepList", "map", "primitiveArrays", 
+        "polymorphicArray", "cyclic" })
+    public String graph ;
+
+    private ObjectCopierFactory factory ;
+    private Object source ;
+
+    @Setup
+    public void setUp() {
+        if (copier.equals( "unsafe" )) {
+            System.setProperty( FIELD_COPIER_TYPE_PROPERTY, "UNSAFE" ) ;
+        } else {
+            System.setProperty( FIELD_COPIER_TYPE_PROPERTY, "CODEGEN" ) ;
+        }
+
+        if (copier.equals( "stream" )) {
+            factory = CopyobjectDefaults.makeJavaStreamObjectCopierFactory() ;
+        } else if (copier.equals( "fallback" )) {
+            factory = CopyobjectDefaults.makeFallbackObjectCopierFactory(
+                CopyobjectDefaults.makeReflectObjectCopierFactory(),
+                CopyobjectDefaults.makeJavaStreamObjectCopierFactory() ) ;
+        } else {
+            factory = CopyobjectDefaults.makeReflectObjectCopierFactory() ;
+        }
+
+        source = Graphs.make( graph ) ;
+    }
+
+    @Benchmark
+    public Object copy() throws ReflectiveCopyException {
+        return factory.make().copy( source ) ;
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.pfl.benchmarks.copyobject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.glassfish.pfl.dynamic.copyobject.impl.ObjectCopierImpl;
+import org.glassfish.pfl.dynamic.copyobject.spi.ReflectiveCopyException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Measures the warm-up storm after a redeploy: many threads copy 
+ * instances of classes that the object copier has never seen, so every
+ * thread needs ClassCopiers that are still being built.  Each iteration
+ * loads the Storm classes again in a new ClassLoader, so that all of the 
+ * copiers must be built again, and every thread then copies one instance
+ * of each class, starting at a different class.  The score is the time 
+ * until a thread has copied all of the classes.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+@Threads(8)
+public class CopierWarmupBenchmark {
+    private static final String STORM_PREFIX = 
+        CopierWarmupBenchmark.class.getName() + "$Storm" ;
+
+    public static class StormBase {
+        int id = 1 ;
+        String name = "base" ;
+        List<String> tags = new ArrayList<String>() ;
+    }
+
+    public static class StormAddress extends StormBase {
+        String street = "street" ;
+        String city = "city" ;
+        int zip = 12345 ;
+    }
+
+    public static class StormCustomer extends StormBase {
+        StormAddress address = new StormAddress() ;
+        long since = 42L ;
+        boolean active = true ;
+    }
+
+    public static class StormLine extends StormBase {
+        int quantity = 2 ;
+        double price = 9.5 ;
+    }
+
+    public static class StormOrder extends StormBase {
+        StormCustomer customer = new StormCustomer() ;
+        StormLine[] lines = { new StormLine(), new StormLine() } ;
+        Map<String,String> attributes = new HashMap<String,String>() ;
+    }
+
+    public static class StormInvoice extends StormOrder {
+        double total = 19.0 ;
+        char currency = 'E' ;
+    }
+
+    public static class StormShipment extends StormOrder {
+        StormAddress destination = new StormAddress() ;
+        short priority = 3 ;
+    }
+
+    public static class StormReturn extends StormShipment {
+        String reason = "reason" ;
+        float refund = 1.5f ;
+    }
+
+    private static final String[] STORM_CLASSES = {
+        StormBase.class.getName(), StormAddress.class.getName(),
+        StormCustomer.class.getName(), StormLine.class.getName(),
+        StormOrder.class.getName(), StormInvoice.class.getName(),
+        StormShipment.class.getName(), StormReturn.class.getName()
+    } ;
+
+    // Defines the Storm classes itself, so that each StormLoader has its
+    // own copies of them.
+    private static class StormLoader extends ClassLoader {
+        StormLoader() {
+            super( CopierWarmupBenchmark.class.getClassLoader() ) ;
+        }
+
+        @Override
+        protected Class<?> loadClass( String name, boolean resolve ) 
+            throws ClassNotFoundException {
+            if (!name.startsWith( STORM_PREFIX )) {
+                return super.loadClass( name, resolve ) ;
+            }
+
+            synchronized (getClassLoadingLock( name )) {
+                Class<?> result = findLoadedClass( name ) ;
+                if (result == null) {
+                    byte[] data = readClass( name ) ;
+                    result = defineClass( name, data, 0, data.length ) ;
+                }
+
+                return result ;
+            }
+        }
+
+        private byte[] readClass( String name ) throws ClassNotFoundException {
+            InputStream is = getParent().getResourceAsStream( 
+                name.replace( '.', '/' ) + ".class" ) ;
+            if (is == null) {
+                throw new ClassNotFoundException( name ) ;
+            }
+
+            try {
+                try {
+                    ByteArrayOutputStream os = new ByteArrayOutputStream() ;
+                    byte[] buffer = new byte[4096] ;
+                    int len ;
+                    while ((len = is.read( buffer )) > 0) {
+                        os.write( buffer, 0, len ) ;
+                    }
+                    return os.toByteArray() ;
+                } finally {
+                    is.close() ;
+                }
+            } catch (IOException exc) {
+                throw new ClassNotFoundException( name, exc ) ;
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Storm {
+        Object[] instances ;
+        final AtomicInteger nextThread = new AtomicInteger() ;
+
+        @Setup(Level.Iteration)
+        public void setUp() throws Exception {
+            ClassLoader cl = new StormLoader() ;
+            instances = new Object[STORM_CLASSES.length] ;
+            for (int ctr=0; ctr<STORM_CLASSES.length; ctr++) {
+                instances[ctr] = cl.loadClass( STORM_CLASSES[ctr] )
+                    .newInstance() ;
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadStart {
+        int start ;
+
+        @Setup(Level.Trial)
+        public void setUp( Storm storm ) {
+            start = storm.nextThread.getAndIncrement() ;
+        }
+    }
+
+    @Benchmark
+    public void copyNewClasses( Storm storm, ThreadStart thread, 
+        Blackhole bh ) throws ReflectiveCopyException {
+        Object[] instances = storm.instances ;
+        for (int ctr=0; ctr<instances.length; ctr++) {
+            Object obj = instances[(thread.start + ctr) % instances.length] ;
+            bh.consume( new ObjectCopierImpl().copy( obj ) ) ;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.pfl.benchmarks.copyobject;
+
+import java.util.concurrent.TimeUnit;
+
+import org.glassfish.pfl.dynamic.copyobject.impl.ClassCopierFactoryPipelineImpl;
+import org.glassfish.pfl.dynamic.copyobject.impl.FieldCopierType;
+import org.glassfish.pfl.dynamic.copyobject.impl.IdentityAliasMap;
+import org.glassfish.pfl.dynamic.copyobject.impl.PipelineClassCopierFactory;
+import org.glassfish.pfl.dynamic.copyobject.spi.ReflectiveCopyException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Compares the FieldCopierTypes.  The copy benchmark copies a small 
+ * graph of objects with a mix of primitive, String, and reference fields 
+ * spread over a three level class hierarchy.  The copyWide benchmark
+ * copies a single object with many primitive fields, so that the cost of
+ * field access dominates.  Run with enough warmup for the copiers to be
+ * JIT compiled before comparing the METHOD_HANDLE and UNSAFE results.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FieldCopierBenchmark {
+    public static class Entity {
+        long id ;
+        int version ;
+        String name ;
+    }
+
+    public static class Person extends Entity {
+        String firstName ;
+        String lastName ;
+        int age ;
+        double salary ;
+        boolean active ;
+    }
+
+    public static class Employee extends Person {
+        Person manager ;
+        char grade ;
+        short level ;
+        float rating ;
+        TimeUnit unit ;
+    }
+
+    public static class Wide {
+        int i0, i1, i2, i3, i4, i5, i6, i7 ;
+        long l0, l1, l2, l3 ;
+        double d0, d1, d2, d3 ;
+        boolean b0, b1 ;
+        char c0, c1 ;
+    }
+
+    @Param({ "UNSAFE", "CODEGEN", "METHOD_HANDLE" })
+    public FieldCopierType fieldCopierType ;
+
+    private PipelineClassCopierFactory factory ;
+    private Employee employee ;
+    private Wide wide ;
+
+    private static void fill( Person person, int id ) {
+        person.id = id ;
+        person.version = 1 ;
+        person.name = "person" + id ;
+        person.firstName = "first" + id ;
+        person.lastName = "last" + id ;
+        person.age = 30 + id ;
+        person.salary = 1000.0 * id ;
+        person.active = true ;
+    }
+
+    @Setup
+    public void setUp() {
+        factory = new ClassCopierFactoryPipelineImpl() ;
+        factory.setFieldCopierType( fieldCopierType ) ;
+
+        Person manager = new Person() ;
+        fill( manager, 1 ) ;
+        employee = new Employee() ;
+        fill( employee, 2 ) ;
+        employee.manager = manager ;
+        employee.grade = 'B' ;
+        employee.level = 3 ;
+        employee.rating = 4.5F ;
+        employee.unit = TimeUnit.DAYS ;
+
+        wide = new Wide() ;
+        wide.i7 = 7 ;
+        wide.l3 = 3L ;
+        wide.d1 = 1.0 ;
+        wide.b1 = true ;
+        wide.c0 = 'c' ;
+    }
+
+    @Benchmark
+    public Object copy() throws ReflectiveCopyException {
+        return factory.getClassCopier( Employee.class ).copy( 
+            new IdentityAliasMap(), employee ) ;
+    }
+
+    @Benchmark
+    public Object copyWide() throws ReflectiveCopyException {
+        return factory.getClassCopier( Wide.class ).copy( 
+            new IdentityAliasMap(), wide ) ;
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.pfl.benchmarks.copyobject;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/** Object graphs of typical shapes, shared by the copier benchmarks.
+ * All classes are Serializable, so that every graph can be copied by
+ * the stream copier as well as the reflective copiers.
+ */
+public final class Graphs {
+    private Graphs() {}
+
+    public static class Address implements Serializable {
+        private static final long serialVersionUID = 1L ;
+        String street ;
+        String city ;
+        int zip ;
+    }
+
+    /** A flat DTO: primitives, Strings, an enum and one small object.
+     */
+    public static class Dto implements Serializable {
+        private static final long serialVersionUID = 1L ;
+        long id ;
+        int version ;
+        String firstName ;
+        String lastName ;
+        double balance ;
+        boolean active ;
+        Kind kind ;
+        Address address ;
+    }
+
+    public enum Kind { PERSON, COMPANY }
+
+    public static class Node implements Serializable {
+        private static final long serialVersionUID = 1L ;
+        int number ;
+        Node next ;
+        Node previous ;
+    }
+
+    public static class Arrays implements Serializable {
+        private static final long serialVersionUID = 1L ;
+        int[] ints ;
+        double[] doubles ;
+        byte[] bytes ;
+    }
+
+    public abstract static class Shape implements Serializable {
+        private static final long serialVersionUID = 1L ;
+        double x ;
+        double y ;
+    }
+
+    public static class Circle extends Shape {
+        private static final long serialVersionUID = 1L ;
+        double radius ;
+    }
+
+    public static class Rectangle extends Shape {
+        private static final long serialVersionUID = 1L ;
+        double width ;
+        double height ;
+    }
+
+    public static class Label extends Shape {
+        private static final long serialVersionUID = 1L ;
+        String text ;
+    }
+
+    /** The graph shapes, by name.  These names are the values of the 
+     * graph parameters of the benchmarks.
+     */
+    public static Object make( String name ) {
+        if (name.equals( "flatDto" )) {
+            return makeDto( 1 ) ;
+        } else if (name.equals( "deepList" )) {
+            return makeDeepList( 1000 ) ;
+        } else if (name.equals( "map" )) {
+            return makeMap( 100 ) ;
+        } else if (name.equals( "primitiveArrays" )) {
+            return makeArrays( 1024 ) ;
+        } else if (name.equals( "polymorphicArray" )) {
+            return makeShapes( 100 ) ;
+        } else if (name.equals( "cyclic" )) {
+            return makeRing( 100 ) ;
+        } else {
+            throw new IllegalArgumentException( "Unknown graph " + name ) ;
+        }
+    }
+
+    public static Dto makeDto( int id ) {
+        Dto dto = new Dto() ;
+        dto.id = id ;
+        dto.version = 3 ;
+        dto.firstName = "first" + id ;
+        dto.lastName = "last" + id ;
+        dto.balance = 100.5 * id ;
+        dto.active = true ;
+        dto.kind = Kind.PERSON ;
+        dto.address = new Address() ;
+        dto.address.street = "street" + id ;
+        dto.address.city = "city" ;
+        dto.address.zip = 10000 + id ;
+        return dto ;
+    }
+
+    /** A LinkedList of size DTOs, copied element by element.
+     */
+    public static List<Dto> makeDeepList( int size ) {
+        List<Dto> result = new LinkedList<Dto>() ;
+        for (int ctr=0; ctr<size; ctr++) {
+            result.add( makeDto( ctr ) ) ;
+        }
+
+        return result ;
+    }
+
+    public static Map<String,Dto> makeMap( int size ) {
+        Map<String,Dto> result = new HashMap<String,Dto>() ;
+        for (int ctr=0; ctr<size; ctr++) {
+            result.put( "key" + ctr, makeDto( ctr ) ) ;
+        }
+
+        return result ;
+    }
+
+    public static Arrays makeArrays( int size ) {
+        Arrays result = new Arrays() ;
+        result.ints = new int[size] ;
+        result.doubles = new double[size] ;
+        result.bytes = new byte[size] ;
+        for (int ctr=0; ctr<size; ctr++) {
+            result.ints[ctr] = ctr ;
+            result.doubles[ctr] = ctr ;
+            result.bytes[ctr] = (byte)ctr ;
+        }
+
+        return result ;
+    }
+
+    public static Shape[] makeShapes( int size ) {
+        Shape[] result = new Shape[size] ;
+        for (int ctr=0; ctr<size; ctr++) {
+            switch (ctr % 3) {
+                case 0 :
+                    Circle circle = new Circle() ;
+                    circle.radius = ctr ;
+                    result[ctr] = circle ;
+                    break ;
+                case 1 :
+                    Rectangle rect = new Rectangle() ;
+                    rect.width = ctr ;
+                    rect.height = ctr ;
+                    result[ctr] = rect ;
+                    break ;
+                default :
+                    Label label = new Label() ;
+                    label.text = "label" + ctr ;
+                    result[ctr] = label ;
+            }
+            result[ctr].x = ctr ;
+            result[ctr].y = -ctr ;
+        }
+
+        return result ;
+    }
+
+    /** A doubly linked ring of size nodes, so every node is reachable 
+     * from every other node in both directions.
+     */
+    public static Node makeRing( int size ) {
+        Node first = new Node() ;
+        Node last = first ;
+        for (int ctr=1; ctr<size; ctr++) {
+            Node node = new Node() ;
+            node.number = ctr ;
+            node.previous = last ;
+            last.next = node ;
+            last = node ;
+        }
+        last.next = first ;
+        first.previous = last ;
+        return first ;
+    }
+
+    /** Several graphs of different shapes, so that copying them uses 
+     * many different ClassCopiers.
+     */
+    public static List<Object> makeMixed() {
+        List<Object> result = new ArrayList<Object>() ;
+        for (String name : new String[] { "flatDto", "map", 
+            "primitiveArrays", "polymorphicArray" }) {
+            result.add( make( name ) ) ;
+        }
+
+        return result ;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.pfl.benchmarks.copyobject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.glassfish.pfl.dynamic.copyobject.impl.ObjectCopierImpl;
+import org.glassfish.pfl.dynamic.copyobject.impl.ParallelObjectCopierImpl;
+import org.glassfish.pfl.dynamic.copyobject.spi.ReflectiveCopyException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Copies a wide object graph: a list of records, each holding a small
+ * array of children, with some records shared between positions.  
+ * Compares the sequential ObjectCopierImpl with ParallelObjectCopierImpl 
+ * using the default pool and threshold.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParallelCopyBenchmark {
+    public static class Child {
+        String name ;
+        double value ;
+    }
+
+    public static class Record {
+        long id ;
+        String label ;
+        int[] data ;
+        Child[] children ;
+    }
+
+    @Param({ "1000", "100000" })
+    public int size ;
+
+    private List<Record> records ;
+
+    @Setup
+    public void setUp() {
+        records = new ArrayList<Record>( size ) ;
+        for (int ctr=0; ctr<size; ctr++) {
+            if (ctr % 10 == 9) {
+                records.add( records.get( ctr / 2 ) ) ;
+                continue ;
+            }
+
+            Record record = new Record() ;
+            record.id = ctr ;
+            record.label = "record-" + ctr ;
+            record.data = new int[16] ;
+            record.children = new Child[4] ;
+            for (int index=0; index<record.children.length; index++) {
+                Child child = new Child() ;
+                child.name = "child-" + index ;
+                child.value = ctr * index ;
+                record.children[index] = child ;
+            }
+            records.add( record ) ;
+        }
+    }
+
+    @Benchmark
+    public Object sequential() throws ReflectiveCopyException {
+        return new ObjectCopierImpl().copy( records ) ;
+    }
+
+    @Benchmark
+    public Object parallel() throws ReflectiveCopyException {
+        return new ParallelObjectCopierImpl().copy( records ) ;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.pfl.benchmarks.copyobject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.glassfish.pfl.dynamic.copyobject.impl.JavaStreamObjectCopierImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Compares JavaStreamObjectCopierImpl with a copy through new object
+ * streams and a new buffer for every copy, on a small Serializable DTO.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StreamCopyBenchmark {
+    public static class Node implements Serializable {
+        private static final long serialVersionUID = 1L ;
+        int number ;
+        String label ;
+    }
+
+    public static class Dto implements Serializable {
+        private static final long serialVersionUID = 1L ;
+        long id ;
+        String name ;
+        int[] values ;
+        List<String> tags ;
+        Map<String,Node> nodes ;
+    }
+
+    private final JavaStreamObjectCopierImpl copier = 
+        new JavaStreamObjectCopierImpl() ;
+
+    private Dto dto ;
+
+    @Setup
+    public void setUp() {
+        dto = new Dto() ;
+        dto.id = 42 ;
+        dto.name = "dto" ;
+        dto.values = new int[] { 1, 2, 3, 4 } ;
+        dto.tags = new ArrayList<String>() ;
+        dto.tags.add( "a" ) ;
+        dto.tags.add( "b" ) ;
+        dto.nodes = new HashMap<String,Node>() ;
+        for (int ctr=0; ctr<4; ctr++) {
+            Node node = new Node() ;
+            node.number = ctr ;
+            node.label = "node" ;
+            dto.nodes.put( "n" + ctr, node ) ;
+        }
+    }
+
+    @Benchmark
+    public Object reusedStreams() {
+        return copier.copy( dto ) ;
+    }
+
+    @Benchmark
+    public Object newStreams() throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream( 10000 ) ;
+        ObjectOutputStream oos = new ObjectOutputStream( os ) ;
+        oos.writeObject( dto ) ;
+        oos.flush() ;
+        ObjectInputStream ois = new ObjectInputStream( 
+            new ByteArrayInputStream( os.toByteArray() ) ) ;
+        return ois.readObject() ;
+    }
+}
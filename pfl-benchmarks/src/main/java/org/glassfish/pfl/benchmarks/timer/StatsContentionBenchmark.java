@@ -0,0 +1,127 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.pfl.benchmarks.timer;
+
+import java.util.concurrent.TimeUnit;
+
+import org.glassfish.pfl.tf.timer.spi.StatsEventHandler;
+import org.glassfish.pfl.tf.timer.spi.Timer;
+import org.glassfish.pfl.tf.timer.spi.TimerEventController;
+import org.glassfish.pfl.tf.timer.spi.TimerFactory;
+import org.glassfish.pfl.tf.timer.spi.TimerFactoryBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures the throughput of enter/exit pairs on one activated timer 
+ * from 1 to 64 threads, all reporting to a single multi-threaded 
+ * StatsEventHandler.  This shows how much the threads contend in the 
+ * handler when every request is timed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatsContentionBenchmark {
+    private TimerFactory factory;
+    private TimerEventController controller;
+    private StatsEventHandler handler;
+    private Timer timer;
+
+    @Setup
+    public void setUp() {
+        factory = TimerFactoryBuilder.make("StatsContentionBenchmark", 
+            "Timers for StatsContentionBenchmark");
+        timer = factory.makeTimer("dispatch", "A timed dispatch");
+        controller = factory.makeController("controller");
+        handler = factory.makeMultiThreadedStatsEventHandler("stats");
+        controller.register(handler);
+        timer.enable();
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (handler.stats().get(timer).count() == 0) {
+            throw new IllegalStateException("No samples were recorded");
+        }
+        TimerFactoryBuilder.destroy(factory);
+    }
+
+    private void enterExit() {
+        controller.enter(timer);
+        controller.exit(timer);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void threads01() {
+        enterExit();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void threads04() {
+        enterExit();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void threads16() {
+        enterExit();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public void threads64() {
+        enterExit();
+    }
+}
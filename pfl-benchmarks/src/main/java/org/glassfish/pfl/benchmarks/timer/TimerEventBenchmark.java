@@ -0,0 +1,126 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.pfl.benchmarks.timer;
+
+import java.util.concurrent.TimeUnit;
+
+import org.glassfish.pfl.tf.timer.spi.NamedBase;
+import org.glassfish.pfl.tf.timer.spi.Timer;
+import org.glassfish.pfl.tf.timer.spi.TimerEvent;
+import org.glassfish.pfl.tf.timer.spi.TimerEventController;
+import org.glassfish.pfl.tf.timer.spi.TimerEventHandler;
+import org.glassfish.pfl.tf.timer.spi.TimerFactory;
+import org.glassfish.pfl.tf.timer.spi.TimerFactoryBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures one enter/exit pair on an activated timer through a 
+ * TimerEventController.  The handler is either the StatsEventHandler of 
+ * the TimerFactory, which receives primitive notifications, or a handler
+ * that only implements TimerEventHandler, which needs a TimerEvent per 
+ * event.  Run with "-prof gc": gc.alloc.rate.norm should be 0 bytes per 
+ * operation for the stats handler.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimerEventBenchmark {
+    @Param({ "stats", "legacy" })
+    public String handlerType;
+
+    private TimerFactory factory;
+    private TimerEventController controller;
+    private Timer timer;
+
+    /** A handler that only supports the TimerEvent form of notify. */
+    private static class CountingHandler extends NamedBase
+        implements TimerEventHandler {
+
+        private long count;
+
+        CountingHandler(TimerFactory factory, String name) {
+            super(factory, name);
+        }
+
+        @Override
+        public void notify(TimerEvent event) {
+            count += event.time();
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        factory = TimerFactoryBuilder.make("TimerEventBenchmark", 
+            "Timers for TimerEventBenchmark");
+        timer = factory.makeTimer("dispatch", "A timed dispatch");
+        controller = factory.makeController("controller");
+        if (handlerType.equals("stats")) {
+            controller.register(factory.makeStatsEventHandler("stats"));
+        } else {
+            controller.register(new CountingHandler(factory, "legacy"));
+        }
+        timer.enable();
+    }
+
+    @TearDown
+    public void tearDown() {
+        TimerFactoryBuilder.destroy(factory);
+    }
+
+    @Benchmark
+    public void enterExit() {
+        controller.enter(timer);
+        controller.exit(timer);
+    }
+}
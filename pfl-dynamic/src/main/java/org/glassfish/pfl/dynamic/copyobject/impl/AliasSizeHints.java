@@ -0,0 +1,128 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.pfl.dynamic.copyobject.impl ;
+
+import java.util.Collections ;
+import java.util.Map ;
+import java.util.TreeMap ;
+import java.util.concurrent.ConcurrentHashMap ;
+import java.util.concurrent.ConcurrentMap ;
+
+/** Learned sizes of the object graphs copied by ObjectCopierImpl, by
+ * the class of the root object.  After each outermost copy, the number of
+ * objects the copy entered in the alias table updates an exponentially
+ * weighted moving average for the class of the root, and the next copy of
+ * a root of the same class presizes the alias table to that average, 
+ * so that a large graph does not rehash the table once for every 
+ * doubling.  
+ * <p>
+ * Each estimate is a plain volatile int.  Concurrent updates may lose one
+ * another, which is harmless for a hint.  Estimates are kept by class 
+ * name, as in CopyInstrumentation, so that they do not keep classes
+ * reachable, and they are returned by CopyInstrumentation.getSnapshot.
+ */
+final class AliasSizeHints {
+    private AliasSizeHints() {}
+
+    // Each new graph size moves the estimate 1/2**WEIGHT_SHIFT of the way 
+    // from the old estimate.
+    private static final int WEIGHT_SHIFT = 2 ;
+
+    private static final class Estimate {
+        private volatile int value = -1 ;
+
+        void update( int size ) {
+            int current = value ;
+            value = current < 0 ? size 
+                : current + ((size - current) >> WEIGHT_SHIFT) ;
+        }
+    }
+
+    private static final ConcurrentMap<String,Estimate> estimates =
+        new ConcurrentHashMap<String,Estimate>() ;
+
+    private static final ClassValue<Estimate> estimateForClass = 
+        new ClassValue<Estimate>() {
+            @Override
+            protected Estimate computeValue( Class<?> cls ) {
+                Estimate estimate = new Estimate() ;
+                Estimate existing = estimates.putIfAbsent( cls.getName(), 
+                    estimate ) ;
+                return existing == null ? estimate : existing ;
+            }
+        } ;
+
+    /** Return the expected number of objects in a graph rooted at an 
+     * instance of cls, or 0 if no such graph has been copied.
+     */
+    static int getHint( Class<?> cls ) {
+        return Math.max( 0, estimateForClass.get( cls ).value ) ;
+    }
+
+    /** Record that a copy of a graph rooted at an instance of cls entered
+     * size objects in the alias table.
+     */
+    static void record( Class<?> cls, int size ) {
+        estimateForClass.get( cls ).update( size ) ;
+    }
+
+    /** Return the current estimates by class name.
+     */
+    static Map<String,Integer> getHints() {
+        Map<String,Integer> result = new TreeMap<String,Integer>() ;
+        for (Map.Entry<String,Estimate> entry : estimates.entrySet()) {
+            int value = entry.getValue().value ;
+            if (value >= 0) {
+                result.put( entry.getKey(), value ) ;
+            }
+        }
+
+        return Collections.unmodifiableMap( result ) ;
+    }
+
+    /** Forget all estimates.
+     */
+    static void reset() {
+        for (Estimate estimate : estimates.values()) {
+            estimate.value = -1 ;
+        }
+    }
+}
@@ -56,6 +56,10 @@ public interface ClassCopier {
      * once.  Throws ReflectiveCopyException if it cannot copy
      * source.  This may occur in some implementations, depending
      * on the mechanism used to copy the class.
+     * <p>
+     * If oldToNew belongs to the iterative copy engine (see
+     * WorkStackAliasMap), the result may not be complete until the
+     * ObjectCopier that owns oldToNew returns.
      */
     Object copy( Map<Object,Object> oldToNew,
 	Object source ) throws ReflectiveCopyException  ;
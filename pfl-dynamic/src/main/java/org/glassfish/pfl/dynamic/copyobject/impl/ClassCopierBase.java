@@ -44,6 +44,7 @@ import org.glassfish.pfl.dynamic.copyobject.spi.ReflectiveCopyException;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 
 /** A convenient base class for making ClassCopier types.
  * This takes care of checking oldToNew and updating oldToNew
@@ -51,6 +52,8 @@ import java.util.Map;
  * createCopy, which allocates a new result.  In some simple
  * cases, this is all that is needed.  In the more complex
  * cases, doCopy must also be overridden to make the actual copy.
+ * Copiers whose doCopy may be run later by the iterative copy engine 
+ * (see WorkStackAliasMap) also override isDeferrable.
  */
 public abstract class ClassCopierBase implements ClassCopier {
     private String name ;
@@ -144,11 +147,28 @@ public abstract class ClassCopierBase implements ClassCopier {
         if (isEmptyHashMap(source))
             result = cloneEmptyHashMap();
 
-        if (result != null)
-            oldToNew.put(source, result);
+        if (result != null) {
+            Object existing = putAlias(oldToNew, source, result);
+            if (existing != null)
+                result = existing;
+        }
         return result;
     }
 
+    /**
+     * Enter result as the copy of source in oldToNew.  If oldToNew is shared by several threads (which is signalled by
+     * it being a ConcurrentMap), another thread may have entered a copy of source first, in which case that copy is
+     * returned and must be used instead of result.  Otherwise this returns null.
+     */
+    private static Object putAlias(Map<Object, Object> oldToNew, Object source, Object result) {
+        if (oldToNew instanceof ConcurrentMap) {
+            return ((ConcurrentMap<Object, Object>) oldToNew).putIfAbsent(source, result);
+        }
+
+        oldToNew.put(source, result);
+        return null;
+    }
+
     /**
      * As of JDK 1.7-40, the JDK relies on the HashMap#table field being identical to a constant. That will not be
      * true if we invoke #doByFieldCopy to copy it, so we need special processing.
@@ -166,7 +186,27 @@ public abstract class ClassCopierBase implements ClassCopier {
         Object result;
         try {
             result = createCopy(source);
-            oldToNew.put(source, result);
+            Object existing = putAlias(oldToNew, source, result);
+            if (existing != null) {
+                // Another thread is copying source.
+                return existing;
+            }
+            if (CopyInstrumentation.isEnabled()) {
+                CopyInstrumentation.recordCopy(source.getClass());
+            }
+            if (oldToNew instanceof WorkStackAliasMap && isDeferrable(source)) {
+                WorkStackAliasMap workStack = (WorkStackAliasMap) oldToNew;
+                if (!workStack.enter()) {
+                    // Too deep: the iterative engine completes the copy later.
+                    workStack.defer(this, source, result);
+                    return result;
+                }
+                try {
+                    return doCopy(oldToNew, source, result);
+                } finally {
+                    workStack.exit();
+                }
+            }
             result = doCopy(oldToNew, source, result);
         } catch (StackOverflowError ex) {
             throw Exceptions.self.stackOverflow(source, ex);
@@ -180,6 +220,29 @@ public abstract class ClassCopierBase implements ClassCopier {
 	return isReflective ;
     }
 
+    /** Return true if the doCopy call for source may be made later, after
+     * the copy has been returned to the caller.  This is only used by the
+     * iterative copy engine.  It must only return true if doCopy returns 
+     * its result argument, and does not need the copies it makes to be
+     * complete.  This returns false by default.
+     */
+    protected boolean isDeferrable( Object source )
+    {
+	return false ;
+    }
+
+    /** Complete all copies that the iterative copy engine has deferred
+     * so far in oldToNew.  A copier calls this if it needs the copies it 
+     * has made to be complete before it finishes, for example to call
+     * readResolve.  This does nothing for other alias tables.
+     */
+    protected static void completeDeferredCopies( Map<Object,Object> oldToNew )
+    {
+	if (oldToNew instanceof WorkStackAliasMap) {
+	    ((WorkStackAliasMap)oldToNew).completeDeferredCopies() ;
+	}
+    }
+
     /** Create a copy of source.  The copy may or may not be fully
      * initialized.  This method must always be overridden in a 
      * subclass.
@@ -42,8 +42,6 @@ package org.glassfish.pfl.dynamic.copyobject.impl;
 
 import java.util.Map ;
 
-import java.lang.reflect.Array ;
-
 import org.glassfish.pfl.dynamic.copyobject.spi.ReflectiveCopyException ;
 
 /** A factory used for creating ClassCopier instances.
@@ -54,47 +52,142 @@ import org.glassfish.pfl.dynamic.copyobject.spi.ReflectiveCopyException ;
  */
 public class ClassCopierFactoryArrayImpl implements ClassCopierFactory {
     
-    // A full ClassCopierFactory for all classes.
-    private final ClassCopierFactory classCopierFactory ;
+    private final ClassCopier arrayClassCopier ;
+
+    // Copies arrays whose component type is a LazyCopy interface, so that
+    // their elements may be copied lazily.
+    private final ClassCopier lazyArrayClassCopier ;
 
     public ClassCopierFactoryArrayImpl( ClassCopierFactory ccf ) 
     {
-	classCopierFactory = ccf ;
+	arrayClassCopier = makeArrayClassCopier( ccf ) ;
+	if (ccf instanceof PipelineClassCopierFactory) {
+	    final PipelineClassCopierFactory pccf = 
+		(PipelineClassCopierFactory)ccf ;
+	    lazyArrayClassCopier = makeArrayClassCopier( 
+		new ClassCopierFactory() {
+		    @Override
+		    public ClassCopier getClassCopier( Class<?> cls ) 
+			throws ReflectiveCopyException 
+		    {
+			return pccf.getLazyClassCopier( cls ) ;
+		    }
+		} ) ;
+	} else {
+	    lazyArrayClassCopier = arrayClassCopier ;
+	}
     }
 
-    // Copy an array of Objects.  This would also work
-    // for an array of primitives, but its more efficient to clone
-    // arrays of primitives.  This is not static due to the
-    // need to reference classCopierFactory.
-    private ClassCopier arrayClassCopier = 
-	new ClassCopierBase( "array" ) {
+    // Copy an array of Objects.  The copy starts as a clone of source,
+    // which has the right component type, and each element is then 
+    // replaced by its copy, made by the ClassCopier that elementFactory
+    // returns for the class of the element.
+    private static ClassCopier makeArrayClassCopier( 
+	final ClassCopierFactory elementFactory ) 
+    {
+	return new ClassCopierBase( "array" ) {
         @Override
 	    public Object createCopy( 
 		Object source ) throws ReflectiveCopyException 
 	    {
-		int alen = Array.getLength( source ) ;
-		Object result = Array.newInstance( 
-		    source.getClass().getComponentType(), alen ) ;
+		return ((Object[])source).clone() ;
+	    }
+
+            @Override
+	    protected boolean isDeferrable( Object source ) 
+	    {
+		return true ;
+	    }
+
+            @Override
+	    public Object doCopy( Map<Object,Object> oldToNew, Object source,
+		Object result ) throws ReflectiveCopyException 
+	    {
+		Object[] src = (Object[])source ;
+		Object[] dest = (Object[])result ;
+
+		if (ParallelObjectCopierImpl.isParallel( oldToNew, 
+		    src.length )) {
+		    ParallelObjectCopierImpl.copyElements( elementFactory,
+			oldToNew, src, dest ) ;
+		    return result ;
+		}
+
+		// Must look up the Copier for each element class to handle
+		// polymorphic arrays, but most arrays are homogeneous, so
+		// remember the last one.
+		Class<?> lastClass = null ;
+		ClassCopier lastCopier = null ;
+		for (int ctr=0; ctr<src.length; ctr++) {
+		    Object aobj = src[ctr] ;
+
+		    if (aobj != null) {
+			Class<?> cls = aobj.getClass() ;
+			if (cls != lastClass) {
+			    lastCopier = elementFactory.getClassCopier( 
+				cls ) ;
+			    lastClass = cls ;
+			}
+			aobj = lastCopier.copy( oldToNew, aobj ) ;
+		    }
+
+		    dest[ctr] = aobj ;
+		}
+
 		return result ;
 	    }
+	} ;
+    }
+
+    // Copy an array whose elements are all immutable (such as String[]),
+    // so the elements need not be copied.  ClassCopierBase still enters
+    // the clone in oldToNew.
+    private static ClassCopier immutableArrayClassCopier = 
+	new ClassCopierBase( "immutableArray" ) {
+        @Override
+	    public Object createCopy( 
+		Object source ) throws ReflectiveCopyException 
+	    {
+		return ((Object[])source).clone() ;
+	    }
+	} ;
+
+    // Copy an array of arrays of primitives (such as int[][]).  Every 
+    // element has exactly the component type, so the element copier is 
+    // found once, without going through the ClassCopierFactory.  The
+    // elements are still copied through oldToNew to preserve aliasing
+    // between rows.
+    private static ClassCopier primitiveArrayArrayClassCopier = 
+	new ClassCopierBase( "primitiveArrayArray" ) {
+        @Override
+	    public Object createCopy( 
+		Object source ) throws ReflectiveCopyException 
+	    {
+		return ((Object[])source).clone() ;
+	    }
+
+            @Override
+	    protected boolean isDeferrable( Object source ) 
+	    {
+		return true ;
+	    }
 
             @Override
 	    public Object doCopy( Map<Object,Object> oldToNew, Object source,
 		Object result ) throws ReflectiveCopyException 
 	    {
-		int alen = Array.getLength( source ) ;
-		for (int ctr=0; ctr<alen; ctr++) {
-		    Object aobj = Array.get( source, ctr ) ;
+		Object[] src = (Object[])source ;
+		Object[] dest = (Object[])result ;
+		ClassCopier copier = getPrimitiveArrayClassCopier( 
+		    src.getClass().getComponentType().getComponentType() ) ;
 
+		for (int ctr=0; ctr<src.length; ctr++) {
+		    Object aobj = src[ctr] ;
 		    if (aobj != null) {
-			// Must look up the Copier for each element
-			// to handle polymorphic arrays
-			ClassCopier copier = classCopierFactory.getClassCopier( 
-			    aobj.getClass() ) ;
 			aobj = copier.copy( oldToNew, aobj ) ;
 		    }
 
-		    Array.set( result, ctr, aobj ) ;
+		    dest[ctr] = aobj ;
 		}
 
 		return result ;
@@ -189,6 +282,39 @@ public class ClassCopierFactoryArrayImpl implements ClassCopierFactory {
 	    } 
 	} ;
 
+    // Return the ClassCopier for arrays of compType, or null if compType
+    // is not primitive.
+    private static ClassCopier getPrimitiveArrayClassCopier( 
+	Class<?> compType ) 
+    {
+	if (compType == boolean.class) {
+	    return booleanArrayClassCopier;
+	}
+	if (compType == byte.class) {
+	    return byteArrayClassCopier;
+	}
+	if (compType == char.class) {
+	    return charArrayClassCopier;
+	}
+	if (compType == short.class) {
+	    return shortArrayClassCopier;
+	}
+	if (compType == int.class) {
+	    return intArrayClassCopier;
+	}
+	if (compType == long.class) {
+	    return longArrayClassCopier;
+	}
+	if (compType == float.class) {
+	    return floatArrayClassCopier;
+	}
+	if (compType == double.class) {
+	    return doubleArrayClassCopier;
+	}
+
+	return null ;
+    }
+
     @Override
     public ClassCopier getClassCopier( Class<?> cls )
     {
@@ -203,32 +329,14 @@ public class ClassCopierFactoryArrayImpl implements ClassCopierFactory {
 	    // I like having the handling of all arrays grouped together
 	    // in the same place.  The result is basically lazy initialization
 	    // of the ClassCopierFactoryCachingImpl instance.
-	    if (compType == boolean.class) {
-                return booleanArrayClassCopier;
-            }
-	    if (compType == byte.class) {
-                return byteArrayClassCopier;
-            }
-	    if (compType == char.class) {
-                return charArrayClassCopier;
-            }
-	    if (compType == short.class) {
-                return shortArrayClassCopier;
-            }
-	    if (compType == int.class) {
-                return intArrayClassCopier;
-            }
-	    if (compType == long.class) {
-                return longArrayClassCopier;
-            }
-	    if (compType == float.class) {
-                return floatArrayClassCopier;
-            }
-	    if (compType == double.class) {
-                return doubleArrayClassCopier;
-            }
-
-	    return null ;
+	    return getPrimitiveArrayClassCopier( compType ) ;
+	} else if (compType.isArray() 
+	    && compType.getComponentType().isPrimitive()) {
+	    return primitiveArrayArrayClassCopier ;
+	} else if (CopyPlan.isImmutableFieldType( compType )) {
+	    return immutableArrayClassCopier ;
+	} else if (LazyCopyClassCopier.isLazyCopyType( compType )) {
+	    return lazyArrayClassCopier ;
 	} else {
 	    return arrayClassCopier ; 
 	}
@@ -0,0 +1,78 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.pfl.dynamic.copyobject.impl;
+
+/** A CachingClassCopierFactory built on ClassValue.  A lookup of a Class
+ * that is already in the cache performs no shared writes and takes no
+ * locks, so many threads may call getClassCopier concurrently without
+ * contending with each other.
+ * <p>
+ * The cached ClassCopier is stored in the Class itself through ClassValue,
+ * so this cache does not pin ClassLoaders: the entry becomes unreachable
+ * together with the Class.  Each Class gets a small mutable holder the
+ * first time it is seen; put simply updates the holder.
+ */
+public class ClassCopierFactoryClassValueImpl 
+    implements CachingClassCopierFactory 
+{
+    private static final class Entry {
+        volatile ClassCopier copier ;
+    }
+
+    private final ClassValue<Entry> cache = new ClassValue<Entry>() {
+        @Override
+        protected Entry computeValue( Class<?> cls ) {
+            return new Entry() ;
+        }
+    } ;
+
+    @Override
+    public void put( Class<?> cls, ClassCopier copier ) 
+    {
+        cache.get( cls ).copier = copier ;
+    }
+
+    @Override
+    public ClassCopier getClassCopier( Class<?> cls ) 
+    {
+        return cache.get( cls ).copier ;
+    }
+}
@@ -40,7 +40,11 @@
 
 package org.glassfish.pfl.dynamic.copyobject.impl;
 
+import java.io.IOException ;
+
+import java.util.Collections ;
 import java.util.LinkedHashMap ;
+import java.util.Map ;
 import java.util.IdentityHashMap ;
 
 import java.lang.reflect.Field ;
@@ -58,7 +62,6 @@ import java.util.TreeMap;
 import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListMap;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Logger ;
 import java.util.logging.LogManager ;
 
@@ -139,15 +142,35 @@ public class ClassCopierFactoryPipelineImpl implements
 
 
     private CachingClassCopierFactory factoryCache ;
+    // The ClassCopiers returned by getLazyClassCopier.  Only classes that
+    // have been copied as the root of a copy, or through a LazyCopy 
+    // interface, are in this cache.
+    private CachingClassCopierFactory lazyCache ;
     private ClassCopierFactory specialFactory ;
     private ClassCopierFactory arrayFactory ;
     private ClassCopierFactory ordinaryFactory ;
     private ClassCopier errorCopier ;
+    private volatile FieldCopierType fieldCopierType = 
+        DefaultClassCopierFactories.DEFAULT_FIELD_COPIER_TYPE ;
+
+    // Classes with a copier generated at build time.  These are known not
+    // to be deeply immutable, so they need not be analyzed again.
+    private final Map<Class<?>,Boolean> precompiled = 
+        Collections.synchronizedMap( new WeakHashMap<Class<?>,Boolean>() ) ;
 
     public ClassCopierFactoryPipelineImpl() {
+        this( DefaultClassCopierFactories.makeCachingClassCopierFactory() ) ;
+    }
+
+    /** Create a pipeline that uses the given cache for ClassCopier
+     * instances.  This allows the cache implementation to be selected
+     * independently of the rest of the pipeline.
+     */
+    public ClassCopierFactoryPipelineImpl( 
+        CachingClassCopierFactory factoryCache ) {
 	// Set up internal ClassCopierFactory instances
-	factoryCache =
-	    DefaultClassCopierFactories.makeCachingClassCopierFactory() ;
+	this.factoryCache = factoryCache ;
+        lazyCache = DefaultClassCopierFactories.makeCachingClassCopierFactory() ;
 	specialFactory = 
 	    DefaultClassCopierFactories.getNullClassCopierFactory() ;
 	arrayFactory = 
@@ -176,11 +199,25 @@ public class ClassCopierFactoryPipelineImpl implements
             factoryCache.put( cls, mapCopier ) ;
         }
 
+        if (DefaultClassCopierFactories.USE_COLLECTION_COPIERS) {
+            for (Map.Entry<Class<?>,ClassCopier> entry : 
+                CollectionClassCopiers.makeCollectionClassCopiers( this )
+                    .entrySet()) {
+                factoryCache.put( entry.getKey(), entry.getValue() ) ;
+            }
+        }
+
 	// Make sure that all non-copyable classes have the error
 	// copier in the cache.
 	for (Class<?> cls : notCopyable) {
             factoryCache.put(cls, errorCopier);
         }
+
+        if (DefaultClassCopierFactories.USE_PRECOMPILED_COPIERS) {
+            ClassLoader cl = Thread.currentThread().getContextClassLoader() ;
+            registerPrecompiledCopiers( cl == null 
+                ? ClassCopierFactoryPipelineImpl.class.getClassLoader() : cl ) ;
+        }
     }
 
     @Override
@@ -195,6 +232,66 @@ public class ClassCopierFactoryPipelineImpl implements
 	return true ;
     }
 
+    @Override
+    public FieldCopierType getFieldCopierType() {
+        return fieldCopierType ;
+    }
+
+    @Override
+    public void setFieldCopierType( FieldCopierType type ) {
+        if (type == null) {
+            throw new NullPointerException( "type must not be null" ) ;
+        }
+
+        fieldCopierType = type ;
+    }
+
+    @Override
+    public int registerPrecompiledCopiers( ClassLoader cl ) {
+        CodegenCopierIndex index ;
+        try {
+            index = CodegenCopierIndex.getIndex( cl ) ;
+        } catch (IOException exc) {
+            Exceptions.self.couldNotReadCopierIndex( exc ) ;
+            return 0 ;
+        }
+
+        if (index.getEntries().isEmpty()) {
+            return 0 ;
+        }
+
+        int result = 0 ;
+        for (CodegenCopierIndex.Entry entry : index.getEntries()) {
+            try {
+                Class<?> cls = Class.forName( entry.getClassName(), false, cl ) ;
+                if (!entry.getLayoutHash().equals( 
+                    CodegenCopierIndex.getLayoutHash( cls ) )) {
+                    Exceptions.self.precompiledCopierIsStale( 
+                        entry.getClassName() ) ;
+                    continue ;
+                }
+
+                Class<?> copierClass = Class.forName( 
+                    entry.getCopierClassName(), false, cl ) ;
+                if (!CodegenCopierBase.class.isAssignableFrom( copierClass )) {
+                    throw new IllegalArgumentException( copierClass 
+                        + " is not a generated copier" ) ;
+                }
+
+                ClassCopierOrdinaryImpl.registerCodegenCopier( cls,
+                    copierClass.getDeclaredConstructor( 
+                        PipelineClassCopierFactory.class ) ) ;
+                precompiled.put( cls, Boolean.TRUE ) ;
+                result++ ;
+            } catch (Exception | LinkageError exc) {
+                Exceptions.self.couldNotRegisterPrecompiledCopier( 
+                    entry.getClassName(), exc ) ;
+            }
+        }
+
+        return result ;
+    }
+
     /** Look for cls only in the cache; do not create a ClassCopier
      * if there isn't one already in the cache.
      */
@@ -214,8 +311,14 @@ public class ClassCopierFactoryPipelineImpl implements
      * passed by reference.
      */
     @Override
-    public synchronized final void registerImmutable( Class<?> cls ) {
-	factoryCache.put( cls, DefaultClassCopiers.getIdentityClassCopier() ) ;
+    public final void registerImmutable( Class<?> cls ) {
+        synchronized (factoryCache) {
+            factoryCache.put( cls, 
+                DefaultClassCopiers.getIdentityClassCopier() ) ;
+        }
+        synchronized (lazyCache) {
+            lazyCache.put( cls, DefaultClassCopiers.getIdentityClassCopier() ) ;
+        }
     }
 
     /** Set a special ClassCopierFactory to handle some application specific 
@@ -226,14 +329,14 @@ public class ClassCopierFactoryPipelineImpl implements
 	specialFactory = ccf ;
     }
 
-    // Issue 14455: introduce read/write lock to reduce contention
-    // on getClassCopier.
-    private ReentrantReadWriteLock rwlock = new ReentrantReadWriteLock() ;
-
-
      /** Analyze cls to determine the appropriate ClassCopier
      * and return the ClassCopier instance.  Will only create
      * a ClassCopier for a given Class once.
+     * <p>
+     * The cache handles its own concurrency (the default cache is lock
+     * free for readers), so a cache hit here takes no lock.  Only
+     * a miss synchronizes, and then only long enough to publish the
+     * new ClassCopier.
      */
     @Override
     public ClassCopier getClassCopier( 
@@ -243,52 +346,83 @@ public class ClassCopierFactoryPipelineImpl implements
             throw Exceptions.self.cannotCopyInterface( cls ) ;
         }
 
-        rwlock.readLock().lock() ;
-        boolean readLocked = true ;
-        try {
-            ClassCopier result = factoryCache.getClassCopier( cls ) ;
+        ClassCopier result = factoryCache.getClassCopier( cls ) ;
+        if (result == null) {
+            // Enums, records of immutables, java.time values, and the 
+            // other classes known to ImmutableTypeRegistry are immutable.
+            // We'll figure that out here and cache the result.
+            if (ImmutableTypeRegistry.isImmutable( cls )) {
+                result = DefaultClassCopiers.getIdentityClassCopier();
+            }
             if (result == null) {
-                // New for Java SE 5.0: all Enums are immutable.
-                // We'll figure that out here and cache the result.
-                if (Enum.class.isAssignableFrom(cls)) {
-                    result = DefaultClassCopiers.getIdentityClassCopier();
-                }
-                if (result == null) {
-                    result = specialFactory.getClassCopier(cls);
-                }
-                if (result == null) {
-                    result = arrayFactory.getClassCopier(cls);
-                }
-                if (result == null) {
-                    result = ordinaryFactory.getClassCopier(cls);
-                }
-                if (result == null) {
-                    throw Exceptions.self.couldNotFindClassCopier( cls ) ;
+                result = specialFactory.getClassCopier(cls);
+            }
+            if (result == null) {
+                result = arrayFactory.getClassCopier(cls);
+            }
+            if (result == null 
+                && LazyCopyProxyBase.class.isAssignableFrom( cls )) {
+                result = LazyCopyClassCopier.getProxyClassCopier() ;
+            }
+            if (result == null && !precompiled.containsKey( cls )
+                && CopyPlan.getCopyPlan( cls ).isDeeplyImmutable()) {
+                // Instances of cls can be shared instead of copied.
+                result = DefaultClassCopiers.getIdentityClassCopier();
+            }
+            if (result == null) {
+                result = ordinaryFactory.getClassCopier(cls);
+                if (result != null && result != errorCopier
+                    && LazyCopyClassCopier.isLazyCopyClass( cls )) {
+                    // Lazy copies are only made by getLazyClassCopier.
+                    result = LazyCopyClassCopier.makeEagerCopier( result ) ;
                 }
+            }
+            if (result == null) {
+                throw Exceptions.self.couldNotFindClassCopier( cls ) ;
+            }
 
-                // Result was not cached, so update the cache
-                rwlock.readLock().unlock() ;
-                readLocked = false ;
-                rwlock.writeLock().lock() ;
-                try {
-                    if (factoryCache.getClassCopier(cls) == null) {
-                        factoryCache.put( cls, result ) ;
-                    }
-                } finally {
-                    rwlock.writeLock().unlock() ;
+            // Result was not cached, so update the cache.  If another
+            // thread got there first, use its copier so that all threads
+            // agree on a single ClassCopier for cls.
+            synchronized (factoryCache) {
+                ClassCopier current = factoryCache.getClassCopier( cls ) ;
+                if (current == null) {
+                    factoryCache.put( cls, result ) ;
+                } else {
+                    result = current ;
                 }
             }
+        }
 
-            if (result == errorCopier) {
-                throw Exceptions.self.cannotCopyClass( cls ) ;
+        if (result == errorCopier) {
+            throw Exceptions.self.cannotCopyClass( cls ) ;
+        }
+
+        // TIME exit_getClassCopier
+        return result ;
+    }
+
+    @Override
+    public ClassCopier getLazyClassCopier( Class<?> cls ) 
+        throws ReflectiveCopyException {
+
+        ClassCopier result = lazyCache.getClassCopier( cls ) ;
+        if (result == null) {
+            result = getClassCopier( cls ) ;
+            if (LazyCopyClassCopier.isEagerCopier( result )) {
+                result = LazyCopyClassCopier.makeLazyCopier( cls, result ) ;
             }
 
-            // TIME exit_getClassCopier
-            return result ;
-        } finally {
-            if (readLocked) {
-                rwlock.readLock().unlock() ;
+            synchronized (lazyCache) {
+                ClassCopier current = lazyCache.getClassCopier( cls ) ;
+                if (current == null) {
+                    lazyCache.put( cls, result ) ;
+                } else {
+                    result = current ;
+                }
             }
         }
+
+        return result ;
     }
 }
@@ -41,25 +41,28 @@
 package org.glassfish.pfl.dynamic.copyobject.impl;
 
 import org.glassfish.pfl.basic.reflection.Bridge;
-import org.glassfish.pfl.dynamic.copyobject.spi.Copy;
 import org.glassfish.pfl.dynamic.copyobject.spi.CopyInterceptor;
 import org.glassfish.pfl.dynamic.copyobject.spi.LibraryClassLoader;
 import org.glassfish.pfl.dynamic.copyobject.spi.ReflectiveCopyException;
 
 import java.io.Externalizable;
+import java.io.File;
 import java.io.Serializable;
 import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Constructor;
-import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
 import java.security.ProtectionDomain;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
 import java.util.WeakHashMap;
 
+import static org.glassfish.pfl.dynamic.codegen.spi.Wrapper._makeClass;
+
 // General Object: use proper constructor, iterate over fields,
 // get/set fields using Unsafe or reflection.  This also handles readResolve,
 // but I don't think writeReplace is needed.
@@ -224,17 +227,29 @@ public class ClassCopierOrdinaryImpl extends ClassCopierBase {
 
     // Utilities for ClassFieldCopier instances.
 
-    // Maps classes to ClassFieldCopier instances.
-    private static Map<Class<?>, ClassFieldCopier> classToClassFieldCopier =
-            DefaultClassCopierFactories.USE_FAST_CACHE ?
-                    new FastCache<Class<?>, ClassFieldCopier>(new WeakHashMap<Class<?>, ClassFieldCopier>()) :
-                    new WeakHashMap<Class<?>, ClassFieldCopier>();
-
-    private static boolean useCodegenCopier() {
-        return Boolean.getBoolean(
-                "org.glassfish.dynamic.codegen.UseCodegenReflectiveCopyobject");
+    // Maps classes to ClassFieldCopier instances, with a separate cache for
+    // each FieldCopierType.  Each ClassFieldCopier is built by only one
+    // thread, but different classes are analyzed in parallel.
+    private static final Map<FieldCopierType, InFlightClassCache<ClassFieldCopier>>
+            classToClassFieldCopier = makeClassFieldCopierCaches();
+
+    private static Map<FieldCopierType, InFlightClassCache<ClassFieldCopier>>
+    makeClassFieldCopierCaches() {
+        Map<FieldCopierType, InFlightClassCache<ClassFieldCopier>> result =
+                new EnumMap<FieldCopierType, InFlightClassCache<ClassFieldCopier>>(
+                        FieldCopierType.class);
+        for (FieldCopierType type : FieldCopierType.values()) {
+            result.put(type, new InFlightClassCache<ClassFieldCopier>());
+        }
+        return result;
     }
 
+    private static final CodegenCopierCache codegenCopierCache =
+            DefaultClassCopierFactories.CODEGEN_COPIER_CACHE_DIRECTORY == null
+                    ? null
+                    : new CodegenCopierCache(new File(
+                    DefaultClassCopierFactories.CODEGEN_COPIER_CACHE_DIRECTORY));
+
     private static final Package CODEGEN_SPI =
             org.glassfish.pfl.dynamic.codegen.spi.Type.class.getPackage();
     private static final Package CODEGEN_IMPL =
@@ -253,72 +268,119 @@ public class ClassCopierOrdinaryImpl extends ClassCopierBase {
         isCodegenCopierAllowed.set(flag);
     }
 
-    private static synchronized ClassFieldCopier getClassFieldCopier(
+    private static boolean isCodegenClass(Class<?> cls) {
+        Package pkg = cls.getPackage();
+        return (pkg == CODEGEN_SPI) || (pkg == CODEGEN_IMPL);
+    }
+
+    // Package private for testing.
+    static ClassFieldCopier getClassFieldCopier(
             final Class<?> cls,
-            final PipelineClassCopierFactory classCopierFactory)
+            final PipelineClassCopierFactory classCopierFactory,
+            final FieldCopierType type)
             throws ReflectiveCopyException {
-        ClassFieldCopier copier = classToClassFieldCopier.get(cls);
+        return classToClassFieldCopier.get(type).get(cls,
+                new InFlightClassCache.Builder<ClassFieldCopier>() {
+                    @Override
+                    public ClassFieldCopier build(Class<?> cls)
+                            throws ReflectiveCopyException {
+                        return makeClassFieldCopier(cls, classCopierFactory,
+                                type);
+                    }
+                });
+    }
 
-        if (copier == null) {
-            try {
-                copier = AccessController.doPrivileged(
-                        new PrivilegedExceptionAction<ClassFieldCopier>() {
-                            @Override
-                            public ClassFieldCopier run()
-                                    throws ReflectiveCopyException {
-                                // Note that we can NOT generate a copier for
-                                // classes used in codegen!  If we try, generating
-                                // the copier uses codegen which calls the copier,
-                                // which generates a copier using codegen, which...
-                                // Just don't do this for anything that is in the
-                                // codegen packages.
-                                if (useCodegenCopier()
-                                        && isCodegenCopierAllowed.get()) {
-                                    return makeClassFieldCopierUnsafeCodegenImpl(
-                                            cls, classCopierFactory);
-                                } else {
-                                    return new ClassFieldCopierUnsafeImpl(cls,
-                                            classCopierFactory);
-                                }
+    private static ClassFieldCopier makeClassFieldCopier(
+            final Class<?> cls,
+            final PipelineClassCopierFactory classCopierFactory,
+            final FieldCopierType type)
+            throws ReflectiveCopyException {
+        try {
+            return AccessController.doPrivileged(
+                    new PrivilegedExceptionAction<ClassFieldCopier>() {
+                        @Override
+                        public ClassFieldCopier run()
+                                throws ReflectiveCopyException {
+                            // Note that we can NOT generate a copier for
+                            // classes used in codegen!  If we try, generating
+                            // the copier uses codegen which calls the copier,
+                            // which generates a copier using codegen, which...
+                            // Just don't do this for anything that is in the
+                            // codegen packages.
+                            if (type == FieldCopierType.METHOD_HANDLE) {
+                                return makeClassFieldCopierMethodHandleImpl(
+                                        cls, classCopierFactory);
+                            } else if (type == FieldCopierType.CODEGEN
+                                    && isCodegenCopierAllowed.get()
+                                    && !isCodegenClass(cls)) {
+                                return makeClassFieldCopierUnsafeCodegenImpl(
+                                        cls, classCopierFactory);
+                            } else if (type == FieldCopierType.CODEGEN) {
+                                // Share the UNSAFE copier, rather than
+                                // building a second one.
+                                return getClassFieldCopier(cls,
+                                        classCopierFactory,
+                                        FieldCopierType.UNSAFE);
+                            } else {
+                                return new ClassFieldCopierUnsafeImpl(cls,
+                                        classCopierFactory);
                             }
                         }
-                );
-            } catch (PrivilegedActionException exc) {
-                throw (ReflectiveCopyException) exc.getException();
-            }
+                    }
+            );
+        } catch (PrivilegedActionException exc) {
+            throw (ReflectiveCopyException) exc.getException();
+        }
+    }
+
+    // Check that all superclasses of cls may be copied reflectively, for
+    // copiers that copy the fields of the superclasses themselves.
+    private static void checkSuperclasses(PipelineClassCopierFactory ccf,
+                                          Class<?> cls) throws ReflectiveCopyException {
+        for (Class<?> current = cls;
+             current.getSuperclass() != java.lang.Object.class
+                     && current.getSuperclass() != null;
+             current = current.getSuperclass()) {
+            checkSuperclass(ccf, current);
+        }
+    }
+
+    // Check that the superclass of cls may be copied reflectively.  
+    // Throws ReflectiveCopyException if not.
+    private static void checkSuperclass(PipelineClassCopierFactory ccf,
+                                        Class<?> cls) throws ReflectiveCopyException {
+        Class<?> superClass = cls.getSuperclass();
+        ClassCopier cachedCopier = ccf.lookupInCache(superClass);
 
-            classToClassFieldCopier.put(cls, copier);
+        // If there is a cached ClassCopier, and it is not reflective, then cls
+        // should not be copied by reflection.
+        if ((cachedCopier != null)
+                && (!cachedCopier.isReflectiveClassCopier())) {
+            throw Exceptions.self.noClassCopierForSuperclass(superClass);
         }
 
-        return copier;
+        // Return an error immediately, rather than waiting until the
+        // superClass copier is invoked.
+        if (!ccf.reflectivelyCopyable(superClass)) {
+            throw new ReflectiveCopyException(
+                    "Cannot create ClassFieldCopier for superclass " +
+                            superClass.getName() +
+                            ": This class cannot be copied.");
+        }
     }
 
     // Get the superclass ClassFieldCopier, or return null if this is the end of the
     // chain.
-    private static synchronized ClassFieldCopier getSuperCopier(
+    private static ClassFieldCopier getSuperCopier(
             PipelineClassCopierFactory ccf, Class<?> cls) throws ReflectiveCopyException {
         Class<?> superClass = cls.getSuperclass();
         ClassFieldCopier superCopier = null;
         if ((superClass != java.lang.Object.class) && (superClass != null)) {
-            ClassCopier cachedCopier = ccf.lookupInCache(superClass);
-
-            // If there is a cached ClassCopier, and it is not reflective, then cls
-            // should not be copied by reflection.
-            if ((cachedCopier != null)
-                    && (!cachedCopier.isReflectiveClassCopier())) {
-                throw Exceptions.self.noClassCopierForSuperclass(superClass);
-            }
-
-            // Return an error immediately, rather than waiting until the
-            // superClass copier is invoked.
-            if (!ccf.reflectivelyCopyable(superClass)) {
-                throw new ReflectiveCopyException(
-                        "Cannot create ClassFieldCopier for superclass " +
-                                superClass.getName() +
-                                ": This class cannot be copied.");
-            }
+            checkSuperclass(ccf, cls);
 
-            superCopier = getClassFieldCopier(superClass, ccf);
+            // ClassFieldCopierUnsafeImpl requires an UNSAFE superCopier.
+            superCopier = getClassFieldCopier(superClass, ccf,
+                    FieldCopierType.UNSAFE);
         }
 
         return superCopier;
@@ -708,6 +770,34 @@ public class ClassCopierOrdinaryImpl extends ClassCopierBase {
                     }
                 };
 
+        // Used instead of objectUnsafeFieldCopier for fields whose declared
+        // type is a LazyCopy interface, which may hold a lazy copy proxy.
+        private UnsafeFieldCopier objectUnsafeFieldLazyCopier =
+                new UnsafeFieldCopier(BRIDGE_REF) {
+
+                    @Override
+                    public void copy(Map<Object, Object> oldToNew, long offset,
+                                     Object src, Object dest) throws ReflectiveCopyException {
+                        Object obj = bridge.getObject(src, offset);
+
+                        Object result = null;
+
+                        if (obj != null) {
+                            ClassCopier copier = classCopierFactory.getLazyClassCopier(
+                                    obj.getClass());
+
+                            result = copier.copy(oldToNew, obj);
+                        }
+
+                        bridge.putObject(dest, offset, result);
+                    }
+
+                    @Override
+                    public String toString() {
+                        return "objectUnsafeFieldLazyCopier";
+                    }
+                };
+
         private static UnsafeFieldCopier objectUnsafeFieldInitializer =
                 new UnsafeFieldCopier(BRIDGE_REF) {
 
@@ -769,100 +859,52 @@ public class ClassCopierOrdinaryImpl extends ClassCopierBase {
                     }
                 };
 
-        private UnsafeFieldCopier getUnsafeFieldCopier(Field fld) {
-            Class<?> defType = fld.getDeclaringClass();
-            Class<?> fldType = fld.getType();
-            Copy copyAnnotation = fld.getAnnotation(Copy.class);
-
-            if (copyAnnotation == null) {
-                if (fldType.isPrimitive()) {
+        private UnsafeFieldCopier getUnsafeFieldCopier(CopyPlan.FieldPlan fp) {
+            Class<?> fldType = fp.getField().getType();
+            switch (fp.getAction()) {
+                case PRIMITIVE:
                     return getPrimitiveFieldCopier(fldType);
-                } else {
+                case REFERENCE:
+                    return objectUnsafeFieldIdentityCopier;
+                case COPY:
+                    if (LazyCopyClassCopier.isLazyCopyType(fldType)) {
+                        return objectUnsafeFieldLazyCopier;
+                    }
                     return objectUnsafeFieldCopier;
-                }
-            } else {
-                switch (copyAnnotation.value()) {
-                    case RECURSE:
-                        if (fldType.isPrimitive()) {
-                            return getPrimitiveFieldCopier(fldType);
-                        } else {
-                            return objectUnsafeFieldCopier;
-                        }
-                    case IDENTITY:
-                        if (fldType.isPrimitive()) {
-                            return getPrimitiveFieldCopier(fldType);
-                        } else {
-                            return objectUnsafeFieldIdentityCopier;
-                        }
-                    case NULL:
-                        if (fldType.isPrimitive()) {
-                            return getPrimitiveFieldInitializer(fldType);
-                        } else {
-                            return objectUnsafeFieldInitializer;
-                        }
-                    case SOURCE:
-                        if (fldType.isAssignableFrom(defType)) {
-                            return objectUnsafeFieldSourceCopier;
-                        } else {
-                            throw new IllegalArgumentException(
-                                    "Cannot assign field to source object: "
-                                            + "incompatible types\n"
-                                            + "Field type is " + fldType
-                                            + " Class type is " + defType);
-                        }
-                    case RESULT:
-                        if (fldType.isAssignableFrom(defType)) {
-                            return objectUnsafeFieldResultCopier;
-                        } else {
-                            throw new IllegalArgumentException(
-                                    "Cannot assign field to result object: "
-                                            + "incompatible types\n"
-                                            + "Field type is " + fldType
-                                            + " Class type is " + defType);
-                        }
-                    default:
-                        throw new IllegalArgumentException(
-                                "Unhandled case " + copyAnnotation.value()
-                                        + " for field " + fld);
-                }
+                case NULL:
+                    if (fldType.isPrimitive()) {
+                        return getPrimitiveFieldInitializer(fldType);
+                    } else {
+                        return objectUnsafeFieldInitializer;
+                    }
+                case SOURCE:
+                    return objectUnsafeFieldSourceCopier;
+                case RESULT:
+                    return objectUnsafeFieldResultCopier;
+                default:
+                    throw new IllegalArgumentException(
+                            "Unhandled case " + fp.getAction()
+                                    + " for field " + fp.getField());
             }
         }
 
-        private boolean fieldIsCopyable(Field field) {
-            int modifiers = field.getModifiers();
-            boolean result = !Modifier.isStatic(modifiers);
-            return result;
-        }
-
         public ClassFieldCopierUnsafeImpl(Class<?> cls,
                                           PipelineClassCopierFactory ccf) throws ReflectiveCopyException {
             myClass = cls;
             classCopierFactory = ccf;
             superCopier = getSuperCopier(ccf, cls);
 
-            // Count the number of non-static fields.  These are the
-            // ones we must copy.
-            Field[] fields = cls.getDeclaredFields();
-            int numFields = 0;
-            for (int ctr = 0; ctr < fields.length; ctr++) {
-                if (fieldIsCopyable(fields[ctr])) {
-                    numFields++;
-                }
-            }
-
+            // The non-static fields declared in cls are the ones we must
+            // copy: superCopier handles the rest.
+            List<CopyPlan.FieldPlan> fields =
+                    CopyPlan.getCopyPlan(cls).getFieldsDeclaredIn(cls);
+            int numFields = fields.size();
             fieldOffsets = new long[numFields];
             fieldCopiers = new UnsafeFieldCopier[numFields];
-
-            // Initialze offsets and field copiers for non-static
-            // fields.
-            int pos = 0;
-            for (int ctr = 0; ctr < fields.length; ctr++) {
-                Field fld = fields[ctr];
-                if (fieldIsCopyable(fld)) {
-                    fieldOffsets[pos] = BRIDGE_REF.objectFieldOffset(fld);
-                    fieldCopiers[pos] = getUnsafeFieldCopier(fld);
-                    pos++;
-                }
+            for (int pos = 0; pos < numFields; pos++) {
+                CopyPlan.FieldPlan fp = fields.get(pos);
+                fieldOffsets[pos] = BRIDGE_REF.objectFieldOffset(fp.getField());
+                fieldCopiers[pos] = getUnsafeFieldCopier(fp);
             }
         }
 
@@ -899,58 +941,186 @@ public class ClassCopierOrdinaryImpl extends ClassCopierBase {
 //******************************************************************************
 //******************************************************************************
 
-    private static Map<Class<?>, Constructor<?>> classToConstructor =
-            DefaultClassCopierFactories.USE_FAST_CACHE ?
-                    new FastCache<Class<?>, Constructor<?>>(
-                            new WeakHashMap<Class<?>, Constructor<?>>()) :
-                    new WeakHashMap<Class<?>, Constructor<?>>();
+    // Constructors of the generated copier classes.  These are only built
+    // while building the CODEGEN ClassFieldCopier for the same class, so
+    // the cache needs no in-flight builds of its own.
+    private static final Map<Class<?>, Constructor<?>> classToConstructor =
+            DefaultClassCopierFactories.makeFastCache(
+                    Collections.synchronizedMap(
+                            new WeakHashMap<Class<?>, Constructor<?>>()));
+
+    private static FastCache.Statistics getStatistics(Map<?, ?> map) {
+        if (map instanceof FastCache) {
+            return ((FastCache<?, ?>) map).getStatistics();
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Return the hit statistics of the FastCache in front of the
+     * ClassFieldCopier cache, or null if there is no FastCache.
+     */
+    public static FastCache.Statistics getClassFieldCopierCacheStatistics() {
+        return getClassFieldCopierCacheStatistics(
+                DefaultClassCopierFactories.DEFAULT_FIELD_COPIER_TYPE);
+    }
+
+    /**
+     * Return the hit statistics of the FastCache in front of the
+     * ClassFieldCopier cache for type, or null if there is no FastCache.
+     */
+    public static FastCache.Statistics getClassFieldCopierCacheStatistics(
+            FieldCopierType type) {
+        return getStatistics(classToClassFieldCopier.get(type).getCache());
+    }
+
+    /**
+     * Return the hit statistics of the FastCache in front of the
+     * codegen copier constructor cache, or null if there is no FastCache.
+     */
+    public static FastCache.Statistics getConstructorCacheStatistics() {
+        return getStatistics(classToConstructor);
+    }
 
     /**
      * Use bridge with code generated by codegen to copy objects.
      * This method must be invoked
-     * from inside a doPrivileged call.
+     * from inside a doPrivileged call.  If the copier cannot be generated,
+     * an UNSAFE copier is returned instead.
      */
-    private static synchronized ClassFieldCopier
+    private static ClassFieldCopier
     makeClassFieldCopierUnsafeCodegenImpl(
             final Class<?> cls, final PipelineClassCopierFactory classCopierFactory)
             throws ReflectiveCopyException {
+        // The generated copier copies the fields of all superclasses, so
+        // check them all up front, as getSuperCopier does one at a time.
+        checkSuperclasses(classCopierFactory, cls);
+
         Constructor<?> cons = classToConstructor.get(cls);
         if (cons == null) {
-            final String className =
-                    "org.glassfish.dynamic.codegen.impl.generated.copiers." +
-                            cls.getName() + "Copier";
-            final CodegenCopierGenerator generator =
-                    new CodegenCopierGenerator(className, cls);
-            final ProtectionDomain pd = cls.getProtectionDomain();
-            final Class<?> copierClass = generator.create(pd,
-                    LibraryClassLoader.getClassLoader());
-
             try {
-                cons = copierClass.getDeclaredConstructor(
-                        PipelineClassCopierFactory.class, ClassFieldCopier.class);
+                cons = makeCodegenCopierClass(cls).getDeclaredConstructor(
+                        PipelineClassCopierFactory.class);
             } catch (Exception exc) {
-                // XXX use Exceptions
-                throw new ReflectiveCopyException(
-                        "Could not access unsafe codegen copier constructor", exc);
+                return codegenCopierFailed(cls, classCopierFactory, exc);
+            } catch (LinkageError err) {
+                return codegenCopierFailed(cls, classCopierFactory, err);
             }
 
             classToConstructor.put(cls, cons);
         }
 
-        ClassFieldCopier copier = null;
-
         try {
-            ClassFieldCopier superCopier = getSuperCopier(classCopierFactory,
-                    cls);
-            Object[] args = new Object[]{classCopierFactory, superCopier};
-            copier = (ClassFieldCopier) cons.newInstance(args);
+            return (ClassFieldCopier) cons.newInstance(classCopierFactory);
         } catch (Exception exc) {
             // XXX use Exceptions
             throw new ReflectiveCopyException(
                     "Could not create unsafe codegen copier", exc);
         }
+    }
 
-        return copier;
+    /**
+     * Use the given constructor of a copier class generated at build time
+     * (see CodegenCopierIndex) for cls, instead of generating one.
+     */
+    static void registerCodegenCopier(Class<?> cls,
+            Constructor<?> cons) {
+        classToConstructor.put(cls, cons);
+    }
+
+    /**
+     * Use MethodHandles to copy objects.  This method must be invoked
+     * from inside a doPrivileged call.  If the fields of cls are not
+     * accessible, an UNSAFE copier is returned instead.
+     */
+    private static ClassFieldCopier makeClassFieldCopierMethodHandleImpl(
+            Class<?> cls, PipelineClassCopierFactory classCopierFactory)
+            throws ReflectiveCopyException {
+        checkSuperclasses(classCopierFactory, cls);
+
+        try {
+            return new ClassFieldCopierMethodHandleImpl(cls, classCopierFactory);
+        } catch (IllegalAccessException exc) {
+            Exceptions.self.couldNotAccessFields(cls, exc);
+        } catch (RuntimeException exc) {
+            // setAccessible throws SecurityException, or (on JDK 9 and later)
+            // InaccessibleObjectException.  Any other problem, such as a bad
+            // @Copy annotation, is reported again by the UNSAFE copier.
+            Exceptions.self.couldNotAccessFields(cls, exc);
+        }
+
+        return getClassFieldCopier(cls, classCopierFactory,
+                FieldCopierType.UNSAFE);
+    }
+
+    private static ClassFieldCopier codegenCopierFailed(Class<?> cls,
+                                                        PipelineClassCopierFactory classCopierFactory, Throwable thr)
+            throws ReflectiveCopyException {
+        Exceptions.self.couldNotGenerateCopier(cls, thr);
+        return getClassFieldCopier(cls, classCopierFactory,
+                FieldCopierType.UNSAFE);
+    }
+
+    // Obtain the generated copier class for cls: from the ClassLoader if
+    // it is already defined, else from the on-disk cache, else by
+    // generating it.
+    private static Class<?> makeCodegenCopierClass(Class<?> cls) {
+        final CodegenCopierGenerator generator = new CodegenCopierGenerator(cls);
+        final String className = generator.getClassName();
+        final ClassLoader cl = LibraryClassLoader.getClassLoader();
+        final ProtectionDomain pd = cls.getProtectionDomain();
+
+        // The class name is determined by the generated code, so a class
+        // with the same name (perhaps generated for a class of the same
+        // name in another ClassLoader) can simply be reused.
+        try {
+            return Class.forName(className, false, cl);
+        } catch (ClassNotFoundException exc) {
+            // Not yet defined
+        }
+
+        if (codegenCopierCache != null) {
+            byte[] data = codegenCopierCache.get(className);
+            if (data != null) {
+                try {
+                    return _makeClass(data, className, cl, pd);
+                } catch (RuntimeException exc) {
+                    Exceptions.self.couldNotLoadCachedCopier(className, cls, exc);
+                } catch (LinkageError err) {
+                    Exceptions.self.couldNotLoadCachedCopier(className, cls, err);
+                }
+            }
+        }
+
+        // Generating the copier resets the codegen copier flag, as codegen
+        // itself copies objects.
+        final boolean allowed = isCodegenCopierAllowed.get();
+        byte[] data;
+        try {
+            data = generator.generate(cl);
+        } finally {
+            isCodegenCopierAllowed.set(allowed);
+        }
+
+        Class<?> result;
+        try {
+            result = _makeClass(data, className, cl, pd);
+        } catch (LinkageError err) {
+            // A class of the same name in another ClassLoader may have had
+            // its copier defined by another thread since the check above.
+            try {
+                return Class.forName(className, false, cl);
+            } catch (ClassNotFoundException exc) {
+                throw err;
+            }
+        }
+
+        if (codegenCopierCache != null) {
+            codegenCopierCache.put(className, data);
+        }
+
+        return result;
     }
 
 //******************************************************************************
@@ -975,7 +1145,8 @@ public class ClassCopierOrdinaryImpl extends ClassCopierBase {
                                    Class<?> cls) throws ReflectiveCopyException {
         super(cls.getName(), true);
 
-        classFieldCopier = getClassFieldCopier(cls, ccf);
+        classFieldCopier = getClassFieldCopier(cls, ccf,
+                ccf.getFieldCopierType());
         constructor = ConstructorFactory.makeConstructor(cls);
         readResolveMethod = BRIDGE_REF.readResolveForSerialization(cls);
 
@@ -993,6 +1164,13 @@ public class ClassCopierOrdinaryImpl extends ClassCopierBase {
         }
     }
 
+    // readResolve may replace the copy, and postCopy must see the complete
+    // copy, so only the field copy of other objects may be deferred.
+    @Override
+    protected boolean isDeferrable(Object source) {
+        return readResolveMethod == null && !(source instanceof CopyInterceptor);
+    }
+
     // Copy all of the non-static fields from source to dest, starting with 
     // java.lang.Object.
     @Override
@@ -1002,11 +1180,15 @@ public class ClassCopierOrdinaryImpl extends ClassCopierBase {
             // Note that result will also be an instance of CopyInterceptor in this case.
             ((CopyInterceptor) source).preCopy();
             classFieldCopier.copy(oldToNew, source, result);
+            completeDeferredCopies(oldToNew);
             ((CopyInterceptor) result).postCopy();
 
             return resolve(result);
         } else {
             classFieldCopier.copy(oldToNew, source, result);
+            if (readResolveMethod != null) {
+                completeDeferredCopies(oldToNew);
+            }
 
             return resolve(result);
         }
@@ -0,0 +1,264 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.pfl.dynamic.copyobject.impl;
+
+import org.glassfish.pfl.dynamic.copyobject.spi.ReflectiveCopyException;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static java.lang.invoke.MethodType.methodType;
+
+/**
+ * A ClassFieldCopier that accesses fields through MethodHandles instead of
+ * Unsafe.  All of the fields of the class and its superclasses are combined
+ * into a single MethodHandle of type (Map, Object, Object)void when the 
+ * copier is created.  The handles for the individual fields are combined
+ * as a balanced tree, which keeps the depth of the handle tree (and so
+ * the inlining depth needed by the JIT) logarithmic in the number of 
+ * fields.
+ * <p>
+ * Field access requires Field.setAccessible(true), so this copier cannot 
+ * be created for classes in modules that are not open to this library.
+ * ClassCopierOrdinaryImpl falls back to the UNSAFE copier in that case.
+ */
+class ClassFieldCopierMethodHandleImpl 
+    implements ClassCopierOrdinaryImpl.ClassFieldCopier {
+
+    private static final MethodType COPY_TYPE = methodType( void.class, 
+        Map.class, Object.class, Object.class ) ;
+
+    // (Map, Object src)T: the type of the handle that computes the new
+    // value of a field of type T.
+    private static MethodType valueType( Class<?> type ) {
+        return methodType( type, Map.class, Object.class ) ;
+    }
+
+    private static final MethodHandle COPY_OBJECT ;
+    private static final MethodHandle COPY_LAZY_OBJECT ;
+    private static final MethodHandle NO_FIELDS ;
+
+    static {
+        MethodHandles.Lookup lookup = MethodHandles.lookup() ;
+        try {
+            COPY_OBJECT = lookup.findStatic( 
+                ClassFieldCopierMethodHandleImpl.class, "copyObject",
+                methodType( Object.class, PipelineClassCopierFactory.class,
+                    Map.class, Object.class ) ) ;
+            COPY_LAZY_OBJECT = lookup.findStatic( 
+                ClassFieldCopierMethodHandleImpl.class, "copyLazyObject",
+                methodType( Object.class, PipelineClassCopierFactory.class,
+                    Map.class, Object.class ) ) ;
+            NO_FIELDS = lookup.findStatic( 
+                ClassFieldCopierMethodHandleImpl.class, "noFields", 
+                COPY_TYPE ) ;
+        } catch (ReflectiveOperationException exc) {
+            throw new ExceptionInInitializerError( exc ) ;
+        }
+    }
+
+    private static Object copyObject( PipelineClassCopierFactory ccf,
+        Map<Object,Object> oldToNew, Object obj ) 
+        throws ReflectiveCopyException {
+
+        if (obj == null) {
+            return null ;
+        }
+
+        // This lookup must be based on the actual type, not the
+        // declared type to allow for polymorphism.
+        ClassCopier copier = ccf.getClassCopier( obj.getClass() ) ;
+        return copier.copy( oldToNew, obj ) ;
+    }
+
+    // Used instead of copyObject for fields whose declared type is a 
+    // LazyCopy interface, which may hold a lazy copy proxy.
+    private static Object copyLazyObject( PipelineClassCopierFactory ccf,
+        Map<Object,Object> oldToNew, Object obj ) 
+        throws ReflectiveCopyException {
+
+        if (obj == null) {
+            return null ;
+        }
+
+        ClassCopier copier = ccf.getLazyClassCopier( obj.getClass() ) ;
+        return copier.copy( oldToNew, obj ) ;
+    }
+
+    private static void noFields( Map<Object,Object> oldToNew, Object src,
+        Object dest ) {
+    }
+
+    private final Class<?> myClass ;
+    private final int numFields ;
+    private final MethodHandle copier ;
+
+    /** Create a copier for cls.  The caller must already have checked
+     * that all superclasses of cls may be copied reflectively.
+     * @throws IllegalAccessException if the fields of cls cannot
+     * be accessed.
+     */
+    ClassFieldCopierMethodHandleImpl( Class<?> cls, 
+        PipelineClassCopierFactory ccf ) throws IllegalAccessException {
+
+        myClass = cls ;
+
+        MethodHandle copyObject = COPY_OBJECT.bindTo( ccf ) ;
+        MethodHandle copyLazyObject = COPY_LAZY_OBJECT.bindTo( ccf ) ;
+        List<MethodHandle> fieldCopiers = new ArrayList<MethodHandle>() ;
+        for (CopyPlan.FieldPlan fp : CopyPlan.getCopyPlan( cls ).getFields()) {
+            fieldCopiers.add( makeFieldCopier( fp, 
+                LazyCopyClassCopier.isLazyCopyType( fp.getField().getType() )
+                    ? copyLazyObject : copyObject ) ) ;
+        }
+
+        numFields = fieldCopiers.size() ;
+        if (numFields == 0) {
+            copier = NO_FIELDS ;
+        } else {
+            copier = combine( fieldCopiers, 0, numFields ) ;
+        }
+    }
+
+    // Combine the field copiers from start (inclusive) to end (exclusive)
+    // into a single handle that calls them in order.
+    private static MethodHandle combine( List<MethodHandle> handles, 
+        int start, int end ) {
+
+        if (end - start == 1) {
+            return handles.get( start ) ;
+        }
+
+        int mid = (start + end) >>> 1 ;
+        // foldArguments with a void combiner calls the combiner, then
+        // the target with the same arguments.
+        return MethodHandles.foldArguments( combine( handles, mid, end ), 
+            combine( handles, start, mid ) ) ;
+    }
+
+    // Return a handle of type (Map, Object, Object)void that copies the
+    // field of fp.  This is set( dest, value( oldToNew, src ) ), where value 
+    // is chosen according to the action in the field's CopyPlan.
+    private static MethodHandle makeFieldCopier( CopyPlan.FieldPlan fp, 
+        MethodHandle copyObject ) throws IllegalAccessException {
+
+        Field fld = fp.getField() ;
+        fld.setAccessible( true ) ;
+
+        Class<?> fldType = fld.getType() ;
+        Class<?> type = fldType.isPrimitive() ? fldType : Object.class ;
+        MethodHandles.Lookup lookup = MethodHandles.lookup() ;
+        MethodHandle getter = lookup.unreflectGetter( fld ).asType( 
+            methodType( type, Object.class ) ) ;
+        MethodHandle setter = lookup.unreflectSetter( fld ).asType(
+            methodType( void.class, Object.class, type ) ) ;
+
+        MethodHandle copyValue = MethodHandles.dropArguments( getter, 0,
+            Map.class ) ;
+        MethodHandle value ;
+
+        switch (fp.getAction()) {
+            case PRIMITIVE :
+            case REFERENCE :
+                value = copyValue ;
+                break ;
+            case COPY :
+                value = MethodHandles.filterArguments( copyObject, 1,
+                    getter ) ;
+                break ;
+            case NULL :
+                Object zero = fldType.isPrimitive() 
+                    ? Array.get( Array.newInstance( fldType, 1 ), 0 ) 
+                    : null ;
+                value = MethodHandles.dropArguments( 
+                    MethodHandles.constant( type, zero ), 0, 
+                    Map.class, Object.class ) ;
+                break ;
+            case SOURCE :
+            case RESULT :
+                value = MethodHandles.dropArguments( 
+                    MethodHandles.identity( Object.class ), 0, Map.class ) ;
+                break ;
+            default :
+                throw new IllegalArgumentException(
+                    "Unhandled case " + fp.getAction()
+                        + " for field " + fld ) ;
+        }
+
+        // (T, Map, Object src, Object dest)void -> set( dest, value )
+        MethodHandle target = MethodHandles.permuteArguments( setter,
+            methodType( void.class, type, Map.class, Object.class, 
+                Object.class ), 3, 0 ) ;
+
+        return MethodHandles.foldArguments( target, 
+            value.asType( valueType( type ) ) ) ;
+    }
+
+    @Override
+    public void copy( Map<Object, Object> oldToNew, Object src, 
+        Object dest ) throws ReflectiveCopyException {
+
+        try {
+            copier.invokeExact( oldToNew, src, dest ) ;
+        } catch (RuntimeException exc) {
+            throw exc ;
+        } catch (Error err) {
+            throw err ;
+        } catch (Throwable thr) {
+            // Cannot happen: none of the handles throw checked exceptions.
+            throw new ReflectiveCopyException( "Could not copy fields of " 
+                + myClass.getName(), thr ) ;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ClassFieldCopierMethodHandleImpl[" + myClass.getName() 
+            + ":" + numFields + " fields]" ;
+    }
+}
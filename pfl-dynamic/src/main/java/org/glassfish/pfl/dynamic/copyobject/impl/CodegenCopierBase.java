@@ -88,6 +88,34 @@ public abstract class CodegenCopierBase implements ClassCopierOrdinaryImpl.Class
         bridge.putObject(dest, offset, result);
     }
 
+    // Used instead of copyObject for fields whose declared type is a 
+    // LazyCopy interface, which may hold a lazy copy proxy.
+    final protected void copyLazyObject(Map<Object, Object> oldToNew,
+                                        long offset, Object src, Object dest) throws ReflectiveCopyException {
+        Object obj = bridge.getObject(src, offset);
+
+        Object result = null;
+
+        if (obj != null) {
+            ClassCopier copier = factory.getLazyClassCopier(obj.getClass());
+            result = copier.copy(oldToNew, obj);
+        }
+
+        bridge.putObject(dest, offset, result);
+    }
+
+    // Used for fields whose values are never copied, such as Strings,
+    // enums, and @Copy(IDENTITY) fields.  This skips both the ClassCopier
+    // lookup and the oldToNew update that copyObject would make.
+    final protected void copyIdentity(long offset, Object src, Object dest) {
+        bridge.putObject(dest, offset, bridge.getObject(src, offset));
+    }
+
+    // Used for @Copy(SOURCE) and @Copy(RESULT) fields.
+    final protected void copySource(long offset, Object src, Object dest) {
+        bridge.putObject(dest, offset, src);
+    }
+
     final protected void copyByte(long offset, Object src, Object dest) {
         bridge.putByte(dest, offset, bridge.getByte(src, offset));
     }
@@ -119,5 +147,43 @@ public abstract class CodegenCopierBase implements ClassCopierOrdinaryImpl.Class
     final protected void copyBoolean(long offset, Object src, Object dest) {
         bridge.putBoolean(dest, offset, bridge.getBoolean(src, offset));
     }
+
+    // The initialize methods are used for @Copy(NULL) fields.
+
+    final protected void initializeObject(long offset, Object dest) {
+        bridge.putObject(dest, offset, null);
+    }
+
+    final protected void initializeByte(long offset, Object dest) {
+        bridge.putByte(dest, offset, (byte) 0);
+    }
+
+    final protected void initializeChar(long offset, Object dest) {
+        bridge.putChar(dest, offset, (char) 0);
+    }
+
+    final protected void initializeShort(long offset, Object dest) {
+        bridge.putShort(dest, offset, (short) 0);
+    }
+
+    final protected void initializeInt(long offset, Object dest) {
+        bridge.putInt(dest, offset, 0);
+    }
+
+    final protected void initializeLong(long offset, Object dest) {
+        bridge.putLong(dest, offset, 0L);
+    }
+
+    final protected void initializeFloat(long offset, Object dest) {
+        bridge.putFloat(dest, offset, 0.0F);
+    }
+
+    final protected void initializeDouble(long offset, Object dest) {
+        bridge.putDouble(dest, offset, 0.0);
+    }
+
+    final protected void initializeBoolean(long offset, Object dest) {
+        bridge.putBoolean(dest, offset, false);
+    }
 };
 
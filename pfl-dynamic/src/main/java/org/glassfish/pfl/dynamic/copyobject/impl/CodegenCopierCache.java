@@ -0,0 +1,128 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.pfl.dynamic.copyobject.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/** A directory of generated copier classes, so that a copier only needs
+ * to be generated once, rather than once per VM.  Each class is stored
+ * in a file named after the generated class.  The generated class name
+ * includes a hash of everything that the generated code depends on
+ * (see CodegenCopierGenerator), so a file never needs to be invalidated:
+ * a change to the copied class simply results in a different file.
+ * <p>
+ * Several VMs may share a directory.  A file is written under a
+ * temporary name and then renamed, so a reader never sees a partially
+ * written class.
+ */
+public class CodegenCopierCache {
+    private static final String SUFFIX = ".class" ;
+
+    private final File directory ;
+
+    public CodegenCopierCache( File directory ) {
+        this.directory = directory ;
+    }
+
+    public File getDirectory() {
+        return directory ;
+    }
+
+    private File getFile( String className ) {
+        return new File( directory, className + SUFFIX ) ;
+    }
+
+    /** Return the byte code previously saved for className, or null
+     * if there is none.
+     */
+    public byte[] get( String className ) {
+        File file = getFile( className ) ;
+        if (!file.isFile()) {
+            return null ;
+        }
+
+        try {
+            return Files.readAllBytes( file.toPath() ) ;
+        } catch (IOException exc) {
+            Exceptions.self.couldNotReadCachedCopier( file, exc ) ;
+            return null ;
+        }
+    }
+
+    /** Save the byte code for className.  Failures are logged and 
+     * otherwise ignored, as the cache is only an optimization.
+     */
+    public void put( String className, byte[] data ) {
+        File file = getFile( className ) ;
+        Path temp = null ;
+        try {
+            Files.createDirectories( directory.toPath() ) ;
+            temp = Files.createTempFile( directory.toPath(), className, 
+                ".tmp" ) ;
+            Files.write( temp, data ) ;
+            try {
+                Files.move( temp, file.toPath(), 
+                    StandardCopyOption.ATOMIC_MOVE ) ;
+            } catch (IOException exc) {
+                // Some file systems cannot rename atomically.  Another VM
+                // may already have stored the same class, so just
+                // replace it.
+                Files.move( temp, file.toPath(), 
+                    StandardCopyOption.REPLACE_EXISTING ) ;
+            }
+            temp = null ;
+        } catch (IOException exc) {
+            Exceptions.self.couldNotWriteCachedCopier( file, exc ) ;
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists( temp ) ;
+                } catch (IOException exc) {
+                    // ignore: at worst a temporary file is left behind.
+                }
+            }
+        }
+    }
+}
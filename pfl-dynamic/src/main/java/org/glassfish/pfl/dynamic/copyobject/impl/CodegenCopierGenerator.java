@@ -37,7 +37,6 @@
  * only if the new code is made subject to such option by the copyright
  * holder.
  */
-
 package org.glassfish.pfl.dynamic.copyobject.impl ;
 
 import org.glassfish.pfl.basic.contain.Pair;
@@ -46,25 +45,46 @@ import org.glassfish.pfl.dynamic.codegen.spi.Expression;
 import org.glassfish.pfl.dynamic.codegen.spi.Type;
 import org.glassfish.pfl.dynamic.copyobject.spi.ReflectiveCopyException;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
+import java.nio.charset.Charset;
 import java.security.AccessController;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.PrivilegedAction;
 import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
-import static java.lang.reflect.Modifier.PRIVATE;
 import static java.lang.reflect.Modifier.PUBLIC;
 import static org.glassfish.pfl.dynamic.codegen.spi.Wrapper.*;
 
-/** Experimental class that generates a ClassFieldCopier using the codegen library.
+/** Generates a ClassFieldCopier using the codegen library.  The generated
+ * copy method copies every non-static field of the class and all of its
+ * superclasses in a single straight-line method, superclass fields first.
+ * Each field is copied by a call to a final method in CodegenCopierBase
+ * that is chosen for the field when the copier is generated, so there is
+ * no per-field virtual dispatch at copy time.  The choice of method
+ * also handles @Copy annotations, and fields whose declared type is 
+ * known to be immutable (such as String) are copied by reference without
+ * consulting the ClassCopierFactory or oldToNew.
+ * <p>
+ * The generated code depends only on the field offsets and copy methods,
+ * so the name of the generated class includes a hash of these, which
+ * makes it safe to save the generated byte code and reuse it in another 
+ * VM (see CodegenCopierCache).
  */
 public class CodegenCopierGenerator {
     private static final String DEBUG = "false" ;
 
-    private Class<?>	       classToCopy ;
-    private String	       className ;
+    private static final String PACKAGE_NAME = 
+        "org.glassfish.dynamic.codegen.impl.generated.copiers" ;
+
+    // Change this whenever the generated code changes, so that classes
+    // saved by an older version are never reused.
+    private static final int VERSION = 2 ;
+
+    private static final Charset UTF8 = Charset.forName( "UTF-8" ) ;
 
     private static final Bridge bridge = AccessController.doPrivileged(
 	new PrivilegedAction<Bridge>() {
@@ -75,96 +95,200 @@ public class CodegenCopierGenerator {
 	} 
     ) ;
 
-    public CodegenCopierGenerator( String className, Class<?> classToCopy ) {
-	this.className = className ;
+    // How a single field is copied: a call to method in CodegenCopierBase
+    // with the field's offset.
+    private static class FieldCopy {
+        private final String method ;
+        private final long offset ;
+
+        FieldCopy( String method, long offset ) {
+            this.method = method ;
+            this.offset = offset ;
+        }
+
+        @Override
+        public String toString() {
+            return method + "@" + offset ;
+        }
+    }
+
+    private final Class<?>         classToCopy ;
+    private final List<FieldCopy>  fieldCopies ;
+    private final String           className ;
+
+    /** Prepare to generate a copier for classToCopy.  This analyzes
+     * the fields of classToCopy, but does not generate anything yet.
+     * @throws IllegalArgumentException if a @Copy annotation cannot 
+     * be applied to its field.
+     */
+    public CodegenCopierGenerator( Class<?> classToCopy ) {
 	this.classToCopy = classToCopy ;
+        this.fieldCopies = getFieldCopies( classToCopy ) ;
+	this.className = PACKAGE_NAME + "." + classToCopy.getName() 
+            + "Copier_" + getHash() ;
+    }
+
+    /** Return the name of the class that is generated.
+     */
+    public String getClassName() {
+        return className ;
     }
 
+    /** Generate the copier, and define it in cl.  The generated class
+     * has a public constructor that takes a PipelineClassCopierFactory.
+     */
     public Class<?> create( ProtectionDomain pd, ClassLoader cl ) {
+        byte[] data = generate( cl ) ;
+        return _makeClass( data, className, cl, pd ) ;
+    }
+
+    /** Generate the byte code for the copier.  cl is used to resolve
+     * references to other classes.  This uses (and clears) the Wrapper 
+     * state of the current thread, so it must not be called while
+     * Wrapper is in use.
+     */
+    public byte[] generate( ClassLoader cl ) {
+        if (_classGenerator() != null) {
+            throw new IllegalStateException( 
+                "Wrapper is in use by the current thread" ) ;
+        }
+
 	_clear() ;
+        try {
+            Pair<String,String> pc = splitClassName( className ) ;
+            _package( pc.first() ) ;
+
+            Type PipelineClassCopierFactory = Type.type(
+                PipelineClassCopierFactory.class ) ;
+            Type ReflectiveCopyException = Type.type( 
+                ReflectiveCopyException.class ) ;
+            Type CodegenCopierBase = Type.type( 
+                CodegenCopierBase.class ) ;
+            Type Map = Type.type(
+                Map.class ) ;
+
+            _class( PUBLIC, pc.second(), CodegenCopierBase ) ;
+                _constructor( PUBLIC ) ;
+                    Expression factory = _arg( PipelineClassCopierFactory, 
+                        "factory" ) ;
+                _body() ;
+                    _expr( _super( factory ) ) ;
+                _end() ;
 
-	Pair<String,String> pc = splitClassName( className ) ;
-	_package( pc.first() ) ;
-
-	Type PipelineClassCopierFactory = Type.type(
-	    PipelineClassCopierFactory.class ) ;
-	Type ReflectiveCopyException = Type.type( 
-	    ReflectiveCopyException.class ) ;
-	Type CodegenCopierBase = Type.type( 
-	    CodegenCopierBase.class ) ;
-	Type ClassFieldCopier = Type.type( 
-	    ClassCopierOrdinaryImpl.ClassFieldCopier.class ) ;
-	Type Map = Type.type(
-	    Map.class ) ;
-
-	_class( PUBLIC, pc.second(), CodegenCopierBase ) ;
-	    // XXX Can we get rid of this, and instead just emit copy calls for
-	    // superclass fields?
-	    Expression superCopier = _data( PRIVATE, ClassFieldCopier, "superCopier" ) ;
-
-	    _constructor( PUBLIC ) ;
-		Expression factory = _arg( PipelineClassCopierFactory, "factory" ) ;
-		Expression sc = _arg( ClassFieldCopier, "superCopier" ) ;
-	    _body() ;
-		_super( factory ) ;
-		_assign( superCopier, sc ) ;
-	    _end() ;
-
-	    _method( PUBLIC, _void(), "copy", ReflectiveCopyException ) ;
-		Expression oldToNew = _arg( Map, "oldToNew" ) ;
-		Expression src      = _arg( _Object(), "src" ) ;
-		Expression dest     = _arg( _Object(), "dest" ) ;
-		Expression debug    = _arg( _boolean(), "debug" ) ;
-	    _body() ;
-		_if(_ne(superCopier, _null())) ;
-		    _expr(_call( superCopier, "copy", oldToNew, src, dest, debug )) ; 
-		_end() ;
-
-		// Generate code to copy fields of this object
-		for (Field fld : classToCopy.getDeclaredFields()) {
-		    if (!Modifier.isStatic( fld.getModifiers())) {
-			long offset = bridge.objectFieldOffset( fld ) ;
-			String mname = getCopyMethodName( fld.getType() ) ;
-			if (mname.equals( "copyObject" ))  {
-			    _expr(_call( _this(), mname, oldToNew, _const(offset), 
-				src, dest )) ;
-			} else {
-			    _expr(_call( _this(), mname, _const(offset), 
-				src, dest )) ;
-			}
-		    }
-		}
-	    _end() ;
-	_end() ;
-
-	Properties debugProps = new Properties() ;
-	debugProps.setProperty( DUMP_AFTER_SETUP_VISITOR, DEBUG ) ;
-	debugProps.setProperty( TRACE_BYTE_CODE_GENERATION, DEBUG ) ;
-	debugProps.setProperty( USE_ASM_VERIFIER, DEBUG ) ;
-	
-	Class<?> cls = _generate( cl, pd, debugProps ) ;
-	return cls ;
+                _method( PUBLIC, _void(), "copy", ReflectiveCopyException ) ;
+                    Expression oldToNew = _arg( Map, "oldToNew" ) ;
+                    Expression src      = _arg( _Object(), "src" ) ;
+                    Expression dest     = _arg( _Object(), "dest" ) ;
+                _body() ;
+                    for (FieldCopy fc : fieldCopies) {
+                        Expression offset = _const( fc.offset ) ;
+                        if (fc.method.equals( "copyObject" )
+                            || fc.method.equals( "copyLazyObject" )) {
+                            _expr(_call( _this(), fc.method, oldToNew, offset, 
+                                src, dest )) ;
+                        } else if (fc.method.startsWith( "initialize" )) {
+                            _expr(_call( _this(), fc.method, offset, dest )) ;
+                        } else {
+                            _expr(_call( _this(), fc.method, offset, 
+                                src, dest )) ;
+                        }
+                    }
+                _end() ;
+            _end() ;
+
+            Properties debugProps = new Properties() ;
+            debugProps.setProperty( DUMP_AFTER_SETUP_VISITOR, DEBUG ) ;
+            debugProps.setProperty( TRACE_BYTE_CODE_GENERATION, DEBUG ) ;
+            debugProps.setProperty( USE_ASM_VERIFIER, DEBUG ) ;
+
+            return _byteCode( cl, debugProps ) ;
+        } finally {
+            _clear() ;
+        }
+    }
+
+    // The hash covers everything the generated code depends on.  Field
+    // offsets are included because they may differ between VMs (for
+    // example with and without compressed oops).
+    private String getHash() {
+        StringBuilder sb = new StringBuilder() ;
+        sb.append( VERSION ).append( ':' ).append( classToCopy.getName() ) ;
+        for (FieldCopy fc : fieldCopies) {
+            sb.append( ';' ).append( fc ) ;
+        }
+
+        byte[] digest ;
+        try {
+            MessageDigest md = MessageDigest.getInstance( "SHA-1" ) ;
+            digest = md.digest( sb.toString().getBytes( UTF8 ) ) ;
+        } catch (NoSuchAlgorithmException exc) {
+            // Every Java platform is required to support SHA-1.
+            throw new IllegalStateException( exc ) ;
+        }
+
+        StringBuilder result = new StringBuilder() ;
+        for (int ctr=0; ctr<8; ctr++) {
+            result.append( String.format( "%02x", digest[ctr] & 0xFF ) ) ;
+        }
+
+        return result.toString() ;
+    }
+
+    private static List<FieldCopy> getFieldCopies( Class<?> cls ) {
+        List<FieldCopy> result = new ArrayList<FieldCopy>() ;
+        for (CopyPlan.FieldPlan fp : CopyPlan.getCopyPlan( cls ).getFields()) {
+            result.add( new FieldCopy( getCopyMethodName( fp ), 
+                bridge.objectFieldOffset( fp.getField() ) ) ) ;
+        }
+
+        return result ;
+    }
+
+    // This must make the same choices as 
+    // ClassCopierOrdinaryImpl.ClassFieldCopierUnsafeImpl.getUnsafeFieldCopier.
+    private static String getCopyMethodName( CopyPlan.FieldPlan fp ) {
+        Class<?> fldType = fp.getField().getType() ;
+        switch (fp.getAction()) {
+            case PRIMITIVE :
+                return "copy" + getTypeName( fldType ) ;
+            case COPY :
+                if (LazyCopyClassCopier.isLazyCopyType( fldType )) {
+                    return "copyLazyObject" ;
+                }
+                return "copy" + getTypeName( fldType ) ;
+            case REFERENCE :
+                return "copyIdentity" ;
+            case NULL :
+                return "initialize" + getTypeName( fldType ) ;
+            case SOURCE :
+            case RESULT :
+                return "copySource" ;
+            default :
+                throw new IllegalArgumentException(
+                    "Unhandled case " + fp.getAction()
+                        + " for field " + fp.getField() ) ;
+        }
     }
 
-    private String getCopyMethodName( Class<?> fieldType ) {
+    private static String getTypeName( Class<?> fieldType ) {
 	if (fieldType.equals( Boolean.TYPE )) {
-            return "copyBoolean";
+            return "Boolean";
         } else if (fieldType.equals( Byte.TYPE )) {
-            return "copyByte";
+            return "Byte";
         } else if (fieldType.equals( Character.TYPE )) {
-            return "copyChar";
+            return "Char";
         } else if (fieldType.equals( Integer.TYPE )) {
-            return "copyInt";
+            return "Int";
         } else if (fieldType.equals( Short.TYPE )) {
-            return "copyShort";
+            return "Short";
         } else if (fieldType.equals( Long.TYPE )) {
-            return "copyLong";
+            return "Long";
         } else if (fieldType.equals( Float.TYPE )) {
-            return "copyFloat";
+            return "Float";
         } else if (fieldType.equals( Double.TYPE )) {
-            return "copyDouble";
+            return "Double";
         } else {
-            return "copyObject";
+            return "Object";
         }
     }
 }
@@ -0,0 +1,256 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package org.glassfish.pfl.dynamic.copyobject.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.security.AccessController;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivilegedAction;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import org.glassfish.pfl.basic.reflection.Bridge;
+import org.glassfish.pfl.dynamic.copyobject.spi.CopyInterceptor;
+import org.glassfish.pfl.dynamic.copyobject.spi.Immutable;
+
+/** The index of copier classes that were generated at build time (by 
+ * the CopierGenerationTool in pfl-tf-tools) instead of at runtime.  The
+ * index is stored in the resource named by RESOURCE_NAME, next to the
+ * generated classes.  Each line maps the name of a copied class to the 
+ * name of its generated copier, and a hash of the field layout of the 
+ * copied class.
+ * <p>
+ * The generated code depends on the field offsets, which may differ 
+ * between VMs, so a precompiled copier is only used if the layout of 
+ * the class in the running VM has the same hash (see getLayoutHash).  
+ * Computing the hash only needs the declared fields and their offsets, 
+ * which is much cheaper than analyzing the class and generating its 
+ * copier.
+ */
+public class CodegenCopierIndex {
+    /** The name of the index resource.
+     */
+    public static final String RESOURCE_NAME = "META-INF/pfl-copiers.properties" ;
+
+    private static final Charset UTF8 = Charset.forName( "UTF-8" ) ;
+
+    // Only getLayoutHash needs the Bridge, and only when there is an index
+    // to check, so the Bridge is not obtained until then.  A failure to
+    // get it then only fails the entries being checked.
+    private static final class BridgeHolder {
+        static final Bridge bridge = AccessController.doPrivileged(
+            new PrivilegedAction<Bridge>() {
+                @Override
+                public Bridge run() {
+                    return Bridge.get() ;
+                }
+            } 
+        ) ;
+    }
+
+    /** One precompiled copier.
+     */
+    public static class Entry {
+        private final String className ;
+        private final String copierClassName ;
+        private final String layoutHash ;
+
+        public Entry( String className, String copierClassName, 
+            String layoutHash ) {
+            this.className = className ;
+            this.copierClassName = copierClassName ;
+            this.layoutHash = layoutHash ;
+        }
+
+        /** The name of the copied class.
+         */
+        public String getClassName() {
+            return className ;
+        }
+
+        /** The name of the generated copier class.
+         */
+        public String getCopierClassName() {
+            return copierClassName ;
+        }
+
+        /** The hash of the field layout of the copied class when the
+         * copier was generated.
+         */
+        public String getLayoutHash() {
+            return layoutHash ;
+        }
+
+        @Override
+        public String toString() {
+            return className + "=" + copierClassName + " " + layoutHash ;
+        }
+    }
+
+    // Sorted, so that the same classes always produce the same resource.
+    private final Map<String,Entry> entries = new TreeMap<String,Entry>() ;
+
+    public void add( Entry entry ) {
+        entries.put( entry.getClassName(), entry ) ;
+    }
+
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList( 
+            new ArrayList<Entry>( entries.values() ) ) ;
+    }
+
+    /** Return true if the pipeline copies instances of cls with a
+     * generated copier, so that a copier for cls may be generated at 
+     * build time.
+     */
+    public static boolean canPrecompile( Class<?> cls ) {
+        int mods = cls.getModifiers() ;
+        return !cls.isInterface() && !cls.isArray() && !cls.isPrimitive()
+            && !cls.isEnum() && !Modifier.isAbstract( mods )
+            && !cls.isAnnotationPresent( Immutable.class )
+            && !LazyCopyProxyBase.class.isAssignableFrom( cls )
+            && !CopyInterceptor.class.isAssignableFrom( cls )
+            && !CopyPlan.getCopyPlan( cls ).isDeeplyImmutable() ;
+    }
+
+    /** Return a hash of the names, types, and offsets of all non-static 
+     * fields of cls and its superclasses.
+     */
+    public static String getLayoutHash( Class<?> cls ) {
+        Bridge bridge = BridgeHolder.bridge ;
+        StringBuilder sb = new StringBuilder() ;
+        List<Class<?>> classes = new ArrayList<Class<?>>() ;
+        for (Class<?> current = cls; current != null && current != Object.class;
+            current = current.getSuperclass()) {
+            classes.add( 0, current ) ;
+        }
+
+        for (Class<?> current : classes) {
+            sb.append( current.getName() ).append( '{' ) ;
+            for (Field fld : current.getDeclaredFields()) {
+                if (!Modifier.isStatic( fld.getModifiers() )) {
+                    sb.append( fld.getName() ).append( ':' )
+                        .append( fld.getType().getName() ).append( '@' )
+                        .append( bridge.objectFieldOffset( fld ) )
+                        .append( ';' ) ;
+                }
+            }
+            sb.append( '}' ) ;
+        }
+
+        byte[] digest ;
+        try {
+            MessageDigest md = MessageDigest.getInstance( "SHA-1" ) ;
+            digest = md.digest( sb.toString().getBytes( UTF8 ) ) ;
+        } catch (NoSuchAlgorithmException exc) {
+            // Every Java platform is required to support SHA-1.
+            throw new IllegalStateException( exc ) ;
+        }
+
+        StringBuilder result = new StringBuilder() ;
+        for (int ctr=0; ctr<8; ctr++) {
+            result.append( String.format( "%02x", digest[ctr] & 0xFF ) ) ;
+        }
+
+        return result.toString() ;
+    }
+
+    /** Write this index in the format of the index resource.
+     */
+    public void write( OutputStream os ) throws IOException {
+        Writer writer = new OutputStreamWriter( os, UTF8 ) ;
+        writer.write( "# Precompiled copiers: class=copier layout-hash\n" ) ;
+        for (Entry entry : entries.values()) {
+            writer.write( entry.toString() ) ;
+            writer.write( '\n' ) ;
+        }
+        writer.flush() ;
+    }
+
+    /** Add the entries of an index resource to this index.
+     */
+    public void read( InputStream is ) throws IOException {
+        Properties props = new Properties() ;
+        props.load( is ) ;
+        for (String name : props.stringPropertyNames()) {
+            String[] value = props.getProperty( name ).trim().split( "\\s+" ) ;
+            if (value.length != 2) {
+                throw new IOException( "Bad index entry for " + name ) ;
+            }
+
+            add( new Entry( name, value[0], value[1] ) ) ;
+        }
+    }
+
+    /** Return the index of all index resources visible to cl.  The
+     * index is empty if there are none.
+     */
+    public static CodegenCopierIndex getIndex( ClassLoader cl ) 
+        throws IOException {
+        CodegenCopierIndex result = new CodegenCopierIndex() ;
+        Enumeration<URL> urls = cl.getResources( RESOURCE_NAME ) ;
+        while (urls.hasMoreElements()) {
+            InputStream is = urls.nextElement().openStream() ;
+            try {
+                result.read( is ) ;
+            } finally {
+                is.close() ;
+            }
+        }
+
+        return result ;
+    }
+}
@@ -0,0 +1,378 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.pfl.dynamic.copyobject.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.glassfish.pfl.dynamic.copyobject.spi.ReflectiveCopyException;
+
+/** ClassCopiers that copy common collection classes through their public
+ * API, instead of copying their internal fields.  This does not depend on
+ * the internal layout of the collection (such as HashMap's table), and 
+ * rebuilds hashed collections using the hash codes of the copied keys.
+ * <p>
+ * Each copier only handles exactly the class it is registered for:
+ * subclasses are copied reflectively as before.  The copiers report 
+ * themselves as reflective, so that subclasses may still be copied 
+ * reflectively.
+ * <p>
+ * Elements and values are copied through the ClassCopierFactory, except
+ * that instances of immutable classes (such as String) are used as is.
+ * The copier for the previous element's class is remembered, as most 
+ * collections are homogeneous.
+ * <p>
+ * Maps are only rebuilt through put if all of their keys are immutable 
+ * (and, for a TreeMap, so is its comparator), so that the keys of the 
+ * copy are the keys of the source.  Any other map is copied through its
+ * internal fields, like any other object, because the copy of a mutable 
+ * key may not be complete when the map is filled: it may be further up 
+ * the stack in a cyclic graph, or be filled by another thread in a 
+ * parallel copy (see ParallelObjectCopierImpl).  That copy never hashes 
+ * or compares the copied keys.
+ * <p>
+ * The rebuilt copies do not preserve capacity or load factor.
+ */
+public abstract class CollectionClassCopiers {
+    private CollectionClassCopiers() {}
+
+    // Copies the elements of a single collection, remembering the last
+    // element class.
+    private static final class ElementCopier {
+        private final ClassCopierFactory ccf ;
+        private final Map<Object,Object> oldToNew ;
+        private Class<?> lastClass ;
+
+        // null if lastClass is immutable.
+        private ClassCopier lastCopier ;
+
+        ElementCopier( ClassCopierFactory ccf, Map<Object,Object> oldToNew ) {
+            this.ccf = ccf ;
+            this.oldToNew = oldToNew ;
+        }
+
+        Object copy( Object obj ) throws ReflectiveCopyException {
+            if (obj == null) {
+                return null ;
+            }
+
+            Class<?> cls = obj.getClass() ;
+            if (cls != lastClass) {
+                lastCopier = CopyPlan.isImmutableFieldType( cls )
+                    ? null : ccf.getClassCopier( cls ) ;
+                lastClass = cls ;
+            }
+
+            if (lastCopier == null) {
+                return obj ;
+            } else {
+                return lastCopier.copy( oldToNew, obj ) ;
+            }
+        }
+    }
+
+    // Capacity of a HashMap that holds size entries without resizing, at
+    // the default load factor.
+    private static int hashCapacity( int size ) {
+        return Math.max( 16, (int)(size / 0.75F) + 1 ) ;
+    }
+
+    // Base class for all of the copiers here.
+    private abstract static class CollectionClassCopierBase 
+        extends ClassCopierBase {
+
+        protected final ClassCopierFactory ccf ;
+
+        CollectionClassCopierBase( String name, ClassCopierFactory ccf ) {
+            super( name, true ) ;
+            this.ccf = ccf ;
+        }
+
+        @Override
+        protected boolean isDeferrable( Object source ) {
+            return true ;
+        }
+    }
+
+    private abstract static class CollectionCopier 
+        extends CollectionClassCopierBase {
+
+        CollectionCopier( String name, ClassCopierFactory ccf ) {
+            super( name, ccf ) ;
+        }
+
+        // Create an empty collection with room for size elements.
+        protected abstract Collection<Object> newCollection( int size ) ;
+
+        @Override
+        protected Object createCopy( Object source ) {
+            return newCollection( ((Collection<?>)source).size() ) ;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected Object doCopy( Map<Object,Object> oldToNew, Object source,
+            Object result ) throws ReflectiveCopyException {
+
+            Collection<Object> src = (Collection<Object>)source ;
+            Collection<Object> dest = (Collection<Object>)result ;
+            if (ParallelObjectCopierImpl.isParallel( oldToNew, src.size() )) {
+                Object[] elements = src.toArray() ;
+                ParallelObjectCopierImpl.copyElements( ccf, oldToNew, 
+                    elements, elements ) ;
+                Collections.addAll( dest, elements ) ;
+                return result ;
+            }
+
+            ElementCopier copier = new ElementCopier( ccf, oldToNew ) ;
+            for (Object element : src) {
+                dest.add( copier.copy( element ) ) ;
+            }
+
+            return result ;
+        }
+    }
+
+    private abstract static class MapCopier extends CollectionClassCopierBase {
+        private final Class<?> cls ;
+
+        // Copies the internal fields of cls, for maps that cannot be
+        // rebuilt safely through put.  Created on first use.
+        private volatile ClassCopierOrdinaryImpl layoutCopier ;
+
+        MapCopier( String name, PipelineClassCopierFactory ccf, Class<?> cls ) {
+            super( name, ccf ) ;
+            this.cls = cls ;
+        }
+
+        // Create an empty map like source with room for all of the 
+        // entries of source.
+        protected abstract Map<Object,Object> newMap( Map<Object,Object> source ) ;
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected Object createCopy( Object source ) {
+            return newMap( (Map<Object,Object>)source ) ;
+        }
+
+        // Return true if the copy of src may be filled through put.  This 
+        // is only safe if all of the keys are immutable, and so are shared
+        // with src: the copy of a mutable key may not be complete yet (it
+        // may be further up the stack in a cyclic graph, or be filled by
+        // another task in a parallel copy), so it cannot be hashed or 
+        // compared.
+        protected boolean canRebuild( Map<Object,Object> src ) {
+            return hasImmutableKeys( src ) ;
+        }
+
+        private ClassCopierOrdinaryImpl getLayoutCopier() 
+            throws ReflectiveCopyException {
+            ClassCopierOrdinaryImpl result = layoutCopier ;
+            if (result == null) {
+                result = new ClassCopierOrdinaryImpl( 
+                    (PipelineClassCopierFactory)ccf, cls ) ;
+                layoutCopier = result ;
+            }
+
+            return result ;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected Object doCopy( Map<Object,Object> oldToNew, Object source,
+            Object result ) throws ReflectiveCopyException {
+
+            Map<Object,Object> src = (Map<Object,Object>)source ;
+            Map<Object,Object> dest = (Map<Object,Object>)result ;
+            if (!canRebuild( src )) {
+                // Copy the internal fields of the map, as the ordinary 
+                // copier would, which never hashes or compares the keys.
+                return getLayoutCopier().doCopy( oldToNew, source, result ) ;
+            }
+
+            // The keys are immutable, so only the values are copied.
+            if (ParallelObjectCopierImpl.isParallel( oldToNew, src.size() )) {
+                Object[] keys = new Object[ src.size() ] ;
+                Object[] values = new Object[ src.size() ] ;
+                int index = 0 ;
+                for (Map.Entry<Object,Object> entry : src.entrySet()) {
+                    keys[index] = entry.getKey() ;
+                    values[index++] = entry.getValue() ;
+                }
+
+                ParallelObjectCopierImpl.copyElements( ccf, oldToNew, 
+                    values, values ) ;
+                for (int ctr=0; ctr<index; ctr++) {
+                    dest.put( keys[ctr], values[ctr] ) ;
+                }
+
+                return result ;
+            }
+
+            ElementCopier valueCopier = new ElementCopier( ccf, oldToNew ) ;
+            for (Map.Entry<Object,Object> entry : src.entrySet()) {
+                dest.put( entry.getKey(), 
+                    valueCopier.copy( entry.getValue() ) ) ;
+            }
+
+            return result ;
+        }
+    }
+
+    // Return true if every key of src is null or immutable, so that the
+    // keys of the copy are the keys of src.
+    private static boolean hasImmutableKeys( Map<Object,Object> src ) {
+        Class<?> lastClass = null ;
+        for (Object key : src.keySet()) {
+            if (key != null && key.getClass() != lastClass) {
+                lastClass = key.getClass() ;
+                if (!CopyPlan.isImmutableFieldType( lastClass )) {
+                    return false ;
+                }
+            }
+        }
+
+        return true ;
+    }
+
+    // The keys of an EnumMap are enums, so the copy starts as a clone of
+    // the source (which keeps the key type), and only the values are
+    // replaced.
+    private static class EnumMapCopier extends CollectionClassCopierBase {
+        EnumMapCopier( ClassCopierFactory ccf ) {
+            super( "EnumMap", ccf ) ;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected Object createCopy( Object source ) {
+            return ((EnumMap)source).clone() ;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected Object doCopy( Map<Object,Object> oldToNew, Object source,
+            Object result ) throws ReflectiveCopyException {
+
+            Map<Object,Object> dest = (Map<Object,Object>)result ;
+            ElementCopier valueCopier = new ElementCopier( ccf, oldToNew ) ;
+            for (Map.Entry<Object,Object> entry : dest.entrySet()) {
+                entry.setValue( valueCopier.copy( entry.getValue() ) ) ;
+            }
+
+            return result ;
+        }
+    }
+
+    /** Return ClassCopiers for ArrayList, ArrayDeque, HashMap, TreeMap,
+     * ConcurrentHashMap, and EnumMap, which use ccf to copy the elements.
+     */
+    public static Map<Class<?>,ClassCopier> makeCollectionClassCopiers( 
+        PipelineClassCopierFactory ccf ) {
+
+        Map<Class<?>,ClassCopier> result = 
+            new LinkedHashMap<Class<?>,ClassCopier>() ;
+        result.put( ArrayList.class, 
+            new CollectionCopier( "ArrayList", ccf ) {
+                @Override
+                protected Collection<Object> newCollection( int size ) {
+                    return new ArrayList<Object>( size ) ;
+                }
+            } ) ;
+        result.put( ArrayDeque.class, 
+            new CollectionCopier( "ArrayDeque", ccf ) {
+                @Override
+                protected Collection<Object> newCollection( int size ) {
+                    return new ArrayDeque<Object>( size ) ;
+                }
+            } ) ;
+        result.put( HashMap.class, 
+            new MapCopier( "HashMap", ccf, HashMap.class ) {
+                @Override
+                protected Map<Object,Object> newMap( 
+                    Map<Object,Object> source ) {
+                    return new HashMap<Object,Object>( 
+                        hashCapacity( source.size() ) ) ;
+                }
+            } ) ;
+        result.put( ConcurrentHashMap.class, 
+            new MapCopier( "ConcurrentHashMap", ccf, ConcurrentHashMap.class ) {
+                @Override
+                protected Map<Object,Object> newMap( 
+                    Map<Object,Object> source ) {
+                    return new ConcurrentHashMap<Object,Object>( 
+                        hashCapacity( source.size() ) ) ;
+                }
+            } ) ;
+        result.put( TreeMap.class, 
+            new MapCopier( "TreeMap", ccf, TreeMap.class ) {
+                @Override
+                protected Map<Object,Object> newMap( 
+                    Map<Object,Object> source ) {
+                    return new TreeMap<Object,Object>( 
+                        ((TreeMap<Object,Object>)source).comparator() ) ;
+                }
+
+                // A comparator that is not immutable is copied like any
+                // other field, by the layout copy.
+                @Override
+                protected boolean canRebuild( Map<Object,Object> src ) {
+                    Comparator<?> comparator = 
+                        ((TreeMap<Object,Object>)src).comparator() ;
+                    return (comparator == null 
+                        || CopyPlan.isImmutableFieldType( 
+                            comparator.getClass() ))
+                        && super.canRebuild( src ) ;
+                }
+            } ) ;
+        result.put( EnumMap.class, new EnumMapCopier( ccf ) ) ;
+        return result ;
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.pfl.dynamic.copyobject.impl;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+/** A thread safe identity map for the oldToNew alias table of a copy
+ * operation that is shared by several threads.  The map is split into
+ * segments, each of which is an IdentityAliasMap guarded by its own lock,
+ * so threads copying unrelated objects rarely contend.
+ * <p>
+ * ClassCopierBase uses putIfAbsent on a ConcurrentMap, so that when two
+ * threads reach the same object, only one copy is made, and both threads
+ * use it.  As in IdentityAliasMap, keys are compared by reference.  Values
+ * are also compared by reference in remove(key, value) and replace.  
+ * Iteration works on a snapshot of the map.
+ */
+public class ConcurrentIdentityAliasMap extends AbstractMap<Object,Object> 
+    implements ConcurrentMap<Object,Object> {
+
+    private final IdentityAliasMap[] segments ;
+    private final int shift ;
+
+    public ConcurrentIdentityAliasMap() {
+        this( 4 * Runtime.getRuntime().availableProcessors() ) ;
+    }
+
+    /** Create a map with at least concurrencyLevel segments.
+     */
+    public ConcurrentIdentityAliasMap( int concurrencyLevel ) {
+        if (concurrencyLevel < 1) {
+            throw new IllegalArgumentException( 
+                "concurrencyLevel must be positive" ) ;
+        }
+
+        int bits = 0 ;
+        while ((1 << bits) < concurrencyLevel && bits < 16) {
+            bits++ ;
+        }
+
+        segments = new IdentityAliasMap[1 << bits] ;
+        for (int ctr=0; ctr<segments.length; ctr++) {
+            segments[ctr] = new IdentityAliasMap() ;
+        }
+        shift = 32 - bits ;
+    }
+
+    private IdentityAliasMap segmentFor( Object key ) {
+        if (shift == 32) {
+            return segments[0] ;
+        }
+
+        // Use the high bits of a scrambled hash, as IdentityAliasMap
+        // uses the low bits within the segment.
+        int hash = System.identityHashCode( key ) * 0x9E3779B9 ;
+        return segments[hash >>> shift] ;
+    }
+
+    @Override
+    public int size() {
+        int result = 0 ;
+        for (IdentityAliasMap segment : segments) {
+            synchronized (segment) {
+                result += segment.size() ;
+            }
+        }
+        return result ;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0 ;
+    }
+
+    @Override
+    public Object get( Object key ) {
+        IdentityAliasMap segment = segmentFor( key ) ;
+        synchronized (segment) {
+            return segment.get( key ) ;
+        }
+    }
+
+    @Override
+    public boolean containsKey( Object key ) {
+        IdentityAliasMap segment = segmentFor( key ) ;
+        synchronized (segment) {
+            return segment.containsKey( key ) ;
+        }
+    }
+
+    @Override
+    public Object put( Object key, Object value ) {
+        IdentityAliasMap segment = segmentFor( key ) ;
+        synchronized (segment) {
+            return segment.put( key, value ) ;
+        }
+    }
+
+    @Override
+    public Object putIfAbsent( Object key, Object value ) {
+        IdentityAliasMap segment = segmentFor( key ) ;
+        synchronized (segment) {
+            Object current = segment.get( key ) ;
+            if (current == null && !segment.containsKey( key )) {
+                segment.put( key, value ) ;
+            }
+            return current ;
+        }
+    }
+
+    @Override
+    public Object remove( Object key ) {
+        IdentityAliasMap segment = segmentFor( key ) ;
+        synchronized (segment) {
+            return segment.remove( key ) ;
+        }
+    }
+
+    @Override
+    public boolean remove( Object key, Object value ) {
+        IdentityAliasMap segment = segmentFor( key ) ;
+        synchronized (segment) {
+            if (segment.containsKey( key ) && segment.get( key ) == value) {
+                segment.remove( key ) ;
+                return true ;
+            }
+            return false ;
+        }
+    }
+
+    @Override
+    public boolean replace( Object key, Object oldValue, Object newValue ) {
+        IdentityAliasMap segment = segmentFor( key ) ;
+        synchronized (segment) {
+            if (segment.containsKey( key ) && segment.get( key ) == oldValue) {
+                segment.put( key, newValue ) ;
+                return true ;
+            }
+            return false ;
+        }
+    }
+
+    @Override
+    public Object replace( Object key, Object value ) {
+        IdentityAliasMap segment = segmentFor( key ) ;
+        synchronized (segment) {
+            if (segment.containsKey( key )) {
+                return segment.put( key, value ) ;
+            }
+            return null ;
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (IdentityAliasMap segment : segments) {
+            synchronized (segment) {
+                segment.clear() ;
+            }
+        }
+    }
+
+    @Override
+    public Set<Map.Entry<Object,Object>> entrySet() {
+        final List<Map.Entry<Object,Object>> entries = 
+            new ArrayList<Map.Entry<Object,Object>>() ;
+        for (IdentityAliasMap segment : segments) {
+            synchronized (segment) {
+                entries.addAll( segment.entrySet() ) ;
+            }
+        }
+
+        return new AbstractSet<Map.Entry<Object,Object>>() {
+            @Override
+            public Iterator<Map.Entry<Object,Object>> iterator() {
+                return Collections.unmodifiableList( entries ).iterator() ;
+            }
+
+            @Override
+            public int size() {
+                return entries.size() ;
+            }
+        } ;
+    }
+}
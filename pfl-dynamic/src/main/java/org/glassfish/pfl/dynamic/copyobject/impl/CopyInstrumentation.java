@@ -0,0 +1,347 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.pfl.dynamic.copyobject.impl ;
+
+import java.util.Collections ;
+import java.util.Map ;
+import java.util.TreeMap ;
+import java.util.concurrent.ConcurrentHashMap ;
+import java.util.concurrent.ConcurrentMap ;
+import java.util.concurrent.atomic.AtomicLong ;
+
+/** Optional instrumentation of the reflective object copiers.  When 
+ * enabled, this records:
+ * <ul>
+ * <li>for each class, how many of its instances were copied by a 
+ * ClassCopier;
+ * <li>for each class of object passed to ObjectCopier.copy, the number
+ * of copies, the nanoseconds they took, and the number of objects 
+ * they entered in the alias table;
+ * <li>a histogram of the size of the alias table at the end of each
+ * copy, in power of 2 buckets;
+ * <li>for each class of object for which a FallbackObjectCopierImpl fell 
+ * back to its second copier, the messages of the ReflectiveCopyExceptions
+ * that caused it.
+ * </ul>
+ * Snapshots also include the alias table size hints that ObjectCopierImpl
+ * has learned for each class of root object (see AliasSizeHints), which
+ * are maintained whether or not instrumentation is enabled.
+ * All counters are striped, so that copying threads rarely contend.
+ * When instrumentation is disabled (the default), each instrumented 
+ * point only reads one volatile field.  Instrumentation may be enabled
+ * by setting the org.glassfish.dynamic.copyobject.Instrumentation 
+ * property to true, or by calling setEnabled.
+ * <p>
+ * pfl-tf depends on this module, so the results are not reported through
+ * its TimerFactory.  Instead getSnapshot returns a Snapshot, which may be 
+ * exported by any monitoring code.
+ */
+public final class CopyInstrumentation {
+    private CopyInstrumentation() {}
+
+    /** Number of buckets in the alias table size histogram.  Bucket 0
+     * counts empty tables, and bucket i (i &gt; 0) counts tables of size
+     * 2**(i-1) to 2**i - 1.
+     */
+    public static final int TABLE_SIZE_BUCKETS = 32 ;
+
+    private static volatile boolean enabled = Boolean.getBoolean( 
+        "org.glassfish.dynamic.copyobject.Instrumentation" ) ;
+
+    public static boolean isEnabled() {
+        return enabled ;
+    }
+
+    public static void setEnabled( boolean flag ) {
+        enabled = flag ;
+    }
+
+    // Indexes in the StripedCounters of a ClassRecord.
+    private static final int COPIES = 0 ;
+    private static final int GRAPHS = 1 ;
+    private static final int GRAPH_NANOS = 2 ;
+    private static final int GRAPH_OBJECTS = 3 ;
+    private static final int FALLBACKS = 4 ;
+    private static final int NUM_CLASS_COUNTERS = 5 ;
+
+    private static final class ClassRecord {
+        private final StripedCounters counters = 
+            new StripedCounters( NUM_CLASS_COUNTERS ) ;
+
+        // Fallbacks are slow anyway, so their reasons are just counted in
+        // a map.
+        private final ConcurrentMap<String,AtomicLong> fallbackReasons =
+            new ConcurrentHashMap<String,AtomicLong>() ;
+
+        void recordFallbackReason( String reason ) {
+            AtomicLong counter = fallbackReasons.get( reason ) ;
+            if (counter == null) {
+                AtomicLong newCounter = new AtomicLong() ;
+                counter = fallbackReasons.putIfAbsent( reason, newCounter ) ;
+                if (counter == null) {
+                    counter = newCounter ;
+                }
+            }
+
+            counter.incrementAndGet() ;
+        }
+    }
+
+    // Records are keyed by class name, so that instrumentation does not 
+    // keep classes reachable.  The ClassValue only avoids looking up the 
+    // name on every update.
+    private static final ConcurrentMap<String,ClassRecord> records =
+        new ConcurrentHashMap<String,ClassRecord>() ;
+
+    private static final ClassValue<ClassRecord> recordForClass = 
+        new ClassValue<ClassRecord>() {
+            @Override
+            protected ClassRecord computeValue( Class<?> cls ) {
+                ClassRecord record = new ClassRecord() ;
+                ClassRecord existing = records.putIfAbsent( cls.getName(), 
+                    record ) ;
+                return existing == null ? record : existing ;
+            }
+        } ;
+
+    private static final StripedCounters tableSizes =
+        new StripedCounters( TABLE_SIZE_BUCKETS ) ;
+
+    /** Record that a ClassCopier created a copy of an instance of cls.
+     */
+    static void recordCopy( Class<?> cls ) {
+        recordForClass.get( cls ).counters.increment( COPIES ) ;
+    }
+
+    /** Record a call to ObjectCopier.copy for an instance of cls that 
+     * took nanos nanoseconds, and entered objects objects in an alias 
+     * table, which then held tableSize objects.
+     */
+    static void recordGraph( Class<?> cls, long nanos, int objects, 
+        int tableSize ) {
+        StripedCounters counters = recordForClass.get( cls ).counters ;
+        counters.increment( GRAPHS ) ;
+        counters.add( GRAPH_NANOS, nanos ) ;
+        counters.add( GRAPH_OBJECTS, objects ) ;
+        tableSizes.increment( 32 - Integer.numberOfLeadingZeros( tableSize ) ) ;
+    }
+
+    /** Record that the first copier of a FallbackObjectCopierImpl could 
+     * not copy an instance of cls, because it threw exc.
+     */
+    static void recordFallback( Class<?> cls, Exception exc ) {
+        ClassRecord record = recordForClass.get( cls ) ;
+        record.counters.increment( FALLBACKS ) ;
+        String reason = exc.getMessage() ;
+        record.recordFallbackReason( reason == null 
+            ? exc.getClass().getName() : reason ) ;
+    }
+
+    /** Set all counters back to 0.
+     */
+    public static void reset() {
+        for (ClassRecord record : records.values()) {
+            record.counters.reset() ;
+            record.fallbackReasons.clear() ;
+        }
+
+        tableSizes.reset() ;
+    }
+
+    /** The counters of one class.
+     */
+    public static final class ClassSnapshot {
+        private final long copyCount ;
+        private final long graphCount ;
+        private final long graphNanos ;
+        private final long graphObjects ;
+        private final long fallbackCount ;
+        private final Map<String,Long> fallbackReasons ;
+
+        ClassSnapshot( ClassRecord record ) {
+            StripedCounters counters = record.counters ;
+            copyCount = counters.get( COPIES ) ;
+            graphCount = counters.get( GRAPHS ) ;
+            graphNanos = counters.get( GRAPH_NANOS ) ;
+            graphObjects = counters.get( GRAPH_OBJECTS ) ;
+            fallbackCount = counters.get( FALLBACKS ) ;
+            Map<String,Long> reasons = new TreeMap<String,Long>() ;
+            for (Map.Entry<String,AtomicLong> entry : 
+                record.fallbackReasons.entrySet()) {
+                reasons.put( entry.getKey(), entry.getValue().get() ) ;
+            }
+            fallbackReasons = Collections.unmodifiableMap( reasons ) ;
+        }
+
+        /** Number of instances of the class copied by a ClassCopier.
+         */
+        public long getCopyCount() {
+            return copyCount ;
+        }
+
+        /** Number of ObjectCopier.copy calls for an instance of the class.
+         */
+        public long getGraphCount() {
+            return graphCount ;
+        }
+
+        /** Total nanoseconds spent in ObjectCopier.copy calls for an 
+         * instance of the class.
+         */
+        public long getGraphNanos() {
+            return graphNanos ;
+        }
+
+        /** Total number of objects entered in the alias table by 
+         * ObjectCopier.copy calls for an instance of the class.
+         */
+        public long getGraphObjects() {
+            return graphObjects ;
+        }
+
+        /** Number of times a FallbackObjectCopierImpl fell back to its 
+         * second copier for an instance of the class.
+         */
+        public long getFallbackCount() {
+            return fallbackCount ;
+        }
+
+        /** Number of fallbacks for an instance of the class, by the 
+         * message of the exception that caused them.
+         */
+        public Map<String,Long> getFallbackReasons() {
+            return fallbackReasons ;
+        }
+
+        boolean isEmpty() {
+            return copyCount == 0 && graphCount == 0 && fallbackCount == 0 ;
+        }
+
+        @Override
+        public String toString() {
+            return "ClassSnapshot[copyCount=" + copyCount 
+                + " graphCount=" + graphCount
+                + " graphNanos=" + graphNanos
+                + " graphObjects=" + graphObjects
+                + " fallbackCount=" + fallbackCount 
+                + " fallbackReasons=" + fallbackReasons + "]" ;
+        }
+    }
+
+    /** The counters of all classes at one time.
+     */
+    public static final class Snapshot {
+        private final Map<String,ClassSnapshot> classes ;
+        private final long[] tableSizeHistogram ;
+        private final Map<String,Integer> aliasSizeHints ;
+
+        Snapshot( Map<String,ClassSnapshot> classes, 
+            long[] tableSizeHistogram, Map<String,Integer> aliasSizeHints ) {
+            this.classes = classes ;
+            this.tableSizeHistogram = tableSizeHistogram ;
+            this.aliasSizeHints = aliasSizeHints ;
+        }
+
+        /** The counters of every class with a non-zero counter, by class
+         * name.
+         */
+        public Map<String,ClassSnapshot> getClasses() {
+            return classes ;
+        }
+
+        /** The number of copies that left the alias table with a size in 
+         * each bucket.  See TABLE_SIZE_BUCKETS.
+         */
+        public long[] getTableSizeHistogram() {
+            return tableSizeHistogram.clone() ;
+        }
+
+        /** The number of objects ObjectCopierImpl currently expects to 
+         * copy from a root object, by the class name of the root.  This is
+         * a moving average of the sizes of recent copies.
+         */
+        public Map<String,Integer> getAliasSizeHints() {
+            return aliasSizeHints ;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder() ;
+            sb.append( "CopyInstrumentation.Snapshot[\n" ) ;
+            for (Map.Entry<String,ClassSnapshot> entry : classes.entrySet()) {
+                sb.append( "    " ).append( entry.getKey() ).append( ": " )
+                    .append( entry.getValue() ).append( '\n' ) ;
+            }
+            sb.append( "    tableSizes:" ) ;
+            for (int ctr=0; ctr<tableSizeHistogram.length; ctr++) {
+                if (tableSizeHistogram[ctr] != 0) {
+                    sb.append( ' ' )
+                        .append( ctr == 0 ? 0 : 1L << (ctr - 1) )
+                        .append( '=' ).append( tableSizeHistogram[ctr] ) ;
+                }
+            }
+            sb.append( "\n    aliasSizeHints: " ).append( aliasSizeHints ) ;
+            sb.append( "\n]" ) ;
+            return sb.toString() ;
+        }
+    }
+
+    /** Return the current values of all counters.
+     */
+    public static Snapshot getSnapshot() {
+        Map<String,ClassSnapshot> classes = 
+            new TreeMap<String,ClassSnapshot>() ;
+        for (Map.Entry<String,ClassRecord> entry : records.entrySet()) {
+            ClassSnapshot snapshot = new ClassSnapshot( entry.getValue() ) ;
+            if (!snapshot.isEmpty()) {
+                classes.put( entry.getKey(), snapshot ) ;
+            }
+        }
+
+        long[] histogram = new long[TABLE_SIZE_BUCKETS] ;
+        for (int ctr=0; ctr<TABLE_SIZE_BUCKETS; ctr++) {
+            histogram[ctr] = tableSizes.get( ctr ) ;
+        }
+
+        return new Snapshot( Collections.unmodifiableMap( classes ), 
+            histogram, AliasSizeHints.getHints() ) ;
+    }
+}
@@ -0,0 +1,497 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.pfl.dynamic.copyobject.impl ;
+
+import java.lang.reflect.Field ;
+import java.lang.reflect.Modifier ;
+import java.util.ArrayList ;
+import java.util.Collections ;
+import java.util.HashSet ;
+import java.util.IdentityHashMap ;
+import java.util.List ;
+import java.util.Map ;
+import java.util.Set ;
+
+import org.glassfish.pfl.dynamic.copyobject.spi.Copy ;
+import org.glassfish.pfl.dynamic.copyobject.spi.CopyInterceptor ;
+import org.glassfish.pfl.dynamic.copyobject.spi.CopyType ;
+
+/** The result of analyzing the static type graph of a class once, so that
+ * the ClassCopiers and all of the ClassFieldCopier implementations make 
+ * the same decisions about how to copy it.  A CopyPlan contains:
+ * <ul>
+ * <li>The FieldAction for every non-static field of the class and its 
+ * superclasses, superclass fields first.  This takes @Copy annotations 
+ * into account, and copies fields by reference if their declared type 
+ * is immutable.
+ * <li>Whether the class is deeply immutable.  This is proven if every 
+ * field (including those of superclasses) is final, and holds either a 
+ * primitive, or an instance of a final class that is itself deeply 
+ * immutable.  The classes known to ImmutableTypeRegistry (such as String,
+ * enums, and classes annotated @Immutable) are deeply immutable without 
+ * analysis.  Instances of deeply immutable classes are never copied, 
+ * and do not need an entry in the alias table.
+ * <li>Whether the class is acyclic: no graph of objects reachable from
+ * an instance of the class can contain a cycle, because every reference
+ * field has a final declared type, and the type graph has no cycles.  
+ * This is reported for information only: aliasing must be preserved
+ * even in acyclic graphs, so the alias table is still needed for their
+ * mutable objects.
+ * </ul>
+ * The analysis of classes not known to ImmutableTypeRegistry may 
+ * be turned off by setting the 
+ * org.glassfish.dynamic.copyobject.DisableImmutabilityAnalysis property 
+ * to true.
+ */
+public final class CopyPlan {
+    /** What to do with one field when copying an object.
+     */
+    public enum FieldAction {
+        /** Copy the value of a primitive field. */
+        PRIMITIVE,
+
+        /** Copy the reference without copying the referenced object,
+         * because it is immutable or the field is @Copy(IDENTITY). 
+         */
+        REFERENCE,
+
+        /** Copy the referenced object through its ClassCopier. */
+        COPY,
+
+        /** Set the field to null or 0 (@Copy(NULL)). */
+        NULL,
+
+        /** Set the field to the source object (@Copy(SOURCE)). */
+        SOURCE,
+
+        /** Set the field as specified by @Copy(RESULT). */
+        RESULT
+    }
+
+    /** The plan for copying one field.
+     */
+    public static final class FieldPlan {
+        private final Field field ;
+        private final FieldAction action ;
+
+        // Non-null if the @Copy annotation on field cannot be applied.
+        private final String error ;
+
+        private FieldPlan( Field field, FieldAction action, String error ) {
+            this.field = field ;
+            this.action = action ;
+            this.error = error ;
+        }
+
+        public Field getField() {
+            return field ;
+        }
+
+        /** Return the action for this field.
+         * @throws IllegalArgumentException if the @Copy annotation on 
+         * this field cannot be applied to it.
+         */
+        public FieldAction getAction() {
+            if (error != null) {
+                throw new IllegalArgumentException( error ) ;
+            }
+
+            return action ;
+        }
+
+        @Override
+        public String toString() {
+            return field.getDeclaringClass().getName() + "." 
+                + field.getName() + ": " 
+                + (error == null ? action.toString() : "ERROR " + error) ;
+        }
+    }
+
+    private static final ClassValue<CopyPlan> plans = 
+        new ClassValue<CopyPlan>() {
+            @Override
+            protected CopyPlan computeValue( Class<?> cls ) {
+                return new CopyPlan( cls ) ;
+            }
+        } ;
+
+    /** Return the CopyPlan for cls, which must not be an array or
+     * primitive class.  The plan is only computed once for each class.
+     */
+    public static CopyPlan getCopyPlan( Class<?> cls ) {
+        return plans.get( cls ) ;
+    }
+
+    /** Return true if every value of a field declared with type fieldType
+     * is immutable, so that the field can be copied by reference without 
+     * looking up a ClassCopier.
+     */
+    public static boolean isImmutableFieldType( Class<?> fieldType ) {
+        if (isKnownImmutable( fieldType ) && isClosedType( fieldType )
+            || Enum.class.isAssignableFrom( fieldType )) {
+            return true ;
+        }
+
+        return DefaultClassCopierFactories.USE_IMMUTABILITY_ANALYSIS
+            && isClosedType( fieldType ) 
+            && getCopyPlan( fieldType ).isDeeplyImmutable() ;
+    }
+
+    // Same as isImmutableFieldType, but does not use the cache of plans,
+    // since it is called while a plan is being computed, and the field 
+    // type may be the class being planned.
+    private static boolean isImmutableFieldTypeUncached( Class<?> fieldType ) {
+        if (isKnownImmutable( fieldType ) && isClosedType( fieldType )
+            || Enum.class.isAssignableFrom( fieldType )) {
+            return true ;
+        }
+
+        return DefaultClassCopierFactories.USE_IMMUTABILITY_ANALYSIS
+            && isClosedType( fieldType ) 
+            && findMutableReason( fieldType ) == null ;
+    }
+
+    // Return true if every value of a field of type cls is an instance of
+    // exactly cls.
+    private static boolean isClosedType( Class<?> cls ) {
+        return !cls.isPrimitive() && !cls.isArray() 
+            && Modifier.isFinal( cls.getModifiers() ) ;
+    }
+
+    private final Class<?> cls ;
+    private final List<FieldPlan> fields ;
+
+    // Null if cls is deeply immutable, otherwise the reason it is not.
+    private final String mutableReason ;
+
+    // Null if cls is acyclic, otherwise the reason it may not be.
+    private final String cyclicReason ;
+
+    private CopyPlan( Class<?> cls ) {
+        this.cls = cls ;
+        mutableReason = findMutableReason( cls ) ;
+        cyclicReason = findCyclicReason( cls ) ;
+
+        List<FieldPlan> list = new ArrayList<FieldPlan>() ;
+        for (Field fld : getCopyableFields( cls )) {
+            list.add( makeFieldPlan( fld ) ) ;
+        }
+        fields = Collections.unmodifiableList( list ) ;
+    }
+
+    public Class<?> getPlannedClass() {
+        return cls ;
+    }
+
+    /** Return the plans for all non-static fields of the class and its 
+     * superclasses (other than Object), superclass fields first.
+     */
+    public List<FieldPlan> getFields() {
+        return fields ;
+    }
+
+    /** Return the plans for the non-static fields declared in cls, which
+     * is the planned class or one of its superclasses.
+     */
+    public List<FieldPlan> getFieldsDeclaredIn( Class<?> cls ) {
+        List<FieldPlan> result = new ArrayList<FieldPlan>() ;
+        for (FieldPlan fp : fields) {
+            if (fp.field.getDeclaringClass() == cls) {
+                result.add( fp ) ;
+            }
+        }
+
+        return result ;
+    }
+
+    /** Return true if instances of the planned class are deeply immutable,
+     * so that they may be shared instead of copied.
+     */
+    public boolean isDeeplyImmutable() {
+        return mutableReason == null ;
+    }
+
+    /** Return true if no object graph reachable from an instance of the
+     * planned class can contain a cycle.
+     */
+    public boolean isAcyclic() {
+        return cyclicReason == null ;
+    }
+
+    /** Return a readable report of what was proven about the planned
+     * class, and the action chosen for each field.
+     */
+    public String getReport() {
+        StringBuilder sb = new StringBuilder() ;
+        sb.append( "CopyPlan[" ).append( cls.getName() ).append( "]\n" ) ;
+        sb.append( "    deeply immutable: " ) ;
+        sb.append( mutableReason == null ? "yes" : "no (" + mutableReason + ")" ) ;
+        sb.append( '\n' ) ;
+        sb.append( "    acyclic: " ) ;
+        sb.append( cyclicReason == null ? "yes" : "no (" + cyclicReason + ")" ) ;
+        sb.append( '\n' ) ;
+        for (FieldPlan fp : fields) {
+            sb.append( "    " ).append( fp ).append( '\n' ) ;
+        }
+
+        return sb.toString() ;
+    }
+
+    @Override
+    public String toString() {
+        return "CopyPlan[" + cls.getName() + "]" ;
+    }
+
+//******************************************************************************
+// Analysis
+//******************************************************************************
+
+    /** Return all non-static fields of cls and its superclasses (other
+     * than Object), superclass fields first.
+     */
+    static List<Field> getCopyableFields( Class<?> cls ) {
+        List<Class<?>> classes = new ArrayList<Class<?>>() ;
+        for (Class<?> current = cls;
+             current != null && current != Object.class;
+             current = current.getSuperclass()) {
+            classes.add( 0, current ) ;
+        }
+
+        List<Field> result = new ArrayList<Field>() ;
+        for (Class<?> current : classes) {
+            for (Field fld : current.getDeclaredFields()) {
+                if (!Modifier.isStatic( fld.getModifiers() )) {
+                    result.add( fld ) ;
+                }
+            }
+        }
+
+        return result ;
+    }
+
+    private static CopyType getCopyType( Field fld ) {
+        Copy copyAnnotation = fld.getAnnotation( Copy.class ) ;
+        return copyAnnotation == null ? CopyType.RECURSE 
+            : copyAnnotation.value() ;
+    }
+
+    private static FieldPlan makeFieldPlan( Field fld ) {
+        Class<?> fldType = fld.getType() ;
+        CopyType copyType = getCopyType( fld ) ;
+        switch (copyType) {
+            case RECURSE :
+                if (fldType.isPrimitive()) {
+                    return new FieldPlan( fld, FieldAction.PRIMITIVE, null ) ;
+                } else if (isImmutableFieldTypeUncached( fldType )) {
+                    return new FieldPlan( fld, FieldAction.REFERENCE, null ) ;
+                } else {
+                    return new FieldPlan( fld, FieldAction.COPY, null ) ;
+                }
+            case IDENTITY :
+                return new FieldPlan( fld, fldType.isPrimitive() 
+                    ? FieldAction.PRIMITIVE : FieldAction.REFERENCE, null ) ;
+            case NULL :
+                return new FieldPlan( fld, FieldAction.NULL, null ) ;
+            case SOURCE :
+            case RESULT :
+                FieldAction action = copyType == CopyType.SOURCE 
+                    ? FieldAction.SOURCE : FieldAction.RESULT ;
+                if (fldType.isAssignableFrom( fld.getDeclaringClass() )) {
+                    return new FieldPlan( fld, action, null ) ;
+                } else {
+                    return new FieldPlan( fld, action, 
+                        "Cannot assign field to " 
+                            + copyType.name().toLowerCase() 
+                            + " object: incompatible types\n"
+                            + "Field type is " + fldType
+                            + " Class type is " + fld.getDeclaringClass() ) ;
+                }
+            default :
+                return new FieldPlan( fld, FieldAction.COPY, 
+                    "Unhandled case " + copyType + " for field " + fld ) ;
+        }
+    }
+
+    private static boolean isKnownImmutable( Class<?> cls ) {
+        return ImmutableTypeRegistry.isImmutable( cls ) ;
+    }
+
+    private static boolean hasReadResolve( Class<?> cls ) {
+        for (Class<?> current = cls; current != null; 
+            current = current.getSuperclass()) {
+            try {
+                current.getDeclaredMethod( "readResolve" ) ;
+                return true ;
+            } catch (NoSuchMethodException exc) {
+                // keep looking
+            }
+        }
+
+        return false ;
+    }
+
+    private static String fieldName( Field fld ) {
+        return fld.getDeclaringClass().getName() + "." + fld.getName() ;
+    }
+
+    // Return null if root is deeply immutable, otherwise the reason why 
+    // it is not.  This checks every class reachable from the fields of 
+    // root, so cyclic types (such as a final node class with a final 
+    // next field) may still be immutable.
+    private static String findMutableReason( Class<?> root ) {
+        if (root.isPrimitive() || root.isArray() || root.isInterface()) {
+            return "not an ordinary class" ;
+        }
+
+        if (isKnownImmutable( root )) {
+            return null ;
+        }
+
+        if (!DefaultClassCopierFactories.USE_IMMUTABILITY_ANALYSIS) {
+            return "immutability analysis is disabled" ;
+        }
+
+        Set<Class<?>> visited = new HashSet<Class<?>>() ;
+        List<Class<?>> pending = new ArrayList<Class<?>>() ;
+        visited.add( root ) ;
+        pending.add( root ) ;
+        while (!pending.isEmpty()) {
+            Class<?> cls = pending.remove( pending.size() - 1 ) ;
+            if (CopyInterceptor.class.isAssignableFrom( cls )) {
+                return cls.getName() + " is a CopyInterceptor" ;
+            }
+
+            if (hasReadResolve( cls )) {
+                return cls.getName() + " has a readResolve method" ;
+            }
+
+            // Instances of a class without state (such as new Object() 
+            // used as a lock or a sentinel) are only useful for their 
+            // identity, so a copy must not share them.
+            List<Field> fields = getCopyableFields( cls ) ;
+            if (fields.isEmpty()) {
+                return cls.getName() + " has no instance fields" ;
+            }
+
+            for (Field fld : fields) {
+                Class<?> fldType = fld.getType() ;
+                if (!Modifier.isFinal( fld.getModifiers() )) {
+                    return "field " + fieldName( fld ) + " is not final" ;
+                }
+
+                CopyType copyType = getCopyType( fld ) ;
+                if (copyType != CopyType.RECURSE 
+                    && copyType != CopyType.IDENTITY) {
+                    return "field " + fieldName( fld ) + " is @Copy(" 
+                        + copyType + ")" ;
+                }
+
+                if (copyType == CopyType.IDENTITY || fldType.isPrimitive()
+                    || isKnownImmutable( fldType ) && isClosedType( fldType )) {
+                    continue ;
+                }
+
+                if (fldType.isArray()) {
+                    return "field " + fieldName( fld ) + " is an array" ;
+                }
+
+                if (!isClosedType( fldType ) && !fldType.isEnum()) {
+                    return "field " + fieldName( fld ) 
+                        + " may hold a subclass of " + fldType.getName() ;
+                }
+
+                if (!fldType.isEnum() && visited.add( fldType )) {
+                    pending.add( fldType ) ;
+                }
+            }
+        }
+
+        return null ;
+    }
+
+    // Return null if root is acyclic, otherwise the reason it may not be.
+    private static String findCyclicReason( Class<?> root ) {
+        return findCyclicReason( root, 
+            new IdentityHashMap<Class<?>,Boolean>() ) ;
+    }
+
+    // inProgress maps a class to TRUE while its fields are being checked,
+    // and to FALSE once they have been found acyclic.
+    private static String findCyclicReason( Class<?> cls, 
+        Map<Class<?>,Boolean> inProgress ) {
+
+        Boolean state = inProgress.get( cls ) ;
+        if (state != null) {
+            return state ? "the type graph has a cycle through " 
+                + cls.getName() : null ;
+        }
+
+        if (isKnownImmutable( cls )) {
+            return null ;
+        }
+
+        inProgress.put( cls, Boolean.TRUE ) ;
+        for (Field fld : getCopyableFields( cls )) {
+            Class<?> fldType = fld.getType() ;
+            while (fldType.isArray()) {
+                fldType = fldType.getComponentType() ;
+            }
+
+            if (fldType.isPrimitive() || getCopyType( fld ) != CopyType.RECURSE
+                || isKnownImmutable( fldType ) && isClosedType( fldType )) {
+                continue ;
+            }
+
+            if (!isClosedType( fldType ) && !fldType.isEnum()) {
+                return "field " + fieldName( fld ) 
+                    + " may hold a subclass of " + fldType.getName() ;
+            }
+
+            String reason = findCyclicReason( fldType, inProgress ) ;
+            if (reason != null) {
+                return reason ;
+            }
+        }
+
+        inProgress.put( cls, Boolean.FALSE ) ;
+        return null ;
+    }
+}
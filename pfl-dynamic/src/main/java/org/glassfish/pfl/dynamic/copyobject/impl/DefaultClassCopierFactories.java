@@ -43,26 +43,139 @@ package org.glassfish.pfl.dynamic.copyobject.impl;
 import java.lang.reflect.Method ;
 import java.lang.reflect.Modifier ;
 
+import java.util.Locale ;
 import java.util.Map ;
 
 import java.security.PrivilegedAction;
 import java.security.AccessController;
 
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
 import org.glassfish.pfl.basic.concurrent.WeakHashMapSafeReadLock;
 
 import org.glassfish.pfl.dynamic.copyobject.spi.ReflectiveCopyException ;
 
 public abstract class DefaultClassCopierFactories
 {
-    // Note that the FastCache is NOT a weak or soft
-    // reference based cache, so it can hold onto 
-    // references to classes indefinitely, pinning ClassLoader
-    // instances in memory.  Until this is fixed, FastCache is
-    // for testing only.
-    public static final boolean USE_FAST_CACHE = false ;
+    // The FastCache only holds weak references, and is safe for use
+    // by multiple threads, so it is used by default in front of the
+    // Class-keyed caches.  It may be turned off by setting this property
+    // to true.
+    public static final boolean USE_FAST_CACHE = !Boolean.getBoolean(
+        "org.glassfish.dynamic.copyobject.DisableFastCache" ) ;
+
+    // Number of slots in each FastCache.  Only a handful of classes 
+    // dominate most argument graphs, so the default is fairly small.
+    public static final int FAST_CACHE_SIZE = Integer.getInteger(
+        "org.glassfish.dynamic.copyobject.FastCacheSize", 
+        FastCache.TABLE_SIZE ) ;
+
+    // Hit statistics cost two atomic updates per lookup, so they are
+    // only recorded if requested.
+    public static final boolean RECORD_FAST_CACHE_STATISTICS = 
+        Boolean.getBoolean( 
+            "org.glassfish.dynamic.copyobject.FastCacheStatistics" ) ;
+
+    // The ClassValue based cache is lock free for readers, and is the
+    // default.  The older WeakHashMap based cache (which serializes all
+    // readers through a read/write lock) may be selected by setting this
+    // property to true.
+    public static final boolean USE_WEAK_HASH_MAP_CACHE = Boolean.getBoolean(
+        "org.glassfish.dynamic.copyobject.UseWeakHashMapCache" ) ;
+
+    // Reflectively copied classes use generated copiers unless the 
+    // FieldCopierType property names another FieldCopierType, or the
+    // older UseCodegenReflectiveCopyobject property is set to false.
+    public static final FieldCopierType DEFAULT_FIELD_COPIER_TYPE = 
+        getDefaultFieldCopierType() ;
+
+    private static FieldCopierType getDefaultFieldCopierType() {
+        FieldCopierType result = Boolean.parseBoolean( System.getProperty( 
+            "org.glassfish.dynamic.codegen.UseCodegenReflectiveCopyobject", 
+            "true" ) ) ? FieldCopierType.CODEGEN : FieldCopierType.UNSAFE ;
+
+        // A bad value must not fail the initialization of this class, 
+        // as no copy could be made at all after that.
+        String type = System.getProperty( 
+            "org.glassfish.dynamic.copyobject.FieldCopierType" ) ;
+        if (type != null) {
+            try {
+                return FieldCopierType.valueOf( 
+                    type.trim().toUpperCase( Locale.ENGLISH ) ) ;
+            } catch (IllegalArgumentException exc) {
+                Exceptions.self.unknownFieldCopierType( type, exc, result ) ;
+            }
+        }
+
+        return result ;
+    }
+
+    // If set, the byte code of generated copiers is saved in this 
+    // directory, and reused by later runs instead of being generated
+    // again.  The classes are loaded with full permissions, so only
+    // a directory that is writable by trusted users may be used.
+    public static final String CODEGEN_COPIER_CACHE_DIRECTORY = 
+        System.getProperty( 
+            "org.glassfish.dynamic.copyobject.CodegenCopierCacheDirectory" ) ;
+
+    // ArrayList, HashMap, and some other collections are copied through
+    // their public API (see CollectionClassCopiers) unless this property
+    // is set to true, in which case they are copied reflectively.
+    public static final boolean USE_COLLECTION_COPIERS = !Boolean.getBoolean(
+        "org.glassfish.dynamic.copyobject.DisableCollectionCopiers" ) ;
+
+    // ObjectCopierImpl completes copies from an explicit work stack (see
+    // WorkStackAliasMap), so that deep graphs do not overflow the Java
+    // stack, unless this property is set to true, in which case it copies
+    // recursively.
+    public static final boolean USE_ITERATIVE_COPY = !Boolean.getBoolean(
+        "org.glassfish.dynamic.copyobject.RecursiveCopy" ) ;
+
+    // Classes that CopyPlan proves deeply immutable are shared instead of
+    // copied, unless this property is set to true, in which case only
+    // enums, @Immutable classes, and the standard immutable classes
+    // are shared.
+    public static final boolean USE_IMMUTABILITY_ANALYSIS = 
+        !Boolean.getBoolean( 
+            "org.glassfish.dynamic.copyobject.DisableImmutabilityAnalysis" ) ;
+
+    // Copiers generated at build time are registered when a pipeline is
+    // created (see CodegenCopierIndex), unless this property is set to
+    // true, in which case all copiers are generated at runtime.
+    public static final boolean USE_PRECOMPILED_COPIERS = !Boolean.getBoolean( 
+        "org.glassfish.dynamic.copyobject.DisablePrecompiledCopiers" ) ;
+
+    // Instances of classes that implement a @LazyCopy interface are copied
+    // by returning a proxy that copies on first write when they are the 
+    // root of a copy, or are stored in a field or array element declared 
+    // as a @LazyCopy interface (see LazyCopyClassCopier), unless this 
+    // property is set to true, in which case they are copied eagerly.
+    public static final boolean USE_LAZY_COPY = !Boolean.getBoolean( 
+        "org.glassfish.dynamic.copyobject.DisableLazyCopy" ) ;
+
+    // ObjectCopierImpl presizes its alias table from the sizes of earlier
+    // graphs with a root of the same class (see AliasSizeHints), unless
+    // this property is set to true.
+    public static final boolean USE_ADAPTIVE_ALIAS_SIZING = 
+        !Boolean.getBoolean( 
+            "org.glassfish.dynamic.copyobject.DisableAdaptiveAliasSizing" ) ;
 
     private DefaultClassCopierFactories() {}
 
+    /** Wrap map in a weak FastCache if USE_FAST_CACHE is set, otherwise
+     * just return map.  The caller is responsible for synchronizing access
+     * to the result in the same way as access to map.
+     */
+    public static <K,V> Map<K,V> makeFastCache( Map<K,V> map ) 
+    {
+        if (USE_FAST_CACHE) {
+            return new FastCache<K,V>( map, FAST_CACHE_SIZE, true,
+                RECORD_FAST_CACHE_STATISTICS ) ;
+        } else {
+            return map ;
+        }
+    }
+
     /** Create a ClassCopierFactory that handles arrays.  This 
      * ClassCopierFactory will return null on a get call if the 
      * class is not an array.
@@ -149,25 +262,64 @@ public abstract class DefaultClassCopierFactories
 	} ;
     }
 
+    /** Create the default CachingClassCopierFactory.  This is the
+     * ClassValue based cache unless USE_WEAK_HASH_MAP_CACHE is set.
+     */
     public static CachingClassCopierFactory makeCachingClassCopierFactory( )
+    {
+        if (USE_WEAK_HASH_MAP_CACHE) {
+            return makeWeakHashMapCachingClassCopierFactory() ;
+        } else {
+            return makeClassValueCachingClassCopierFactory() ;
+        }
+    }
+
+    /** Create a CachingClassCopierFactory that uses ClassValue, so that
+     * getClassCopier never locks or writes to shared state on a cache hit.
+     */
+    public static CachingClassCopierFactory 
+        makeClassValueCachingClassCopierFactory( )
+    {
+        return new ClassCopierFactoryClassValueImpl() ;
+    }
+
+    /** Create a CachingClassCopierFactory that uses a WeakHashMap guarded
+     * by a read/write lock.  Readers share the read lock, so this is safe,
+     * but all readers contend on the lock state.
+     */
+    public static CachingClassCopierFactory 
+        makeWeakHashMapCachingClassCopierFactory( )
     {
 	return new CachingClassCopierFactory() 
 	{
-	    private Map<Class<?>,ClassCopier> cache = USE_FAST_CACHE ?
-		new FastCache<Class<?>,ClassCopier>(
-                    new WeakHashMapSafeReadLock<Class<?>,ClassCopier>() ) :
-		new WeakHashMapSafeReadLock<Class<?>,ClassCopier>() ;
+	    private Map<Class<?>,ClassCopier> cache = makeFastCache(
+		new WeakHashMapSafeReadLock<Class<?>,ClassCopier>() ) ;
+
+            // Issue 14455: introduce read/write lock to reduce contention
+            // on getClassCopier.
+            private ReentrantReadWriteLock rwlock = 
+                new ReentrantReadWriteLock() ;
 
             @Override
 	    public void put( Class<?> cls, ClassCopier copier )
 	    {
-		cache.put( cls, copier ) ;
+                rwlock.writeLock().lock() ;
+                try {
+                    cache.put( cls, copier ) ;
+                } finally {
+                    rwlock.writeLock().unlock() ;
+                }
 	    }
 
             @Override
 	    public ClassCopier getClassCopier( Class<?> cls )
 	    {
-		return cache.get(cls) ;
+                rwlock.readLock().lock() ;
+                try {
+                    return cache.get(cls) ;
+                } finally {
+                    rwlock.readLock().unlock() ;
+                }
 	    }
 	};
     }
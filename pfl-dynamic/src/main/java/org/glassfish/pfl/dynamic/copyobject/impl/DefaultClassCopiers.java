@@ -49,15 +49,29 @@ public abstract class DefaultClassCopiers
 {
     private DefaultClassCopiers() {}
 
+    // The identity copier does not record source in oldToNew, since 
+    // every later copy of source is also source.
     private static ClassCopier identityClassCopier = 
-	new ClassCopierBase( "identity" ) 
+	new ClassCopier() 
 	{
             @Override
-	    public Object createCopy( 
-		Object source ) throws ReflectiveCopyException 
+	    public Object copy( Map<Object,Object> oldToNew, 
+		Object source ) 
 	    {
 		return source ;
 	    }
+
+            @Override
+	    public boolean isReflectiveClassCopier() 
+	    {
+		return false ;
+	    }
+
+            @Override
+	    public String toString() 
+	    {
+		return "ClassCopier[identity]" ;
+	    }
 	} ;
 
     /** Return a ClassCopier that simple returns its argument as its
@@ -123,6 +137,12 @@ public abstract class DefaultClassCopiers
 		return copier.copy( oldToNew, obj ) ;
 	    }
 
+            @Override
+	    protected boolean isDeferrable( Object source ) 
+	    {
+		return true ;
+	    }
+
             @Override
 	    public Object doCopy( Map<Object,Object> oldToNew,
 		Object source, Object result ) throws ReflectiveCopyException
@@ -130,6 +150,24 @@ public abstract class DefaultClassCopiers
 		Map sourceMap = (Map)source ;
 		Map resultMap = (Map)result ;
 
+		if (oldToNew instanceof WorkStackAliasMap) {
+		    // The copied keys may not be complete yet.
+		    WorkStackAliasMap workStack = (WorkStackAliasMap)oldToNew ;
+		    WorkStackAliasMap.PendingPuts puts = 
+			workStack.reservePuts( resultMap ) ;
+		    Object[] entries = new Object[ 2 * sourceMap.size() ] ;
+		    int index = 0 ;
+		    Iterator iter = sourceMap.entrySet().iterator() ;
+		    while (iter.hasNext()) {
+			Map.Entry entry = (Map.Entry)(iter.next()) ;
+			entries[index++] = myCopy( oldToNew, entry.getKey() ) ;
+			entries[index++] = myCopy( oldToNew, entry.getValue() ) ;
+		    }
+
+		    workStack.completePuts( puts, entries ) ;
+		    return result ;
+		}
+
 		Iterator iter = sourceMap.entrySet().iterator() ;
 		while (iter.hasNext()) {
 		    Map.Entry entry = (Map.Entry)(iter.next()) ;
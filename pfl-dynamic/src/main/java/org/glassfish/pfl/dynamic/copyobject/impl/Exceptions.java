@@ -40,6 +40,9 @@
 
 package org.glassfish.pfl.dynamic.copyobject.impl;
 
+import java.io.File;
+import java.io.IOException;
+
 import org.glassfish.pfl.basic.logex.Chain;
 import org.glassfish.pfl.basic.logex.ExceptionWrapper;
 import org.glassfish.pfl.basic.logex.Log;
@@ -107,6 +110,22 @@ public interface Exceptions {
     @Message( "Could not copy class {0}")
     ReflectiveCopyException cannotCopyClass( Class<?> cls ) ;
 
+    @Log( id = CCFPI_START + 3, level=LogLevel.FINE )
+    @Message( "Could not read the precompiled copier index: copiers will "
+        + "be generated at runtime" )
+    void couldNotReadCopierIndex( @Chain IOException exc ) ;
+
+    @Log( id = CCFPI_START + 4, level=LogLevel.FINE )
+    @Message( "Could not register the precompiled copier for {0}: it "
+        + "will be generated at runtime" )
+    void couldNotRegisterPrecompiledCopier( String className, 
+        @Chain Throwable t ) ;
+
+    @Log( id = CCFPI_START + 5, level=LogLevel.FINE )
+    @Message( "The precompiled copier for {0} does not match the field "
+        + "layout of the class: it will be generated at runtime" )
+    void precompiledCopierIsStale( String className ) ;
+
 // ClassCopierOrdinaryImpl
     static final int CCOI_START = CCFPI_START + EXCEPTIONS_PER_CLASS ;
 
@@ -118,4 +137,72 @@ public interface Exceptions {
         + ": This class already has a ClassCopier" )
     @Log( id = CCOI_START + 0, level=LogLevel.WARNING )
     ReflectiveCopyException noClassCopierForSuperclass( Class<?> superClass ) ;
+
+    @Message( "Could not generate a copier for {0}: using the Unsafe field "
+        + "copier instead" )
+    @Log( id = CCOI_START + 1, level=LogLevel.FINE )
+    void couldNotGenerateCopier( Class<?> cls, @Chain Throwable t ) ;
+
+    @Message( "Could not load the cached copier {0} for {1}: generating it "
+        + "again" )
+    @Log( id = CCOI_START + 2, level=LogLevel.FINE )
+    void couldNotLoadCachedCopier( String className, Class<?> cls, 
+        @Chain Throwable t ) ;
+
+    @Message( "Could not access the fields of {0} through MethodHandles: "
+        + "using the Unsafe field copier instead" )
+    @Log( id = CCOI_START + 3, level=LogLevel.FINE )
+    void couldNotAccessFields( Class<?> cls, @Chain Throwable t ) ;
+
+    @Message( "Recursive construction of the ClassFieldCopier for {0}" )
+    @Log( id = CCOI_START + 4, level=LogLevel.WARNING )
+    ReflectiveCopyException recursiveCopierConstruction( Class<?> cls ) ;
+
+// CodegenCopierCache
+    static final int CCC_START = CCOI_START + EXCEPTIONS_PER_CLASS ;
+
+    @Message( "Could not read cached copier {0}" )
+    @Log( id = CCC_START + 0, level=LogLevel.FINE )
+    void couldNotReadCachedCopier( File file, @Chain IOException exc ) ;
+
+    @Message( "Could not write cached copier {0}" )
+    @Log( id = CCC_START + 1, level=LogLevel.FINE )
+    void couldNotWriteCachedCopier( File file, @Chain IOException exc ) ;
+
+// JavaStreamObjectCopierImpl
+    static final int JSOCI_START = CCC_START + EXCEPTIONS_PER_CLASS ;
+
+    @Message( "Could not copy an instance of {0} through serialization" )
+    @Log( id = JSOCI_START + 0, level=LogLevel.FINE )
+    ReflectiveCopyException streamCopyFailed( Class<?> cls, 
+        @Chain Exception exc ) ;
+
+// LazyCopyClassCopier
+    static final int LCCC_START = JSOCI_START + EXCEPTIONS_PER_CLASS ;
+
+    @Message( "Could not generate a lazy copy proxy for {0}: copying it "
+        + "eagerly instead" )
+    @Log( id = LCCC_START + 0, level=LogLevel.FINE )
+    void couldNotGenerateLazyCopyProxy( Class<?> cls, @Chain Throwable t ) ;
+
+// ImmutableTypeRegistry
+    static final int ITR_START = LCCC_START + EXCEPTIONS_PER_CLASS ;
+
+    @Message( "Could not load an ImmutabilityRule" )
+    @Log( id = ITR_START + 0, level=LogLevel.WARNING )
+    void couldNotLoadImmutabilityRule( @Chain Throwable t ) ;
+
+    @Message( "ImmutabilityRule {0} claimed {1} is immutable, but {2}: "
+        + "the claim is ignored" )
+    @Log( id = ITR_START + 1, level=LogLevel.WARNING )
+    void rejectedImmutabilityClaim( Object rule, Class<?> cls, 
+        String reason ) ;
+
+// DefaultClassCopierFactories
+    static final int DCCF_START = ITR_START + EXCEPTIONS_PER_CLASS ;
+
+    @Message( "Unknown FieldCopierType {0}: using {1} instead" )
+    @Log( id = DCCF_START + 0, level=LogLevel.WARNING )
+    void unknownFieldCopierType( String type, 
+        @Chain IllegalArgumentException exc, Object defaultType ) ;
 }
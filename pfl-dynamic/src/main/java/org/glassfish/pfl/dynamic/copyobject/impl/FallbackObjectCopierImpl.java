@@ -40,15 +40,127 @@
 
 package org.glassfish.pfl.dynamic.copyobject.impl ;
 
+import java.util.Collections ;
+import java.util.Map ;
+import java.util.TreeMap ;
+import java.util.concurrent.ConcurrentHashMap ;
+import java.util.concurrent.ConcurrentMap ;
+import java.util.concurrent.atomic.AtomicLong ;
+
+import org.glassfish.pfl.dynamic.copyobject.spi.BatchObjectCopier ;
+import org.glassfish.pfl.dynamic.copyobject.spi.CopyobjectDefaults ;
 import org.glassfish.pfl.dynamic.copyobject.spi.ObjectCopier ;
 import org.glassfish.pfl.dynamic.copyobject.spi.ReflectiveCopyException ;
 import org.glassfish.pfl.basic.contain.Pair;
 
 /** Trys a first ObjectCopier.  If the first throws a ReflectiveCopyException,
  * falls back and tries a second ObjectCopier.
+ * <p>
+ * All instances share counters of the number of copies, and of the 
+ * number of copies that fell back for each class of copied object,
+ * which are available from getStatistics().
  */
 public class FallbackObjectCopierImpl extends Pair<ObjectCopier,ObjectCopier>
-    implements ObjectCopier {
+    implements BatchObjectCopier {
+
+    /** A snapshot of the fallback counters.
+     */
+    public static final class Statistics {
+        private final long copyCount ;
+        private final long fallbackCount ;
+        private final Map<String,Long> fallbackCounts ;
+
+        Statistics( long copyCount, long fallbackCount,
+            Map<String,Long> fallbackCounts ) {
+            this.copyCount = copyCount ;
+            this.fallbackCount = fallbackCount ;
+            this.fallbackCounts = fallbackCounts ;
+        }
+
+        /** Number of copy calls.
+         */
+        public long getCopyCount() {
+            return copyCount ;
+        }
+
+        /** Number of copy calls that fell back to the second copier.
+         */
+        public long getFallbackCount() {
+            return fallbackCount ;
+        }
+
+        /** Fraction (0.0 to 1.0) of copy calls that fell back to the 
+         * second copier, or 0 if there have been no calls.
+         */
+        public double getFallbackRate() {
+            return copyCount == 0 ? 0.0 : ((double)fallbackCount)/copyCount ;
+        }
+
+        /** Number of copy calls that fell back, by the name of the class 
+         * of the object passed to copy.
+         */
+        public Map<String,Long> getFallbackCounts() {
+            return fallbackCounts ;
+        }
+
+        @Override
+        public String toString() {
+            return "FallbackObjectCopierImpl.Statistics[copyCount=" 
+                + copyCount + " fallbackCount=" + fallbackCount
+                + " fallbackRate=" + getFallbackRate() 
+                + " fallbackCounts=" + fallbackCounts + "]" ;
+        }
+    }
+
+    // Every copy call updates the copy count, so it is striped to keep
+    // concurrent copies from contending on one counter.  Fallbacks are 
+    // rare enough for plain atomic counters.
+    private static final int COPY_COUNT = 0 ;
+    private static final StripedCounters copyCount = 
+        new StripedCounters( 1 ) ;
+    private static final AtomicLong fallbackCount = new AtomicLong() ;
+
+    // Keyed by class name, so that the counters do not keep classes 
+    // reachable.
+    private static final ConcurrentMap<String,AtomicLong> fallbackCounts =
+        new ConcurrentHashMap<String,AtomicLong>() ;
+
+    /** Return a snapshot of the counters of all FallbackObjectCopierImpl
+     * instances.  The counters are read one at a time, so the snapshot
+     * is not atomic with respect to copies that run concurrently.
+     */
+    public static Statistics getStatistics() {
+        Map<String,Long> counts = new TreeMap<String,Long>() ;
+        for (Map.Entry<String,AtomicLong> entry : fallbackCounts.entrySet()) {
+            counts.put( entry.getKey(), entry.getValue().get() ) ;
+        }
+
+        return new Statistics( copyCount.get( COPY_COUNT ), 
+            fallbackCount.get(),
+            Collections.unmodifiableMap( counts ) ) ;
+    }
+
+    /** Set all of the counters back to 0.
+     */
+    public static void resetStatistics() {
+        copyCount.reset() ;
+        fallbackCount.set( 0 ) ;
+        fallbackCounts.clear() ;
+    }
+
+    private static void recordFallback( Class<?> cls ) {
+        fallbackCount.incrementAndGet() ;
+        AtomicLong counter = fallbackCounts.get( cls.getName() ) ;
+        if (counter == null) {
+            AtomicLong newCounter = new AtomicLong() ;
+            counter = fallbackCounts.putIfAbsent( cls.getName(), newCounter ) ;
+            if (counter == null) {
+                counter = newCounter ;
+            }
+        }
+
+        counter.incrementAndGet() ;
+    }
 
     public FallbackObjectCopierImpl( ObjectCopier first, ObjectCopier second ) {
 	super( first, second ) ;
@@ -56,12 +168,37 @@ public class FallbackObjectCopierImpl extends Pair<ObjectCopier,ObjectCopier>
 
     @Override
     public Object copy( Object src ) throws ReflectiveCopyException {
-
+        copyCount.increment( COPY_COUNT ) ;
 	try {
 	    return first().copy( src ) ;
 	} catch (ReflectiveCopyException rce ) {
             Exceptions.self.failureInFallback( rce, src, src.getClass() ) ;
+            recordFallback( src.getClass() ) ;
+            if (CopyInstrumentation.isEnabled()) {
+                CopyInstrumentation.recordFallback( src.getClass(), rce ) ;
+            }
 	    return second().copy( src ) ;
 	}
     }
+
+    /** Copy all of the elements of objs with the first copier, or with
+     * the second copier if the first cannot copy all of them.  The whole
+     * batch falls back, so that aliasing is preserved across all of the 
+     * elements.  In the statistics, a batch counts as one copy call of an
+     * Object[].
+     */
+    @Override
+    public Object[] copyAll( Object[] objs ) throws ReflectiveCopyException {
+        copyCount.increment( COPY_COUNT ) ;
+	try {
+	    return CopyobjectDefaults.copyAll( first(), objs ) ;
+	} catch (ReflectiveCopyException rce ) {
+            Exceptions.self.failureInFallback( rce, objs, Object[].class ) ;
+            recordFallback( Object[].class ) ;
+            if (CopyInstrumentation.isEnabled()) {
+                CopyInstrumentation.recordFallback( Object[].class, rce ) ;
+            }
+	    return CopyobjectDefaults.copyAll( second(), objs ) ;
+	}
+    }
 }
@@ -40,9 +40,11 @@
 
 package org.glassfish.pfl.dynamic.copyobject.impl;
 
+import java.lang.ref.WeakReference ;
 import java.util.Set ;
 import java.util.Map ;
 import java.util.AbstractMap ;
+import java.util.concurrent.atomic.AtomicLong ;
 
 /** A cache intended to help speed up access to a Map.
  * The idea is that some maps have a few values that are retrieved
@@ -54,27 +56,188 @@ import java.util.AbstractMap ;
  * Note that all put operations MUST go through this class, 
  * because calling put on the underlying map can result in
  * the cache returning incorrect results for get.
+ * <p>
+ * Each slot in the table holds an immutable entry, so a reader always
+ * sees a matching key and value, even if another thread is replacing
+ * the slot at the same time.  The worst that a race can do is cause an
+ * extra lookup in the backing map.  The FastCache adds no synchronization
+ * for the backing map: callers must still make sure that the backing map
+ * is only accessed safely.
+ * <p>
+ * A weak FastCache holds both keys and values through weak references, so
+ * that it never keeps a Class (or anything reachable from a value) alive
+ * on its own.  A strong FastCache is cheaper, and is only suitable for
+ * caches with a short lifetime, such as one copy session.
  */
 public class FastCache<K,V> extends AbstractMap<K,V> {
-    public static final int TABLE_SIZE = 256 ; // must be a power of 2
+    public static final int TABLE_SIZE = 256 ; // default size
 
-    private Map<K,V> map ;
-    private Object[] keys = new Object[256] ;
-    private Object[] values = new Object[256] ;
+    private static final int MAX_TABLE_SIZE = 1 << 20 ;
 
-    private long cacheCount = 0 ;
-    private long totalCount = 0 ;
+    /** A snapshot of the hit statistics for a FastCache.
+     */
+    public static final class Statistics {
+        private final long totalCount ;
+        private final long cacheCount ;
 
-    public long getCacheCount() {
-	return cacheCount ;
+        Statistics( long totalCount, long cacheCount ) {
+            this.totalCount = totalCount ;
+            this.cacheCount = cacheCount ;
+        }
+
+        /** Number of get calls.
+         */
+        public long getTotalCount() {
+            return totalCount ;
+        }
+
+        /** Number of get calls answered by the cache without 
+         * consulting the backing map.
+         */
+        public long getCacheCount() {
+            return cacheCount ;
+        }
+
+        /** Fraction (0.0 to 1.0) of get calls that hit the cache,
+         * or 0 if there have been no calls.
+         */
+        public double getHitRate() {
+            return totalCount == 0 ? 0.0 : ((double)cacheCount)/totalCount ;
+        }
+
+        @Override
+        public String toString() {
+            return "FastCache.Statistics[totalCount=" + totalCount
+                + " cacheCount=" + cacheCount 
+                + " hitRate=" + getHitRate() + "]" ;
+        }
     }
 
-    public long getTotalCount() {
-	return totalCount ;
+    private abstract static class Entry {
+        abstract Object key() ;
+
+        abstract Object value() ;
+    }
+
+    private static final class StrongEntry extends Entry {
+        private final Object key ;
+        private final Object value ;
+
+        StrongEntry( Object key, Object value ) {
+            this.key = key ;
+            this.value = value ;
+        }
+
+        @Override
+        Object key() {
+            return key ;
+        }
+
+        @Override
+        Object value() {
+            return value ;
+        }
     }
 
+    // Both the key and the value must be weak: values like ClassCopiers
+    // usually reference their key, which would otherwise never be collected.
+    private static final class WeakEntry extends Entry {
+        private final WeakReference<Object> key ;
+        private final WeakReference<Object> value ;
+
+        WeakEntry( Object key, Object value ) {
+            this.key = new WeakReference<Object>( key ) ;
+            this.value = value == null ? null 
+                : new WeakReference<Object>( value ) ;
+        }
+
+        @Override
+        Object key() {
+            return key.get() ;
+        }
+
+        @Override
+        Object value() {
+            return value == null ? null : value.get() ;
+        }
+    }
+
+    private final Map<K,V> map ;
+    private final boolean weak ;
+    private final int mask ;
+    private final Entry[] entries ;
+
+    // These are null unless statistics are being recorded.
+    private final AtomicLong cacheCount ;
+    private final AtomicLong totalCount ;
+
+    /** Create a weak cache of the default size.  Statistics are not
+     * recorded, so get does no shared counter writes.
+     */
     public FastCache( Map<K,V> map ) {
+        this( map, TABLE_SIZE, true, false ) ;
+    }
+
+    /** Create a cache in front of map.
+     * @param map The backing map.
+     * @param tableSize The number of slots in the cache.  This is rounded
+     * up to a power of 2.
+     * @param weak true if the cache must only hold weak references to keys
+     * and values.
+     * @param recordStatistics true if hit statistics should be collected.
+     * This costs two atomic updates per get call.
+     */
+    public FastCache( Map<K,V> map, int tableSize, boolean weak,
+        boolean recordStatistics ) {
+
+        if (tableSize < 1 || tableSize > MAX_TABLE_SIZE) {
+            throw new IllegalArgumentException( 
+                "tableSize must be between 1 and " + MAX_TABLE_SIZE ) ;
+        }
+
 	this.map = map ;
+        this.weak = weak ;
+
+        int size = Integer.highestOneBit( tableSize ) ;
+        if (size < tableSize) {
+            size <<= 1 ;
+        }
+        mask = size - 1 ;
+        entries = new Entry[size] ;
+
+        if (recordStatistics) {
+            cacheCount = new AtomicLong() ;
+            totalCount = new AtomicLong() ;
+        } else {
+            cacheCount = null ;
+            totalCount = null ;
+        }
+    }
+
+    public long getCacheCount() {
+	return cacheCount == null ? 0 : cacheCount.get() ;
+    }
+
+    public long getTotalCount() {
+	return totalCount == null ? 0 : totalCount.get() ;
+    }
+
+    public boolean isRecordingStatistics() {
+        return totalCount != null ;
+    }
+
+    /** Return a snapshot of the hit statistics.  All counts are 0 if
+     * this cache is not recording statistics.
+     */
+    public Statistics getStatistics() {
+        // Read cacheCount first, so that the snapshot never shows
+        // more hits than calls.
+        long cc = getCacheCount() ;
+        return new Statistics( getTotalCount(), cc ) ;
+    }
+
+    public int getTableSize() {
+        return entries.length ;
     }
 
     @Override
@@ -83,27 +246,42 @@ public class FastCache<K,V> extends AbstractMap<K,V> {
     }
 
     private int hash( Object key ) {
-	// int hv = key.hashCode() ;
 	int hv = System.identityHashCode( key ) ;
-	return hv & (TABLE_SIZE-1) ;
+        // Spread the high bits down, as identity hash codes are often
+        // poorly distributed in the low bits.
+        hv ^= (hv >>> 16) ;
+	return hv & mask ;
+    }
+
+    private Entry makeEntry( Object key, Object value ) {
+        return weak ? new WeakEntry( key, value ) 
+            : new StrongEntry( key, value ) ;
     }
 
     @Override
     @SuppressWarnings("unchecked")
     public V get( Object key ) {
-	totalCount++ ;
+        if (totalCount != null) {
+            totalCount.incrementAndGet() ;
+        }
+
 	int slot = hash( key ) ;
-        @SuppressWarnings("unchecked")
-	K ckey = (K)keys[slot] ;
-	if (ckey == key ) {
-	    cacheCount++ ;
-	    return (V)values[slot] ;
-	} else {
-	    V result = map.get( key ) ;
-	    keys[slot] = key ;
-	    values[slot] = result ;
-	    return result ;
-	}
+        Entry entry = entries[slot] ;
+        if (entry != null && entry.key() == key) {
+            Object value = entry.value() ;
+            if (value != null) {
+                if (cacheCount != null) {
+                    cacheCount.incrementAndGet() ;
+                }
+                return (V)value ;
+            }
+        }
+
+        V result = map.get( key ) ;
+        if (result != null) {
+            entries[slot] = makeEntry( key, result ) ;
+        }
+        return result ;
     }
 
     /** Put the key and value in the cache and the underlying
@@ -115,8 +293,26 @@ public class FastCache<K,V> extends AbstractMap<K,V> {
     @Override
     public V put( K key, V value ) {
 	int slot = hash( key ) ;
-	keys[slot] = key ;
-	values[slot] = value ;
+        entries[slot] = makeEntry( key, value ) ;
 	return map.put( key, value ) ;
     }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V remove( Object key ) {
+        int slot = hash( key ) ;
+        Entry entry = entries[slot] ;
+        if (entry != null && entry.key() == key) {
+            entries[slot] = null ;
+        }
+        return map.remove( key ) ;
+    }
+
+    @Override
+    public void clear() {
+        for (int ctr=0; ctr<entries.length; ctr++) {
+            entries[ctr] = null ;
+        }
+        map.clear() ;
+    }
 }
@@ -189,7 +189,8 @@ public class FastCacheTest {
     }
 
     private static Map<String,Integer> map = new HashMap<String,Integer>() ;
-    private static FastCache<String,Integer> cache = new FastCache<String,Integer>( map ) ;
+    private static FastCache<String,Integer> cache = new FastCache<String,Integer>( map,
+        FastCache.TABLE_SIZE, true, true ) ;
 
     private static int NUM_LOOPS = 100 ;
 
@@ -0,0 +1,412 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.pfl.dynamic.copyobject.impl;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/** An identity map used for the oldToNew alias table of a copy operation.
+ * Like IdentityHashMap, this uses open addressing with linear probing over
+ * a single array that alternates keys and values, so a put never allocates
+ * an entry object.  Unlike IdentityHashMap, it starts with a small table
+ * that is allocated with the map, so that small graphs never resize, and
+ * it can be reset and reused for another copy operation without
+ * reallocating its table.
+ * <p>
+ * This is intended for the get/put pattern used by ClassCopier.copy.  The
+ * rest of the Map contract is supported, but entrySet iteration allocates
+ * an entry for each element.  As with IdentityHashMap, this class is not
+ * synchronized.
+ */
+public class IdentityAliasMap extends AbstractMap<Object,Object> {
+    /** Number of mappings the map can hold before its first resize.
+     */
+    public static final int INITIAL_CAPACITY = 32 ;
+
+    // Maximum number of slots (each slot uses two array elements).
+    private static final int MAX_CAPACITY = 1 << 28 ;
+
+    // Stands in for a null key in the table.
+    private static final Object NULL_KEY = new Object() ;
+
+    private Object[] table ;
+    private int size ;
+    private int threshold ;
+    private int modCount ;
+
+    public IdentityAliasMap() {
+        this( INITIAL_CAPACITY ) ;
+    }
+
+    /** Create a map that can hold expectedSize mappings before it
+     * needs to resize.
+     */
+    public IdentityAliasMap( int expectedSize ) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException( 
+                "expectedSize must not be negative" ) ;
+        }
+
+        allocate( capacityFor( expectedSize ) ) ;
+    }
+
+    // Return the power of 2 number of slots needed to hold size mappings.
+    // The table is kept at most 2/3 full.
+    private static int capacityFor( int size ) {
+        int minCapacity = size + (size >> 1) + 1 ;
+        if (minCapacity > MAX_CAPACITY || minCapacity < 0) {
+            return MAX_CAPACITY ;
+        }
+
+        int result = 4 ;
+        while (result < minCapacity) {
+            result <<= 1 ;
+        }
+        return result ;
+    }
+
+    private void allocate( int capacity ) {
+        table = new Object[2 * capacity] ;
+        threshold = (int)((2L * capacity) / 3) ;
+    }
+
+    private static Object maskNull( Object key ) {
+        return key == null ? NULL_KEY : key ;
+    }
+
+    private static Object unmaskNull( Object key ) {
+        return key == NULL_KEY ? null : key ;
+    }
+
+    // Return the even index at which probing starts for key, in a table of
+    // the given length.
+    private static int hash( Object key, int length ) {
+        int h = System.identityHashCode( key ) ;
+        // Multiply by -127, and left-shift to use least bit as part of hash
+        return ((h << 1) - (h << 8)) & (length - 1) ;
+    }
+
+    private static int nextKeyIndex( int index, int length ) {
+        return (index + 2 < length ? index + 2 : 0) ;
+    }
+
+    /** The number of mappings this map can hold without resizing.
+     */
+    public int capacity() {
+        return threshold ;
+    }
+
+    @Override
+    public int size() {
+        return size ;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0 ;
+    }
+
+    @Override
+    public Object get( Object key ) {
+        Object k = maskNull( key ) ;
+        Object[] tab = table ;
+        int len = tab.length ;
+        int index = hash( k, len ) ;
+        while (true) {
+            Object item = tab[index] ;
+            if (item == k) {
+                return tab[index + 1] ;
+            }
+            if (item == null) {
+                return null ;
+            }
+            index = nextKeyIndex( index, len ) ;
+        }
+    }
+
+    @Override
+    public boolean containsKey( Object key ) {
+        Object k = maskNull( key ) ;
+        Object[] tab = table ;
+        int len = tab.length ;
+        int index = hash( k, len ) ;
+        while (true) {
+            Object item = tab[index] ;
+            if (item == k) {
+                return true ;
+            }
+            if (item == null) {
+                return false ;
+            }
+            index = nextKeyIndex( index, len ) ;
+        }
+    }
+
+    @Override
+    public boolean containsValue( Object value ) {
+        Object[] tab = table ;
+        for (int ctr=1; ctr<tab.length; ctr+=2) {
+            if (tab[ctr] == value && tab[ctr - 1] != null) {
+                return true ;
+            }
+        }
+
+        return false ;
+    }
+
+    @Override
+    public Object put( Object key, Object value ) {
+        Object k = maskNull( key ) ;
+        Object[] tab = table ;
+        int len = tab.length ;
+        int index = hash( k, len ) ;
+
+        Object item ;
+        while ((item = tab[index]) != null) {
+            if (item == k) {
+                Object oldValue = tab[index + 1] ;
+                tab[index + 1] = value ;
+                return oldValue ;
+            }
+            index = nextKeyIndex( index, len ) ;
+        }
+
+        if (size >= threshold) {
+            resize() ;
+            return put( key, value ) ;
+        }
+
+        modCount++ ;
+        tab[index] = k ;
+        tab[index + 1] = value ;
+        size++ ;
+        return null ;
+    }
+
+    private void resize() {
+        Object[] oldTable = table ;
+        int oldLength = oldTable.length ;
+        if (oldLength == 2 * MAX_CAPACITY) {
+            if (size >= MAX_CAPACITY - 1) {
+                throw new IllegalStateException( "Capacity exhausted." ) ;
+            }
+            // Allow the table to fill up past 2/3 in this case.
+            threshold = MAX_CAPACITY - 1 ;
+            return ;
+        }
+
+        rehash( oldLength ) ;
+    }
+
+    // Move all mappings into a new table with capacity slots.
+    private void rehash( int capacity ) {
+        Object[] oldTable = table ;
+        int oldLength = oldTable.length ;
+        allocate( capacity ) ;
+        Object[] newTable = table ;
+        int newLength = newTable.length ;
+        for (int ctr=0; ctr<oldLength; ctr+=2) {
+            Object key = oldTable[ctr] ;
+            if (key != null) {
+                int index = hash( key, newLength ) ;
+                while (newTable[index] != null) {
+                    index = nextKeyIndex( index, newLength ) ;
+                }
+                newTable[index] = key ;
+                newTable[index + 1] = oldTable[ctr + 1] ;
+            }
+        }
+    }
+
+    /** Make sure that this map can hold expectedSize mappings without 
+     * resizing again.  This is used to presize an empty table when the
+     * size of the coming copy can be estimated.
+     */
+    public void ensureCapacity( int expectedSize ) {
+        if (expectedSize > threshold) {
+            int capacity = capacityFor( expectedSize ) ;
+            if (2 * capacity > table.length) {
+                modCount++ ;
+                rehash( capacity ) ;
+            }
+        }
+    }
+
+    @Override
+    public Object remove( Object key ) {
+        Object k = maskNull( key ) ;
+        Object[] tab = table ;
+        int len = tab.length ;
+        int index = hash( k, len ) ;
+
+        while (true) {
+            Object item = tab[index] ;
+            if (item == k) {
+                modCount++ ;
+                size-- ;
+                Object oldValue = tab[index + 1] ;
+                tab[index] = null ;
+                tab[index + 1] = null ;
+                closeDeletion( index ) ;
+                return oldValue ;
+            }
+            if (item == null) {
+                return null ;
+            }
+            index = nextKeyIndex( index, len ) ;
+        }
+    }
+
+    // Rehash any entries after a deleted slot that would otherwise no longer
+    // be reachable by probing from their hash position.
+    private void closeDeletion( int d ) {
+        Object[] tab = table ;
+        int len = tab.length ;
+
+        Object item ;
+        for (int i = nextKeyIndex( d, len ); (item = tab[i]) != null;
+            i = nextKeyIndex( i, len )) {
+
+            int r = hash( item, len ) ;
+            if ((i < r && (r <= d || d <= i)) || (r <= d && d <= i)) {
+                tab[d] = item ;
+                tab[d + 1] = tab[i + 1] ;
+                tab[i] = null ;
+                tab[i + 1] = null ;
+                d = i ;
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        reset( Integer.MAX_VALUE ) ;
+    }
+
+    /** Remove all mappings so that this map can be reused.  The current
+     * table is kept unless it can hold more than maxRetainedCapacity 
+     * mappings, in which case it is replaced by a table of the initial size,
+     * so that one very large copy does not keep a large table alive.
+     */
+    public void reset( int maxRetainedCapacity ) {
+        modCount++ ;
+        if (threshold > maxRetainedCapacity) {
+            allocate( capacityFor( INITIAL_CAPACITY ) ) ;
+        } else if (size > 0) {
+            Object[] tab = table ;
+            for (int ctr=0; ctr<tab.length; ctr++) {
+                tab[ctr] = null ;
+            }
+        }
+
+        size = 0 ;
+    }
+
+    @Override
+    public Set<Map.Entry<Object,Object>> entrySet() {
+        return new AbstractSet<Map.Entry<Object,Object>>() {
+            @Override
+            public Iterator<Map.Entry<Object,Object>> iterator() {
+                return new EntryIterator() ;
+            }
+
+            @Override
+            public int size() {
+                return size ;
+            }
+
+            @Override
+            public void clear() {
+                IdentityAliasMap.this.clear() ;
+            }
+        } ;
+    }
+
+    private class EntryIterator implements Iterator<Map.Entry<Object,Object>> {
+        private final Object[] tab = table ;
+        private int index = 0 ;
+        private int expectedModCount = modCount ;
+        private int lastReturned = -1 ;
+
+        EntryIterator() {
+            advance() ;
+        }
+
+        private void advance() {
+            while (index < tab.length && tab[index] == null) {
+                index += 2 ;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return index < tab.length ;
+        }
+
+        @Override
+        public Map.Entry<Object,Object> next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException() ;
+            }
+            if (index >= tab.length) {
+                throw new NoSuchElementException() ;
+            }
+
+            lastReturned = index ;
+            Map.Entry<Object,Object> result = 
+                new AbstractMap.SimpleImmutableEntry<Object,Object>(
+                    unmaskNull( tab[index] ), tab[index + 1] ) ;
+            index += 2 ;
+            advance() ;
+            return result ;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException() ;
+        }
+    }
+}
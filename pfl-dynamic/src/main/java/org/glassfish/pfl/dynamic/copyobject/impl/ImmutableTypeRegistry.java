@@ -0,0 +1,304 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.pfl.dynamic.copyobject.impl ;
+
+import java.lang.reflect.Field ;
+import java.lang.reflect.Method ;
+import java.lang.reflect.Modifier ;
+import java.util.ArrayList ;
+import java.util.HashSet ;
+import java.util.Iterator ;
+import java.util.List ;
+import java.util.ServiceConfigurationError ;
+import java.util.ServiceLoader ;
+import java.util.Set ;
+import java.util.concurrent.CopyOnWriteArrayList ;
+
+import org.glassfish.pfl.dynamic.copyobject.spi.CopyInterceptor ;
+import org.glassfish.pfl.dynamic.copyobject.spi.ImmutabilityRule ;
+import org.glassfish.pfl.dynamic.copyobject.spi.Immutable ;
+
+/** The registry of classes whose instances are known to be deeply 
+ * immutable without analyzing their fields.  A class is known immutable
+ * if it is:
+ * <ul>
+ * <li>one of the standard immutable classes: String, the boxed 
+ * primitives, Class, BigInteger, BigDecimal, UUID, Locale, URI, the 
+ * java.time value classes, and OptionalInt, OptionalLong and 
+ * OptionalDouble (the classes that are not present in the running JDK
+ * are skipped);
+ * <li>an enum, or a class annotated @Immutable;
+ * <li>a record whose components are all primitive, or known immutable
+ * and final;
+ * <li>claimed by an ImmutabilityRule, and the claim passes the checks
+ * described in ImmutabilityRule.
+ * </ul>
+ * CopyPlan uses this registry for its known immutable classes, so every 
+ * ClassCopierFactoryPipelineImpl copies the instances of these classes 
+ * with the identity copier, and fields of final known immutable types are
+ * copied by reference without looking up a ClassCopier.
+ * <p>
+ * Rules are loaded with ServiceLoader when this class is initialized.  
+ * The result for each class is computed once, so a rule registered later
+ * only affects classes that have not been examined yet.
+ */
+public final class ImmutableTypeRegistry {
+    private ImmutableTypeRegistry() {}
+
+    private static final Class<?>[] IMMUTABLE_CLASSES = new Class<?>[] {
+        String.class, 
+        Boolean.class, 
+        Byte.class, 
+        Character.class,
+        Short.class, 
+        Integer.class, 
+        Long.class, 
+        Float.class,
+        Double.class, 
+        Class.class,
+        java.math.BigInteger.class,
+        java.math.BigDecimal.class,
+        java.util.UUID.class,
+        java.util.Locale.class,
+        java.util.Currency.class,
+        java.net.URI.class
+    } ;
+
+    // Immutable classes that may not be present in the running JDK, so 
+    // they are loaded by name.
+    private static final String[] IMMUTABLE_CLASS_NAMES = new String[] {
+        "java.time.Duration",
+        "java.time.Instant",
+        "java.time.LocalDate",
+        "java.time.LocalDateTime",
+        "java.time.LocalTime",
+        "java.time.MonthDay",
+        "java.time.OffsetDateTime",
+        "java.time.OffsetTime",
+        "java.time.Period",
+        "java.time.Year",
+        "java.time.YearMonth",
+        "java.time.ZonedDateTime",
+        "java.time.ZoneOffset",
+        "java.time.ZoneRegion",
+        "java.util.OptionalDouble",
+        "java.util.OptionalInt",
+        "java.util.OptionalLong"
+    } ;
+
+    private static final Set<Class<?>> immutableClasses = 
+        new HashSet<Class<?>>() ;
+
+    // Class.isRecord, which only exists in Java 16 and later.
+    private static final Method isRecordMethod ;
+
+    private static final List<ImmutabilityRule> rules = 
+        new CopyOnWriteArrayList<ImmutabilityRule>() ;
+
+    static {
+        for (Class<?> cls : IMMUTABLE_CLASSES) {
+            immutableClasses.add( cls ) ;
+        }
+
+        for (String name : IMMUTABLE_CLASS_NAMES) {
+            try {
+                immutableClasses.add( Class.forName( name, false, null ) ) ;
+            } catch (ClassNotFoundException exc) {
+                // Not in this JDK: ignore it.
+            }
+        }
+
+        Method method = null ;
+        try {
+            method = Class.class.getMethod( "isRecord" ) ;
+        } catch (NoSuchMethodException exc) {
+            // No records before Java 16.
+        }
+        isRecordMethod = method ;
+
+        try {
+            Iterator<ImmutabilityRule> iter = 
+                ServiceLoader.load( ImmutabilityRule.class ).iterator() ;
+            while (iter.hasNext()) {
+                try {
+                    rules.add( iter.next() ) ;
+                } catch (ServiceConfigurationError err) {
+                    Exceptions.self.couldNotLoadImmutabilityRule( err ) ;
+                }
+            }
+        } catch (ServiceConfigurationError err) {
+            Exceptions.self.couldNotLoadImmutabilityRule( err ) ;
+        }
+    }
+
+    private static final ClassValue<Boolean> results = 
+        new ClassValue<Boolean>() {
+            @Override
+            protected Boolean computeValue( Class<?> cls ) {
+                return computeImmutable( cls ) ;
+            }
+        } ;
+
+    /** Return true if instances of exactly cls are known to be deeply
+     * immutable.  Note that a subclass of cls need not be immutable, 
+     * unless cls is final.
+     */
+    public static boolean isImmutable( Class<?> cls ) {
+        return results.get( cls ) ;
+    }
+
+    /** Add a rule that is consulted after the built-in rules and the 
+     * rules found by ServiceLoader.
+     */
+    public static void registerRule( ImmutabilityRule rule ) {
+        rules.add( rule ) ;
+    }
+
+    private static boolean computeImmutable( Class<?> cls ) {
+        if (cls.isPrimitive() || cls.isArray() || cls.isInterface()) {
+            return false ;
+        }
+
+        if (isBuiltInImmutable( cls )) {
+            return true ;
+        }
+
+        if (isRecord( cls ) && findMutableRecordReason( cls ) == null) {
+            return true ;
+        }
+
+        for (ImmutabilityRule rule : rules) {
+            if (rule.isImmutable( cls )) {
+                String reason = findInvalidClaimReason( cls ) ;
+                if (reason == null) {
+                    return true ;
+                }
+
+                Exceptions.self.rejectedImmutabilityClaim( rule, cls, 
+                    reason ) ;
+            }
+        }
+
+        return false ;
+    }
+
+    private static boolean isBuiltInImmutable( Class<?> cls ) {
+        return immutableClasses.contains( cls ) 
+            || Enum.class.isAssignableFrom( cls )
+            || cls.isAnnotationPresent( Immutable.class ) ;
+    }
+
+    private static boolean isRecord( Class<?> cls ) {
+        if (isRecordMethod == null) {
+            return false ;
+        }
+
+        try {
+            return (Boolean)isRecordMethod.invoke( cls ) ;
+        } catch (Exception exc) {
+            return false ;
+        }
+    }
+
+    // Return null if the record root is deeply immutable, otherwise the
+    // reason it is not.  Records are final and their fields are final, so
+    // only the types of the components need to be checked, including
+    // those of any records reachable through the components.
+    private static String findMutableRecordReason( Class<?> root ) {
+        Set<Class<?>> visited = new HashSet<Class<?>>() ;
+        List<Class<?>> pending = new ArrayList<Class<?>>() ;
+        visited.add( root ) ;
+        pending.add( root ) ;
+        while (!pending.isEmpty()) {
+            Class<?> cls = pending.remove( pending.size() - 1 ) ;
+            if (CopyInterceptor.class.isAssignableFrom( cls )) {
+                return cls.getName() + " is a CopyInterceptor" ;
+            }
+
+            for (Field fld : CopyPlan.getCopyableFields( cls )) {
+                Class<?> fldType = fld.getType() ;
+                if (fldType.isPrimitive()) {
+                    continue ;
+                }
+
+                if (!Modifier.isFinal( fldType.getModifiers() )) {
+                    return "field " + fld.getName() + " of " 
+                        + cls.getName() + " may hold a subclass of " 
+                        + fldType.getName() ;
+                }
+
+                if (isRecord( fldType )) {
+                    if (visited.add( fldType )) {
+                        pending.add( fldType ) ;
+                    }
+                } else if (fldType.isArray() || !isImmutable( fldType )) {
+                    return "field " + fld.getName() + " of " 
+                        + cls.getName() + " is not immutable" ;
+                }
+            }
+        }
+
+        return null ;
+    }
+
+    // Return null if a rule may claim that cls is immutable, otherwise the
+    // reason it may not.  This only rejects claims that are certainly 
+    // wrong: it cannot prove that private fields never change.
+    static String findInvalidClaimReason( Class<?> cls ) {
+        if (Modifier.isAbstract( cls.getModifiers() )) {
+            return "it is abstract" ;
+        }
+
+        if (CopyInterceptor.class.isAssignableFrom( cls )) {
+            return "it is a CopyInterceptor" ;
+        }
+
+        for (Field fld : CopyPlan.getCopyableFields( cls )) {
+            int mods = fld.getModifiers() ;
+            if (!Modifier.isFinal( mods ) && !Modifier.isPrivate( mods )) {
+                return "field " + fld.getName() 
+                    + " is neither final nor private" ;
+            }
+        }
+
+        return null ;
+    }
+}
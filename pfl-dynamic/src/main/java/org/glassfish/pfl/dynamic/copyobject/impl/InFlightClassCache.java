@@ -0,0 +1,167 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package org.glassfish.pfl.dynamic.copyobject.impl ;
+
+import java.util.Collections ;
+import java.util.Map ;
+import java.util.WeakHashMap ;
+import java.util.concurrent.ConcurrentHashMap ;
+import java.util.concurrent.ConcurrentMap ;
+
+import org.glassfish.pfl.dynamic.copyobject.spi.ReflectiveCopyException ;
+
+/** A cache of values that are expensive to build for a Class, such as
+ * ClassFieldCopiers.  Only one thread builds the value for a Class: other 
+ * threads that need it at the same time wait for that build, while values
+ * for different classes are built in parallel.
+ * <p>
+ * Building a value may require the values for other classes (for example,
+ * the copier of a superclass), but never the value that is being built,
+ * so a thread that asks for the value it is already building gets a 
+ * ReflectiveCopyException instead of waiting for itself.  Threads cannot 
+ * deadlock as long as the classes needed by a build never depend on the 
+ * class being built, which is true of superclasses.
+ * <p>
+ * A failed build is not cached: threads that were waiting for it try
+ * again themselves.
+ */
+final class InFlightClassCache<V> {
+    /** Builds the value for a Class.
+     */
+    interface Builder<V> {
+        V build( Class<?> cls ) throws ReflectiveCopyException ;
+    }
+
+    // A build in progress.
+    private static final class Build {
+        private final Thread owner = Thread.currentThread() ;
+        private boolean done ;      // guarded by this
+
+        synchronized void finish() {
+            done = true ;
+            notifyAll() ;
+        }
+
+        synchronized void await() {
+            boolean interrupted = false ;
+            while (!done) {
+                try {
+                    wait() ;
+                } catch (InterruptedException exc) {
+                    // The build cannot be abandoned half way, so wait for
+                    // it and restore the interrupt afterwards.
+                    interrupted = true ;
+                }
+            }
+
+            if (interrupted) {
+                Thread.currentThread().interrupt() ;
+            }
+        }
+    }
+
+    private final Map<Class<?>,V> cache ;
+    private final ConcurrentMap<Class<?>,Build> inFlight =
+        new ConcurrentHashMap<Class<?>,Build>() ;
+
+    /** Create a cache that holds its classes and values weakly.  The 
+     * result is wrapped in a FastCache if USE_FAST_CACHE is set.
+     */
+    InFlightClassCache() {
+        cache = DefaultClassCopierFactories.makeFastCache(
+            Collections.synchronizedMap( new WeakHashMap<Class<?>,V>() ) ) ;
+    }
+
+    /** Return the cache of completed values.
+     */
+    Map<Class<?>,V> getCache() {
+        return cache ;
+    }
+
+    /** Return the value for cls if it has been built, otherwise null.
+     */
+    V peek( Class<?> cls ) {
+        return cache.get( cls ) ;
+    }
+
+    /** Enter value as the value for cls, replacing any value that has 
+     * already been built.
+     */
+    void put( Class<?> cls, V value ) {
+        cache.put( cls, value ) ;
+    }
+
+    /** Return the value for cls, building it with builder if needed.
+     */
+    V get( Class<?> cls, Builder<V> builder ) throws ReflectiveCopyException {
+        for (;;) {
+            V result = cache.get( cls ) ;
+            if (result != null) {
+                return result ;
+            }
+
+            Build build = new Build() ;
+            Build current = inFlight.putIfAbsent( cls, build ) ;
+            if (current == null) {
+                try {
+                    // Another build may have finished since the first get.
+                    result = cache.get( cls ) ;
+                    if (result == null) {
+                        result = builder.build( cls ) ;
+                        cache.put( cls, result ) ;
+                    }
+
+                    return result ;
+                } finally {
+                    inFlight.remove( cls, build ) ;
+                    build.finish() ;
+                }
+            }
+
+            if (current.owner == Thread.currentThread()) {
+                throw Exceptions.self.recursiveCopierConstruction( cls ) ;
+            }
+
+            current.await() ;
+        }
+    }
+}
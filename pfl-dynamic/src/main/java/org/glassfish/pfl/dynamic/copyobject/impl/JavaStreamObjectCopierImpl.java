@@ -37,33 +37,313 @@
  * only if the new code is made subject to such option by the copyright
  * holder.
  */
-
 package org.glassfish.pfl.dynamic.copyobject.impl ;
 
+import java.io.IOException ;
 import java.io.InputStream ;
-import java.io.ByteArrayInputStream ;
-import java.io.ByteArrayOutputStream ;
 import java.io.ObjectInputStream ;
 import java.io.ObjectOutputStream ;
+import java.io.ObjectStreamClass ;
+import java.io.OutputStream ;
+import java.lang.ref.WeakReference ;
+import java.util.ArrayList ;
+import java.util.List ;
+import java.util.Map ;
+import java.util.WeakHashMap ;
+
+import org.glassfish.pfl.dynamic.copyobject.spi.BatchObjectCopier ;
+import org.glassfish.pfl.dynamic.copyobject.spi.ReflectiveCopyException ;
+
+/** Copies objects by serializing them and reading them back.
+ * <p>
+ * Each thread keeps one pair of object streams connected through a 
+ * growable byte buffer, which is reset (not reallocated) for every copy,
+ * and read in place by the input stream.  The streams are reset after 
+ * each copy, so that no object is shared between copies, but class 
+ * descriptors are kept (weakly) in a per-thread table, and only their 
+ * index in the table is written to the stream.  The reading side resolves 
+ * classes directly from the table, instead of looking them up by name.
+ * <p>
+ * Failures are reported as ReflectiveCopyException.  The streams of the
+ * thread are discarded after a failure, since their state is unknown.
+ */
+public class JavaStreamObjectCopierImpl implements BatchObjectCopier {
+    private static final int INITIAL_BUFFER_SIZE = 8 * 1024 ;
+
+    // A buffer that grew larger than this for a large copy is dropped 
+    // afterwards, so that one large copy does not pin memory in every 
+    // thread.
+    private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024 ;
+
+    // The descriptor table is cleared when it reaches this size, so that
+    // a thread that copies many different classes does not keep all of
+    // them (and their ClassLoaders) reachable.
+    private static final int MAX_DESCRIPTORS = 1024 ;
+
+    // The streams count every object they read for serialization filters,
+    // even across resets, so they are replaced after this many copies.
+    private static final int MAX_COPIES_PER_STREAM = 4096 ;
 
-import org.glassfish.pfl.dynamic.copyobject.spi.ObjectCopier ;
+    private static final ThreadLocal<StreamPair> streams =
+        new ThreadLocal<StreamPair>() ;
 
-public class JavaStreamObjectCopierImpl implements ObjectCopier {
     @Override
-    public Object copy(Object obj) {
-	try {
-	    ByteArrayOutputStream os = new ByteArrayOutputStream( 10000 ) ;
-	    ObjectOutputStream oos = new ObjectOutputStream( os ) ;
-	    oos.writeObject( obj ) ;
-
-	    byte[] arr = os.toByteArray() ;
-	    InputStream is = new ByteArrayInputStream( arr ) ;
-	    ObjectInputStream ois = new ObjectInputStream( is ) ;
-
-	    return ois.readObject();
-	} catch (Exception exc) {
-	    System.out.println( "Failed with exception:" + exc ) ;
-	    return null ;
-	}
+    public Object copy( Object obj ) throws ReflectiveCopyException {
+        if (obj == null) {
+            return null ;
+        }
+
+        StreamPair pair = streams.get() ;
+        boolean reentered = pair != null && pair.inUse ;
+        try {
+            if (pair == null || reentered 
+                || pair.copies >= MAX_COPIES_PER_STREAM) {
+                // A copy that re-enters this copier (for example from a
+                // writeObject method) gets streams of its own.
+                pair = new StreamPair( pair == null || reentered 
+                    ? new DescriptorTable() : pair.descriptors ) ;
+                if (!reentered) {
+                    streams.set( pair ) ;
+                }
+            }
+
+            pair.inUse = true ;
+            Object result = pair.copy( obj ) ;
+            pair.inUse = false ;
+            return result ;
+        } catch (IOException | ClassNotFoundException exc) {
+            discard( reentered ) ;
+            throw Exceptions.self.streamCopyFailed( obj.getClass(), exc ) ;
+        } catch (RuntimeException | Error exc) {
+            discard( reentered ) ;
+            throw exc ;
+        }
+    }
+
+    /** Copy all of the elements of objs by serializing objs itself, so 
+     * that the batch only needs one write and read, and aliasing is 
+     * preserved across all of the elements.  (Separate calls to copy do
+     * not preserve aliasing with this copier.)  The result has the same
+     * component type as objs.
+     */
+    @Override
+    public Object[] copyAll( Object[] objs ) throws ReflectiveCopyException {
+        return (Object[])copy( objs ) ;
+    }
+
+    private static void discard( boolean reentered ) {
+        if (!reentered) {
+            streams.remove() ;
+        }
+    }
+
+    // The object streams for one thread, and the buffer between them.
+    private static final class StreamPair {
+        private final PipeBuffer buffer ;
+        private final DescriptorTable descriptors ;
+        private final ObjectOutputStream out ;
+        private final ObjectInputStream in ;
+        private int copies ;
+        private boolean inUse ;
+
+        StreamPair( DescriptorTable descriptors ) throws IOException {
+            this.buffer = new PipeBuffer() ;
+            this.descriptors = descriptors ;
+            out = new TableObjectOutputStream( buffer, descriptors ) ;
+            // The input stream reads the stream header in its constructor.
+            out.flush() ;
+            in = new TableObjectInputStream( buffer.getInputStream(), 
+                descriptors ) ;
+            buffer.reset() ;
+        }
+
+        Object copy( Object obj ) throws IOException, 
+            ClassNotFoundException {
+
+            copies++ ;
+            descriptors.trim() ;
+            try {
+                out.writeObject( obj ) ;
+                // Reset both streams, so that neither keeps references to 
+                // the objects of this copy.  The input stream only sees 
+                // the reset when it reads the next object, hence the null.
+                out.reset() ;
+                out.writeObject( null ) ;
+                out.flush() ;
+
+                Object result = in.readObject() ;
+                in.readObject() ;
+                return result ;
+            } finally {
+                buffer.reset() ;
+                descriptors.endCopy() ;
+            }
+        }
+    }
+
+    // Descriptors of all classes written by one thread.  The writing side
+    // writes the index of each descriptor, and the reading side uses the
+    // descriptor at that index, so the descriptor must be read in the
+    // same JVM in which it was written.
+    //
+    // A pooled thread may outlive the applications whose objects it 
+    // copied, so the table only refers to descriptors weakly, and does 
+    // not keep their classes (and ClassLoaders) reachable.  The 
+    // descriptors used by the current copy are held strongly until the 
+    // copy ends, so that none of them is collected between writing and
+    // reading its index.  (ObjectStreamClass does not override equals, 
+    // so the WeakHashMap compares descriptors by identity.)
+    private static final class DescriptorTable {
+        private final Map<ObjectStreamClass,Integer> indexes =
+            new WeakHashMap<ObjectStreamClass,Integer>() ;
+        private final List<WeakReference<ObjectStreamClass>> descriptors =
+            new ArrayList<WeakReference<ObjectStreamClass>>() ;
+        private final List<ObjectStreamClass> inCopy =
+            new ArrayList<ObjectStreamClass>() ;
+
+        int indexOf( ObjectStreamClass desc ) {
+            Integer index = indexes.get( desc ) ;
+            if (index == null) {
+                index = descriptors.size() ;
+                indexes.put( desc, index ) ;
+                descriptors.add( new WeakReference<ObjectStreamClass>( 
+                    desc ) ) ;
+            }
+
+            inCopy.add( desc ) ;
+            return index ;
+        }
+
+        ObjectStreamClass get( int index ) {
+            return descriptors.get( index ).get() ;
+        }
+
+        // Only called between copies, when no descriptor index is in
+        // any stream.  Slots of collected descriptors are not reused, so
+        // they also count towards MAX_DESCRIPTORS.
+        void trim() {
+            if (descriptors.size() >= MAX_DESCRIPTORS) {
+                indexes.clear() ;
+                descriptors.clear() ;
+            }
+        }
+
+        void endCopy() {
+            inCopy.clear() ;
+        }
+    }
+
+    private static final class TableObjectOutputStream 
+        extends ObjectOutputStream {
+
+        private final DescriptorTable descriptors ;
+
+        TableObjectOutputStream( OutputStream os, 
+            DescriptorTable descriptors ) throws IOException {
+            super( os ) ;
+            this.descriptors = descriptors ;
+        }
+
+        @Override
+        protected void writeClassDescriptor( ObjectStreamClass desc ) 
+            throws IOException {
+            writeInt( descriptors.indexOf( desc ) ) ;
+        }
+    }
+
+    private static final class TableObjectInputStream 
+        extends ObjectInputStream {
+
+        private final DescriptorTable descriptors ;
+
+        TableObjectInputStream( InputStream is, 
+            DescriptorTable descriptors ) throws IOException {
+            super( is ) ;
+            this.descriptors = descriptors ;
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor() 
+            throws IOException {
+            return descriptors.get( readInt() ) ;
+        }
+
+        @Override
+        protected Class<?> resolveClass( ObjectStreamClass desc ) 
+            throws IOException, ClassNotFoundException {
+            // Every descriptor comes from the table, and so was created 
+            // for a local class.
+            Class<?> cls = desc.forClass() ;
+            return cls == null ? super.resolveClass( desc ) : cls ;
+        }
+    }
+
+    // A growable byte buffer that is written by an ObjectOutputStream and
+    // read in place by an ObjectInputStream.
+    private static final class PipeBuffer extends OutputStream {
+        private byte[] buf = new byte[INITIAL_BUFFER_SIZE] ;
+        private int count ;
+        private int pos ;
+
+        private final InputStream input = new InputStream() {
+            @Override
+            public int read() {
+                return pos < count ? buf[pos++] & 0xFF : -1 ;
+            }
+
+            @Override
+            public int read( byte[] bytes, int off, int len ) {
+                if (len == 0) {
+                    return 0 ;
+                }
+
+                if (pos >= count) {
+                    return -1 ;
+                }
+
+                int num = Math.min( len, count - pos ) ;
+                System.arraycopy( buf, pos, bytes, off, num ) ;
+                pos += num ;
+                return num ;
+            }
+
+            @Override
+            public int available() {
+                return count - pos ;
+            }
+        } ;
+
+        InputStream getInputStream() {
+            return input ;
+        }
+
+        private void ensureCapacity( int size ) {
+            if (size > buf.length) {
+                byte[] newBuf = new byte[Math.max( size, buf.length << 1 )] ;
+                System.arraycopy( buf, 0, newBuf, 0, count ) ;
+                buf = newBuf ;
+            }
+        }
+
+        @Override
+        public void write( int b ) {
+            ensureCapacity( count + 1 ) ;
+            buf[count++] = (byte)b ;
+        }
+
+        @Override
+        public void write( byte[] bytes, int off, int len ) {
+            ensureCapacity( count + len ) ;
+            System.arraycopy( bytes, off, buf, count, len ) ;
+            count += len ;
+        }
+
+        void reset() {
+            count = 0 ;
+            pos = 0 ;
+            if (buf.length > MAX_RETAINED_BUFFER_SIZE) {
+                buf = new byte[INITIAL_BUFFER_SIZE] ;
+            }
+        }
     }
 }
@@ -0,0 +1,249 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package org.glassfish.pfl.dynamic.copyobject.impl ;
+
+import java.lang.reflect.Constructor ;
+import java.util.Map ;
+import java.util.concurrent.ConcurrentMap ;
+
+import org.glassfish.pfl.dynamic.copyobject.spi.LazyCopy ;
+import org.glassfish.pfl.dynamic.copyobject.spi.ReflectiveCopyException ;
+
+/** ClassCopier for a class that implements a @LazyCopy interface.  
+ * Instead of copying its source, this returns a proxy (generated by
+ * LazyCopyProxyGenerator) that delays the copy until it is needed.
+ * The proxy makes the copy with the ClassCopier that this wraps.
+ * <p>
+ * The proxy only implements the @LazyCopy interfaces of the class, so
+ * this is only used where the copy is stored in a place whose declared 
+ * type is one of those interfaces (see isLazyCopyType), or is returned
+ * as the root of a copy.  Everywhere else, instances of the class are
+ * copied eagerly (see PipelineClassCopierFactory.getLazyClassCopier).
+ */
+final class LazyCopyClassCopier implements ClassCopier {
+    // The proxy constructor for each class, or the Throwable that 
+    // prevented the generation of the proxy class.
+    private static final ClassValue<Object> proxyConstructors =
+        new ClassValue<Object>() {
+            @Override
+            protected Object computeValue( Class<?> cls ) {
+                try {
+                    return getProxyConstructor( cls ) ;
+                } catch (RuntimeException | Error exc) {
+                    return exc ;
+                }
+            }
+        } ;
+
+    // Copies an existing proxy (see LazyCopyProxyBase.copyProxy).
+    private static final ClassCopier proxyClassCopier = new ClassCopier() {
+        @Override
+        public Object copy( Map<Object,Object> oldToNew, Object source )
+            throws ReflectiveCopyException {
+            return ((LazyCopyProxyBase)source).copyProxy( oldToNew ) ;
+        }
+
+        @Override
+        public boolean isReflectiveClassCopier() {
+            return false ;
+        }
+    } ;
+
+    private final ClassCopier eagerCopier ;
+    private final Constructor<?> proxyConstructor ;
+
+    private LazyCopyClassCopier( ClassCopier eagerCopier, 
+        Constructor<?> proxyConstructor ) {
+        this.eagerCopier = eagerCopier ;
+        this.proxyConstructor = proxyConstructor ;
+    }
+
+    /** Return true if instances of cls may be copied lazily.
+     */
+    static boolean isLazyCopyClass( Class<?> cls ) {
+        return DefaultClassCopierFactories.USE_LAZY_COPY 
+            && !LazyCopyProxyGenerator.getLazyInterfaces( cls ).isEmpty() ;
+    }
+
+    /** Return true if a proxy may be stored in a field or array element
+     * whose declared type is type.  This is only the case for a LazyCopy
+     * interface, since every value of that type implements it, and so
+     * its proxy does too.
+     */
+    static boolean isLazyCopyType( Class<?> type ) {
+        return DefaultClassCopierFactories.USE_LAZY_COPY 
+            && type.isInterface() 
+            && type.isAnnotationPresent( LazyCopy.class ) ;
+    }
+
+    /** Return the ClassCopier for instances of a class that implements a
+     * LazyCopy interface, where the copy cannot be a proxy.  This copies
+     * with eagerCopier.
+     */
+    static ClassCopier makeEagerCopier( ClassCopier eagerCopier ) {
+        return new EagerCopier( eagerCopier ) ;
+    }
+
+    /** Return true if copier was returned by makeEagerCopier.
+     */
+    static boolean isEagerCopier( ClassCopier copier ) {
+        return copier instanceof EagerCopier ;
+    }
+
+    // If an object has already been reached through a LazyCopy interface
+    // in the same copy, the alias table maps it to its proxy, which 
+    // cannot be stored here.  The copy made by the proxy is used instead,
+    // so that both references still refer to the same object.
+    private static final class EagerCopier implements ClassCopier {
+        private final ClassCopier copier ;
+
+        EagerCopier( ClassCopier copier ) {
+            this.copier = copier ;
+        }
+
+        @Override
+        public Object copy( Map<Object,Object> oldToNew, Object source )
+            throws ReflectiveCopyException {
+            Object result = oldToNew.get( source ) ;
+            if (result instanceof LazyCopyProxyBase) {
+                return ((LazyCopyProxyBase)result).lazyWriteTarget() ;
+            }
+
+            return copier.copy( oldToNew, source ) ;
+        }
+
+        @Override
+        public boolean isReflectiveClassCopier() {
+            return copier.isReflectiveClassCopier() ;
+        }
+    }
+
+    /** Return the ClassCopier for the generated proxy classes.
+     */
+    static ClassCopier getProxyClassCopier() {
+        return proxyClassCopier ;
+    }
+
+    /** Return a ClassCopier that copies instances of cls lazily, using
+     * eagerCopier (from makeEagerCopier) to make the real copies.  If the proxy class for cls
+     * cannot be generated, this returns eagerCopier.
+     */
+    static ClassCopier makeLazyCopier( Class<?> cls, 
+        ClassCopier eagerCopier ) {
+
+        Object value = proxyConstructors.get( cls ) ;
+        if (value instanceof Throwable) {
+            Exceptions.self.couldNotGenerateLazyCopyProxy( cls, 
+                (Throwable)value ) ;
+            return eagerCopier ;
+        }
+
+        return new LazyCopyClassCopier( eagerCopier, (Constructor<?>)value ) ;
+    }
+
+    // Only one thread may define the proxy class, since a class can only 
+    // be defined once in a ClassLoader, so this also checks for a proxy 
+    // class that another ClassValue computation has already defined.
+    private static synchronized Constructor<?> getProxyConstructor( 
+        Class<?> cls ) {
+
+        ClassLoader cl = cls.getClassLoader() ;
+        if (cl == null) {
+            throw new IllegalArgumentException( cls 
+                + " is loaded by the bootstrap ClassLoader" ) ;
+        }
+
+        LazyCopyProxyGenerator generator = new LazyCopyProxyGenerator( cls ) ;
+        Class<?> proxyClass ;
+        try {
+            proxyClass = Class.forName( generator.getClassName(), false, cl ) ;
+        } catch (ClassNotFoundException exc) {
+            proxyClass = generator.create( cls.getProtectionDomain(), cl ) ;
+        }
+
+        try {
+            return proxyClass.getConstructor( Object.class, 
+                ClassCopier.class ) ;
+        } catch (NoSuchMethodException exc) {
+            throw new IllegalStateException( exc ) ;
+        }
+    }
+
+    ClassCopier getEagerCopier() {
+        return eagerCopier ;
+    }
+
+    @Override
+    public Object copy( Map<Object,Object> oldToNew, Object source ) 
+        throws ReflectiveCopyException {
+
+        Object result = oldToNew.get( source ) ;
+        if (result != null) {
+            return result ;
+        }
+
+        try {
+            result = proxyConstructor.newInstance( source, this ) ;
+        } catch (Exception exc) {
+            throw new ReflectiveCopyException( 
+                "Could not create the lazy copy proxy for " 
+                    + source.getClass().getName(), exc ) ;
+        }
+
+        if (oldToNew instanceof ConcurrentMap) {
+            Object existing = ((ConcurrentMap<Object,Object>)oldToNew)
+                .putIfAbsent( source, result ) ;
+            if (existing != null) {
+                result = existing ;
+            }
+        } else {
+            oldToNew.put( source, result ) ;
+        }
+
+        return result ;
+    }
+
+    @Override
+    public boolean isReflectiveClassCopier() {
+        return eagerCopier.isReflectiveClassCopier() ;
+    }
+}
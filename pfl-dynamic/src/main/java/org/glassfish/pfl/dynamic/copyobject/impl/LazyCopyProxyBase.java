@@ -0,0 +1,170 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.pfl.dynamic.copyobject.impl ;
+
+import java.util.Map ;
+
+import org.glassfish.pfl.dynamic.copyobject.spi.ReflectiveCopyException ;
+
+/** Base class of the lazy copy proxies generated by 
+ * LazyCopyProxyGenerator (see LazyCopy).  The generated methods only
+ * choose the target of each call through the methods of this class, so 
+ * that all of the state of a proxy is kept here.
+ * <p>
+ * All copies made by a proxy, including the copies of results of 
+ * @ReadOnly methods, share one alias table, so a result that is returned
+ * before the proxy copies the original object is the same object as the
+ * corresponding part of the copy.
+ */
+public abstract class LazyCopyProxyBase {
+    private final Object original ;
+    private final LazyCopyClassCopier owner ;
+
+    // Guarded by this.
+    private final Map<Object,Object> aliases ;
+
+    private volatile Object copy ;
+
+    protected LazyCopyProxyBase( Object original, ClassCopier owner ) {
+        this.original = original ;
+        this.owner = (LazyCopyClassCopier)owner ;
+        aliases = DefaultClassCopierFactories.USE_ITERATIVE_COPY 
+            ? new WorkStackAliasMap() : new IdentityAliasMap() ;
+    }
+
+    /** Return the object on which a @ReadOnly method is called: the 
+     * original object, or the copy if it has been made.
+     */
+    protected final Object lazyReadTarget() {
+        Object result = copy ;
+        return result == null ? original : result ;
+    }
+
+    /** Return the object on which a method that is not @ReadOnly is 
+     * called.  This is always the copy, which is made on the first call.
+     */
+    protected final Object lazyWriteTarget() {
+        Object result = copy ;
+        return result == null ? makeCopy() : result ;
+    }
+
+    /** Return result, or a copy of it if it was returned by the original
+     * object (target is the object returned by lazyReadTarget).
+     */
+    protected final Object lazyCopyResult( Object target, Object result ) {
+        if (result == null || target != original) {
+            return result ;
+        }
+
+        synchronized (this) {
+            ClassCopier copier = ObjectCopierImpl.getClassCopierFactory()
+                .getClassCopier( result.getClass() ) ;
+            return complete( copier.copy( aliases, result ) ) ;
+        }
+    }
+
+    private synchronized Object makeCopy() {
+        if (copy == null) {
+            copy = complete( owner.getEagerCopier().copy( aliases, original ) ) ;
+        }
+
+        return copy ;
+    }
+
+    // Guarded by this.
+    private Object complete( Object result ) {
+        if (aliases instanceof WorkStackAliasMap) {
+            WorkStackAliasMap workStack = (WorkStackAliasMap)aliases ;
+            try {
+                workStack.completeDeferredCopies() ;
+            } catch (RuntimeException | Error exc) {
+                workStack.discardDeferredCopies() ;
+                throw exc ;
+            }
+        }
+
+        return result ;
+    }
+
+    /** Return true if this proxy has copied the original object.
+     */
+    public final boolean isCopied() {
+        return copy != null ;
+    }
+
+    // Copy this proxy as part of another copy.  Until the copy is made,
+    // the new proxy can share the original object, but the copy may still
+    // be modified through this proxy, so it must be copied eagerly.
+    final Object copyProxy( Map<Object,Object> oldToNew ) 
+        throws ReflectiveCopyException {
+        Object current = copy ;
+        if (current == null) {
+            return owner.copy( oldToNew, original ) ;
+        }
+
+        synchronized (this) {
+            return owner.getEagerCopier().copy( oldToNew, current ) ;
+        }
+    }
+
+    @Override
+    public final boolean equals( Object obj ) {
+        if (obj == this) {
+            return true ;
+        }
+
+        if (obj instanceof LazyCopyProxyBase) {
+            obj = ((LazyCopyProxyBase)obj).lazyReadTarget() ;
+        }
+
+        return lazyReadTarget().equals( obj ) ;
+    }
+
+    @Override
+    public final int hashCode() {
+        return lazyReadTarget().hashCode() ;
+    }
+
+    @Override
+    public final String toString() {
+        return lazyReadTarget().toString() ;
+    }
+}
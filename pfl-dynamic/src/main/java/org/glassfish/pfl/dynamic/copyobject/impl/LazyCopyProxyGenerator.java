@@ -0,0 +1,335 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package org.glassfish.pfl.dynamic.copyobject.impl ;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.glassfish.pfl.basic.contain.Pair;
+import org.glassfish.pfl.dynamic.codegen.spi.Expression;
+import org.glassfish.pfl.dynamic.codegen.spi.Signature;
+import org.glassfish.pfl.dynamic.codegen.spi.Type;
+import org.glassfish.pfl.dynamic.copyobject.spi.CopyInterceptor;
+import org.glassfish.pfl.dynamic.copyobject.spi.LazyCopy;
+import org.glassfish.pfl.dynamic.copyobject.spi.ReadOnly;
+
+import static java.lang.reflect.Modifier.PUBLIC;
+import static org.glassfish.pfl.dynamic.codegen.spi.Wrapper.*;
+
+/** Generates the lazy copy proxy class for a class that implements one
+ * or more @LazyCopy interfaces, using the codegen library.  The proxy 
+ * extends LazyCopyProxyBase and implements every method of the LazyCopy
+ * interfaces as a single call on the target chosen by LazyCopyProxyBase:
+ * <ul>
+ * <li>@ReadOnly methods whose result is void, primitive, or immutable 
+ * are called on lazyReadTarget().
+ * <li>Other @ReadOnly methods are called on lazyReadTarget(), and the
+ * result is passed through lazyCopyResult().
+ * <li>All other methods are called on lazyWriteTarget().
+ * </ul>
+ * The proxy class is defined in the ClassLoader of the class, so that it
+ * can refer to the interfaces.
+ */
+public class LazyCopyProxyGenerator {
+    private static final String DEBUG = "false" ;
+
+    private static final String PACKAGE_NAME = 
+        "org.glassfish.dynamic.codegen.impl.generated.lazy" ;
+
+    // Methods of LazyCopyProxyBase that a LazyCopy interface may not 
+    // declare.
+    private static final Set<String> RESERVED_NAMES = 
+        new LinkedHashSet<String>( Arrays.asList( "lazyReadTarget",
+            "lazyWriteTarget", "lazyCopyResult", "isCopied" ) ) ;
+
+    private enum CallKind { READ, READ_COPY, WRITE }
+
+    // A method of the proxy, and how it is implemented.
+    private static class ProxyMethod {
+        private final Method method ;
+        private CallKind kind ;
+
+        ProxyMethod( Method method, CallKind kind ) {
+            this.method = method ;
+            this.kind = kind ;
+        }
+    }
+
+    private final Class<?>          classToProxy ;
+    private final List<Class<?>>    interfaces ;
+    private final List<ProxyMethod> methods ;
+    private final String            className ;
+
+    /** Return the @LazyCopy interfaces implemented by cls (directly or
+     * indirectly).  The result is empty if cls cannot be copied lazily.
+     */
+    public static List<Class<?>> getLazyInterfaces( Class<?> cls ) {
+        if (cls.isInterface() || cls.isArray() || cls.isPrimitive()
+            || Modifier.isAbstract( cls.getModifiers() )
+            || LazyCopyProxyBase.class.isAssignableFrom( cls )
+            || CopyInterceptor.class.isAssignableFrom( cls )) {
+            return new ArrayList<Class<?>>() ;
+        }
+
+        Set<Class<?>> result = new LinkedHashSet<Class<?>>() ;
+        for (Class<?> current = cls; current != null; 
+            current = current.getSuperclass()) {
+            for (Class<?> ifc : current.getInterfaces()) {
+                addLazyInterfaces( result, ifc ) ;
+            }
+        }
+
+        return new ArrayList<Class<?>>( result ) ;
+    }
+
+    private static void addLazyInterfaces( Set<Class<?>> result, 
+        Class<?> ifc ) {
+        if (ifc.isAnnotationPresent( LazyCopy.class )) {
+            result.add( ifc ) ;
+        }
+
+        for (Class<?> sup : ifc.getInterfaces()) {
+            addLazyInterfaces( result, sup ) ;
+        }
+    }
+
+    /** Prepare to generate a proxy for classToProxy.  This analyzes
+     * the LazyCopy interfaces of classToProxy, but does not generate 
+     * anything yet.
+     * @throws IllegalArgumentException if classToProxy has no LazyCopy
+     * interfaces, or if they cannot be implemented by a proxy.
+     */
+    public LazyCopyProxyGenerator( Class<?> classToProxy ) {
+        this.classToProxy = classToProxy ;
+        this.interfaces = getLazyInterfaces( classToProxy ) ;
+        if (interfaces.isEmpty()) {
+            throw new IllegalArgumentException( classToProxy 
+                + " does not implement a LazyCopy interface" ) ;
+        }
+
+        for (Class<?> ifc : interfaces) {
+            if (!Modifier.isPublic( ifc.getModifiers() )) {
+                throw new IllegalArgumentException( "LazyCopy interface " 
+                    + ifc.getName() + " is not public" ) ;
+            }
+        }
+
+        this.methods = getProxyMethods( interfaces ) ;
+        this.className = PACKAGE_NAME + "." + classToProxy.getName() 
+            + "LazyCopyProxy" ;
+    }
+
+    private static List<ProxyMethod> getProxyMethods( 
+        List<Class<?>> interfaces ) {
+
+        Map<String,ProxyMethod> result = 
+            new LinkedHashMap<String,ProxyMethod>() ;
+        for (Class<?> ifc : interfaces) {
+            for (Method m : ifc.getMethods()) {
+                if (Modifier.isStatic( m.getModifiers() ) 
+                    || isObjectMethod( m )) {
+                    continue ;
+                }
+
+                if (RESERVED_NAMES.contains( m.getName() )) {
+                    throw new IllegalArgumentException( "Method " + m 
+                        + " conflicts with LazyCopyProxyBase" ) ;
+                }
+
+                String key = m.getName() 
+                    + Arrays.toString( m.getParameterTypes() ) ;
+                CallKind kind = getCallKind( m ) ;
+                ProxyMethod pm = result.get( key ) ;
+                if (pm == null) {
+                    result.put( key, new ProxyMethod( m, kind ) ) ;
+                } else if (!pm.method.getReturnType().equals( 
+                    m.getReturnType() )) {
+                    throw new IllegalArgumentException( "Methods " 
+                        + pm.method + " and " + m 
+                        + " have different return types" ) ;
+                } else if (kind != pm.kind) {
+                    // Only read from the original object if every
+                    // declaration of the method is @ReadOnly.
+                    pm.kind = CallKind.WRITE ;
+                }
+            }
+        }
+
+        return new ArrayList<ProxyMethod>( result.values() ) ;
+    }
+
+    // LazyCopyProxyBase implements these by delegating to lazyReadTarget().
+    private static boolean isObjectMethod( Method m ) {
+        try {
+            Object.class.getMethod( m.getName(), m.getParameterTypes() ) ;
+            return true ;
+        } catch (NoSuchMethodException exc) {
+            return false ;
+        }
+    }
+
+    private static CallKind getCallKind( Method m ) {
+        if (!m.isAnnotationPresent( ReadOnly.class )) {
+            return CallKind.WRITE ;
+        }
+
+        Class<?> rtype = m.getReturnType() ;
+        if (rtype.isPrimitive() || CopyPlan.isImmutableFieldType( rtype )) {
+            return CallKind.READ ;
+        }
+
+        return CallKind.READ_COPY ;
+    }
+
+    /** Return the name of the class that is generated.
+     */
+    public String getClassName() {
+        return className ;
+    }
+
+    /** Generate the proxy, and define it in cl.  The generated class
+     * has a public constructor that takes the original object and the
+     * ClassCopier that created the proxy.
+     */
+    public Class<?> create( ProtectionDomain pd, ClassLoader cl ) {
+        byte[] data = generate( cl ) ;
+        return _makeClass( data, className, cl, pd ) ;
+    }
+
+    /** Generate the byte code for the proxy.  cl is used to resolve
+     * references to other classes.  This uses (and clears) the Wrapper 
+     * state of the current thread, so it must not be called while
+     * Wrapper is in use.
+     */
+    public byte[] generate( ClassLoader cl ) {
+        if (_classGenerator() != null) {
+            throw new IllegalStateException( 
+                "Wrapper is in use by the current thread" ) ;
+        }
+
+	_clear() ;
+        try {
+            Pair<String,String> pc = splitClassName( className ) ;
+            _package( pc.first() ) ;
+
+            Type LazyCopyProxyBase = Type.type( 
+                LazyCopyProxyBase.class ) ;
+            Type ClassCopier = Type.type( 
+                ClassCopier.class ) ;
+
+            List<Type> impls = new ArrayList<Type>() ;
+            for (Class<?> ifc : interfaces) {
+                impls.add( Type.type( ifc ) ) ;
+            }
+
+            _class( PUBLIC, pc.second(), LazyCopyProxyBase, impls ) ;
+                _constructor( PUBLIC ) ;
+                    Expression original = _arg( _Object(), "original" ) ;
+                    Expression owner = _arg( ClassCopier, "owner" ) ;
+                _body() ;
+                    _expr( _super( original, owner ) ) ;
+                _end() ;
+
+                for (ProxyMethod pm : methods) {
+                    generateMethod( pm ) ;
+                }
+            _end() ;
+
+            Properties debugProps = new Properties() ;
+            debugProps.setProperty( DUMP_AFTER_SETUP_VISITOR, DEBUG ) ;
+            debugProps.setProperty( TRACE_BYTE_CODE_GENERATION, DEBUG ) ;
+            debugProps.setProperty( USE_ASM_VERIFIER, DEBUG ) ;
+
+            return _byteCode( cl, debugProps ) ;
+        } finally {
+            _clear() ;
+        }
+    }
+
+    private static void generateMethod( ProxyMethod pm ) {
+        Method m = pm.method ;
+        Type rtype = Type.type( m.getReturnType() ) ;
+        Type itype = Type.type( m.getDeclaringClass() ) ;
+
+        List<Type> exceptions = new ArrayList<Type>() ;
+        for (Class<?> exc : m.getExceptionTypes()) {
+            exceptions.add( Type.type( exc ) ) ;
+        }
+
+        _method( PUBLIC, rtype, m.getName(), exceptions ) ;
+            List<Type> argTypes = new ArrayList<Type>() ;
+            List<Expression> args = new ArrayList<Expression>() ;
+            Class<?>[] ptypes = m.getParameterTypes() ;
+            for (int ctr=0; ctr<ptypes.length; ctr++) {
+                Type ptype = Type.type( ptypes[ctr] ) ;
+                argTypes.add( ptype ) ;
+                args.add( _arg( ptype, "arg" + ctr ) ) ;
+            }
+        _body() ;
+            Signature sig = _s( rtype, argTypes ) ;
+            String targetMethod = pm.kind == CallKind.WRITE 
+                ? "lazyWriteTarget" : "lazyReadTarget" ;
+            Expression target = _define( _Object(), "target", 
+                _call( _this(), targetMethod ) ) ;
+            Expression call = _call( _cast( itype, target ), m.getName(), 
+                sig, args ) ;
+
+            if (rtype.equals( _void() )) {
+                _expr( call ) ;
+            } else if (pm.kind == CallKind.READ_COPY) {
+                _return( _cast( rtype, 
+                    _call( _this(), "lazyCopyResult", target, call ) ) ) ;
+            } else {
+                _return( call ) ;
+            }
+        _end() ;
+    }
+}
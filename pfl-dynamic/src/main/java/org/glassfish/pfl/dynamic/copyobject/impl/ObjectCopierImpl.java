@@ -40,10 +40,7 @@
 
 package org.glassfish.pfl.dynamic.copyobject.impl ;
 
-import java.util.IdentityHashMap ;
-import java.util.Map ;
-
-import org.glassfish.pfl.dynamic.copyobject.spi.ObjectCopier ;
+import org.glassfish.pfl.dynamic.copyobject.spi.BatchObjectCopier ;
 import org.glassfish.pfl.dynamic.copyobject.spi.Immutable ;
 import org.glassfish.pfl.dynamic.copyobject.spi.ReflectiveCopyException ;
 
@@ -53,7 +50,7 @@ import org.glassfish.pfl.dynamic.copyobject.spi.ReflectiveCopyException ;
  * instance will preserve all object aliasing across multiple calls
  * to copy.
  */
-public class ObjectCopierImpl implements ObjectCopier {    
+public class ObjectCopierImpl implements BatchObjectCopier {    
     // It is very important that ccf be static.  This means that
     // ccf is shared across all instances of the object copier,
     // so that any class is analyzed only once, instead of once per 
@@ -79,17 +76,36 @@ public class ObjectCopierImpl implements ObjectCopier {
 	) ;
     }
 
-    private Map<Object,Object> oldToNew ;
+    /** Return the ClassCopierFactory shared by all ObjectCopierImpl
+     * instances, for other ObjectCopiers that must copy in the same way.
+     */
+    static PipelineClassCopierFactory getClassCopierFactory()
+    {
+        return ccf ;
+    }
+
+    private final IdentityAliasMap oldToNew ;
+
+    // Number of copy calls in progress on this copier.  This is only
+    // greater than 1 if a copy re-enters this copier.
+    private int copyDepth ;
 
     public ObjectCopierImpl()
     {
-	if (DefaultClassCopierFactories.USE_FAST_CACHE) {
-            oldToNew =
-                new FastCache<Object,Object>(
-                    new IdentityHashMap<Object,Object>());
-        } else {
-            oldToNew = new IdentityHashMap<Object,Object>();
-        }
+        this( DefaultClassCopierFactories.USE_ITERATIVE_COPY ) ;
+    }
+
+    /** Create a copier that completes copies from an explicit work stack
+     * if iterative is true, so that the depth of the copied graph is only
+     * limited by the heap, or recursively if iterative is false.
+     */
+    public ObjectCopierImpl( boolean iterative )
+    {
+        // Only the Class-keyed caches use FastCache.  A front cache does
+        // not help here, as almost every lookup in oldToNew is for an
+        // object that has not been seen before.
+        oldToNew = iterative ? new WorkStackAliasMap() 
+            : new IdentityAliasMap() ;
     }
 
     /** Return a deep copy of obj.  Aliasing is preserved within
@@ -104,8 +120,160 @@ public class ObjectCopierImpl implements ObjectCopier {
         }
 
 	Class<?> cls = obj.getClass() ;
-	ClassCopier copier = ccf.getClassCopier( cls ) ;
+	ClassCopier copier = ccf.getLazyClassCopier( cls ) ;
+
+        // Only the outermost copy is recorded, so that time spent in a
+        // copy that re-enters this copier is not counted twice.
+        boolean instrumented = CopyInstrumentation.isEnabled() 
+            && copyDepth == 0 ;
+        boolean adaptive = 
+            DefaultClassCopierFactories.USE_ADAPTIVE_ALIAS_SIZING 
+            && copyDepth == 0 ;
+        long start = instrumented ? System.nanoTime() : 0 ;
+        int sizeBefore = oldToNew.size() ;
+        if (adaptive) {
+            presize( cls, sizeBefore ) ;
+        }
+
+        copyDepth++ ;
+        try {
+            Object result = copier.copy( oldToNew, obj ) ;
+            if (oldToNew instanceof WorkStackAliasMap) {
+                ((WorkStackAliasMap)oldToNew).completeDeferredCopies() ;
+            }
+            recordGraph( cls, instrumented, adaptive, start, sizeBefore ) ;
+            return result ;
+        } catch (RuntimeException | Error exc) {
+            // Do not leave half finished copies for the next copy call.
+            if (oldToNew instanceof WorkStackAliasMap) {
+                ((WorkStackAliasMap)oldToNew).discardDeferredCopies() ;
+            }
+            throw exc ;
+        } finally {
+            copyDepth-- ;
+        }
+    }
+
+    /** Copy all of the elements of objs in one copy session.  The 
+     * ClassCopiers of all of the elements are found before anything is 
+     * copied, null elements and immutable elements are returned without
+     * entering the copy session at all, and deferred copies are completed
+     * once for the whole batch.  If instrumentation is enabled, the batch
+     * is recorded as one graph rooted at an Object[].
+     */
+    @Override
+    public Object[] copyAll( Object[] objs ) throws ReflectiveCopyException
+    {
+        Object[] result = new Object[objs.length] ;
+        ClassCopier[] copiers = null ;
+        ClassCopier identityCopier = DefaultClassCopiers.getIdentityClassCopier() ;
+        Class<?> lastClass = null ;
+        ClassCopier lastCopier = null ;
+        for (int ctr=0; ctr<objs.length; ctr++) {
+            Object obj = objs[ctr] ;
+            if (obj == null) {
+                continue ;
+            }
+
+            // Arguments often share a class, so only look up a new one.
+            Class<?> cls = obj.getClass() ;
+            if (cls != lastClass) {
+                lastCopier = ccf.getLazyClassCopier( cls ) ;
+                lastClass = cls ;
+            }
+
+            if (lastCopier == identityCopier) {
+                result[ctr] = obj ;
+            } else {
+                if (copiers == null) {
+                    copiers = new ClassCopier[objs.length] ;
+                }
+                copiers[ctr] = lastCopier ;
+            }
+        }
+
+        if (copiers == null) {
+            return result ;
+        }
+
+        boolean instrumented = CopyInstrumentation.isEnabled() 
+            && copyDepth == 0 ;
+        boolean adaptive = 
+            DefaultClassCopierFactories.USE_ADAPTIVE_ALIAS_SIZING 
+            && copyDepth == 0 ;
+        long start = instrumented ? System.nanoTime() : 0 ;
+        int sizeBefore = oldToNew.size() ;
+        if (adaptive) {
+            presize( Object[].class, sizeBefore ) ;
+        }
+
+        copyDepth++ ;
+        try {
+            for (int ctr=0; ctr<objs.length; ctr++) {
+                if (copiers[ctr] != null) {
+                    result[ctr] = copiers[ctr].copy( oldToNew, objs[ctr] ) ;
+                }
+            }
+            if (oldToNew instanceof WorkStackAliasMap) {
+                ((WorkStackAliasMap)oldToNew).completeDeferredCopies() ;
+            }
+            recordGraph( Object[].class, instrumented, adaptive, start, 
+                sizeBefore ) ;
+            return result ;
+        } catch (RuntimeException | Error exc) {
+            if (oldToNew instanceof WorkStackAliasMap) {
+                ((WorkStackAliasMap)oldToNew).discardDeferredCopies() ;
+            }
+            throw exc ;
+        } finally {
+            copyDepth-- ;
+        }
+    }
+
+    // Make room in oldToNew for the number of objects usually copied from 
+    // a root of class cls, so that a large graph does not resize the table
+    // repeatedly as it grows.
+    private void presize( Class<?> cls, int sizeBefore ) 
+    {
+        int hint = AliasSizeHints.getHint( cls ) ;
+        if (hint > 0) {
+            oldToNew.ensureCapacity( sizeBefore + hint ) ;
+        }
+    }
+
+    private void recordGraph( Class<?> cls, boolean instrumented, 
+        boolean adaptive, long start, int sizeBefore ) 
+    {
+        int size = oldToNew.size() ;
+        if (adaptive) {
+            AliasSizeHints.record( cls, size - sizeBefore ) ;
+        }
+        if (instrumented) {
+            CopyInstrumentation.recordGraph( cls, 
+                System.nanoTime() - start, size - sizeBefore, size ) ;
+        }
+    }
+
+    /** Return true if a call to copy is in progress on this copier.
+     */
+    public boolean isCopying() 
+    {
+        return copyDepth > 0 ;
+    }
+
+    /** Forget all objects copied so far, so that this copier may be
+     * reused for an unrelated copy session.  Aliasing is not preserved
+     * between copies made before and after a reset.  The alias table is
+     * kept for reuse unless it holds more than maxRetainedAliasCapacity
+     * mappings.  A copier must not be reset while it is copying.
+     */
+    public void reset( int maxRetainedAliasCapacity ) 
+    {
+        if (copyDepth > 0) {
+            throw new IllegalStateException( 
+                "Cannot reset an ObjectCopier while it is copying" ) ;
+        }
 
-	return copier.copy( oldToNew, obj ) ;
+        oldToNew.reset( maxRetainedAliasCapacity ) ;
     }
 }
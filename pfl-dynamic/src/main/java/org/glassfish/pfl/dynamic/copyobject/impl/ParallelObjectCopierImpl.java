@@ -0,0 +1,278 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.pfl.dynamic.copyobject.impl ;
+
+import java.util.Map ;
+import java.util.concurrent.ForkJoinPool ;
+import java.util.concurrent.ForkJoinTask ;
+import java.util.concurrent.RecursiveAction ;
+import java.util.concurrent.RecursiveTask ;
+
+import org.glassfish.pfl.dynamic.copyobject.spi.BatchObjectCopier ;
+import org.glassfish.pfl.dynamic.copyobject.spi.ReflectiveCopyException ;
+
+/** An ObjectCopier that copies wide parts of a large object graph in
+ * parallel.  The copy runs in a ForkJoinPool.  Whenever an array or one of
+ * the collections handled by CollectionClassCopiers has at least 
+ * parallelThreshold elements, its elements are split into fork/join tasks 
+ * of at most parallelThreshold elements each.  Smaller arrays and 
+ * collections, and all ordinary objects, are copied sequentially by the 
+ * thread that reaches them.
+ * <p>
+ * All threads share one ConcurrentIdentityAliasMap, so aliasing and 
+ * cycles are preserved exactly as in ObjectCopierImpl: an object reached
+ * by several threads is copied only once.  A thread may obtain a copy
+ * that another thread has not finished yet, but every copy is complete
+ * by the time copy returns.  As with ObjectCopierImpl, aliasing is
+ * preserved across all copy calls on the same instance.  As a copy may 
+ * be unfinished when another thread obtains it, maps whose keys are not
+ * all immutable are copied through their internal fields, which never 
+ * hashes or compares the copied keys.
+ * <p>
+ * The copy always runs in the pool given to the constructor.  If copy is
+ * called from a thread of that pool, the copy runs in the calling thread;
+ * from any other thread (including a thread of another ForkJoinPool), 
+ * the calling thread waits for the copy to complete in the pool.
+ * <p>
+ * Because stolen tasks start on a fresh stack, this also makes a 
+ * StackOverflowError less likely for graphs that are both wide and deep.
+ */
+public class ParallelObjectCopierImpl implements BatchObjectCopier {
+    /** Default minimum number of elements in an array or collection
+     * before its elements are copied in parallel.
+     */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 1024 ;
+
+    // Only created if the default pool is used.
+    private static class DefaultPool {
+        static final ForkJoinPool POOL = new ForkJoinPool() ;
+    }
+
+    // The alias table also carries the parallel copy settings, as it is
+    // the only state that the ClassCopiers share during a copy.
+    private static final class ParallelAliasMap 
+        extends ConcurrentIdentityAliasMap {
+
+        private final int parallelThreshold ;
+
+        ParallelAliasMap( int parallelThreshold ) {
+            this.parallelThreshold = parallelThreshold ;
+        }
+    }
+
+    private final PipelineClassCopierFactory ccf ;
+    private final ForkJoinPool pool ;
+    private final ParallelAliasMap oldToNew ;
+
+    public ParallelObjectCopierImpl() {
+        this( DefaultPool.POOL, DEFAULT_PARALLEL_THRESHOLD ) ;
+    }
+
+    public ParallelObjectCopierImpl( ForkJoinPool pool, 
+        int parallelThreshold ) {
+
+        if (pool == null) {
+            throw new NullPointerException( "pool must not be null" ) ;
+        }
+        if (parallelThreshold < 1) {
+            throw new IllegalArgumentException( 
+                "parallelThreshold must be positive" ) ;
+        }
+
+        this.ccf = ObjectCopierImpl.getClassCopierFactory() ;
+        this.pool = pool ;
+        this.oldToNew = new ParallelAliasMap( parallelThreshold ) ;
+    }
+
+    @Override
+    public Object copy( final Object obj ) throws ReflectiveCopyException {
+        if (obj == null) {
+            return null ;
+        }
+
+        final ClassCopier copier = ccf.getLazyClassCopier( obj.getClass() ) ;
+        boolean instrumented = CopyInstrumentation.isEnabled() ;
+        long start = instrumented ? System.nanoTime() : 0 ;
+        int sizeBefore = instrumented ? oldToNew.size() : 0 ;
+
+        Object result ;
+        if (ForkJoinTask.getPool() == pool) {
+            // Already running in the pool (perhaps from readResolve during
+            // a copy), so tasks may be forked from this thread.
+            result = copier.copy( oldToNew, obj ) ;
+        } else {
+            result = pool.invoke( new RecursiveTask<Object>() {
+                @Override
+                protected Object compute() {
+                    return copier.copy( oldToNew, obj ) ;
+                }
+            } ) ;
+        }
+
+        if (instrumented) {
+            int size = oldToNew.size() ;
+            CopyInstrumentation.recordGraph( obj.getClass(), 
+                System.nanoTime() - start, size - sizeBefore, size ) ;
+        }
+
+        return result ;
+    }
+
+    /** Copy all of the elements of objs in one task in the pool.  If
+     * instrumentation is enabled, the batch is recorded as one graph 
+     * rooted at an Object[].
+     */
+    @Override
+    public Object[] copyAll( final Object[] objs ) 
+        throws ReflectiveCopyException {
+
+        final ClassCopier[] copiers = new ClassCopier[objs.length] ;
+        for (int ctr=0; ctr<objs.length; ctr++) {
+            if (objs[ctr] != null) {
+                copiers[ctr] = ccf.getLazyClassCopier( 
+                    objs[ctr].getClass() ) ;
+            }
+        }
+
+        boolean instrumented = CopyInstrumentation.isEnabled() ;
+        long start = instrumented ? System.nanoTime() : 0 ;
+        int sizeBefore = instrumented ? oldToNew.size() : 0 ;
+
+        RecursiveTask<Object[]> task = new RecursiveTask<Object[]>() {
+            @Override
+            protected Object[] compute() {
+                Object[] result = new Object[objs.length] ;
+                for (int ctr=0; ctr<objs.length; ctr++) {
+                    if (copiers[ctr] != null) {
+                        result[ctr] = copiers[ctr].copy( oldToNew, objs[ctr] ) ;
+                    }
+                }
+                return result ;
+            }
+        } ;
+
+        Object[] result = ForkJoinTask.getPool() == pool
+            ? task.invoke() : pool.invoke( task ) ;
+
+        if (instrumented) {
+            int size = oldToNew.size() ;
+            CopyInstrumentation.recordGraph( Object[].class, 
+                System.nanoTime() - start, size - sizeBefore, size ) ;
+        }
+
+        return result ;
+    }
+
+    /** Return true if oldToNew belongs to a parallel copy, and a
+     * collection of size elements should be copied with copyElements.
+     */
+    static boolean isParallel( Map<Object,Object> oldToNew, int size ) {
+        return (oldToNew instanceof ParallelAliasMap)
+            && size >= ((ParallelAliasMap)oldToNew).parallelThreshold
+            && ForkJoinTask.inForkJoinPool() ;
+    }
+
+    /** Set dest[i] to a copy of src[i] for all elements of src, using
+     * fork/join tasks.  src and dest may be the same array.  This may only
+     * be called if isParallel( oldToNew, src.length ) is true.
+     */
+    static void copyElements( ClassCopierFactory ccf, 
+        Map<Object,Object> oldToNew, Object[] src, Object[] dest ) {
+
+        new CopyElementsTask( ccf, oldToNew, src, dest, 0, src.length,
+            ((ParallelAliasMap)oldToNew).parallelThreshold ).invoke() ;
+    }
+
+    private static class CopyElementsTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L ;
+
+        private final ClassCopierFactory ccf ;
+        private final Map<Object,Object> oldToNew ;
+        private final Object[] src ;
+        private final Object[] dest ;
+        private final int start ;
+        private final int end ;
+        private final int threshold ;
+
+        CopyElementsTask( ClassCopierFactory ccf, Map<Object,Object> oldToNew,
+            Object[] src, Object[] dest, int start, int end, int threshold ) {
+            this.ccf = ccf ;
+            this.oldToNew = oldToNew ;
+            this.src = src ;
+            this.dest = dest ;
+            this.start = start ;
+            this.end = end ;
+            this.threshold = threshold ;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= threshold) {
+                copyRange() ;
+            } else {
+                int mid = (start + end) >>> 1 ;
+                invokeAll( 
+                    new CopyElementsTask( ccf, oldToNew, src, dest, start, 
+                        mid, threshold ),
+                    new CopyElementsTask( ccf, oldToNew, src, dest, mid, 
+                        end, threshold ) ) ;
+            }
+        }
+
+        private void copyRange() {
+            Class<?> lastClass = null ;
+            ClassCopier lastCopier = null ;
+            for (int ctr=start; ctr<end; ctr++) {
+                Object obj = src[ctr] ;
+                if (obj != null) {
+                    Class<?> cls = obj.getClass() ;
+                    if (cls != lastClass) {
+                        lastCopier = ccf.getClassCopier( cls ) ;
+                        lastClass = cls ;
+                    }
+                    obj = lastCopier.copy( oldToNew, obj ) ;
+                }
+
+                dest[ctr] = obj ;
+            }
+        }
+    }
+}
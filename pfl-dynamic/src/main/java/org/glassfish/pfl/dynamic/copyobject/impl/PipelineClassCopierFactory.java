@@ -40,6 +40,8 @@
 
 package org.glassfish.pfl.dynamic.copyobject.impl;
 
+import org.glassfish.pfl.dynamic.copyobject.spi.ReflectiveCopyException ;
+
 /** A factory used for creating ClassCopier instances.  
  */
 public interface PipelineClassCopierFactory extends ClassCopierFactory 
@@ -49,6 +51,16 @@ public interface PipelineClassCopierFactory extends ClassCopierFactory
      */
     public ClassCopier lookupInCache( Class<?> cls ) ;
 
+    /** Return the ClassCopier for an instance of cls that is the root of
+     * a copy, or that is stored in a field or array element whose 
+     * declared type is a LazyCopy interface.  This is the same as 
+     * getClassCopier, except that a class that implements a LazyCopy 
+     * interface is copied lazily, by a proxy that only implements the 
+     * LazyCopy interfaces of cls.
+     */
+    public ClassCopier getLazyClassCopier( Class<?> cls ) 
+        throws ReflectiveCopyException ;
+
     /** Mark this class as immutable, so that it is not copied at all.
      */
     public void registerImmutable( Class<?> cls ) ;
@@ -62,4 +74,31 @@ public interface PipelineClassCopierFactory extends ClassCopierFactory
      * object contains a transient field of specific type.
      */
     public boolean reflectivelyCopyable( Class<?> cls ) ;
+
+    /** Return the way in which reflectively copied classes have their 
+     * fields copied by this factory.
+     */
+    public FieldCopierType getFieldCopierType() ;
+
+    /** Select the way in which reflectively copied classes have their 
+     * fields copied.  This only affects ClassCopiers created after the
+     * call.
+     */
+    public void setFieldCopierType( FieldCopierType type ) ;
+
+    /** Register the copiers that were generated at build time for classes
+     * visible to cl (see CodegenCopierIndex), so that they are used
+     * instead of generating the copiers when they are needed.  Returns
+     * the number of copiers that were registered.
+     * <p>
+     * The registered copiers are shared by all pipelines, and are kept
+     * for each Class, so copiers of classes with the same name in 
+     * different ClassLoaders do not replace each other.  A pipeline only
+     * registers the copiers of the context ClassLoader of the thread 
+     * that creates it, so an application whose classes are loaded by 
+     * another ClassLoader (for example, one that uses the pipeline 
+     * created when ObjectCopierImpl was initialized) must call this
+     * with its own ClassLoader to use its precompiled copiers.
+     */
+    public int registerPrecompiledCopiers( ClassLoader cl ) ;
 }
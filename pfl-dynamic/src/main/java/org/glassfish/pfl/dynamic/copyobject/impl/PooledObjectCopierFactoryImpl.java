@@ -0,0 +1,116 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.pfl.dynamic.copyobject.impl ;
+
+import org.glassfish.pfl.dynamic.copyobject.spi.ObjectCopier ;
+import org.glassfish.pfl.dynamic.copyobject.spi.ObjectCopierFactory ;
+
+/** An ObjectCopierFactory that reuses one ObjectCopierImpl per thread,
+ * instead of creating a new copier and alias table on every make call.
+ * <p>
+ * make() resets the calling thread's copier and returns it, so a copier
+ * obtained from this factory represents one copy session: aliasing is
+ * preserved across all copy calls made on it until the next call to make()
+ * on the same thread.  Callers must not keep using a copier after that.
+ * If make() is called while the thread's copier is in the middle of a copy
+ * (for example from a readResolve method), a new copier is returned instead,
+ * so that the copy in progress is never disturbed.
+ * <p>
+ * The objects from the last copy session remain reachable from the
+ * thread until the next make() call, or until the session is ended early
+ * with release().  Threads that may stay idle for a long time after a 
+ * copy should call release().  To keep one very large graph from
+ * holding a large alias table in every thread indefinitely, the table is
+ * shrunk on reset if it holds more than maxRetainedAliasCapacity mappings.
+ */
+public class PooledObjectCopierFactoryImpl implements ObjectCopierFactory {
+    /** Default maximum number of alias table mappings retained by an
+     * idle copier.
+     */
+    public static final int DEFAULT_MAX_RETAINED_ALIAS_CAPACITY = 8192 ;
+
+    private final int maxRetainedAliasCapacity ;
+
+    private final ThreadLocal<ObjectCopierImpl> copiers = 
+        new ThreadLocal<ObjectCopierImpl>() {
+            @Override
+            protected ObjectCopierImpl initialValue() {
+                return new ObjectCopierImpl() ;
+            }
+        } ;
+
+    public PooledObjectCopierFactoryImpl() {
+        this( DEFAULT_MAX_RETAINED_ALIAS_CAPACITY ) ;
+    }
+
+    public PooledObjectCopierFactoryImpl( int maxRetainedAliasCapacity ) {
+        if (maxRetainedAliasCapacity < 0) {
+            throw new IllegalArgumentException( 
+                "maxRetainedAliasCapacity must not be negative" ) ;
+        }
+
+        this.maxRetainedAliasCapacity = maxRetainedAliasCapacity ;
+    }
+
+    @Override
+    public ObjectCopier make() {
+        ObjectCopierImpl copier = copiers.get() ;
+        if (copier.isCopying()) {
+            return new ObjectCopierImpl() ;
+        }
+
+        copier.reset( maxRetainedAliasCapacity ) ;
+        return copier ;
+    }
+
+    /** End the calling thread's copy session, so that the thread no longer
+     * keeps the objects copied in that session reachable.  The copier
+     * returned by the last call to make() on this thread must not be used
+     * afterwards.  This does nothing if the thread's copier is in the
+     * middle of a copy.
+     */
+    public void release() {
+        ObjectCopierImpl copier = copiers.get() ;
+        if (!copier.isCopying()) {
+            copier.reset( maxRetainedAliasCapacity ) ;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.pfl.dynamic.copyobject.impl ;
+
+import java.util.concurrent.atomic.AtomicLongArray ;
+
+/** A fixed number of long counters that many threads may update with 
+ * little contention.  Each counter is split into one cell per stripe, 
+ * and a thread always updates the cells of the stripe chosen by its id,
+ * so threads only contend when they share a stripe.  Reading a counter
+ * sums its cells, so a read is not an atomic snapshot of concurrent 
+ * updates.
+ */
+final class StripedCounters {
+    // Cells of different stripes are kept at least this many longs 
+    // (one typical cache line) apart.
+    private static final int PADDING = 8 ;
+
+    private static final int MAX_STRIPES = 64 ;
+
+    private static final int STRIPES = stripes() ;
+
+    private static int stripes() {
+        int cpus = Runtime.getRuntime().availableProcessors() ;
+        int result = 1 ;
+        while (result < cpus && result < MAX_STRIPES) {
+            result <<= 1 ;
+        }
+
+        return result ;
+    }
+
+    private final int size ;
+    private final int rowLength ;
+    private final AtomicLongArray cells ;
+
+    /** Create size counters, all 0.
+     */
+    StripedCounters( int size ) {
+        this.size = size ;
+        // Round up to a multiple of PADDING, plus one more PADDING, so that
+        // the rows of two stripes never share a cache line.
+        rowLength = ((size + PADDING - 1) / PADDING + 1) * PADDING ;
+        cells = new AtomicLongArray( STRIPES * rowLength ) ;
+    }
+
+    int size() {
+        return size ;
+    }
+
+    private int row() {
+        return ((int)Thread.currentThread().getId() & (STRIPES - 1)) 
+            * rowLength ;
+    }
+
+    void add( int index, long delta ) {
+        cells.addAndGet( row() + index, delta ) ;
+    }
+
+    void increment( int index ) {
+        cells.incrementAndGet( row() + index ) ;
+    }
+
+    long get( int index ) {
+        long result = 0 ;
+        for (int row = 0; row < cells.length(); row += rowLength) {
+            result += cells.get( row + index ) ;
+        }
+
+        return result ;
+    }
+
+    void reset() {
+        for (int ctr=0; ctr<cells.length(); ctr++) {
+            cells.set( ctr, 0 ) ;
+        }
+    }
+}
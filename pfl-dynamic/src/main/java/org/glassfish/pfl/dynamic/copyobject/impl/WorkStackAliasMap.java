@@ -0,0 +1,276 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.pfl.dynamic.copyobject.impl ;
+
+import java.util.ArrayList ;
+import java.util.List ;
+import java.util.Map ;
+
+/** An alias table that also holds the work stack of the iterative copy
+ * engine.  Copies are made recursively as usual until the copy of an 
+ * object is MAX_RECURSION_DEPTH levels deep.  Below that, a 
+ * ClassCopierBase that supports deferral only creates the copy and enters
+ * it here, and pushes the rest of the copy (its doCopy call) onto the work
+ * stack instead of making it immediately.  Such a copy is therefore not 
+ * complete until completeDeferredCopies has drained the stack.  This 
+ * bounds the depth of the Java stack used by a copy, so that the depth of 
+ * the object graph is only limited by the size of the heap, while shallow
+ * graphs are copied exactly as by the recursive engine.
+ * <p>
+ * Hashed and sorted maps cannot hold incomplete keys, so their copiers
+ * call reservePuts when they start, and completePuts with the copied 
+ * entries when they finish, instead of putting the entries directly.  The
+ * puts are made as soon as no copies are pending, starting with the map
+ * that was reserved last, so that a map first reached through the keys of
+ * another map is filled before the other map.  If no copy was deferred, 
+ * this makes the puts exactly when the recursive engine would.
+ * <p>
+ * Copiers that must see complete results before they finish (such as 
+ * classes with readResolve) call completeDeferredCopies themselves.
+ * Like IdentityAliasMap, this class is not synchronized.
+ */
+class WorkStackAliasMap extends IdentityAliasMap {
+    /** Depth of recursive copies beyond which copies are deferred.
+     */
+    static final int MAX_RECURSION_DEPTH = 128 ;
+
+    private static final int INITIAL_STACK_SIZE = 32 ;
+
+    /** Largest work stack (in pending copies) kept by reset.  This is 
+     * separate from the alias table limit passed to reset, as one deferred
+     * copy usually stands for a whole subgraph of mappings.
+     */
+    static final int MAX_RETAINED_STACK_SIZE = 1024 ;
+
+    // Number of recursive doCopy calls currently in progress.
+    private int depth ;
+
+    // The pending doCopy calls, as three parallel arrays.  These are only
+    // allocated when the first copy is deferred, as many small copies 
+    // never defer anything.
+    private ClassCopierBase[] copiers ;
+    private Object[] sources ;
+    private Object[] results ;
+    private int stackSize ;
+
+    /** The puts into one map copy, in order of reservation.  entries is
+     * null while the map is still being copied.
+     */
+    static final class PendingPuts {
+        private final Map<Object,Object> dest ;
+        private Object[] entries ;
+
+        private PendingPuts( Map<Object,Object> dest ) {
+            this.dest = dest ;
+        }
+    }
+
+    private final List<PendingPuts> pendingPuts = 
+        new ArrayList<PendingPuts>() ;
+
+    // Number of PendingPuts with entries.
+    private int completedPuts ;
+
+    WorkStackAliasMap() {
+        super() ;
+    }
+
+    /** Return false if a copy must be deferred at the current depth.  
+     * Otherwise, the caller makes its doCopy call immediately, and must 
+     * call exit when it returns.
+     */
+    boolean enter() {
+        if (depth >= MAX_RECURSION_DEPTH) {
+            return false ;
+        }
+
+        depth++ ;
+        return true ;
+    }
+
+    void exit() {
+        depth-- ;
+    }
+
+    /** Push the doCopy call that completes result as the copy of source.
+     */
+    void defer( ClassCopierBase copier, Object source, Object result ) {
+        if (copiers == null) {
+            copiers = new ClassCopierBase[INITIAL_STACK_SIZE] ;
+            sources = new Object[INITIAL_STACK_SIZE] ;
+            results = new Object[INITIAL_STACK_SIZE] ;
+        } else if (stackSize == copiers.length) {
+            grow() ;
+        }
+
+        copiers[stackSize] = copier ;
+        sources[stackSize] = source ;
+        results[stackSize] = result ;
+        stackSize++ ;
+    }
+
+    private void grow() {
+        int newLength = 2 * copiers.length ;
+        ClassCopierBase[] newCopiers = new ClassCopierBase[newLength] ;
+        Object[] newSources = new Object[newLength] ;
+        Object[] newResults = new Object[newLength] ;
+        System.arraycopy( copiers, 0, newCopiers, 0, stackSize ) ;
+        System.arraycopy( sources, 0, newSources, 0, stackSize ) ;
+        System.arraycopy( results, 0, newResults, 0, stackSize ) ;
+        copiers = newCopiers ;
+        sources = newSources ;
+        results = newResults ;
+    }
+
+    /** Reserve the puts into dest, which is about to be filled.
+     */
+    PendingPuts reservePuts( Map<Object,Object> dest ) {
+        PendingPuts result = new PendingPuts( dest ) ;
+        pendingPuts.add( result ) ;
+        return result ;
+    }
+
+    /** Put the alternating keys and values of entries into the map of
+     * puts, once no copies are pending.
+     */
+    void completePuts( PendingPuts puts, Object[] entries ) {
+        puts.entries = entries ;
+        completedPuts++ ;
+        if (stackSize == 0) {
+            makePuts() ;
+        }
+    }
+
+    // Make all completed puts, latest reservation first.  Reservations 
+    // without entries belong to maps that are still being copied, and are
+    // kept.
+    private void makePuts() {
+        int kept = 0 ;
+        for (int index=pendingPuts.size() - 1; index>=0; index--) {
+            PendingPuts puts = pendingPuts.get( index ) ;
+            if (puts.entries == null) {
+                kept++ ;
+            } else {
+                Object[] entries = puts.entries ;
+                for (int ctr=0; ctr<entries.length; ctr+=2) {
+                    puts.dest.put( entries[ctr], entries[ctr+1] ) ;
+                }
+            }
+        }
+
+        if (kept == 0) {
+            pendingPuts.clear() ;
+        } else {
+            List<PendingPuts> reserved = new ArrayList<PendingPuts>( kept ) ;
+            for (PendingPuts puts : pendingPuts) {
+                if (puts.entries == null) {
+                    reserved.add( puts ) ;
+                }
+            }
+            pendingPuts.clear() ;
+            pendingPuts.addAll( reserved ) ;
+        }
+
+        completedPuts = 0 ;
+    }
+
+    /** Return true if some copies are not yet complete.
+     */
+    boolean hasDeferredCopies() {
+        return stackSize > 0 || completedPuts > 0 ;
+    }
+
+    /** Complete all pending copies.  This may be called again from a
+     * copier while the copies are being completed.
+     */
+    void completeDeferredCopies() {
+        while (true) {
+            if (stackSize > 0) {
+                int index = --stackSize ;
+                ClassCopierBase copier = copiers[index] ;
+                Object source = sources[index] ;
+                Object result = results[index] ;
+                copiers[index] = null ;
+                sources[index] = null ;
+                results[index] = null ;
+
+                // The copies made by a deferred doCopy start at the depth
+                // of this call, so a nested call here (from readResolve)
+                // does not allow more recursion.
+                try {
+                    copier.doCopy( this, source, result ) ;
+                } catch (StackOverflowError ex) {
+                    throw Exceptions.self.stackOverflow( source, ex ) ;
+                }
+            } else if (completedPuts > 0) {
+                makePuts() ;
+            } else {
+                return ;
+            }
+        }
+    }
+
+    /** Drop all pending copies, for example after a copy failed.
+     */
+    void discardDeferredCopies() {
+        for (int ctr=0; ctr<stackSize; ctr++) {
+            copiers[ctr] = null ;
+            sources[ctr] = null ;
+            results[ctr] = null ;
+        }
+
+        stackSize = 0 ;
+        pendingPuts.clear() ;
+        completedPuts = 0 ;
+    }
+
+    @Override
+    public void reset( int maxRetainedCapacity ) {
+        super.reset( maxRetainedCapacity ) ;
+        discardDeferredCopies() ;
+        depth = 0 ;
+        if (copiers != null && copiers.length > MAX_RETAINED_STACK_SIZE) {
+            copiers = null ;
+            sources = null ;
+            results = null ;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.pfl.dynamic.copyobject.spi ;
+
+/** An ObjectCopier that can copy several objects in one call, such as 
+ * the arguments of a colocated invocation.  This is cheaper than copying
+ * the objects one at a time, as the copier only needs to set up the copy 
+ * once.  CopyobjectDefaults.copyAll copies with any ObjectCopier, using
+ * this interface if the copier implements it.
+ */
+public interface BatchObjectCopier extends ObjectCopier {
+    /** Copy all of the elements of objs.  The result is a new array of
+     * the same length, whose elements are the copies of the elements of
+     * objs, as if each element had been passed to copy on this copier in
+     * turn.  Aliasing is preserved across all of the elements, and 
+     * between these copies and those made by other calls on this copier
+     * (to the same extent that copy preserves it).  objs is not modified.
+     */
+    Object[] copyAll( Object[] objs ) throws ReflectiveCopyException ;
+}
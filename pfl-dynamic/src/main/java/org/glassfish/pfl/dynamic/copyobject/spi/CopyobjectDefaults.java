@@ -40,9 +40,13 @@
 
 package org.glassfish.pfl.dynamic.copyobject.spi ;
 
+import java.util.concurrent.ForkJoinPool;
+
 import org.glassfish.pfl.dynamic.copyobject.impl.FallbackObjectCopierImpl;
 import org.glassfish.pfl.dynamic.copyobject.impl.JavaStreamObjectCopierImpl;
 import org.glassfish.pfl.dynamic.copyobject.impl.ObjectCopierImpl;
+import org.glassfish.pfl.dynamic.copyobject.impl.ParallelObjectCopierImpl;
+import org.glassfish.pfl.dynamic.copyobject.impl.PooledObjectCopierFactoryImpl;
 
 public abstract class CopyobjectDefaults
 {
@@ -61,13 +65,37 @@ public abstract class CopyobjectDefaults
 	} ;
     }
 
-    private static final ObjectCopier referenceObjectCopier = new ObjectCopier() {
+    private static final ObjectCopier referenceObjectCopier = new BatchObjectCopier() {
         @Override
         public Object copy(Object obj) throws ReflectiveCopyException {
             return obj ;
         }
+
+        @Override
+        public Object[] copyAll(Object[] objs) throws ReflectiveCopyException {
+            return objs.clone() ;
+        }
     };
 
+    /** Copy all of the elements of objs with copier, as described in
+     * BatchObjectCopier.copyAll.  If copier is not a BatchObjectCopier,
+     * the elements are copied one at a time.
+     */
+    public static Object[] copyAll( ObjectCopier copier, Object[] objs )
+        throws ReflectiveCopyException
+    {
+        if (copier instanceof BatchObjectCopier) {
+            return ((BatchObjectCopier)copier).copyAll( objs ) ;
+        }
+
+        Object[] result = new Object[objs.length] ;
+        for (int ctr=0; ctr<objs.length; ctr++) {
+            result[ctr] = copier.copy( objs[ctr] ) ;
+        }
+
+        return result ;
+    }
+
     private static ObjectCopierFactory referenceObjectCopierFactory = 
 	new ObjectCopierFactory() {
 	    public ObjectCopier make() 
@@ -119,4 +147,61 @@ public abstract class CopyobjectDefaults
 	    }
 	} ;
     }
+
+    /** Obtain a reflective copier factory that reuses one copier (and its
+     * alias table) per thread, instead of allocating a new copier for each
+     * copy operation.  A copier obtained from this factory may only be used
+     * until the next call to make() on the same thread; aliasing is
+     * preserved across all copy calls made on it until then.  This is the
+     * usual pattern of one make() call per copy operation.
+     */
+    public static ObjectCopierFactory makePooledReflectObjectCopierFactory( )
+    {
+        return new PooledObjectCopierFactoryImpl() ;
+    }
+
+    /** Same as makePooledReflectObjectCopierFactory(), except that an idle
+     * copier keeps an alias table with room for at most
+     * maxRetainedAliasCapacity entries.  A larger table is discarded when 
+     * the copier is reused.
+     */
+    public static ObjectCopierFactory makePooledReflectObjectCopierFactory( 
+        int maxRetainedAliasCapacity )
+    {
+        return new PooledObjectCopierFactoryImpl( maxRetainedAliasCapacity ) ;
+    }
+
+    /** Obtain a reflective copier factory whose copiers copy large arrays
+     * and collections in parallel, using a ForkJoinPool shared by all such
+     * copiers.  This only pays off for very large object graphs: smaller
+     * graphs are copied faster by makeReflectObjectCopierFactory().
+     * As with that factory, aliasing is preserved across all copy calls
+     * on the same copier.
+     */
+    public static ObjectCopierFactory makeParallelReflectObjectCopierFactory( )
+    {
+	return new ObjectCopierFactory() {
+            @Override
+	    public ObjectCopier make( )
+	    {
+		return new ParallelObjectCopierImpl( ) ;
+	    }
+	} ;
+    }
+
+    /** Same as makeParallelReflectObjectCopierFactory(), except that the
+     * copies run in pool, and only arrays and collections with at least
+     * parallelThreshold elements are split into parallel tasks.
+     */
+    public static ObjectCopierFactory makeParallelReflectObjectCopierFactory( 
+        final ForkJoinPool pool, final int parallelThreshold )
+    {
+	return new ObjectCopierFactory() {
+            @Override
+	    public ObjectCopier make( )
+	    {
+		return new ParallelObjectCopierImpl( pool, parallelThreshold ) ;
+	    }
+	} ;
+    }
 }
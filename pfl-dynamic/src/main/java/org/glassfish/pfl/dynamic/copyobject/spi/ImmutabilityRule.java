@@ -0,0 +1,65 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.pfl.dynamic.copyobject.spi ;
+
+/** A rule that recognizes classes whose instances are deeply immutable,
+ * so that the object copier may share them instead of copying them.
+ * Rules are found through java.util.ServiceLoader, by listing their 
+ * class names in a META-INF/services/ resource named after this 
+ * interface, or may be registered explicitly with
+ * ImmutableTypeRegistry.registerRule.
+ * <p>
+ * A rule should only claim classes whose instances cannot change after
+ * construction, and whose fields only refer to such objects.  Rules are
+ * never asked about primitive types, arrays, or interfaces, nor about
+ * classes that are already known to be immutable.  Claims are checked 
+ * before they are used: a claim for an abstract class, a CopyInterceptor,
+ * or a class with a non-private field that is not final is rejected and 
+ * logged.  A rule must be thread safe.  The result for each class is 
+ * cached, but a rule may still be called more than once for the same 
+ * class (for example by threads that ask about it at the same time), so
+ * it must always give the same answer for a class.
+ */
+public interface ImmutabilityRule {
+    /** Return true if every instance of exactly cls is deeply immutable.
+     */
+    boolean isImmutable( Class<?> cls ) ;
+}
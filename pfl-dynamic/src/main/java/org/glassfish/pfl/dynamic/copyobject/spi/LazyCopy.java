@@ -0,0 +1,70 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.pfl.dynamic.copyobject.spi ;
+
+import java.lang.annotation.Documented ;
+import java.lang.annotation.ElementType ;
+import java.lang.annotation.Target ;
+import java.lang.annotation.Retention ;
+import java.lang.annotation.RetentionPolicy ;
+
+/** Annotation used on public interfaces whose implementations may be 
+ * copied lazily.  The object copier copies an instance of a class that 
+ * implements such an interface by returning a proxy that implements all 
+ * of the LazyCopy interfaces of the class (and no other types).  Since 
+ * the proxy has no other types, this is only done when the instance is 
+ * the object passed to the copier, or is stored in a field or array 
+ * element whose declared type is a LazyCopy interface.  Everywhere else, 
+ * the instance is copied eagerly.
+ * <p>
+ * The proxy calls @ReadOnly methods on the original object, and makes a 
+ * real copy of the original object the first time any other method is 
+ * called.  From then on, all calls go to the copy.  Results of @ReadOnly 
+ * methods that are not immutable are copied before they are returned, so
+ * that no part of the original object escapes through the proxy.
+ * <p>
+ * The original object must not be modified while a proxy for it may 
+ * still be used, since @ReadOnly methods see the modification until 
+ * the proxy makes its copy.
+ */
+@Documented 
+@Target(ElementType.TYPE) 
+@Retention(RetentionPolicy.RUNTIME)
+public @interface LazyCopy { }
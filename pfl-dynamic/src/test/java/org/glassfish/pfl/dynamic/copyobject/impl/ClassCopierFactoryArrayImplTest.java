@@ -0,0 +1,122 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.pfl.dynamic.copyobject.impl;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ClassCopierFactoryArrayImplTest {
+
+    private PipelineClassCopierFactory factory = new ClassCopierFactoryPipelineImpl();
+    private Map<Object, Object> oldToNew = new IdentityHashMap<Object, Object>();
+
+    private Object copy(Object array) {
+        return factory.getClassCopier(array.getClass()).copy(oldToNew, array);
+    }
+
+    @Test
+    public void whenCopyingStringArray_elementsAreShared() {
+        String[] original = {new String("a"), null, new String("b")};
+        String[] copy = (String[]) copy(original);
+
+        assertNotSame(original, copy);
+        assertSame(original[0], copy[0]);
+        assertNull(copy[1]);
+        assertSame(copy, oldToNew.get(original));
+    }
+
+    @Test
+    public void whenCopyingImmutableArrays_componentTypeIsKept() {
+        Integer[] integers = {1, 2, 3};
+        TimeUnit[] units = {TimeUnit.DAYS, TimeUnit.SECONDS};
+
+        assertArrayEquals(integers, (Integer[]) copy(integers));
+        assertSame(TimeUnit[].class, copy(units).getClass());
+    }
+
+    @Test
+    public void whenCopyingPolymorphicArray_eachElementIsCopied() {
+        List<String> list = new ArrayList<String>(Arrays.asList("x"));
+        Object[] original = {list, "s", list, new int[]{1}, null};
+        Object[] copy = (Object[]) copy(original);
+
+        assertNotSame(list, copy[0]);
+        assertEquals(list, copy[0]);
+        assertSame(copy[0], copy[2]);
+        assertSame("s", copy[1]);
+        assertArrayEquals(new int[]{1}, (int[]) copy[3]);
+        assertNull(copy[4]);
+    }
+
+    @Test
+    public void whenCopyingArrayOfPrimitiveArrays_rowAliasingIsPreserved() {
+        int[] row = {1, 2};
+        int[][] original = {row, {3}, row, null};
+        int[][] copy = (int[][]) copy(original);
+
+        assertNotSame(row, copy[0]);
+        assertArrayEquals(row, copy[0]);
+        assertSame(copy[0], copy[2]);
+        assertArrayEquals(new int[]{3}, copy[1]);
+        assertNull(copy[3]);
+    }
+
+    @Test
+    public void whenCopyingThreeDimensionalArray_allLevelsAreCopied() {
+        double[][][] original = {{{1.0}, {2.0}}};
+        double[][][] copy = (double[][][]) copy(original);
+
+        assertNotSame(original[0], copy[0]);
+        assertNotSame(original[0][1], copy[0][1]);
+        assertEquals(2.0, copy[0][1][0], 0.0);
+    }
+}
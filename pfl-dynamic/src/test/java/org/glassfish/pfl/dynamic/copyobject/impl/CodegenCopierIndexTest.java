@@ -0,0 +1,182 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.pfl.dynamic.copyobject.impl;
+
+import org.glassfish.pfl.dynamic.copyobject.spi.LibraryClassLoader;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+public class CodegenCopierIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    public static class Order {
+        int quantity = 3;
+        List<String> lines = new ArrayList<String>();
+    }
+
+    public static class Point {
+        final int x = 1;
+        final int y = 2;
+    }
+
+    public static class Stale {
+        int value = 5;
+    }
+
+    // Write the copier for cls and an index entry with the given layout 
+    // hash to a new directory, as CopierGenerationTool does.
+    private ClassLoader precompile(Class<?> cls, String layoutHash) throws Exception {
+        File dir = folder.newFolder();
+        CodegenCopierGenerator generator = new CodegenCopierGenerator(cls);
+        byte[] data = generator.generate(LibraryClassLoader.getClassLoader());
+        ClassCopierOrdinaryImpl.setCodegenCopierAllowed(true);
+
+        File classFile = new File(dir, generator.getClassName().replace('.', '/') + ".class");
+        classFile.getParentFile().mkdirs();
+        Files.write(classFile.toPath(), data);
+
+        CodegenCopierIndex index = new CodegenCopierIndex();
+        index.add(new CodegenCopierIndex.Entry(cls.getName(), generator.getClassName(), layoutHash));
+        File indexFile = new File(dir, CodegenCopierIndex.RESOURCE_NAME);
+        indexFile.getParentFile().mkdirs();
+        OutputStream os = new FileOutputStream(indexFile);
+        try {
+            index.write(os);
+        } finally {
+            os.close();
+        }
+
+        return new URLClassLoader(new URL[] { dir.toURI().toURL() }, getClass().getClassLoader());
+    }
+
+    @Test
+    public void afterWrite_readReturnsSameEntries() throws Exception {
+        CodegenCopierIndex index = new CodegenCopierIndex();
+        index.add(new CodegenCopierIndex.Entry("a.B$C", "gen.a.B$CCopier_1", "0123"));
+        index.add(new CodegenCopierIndex.Entry("a.A", "gen.a.ACopier_2", "4567"));
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        index.write(os);
+
+        CodegenCopierIndex copy = new CodegenCopierIndex();
+        copy.read(new ByteArrayInputStream(os.toByteArray()));
+
+        assertEquals(index.getEntries().toString(), copy.getEntries().toString());
+        assertEquals("a.A", copy.getEntries().get(0).getClassName());
+    }
+
+    @Test
+    public void whenClassesDiffer_layoutHashesDiffer() {
+        assertEquals(CodegenCopierIndex.getLayoutHash(Order.class),
+                CodegenCopierIndex.getLayoutHash(Order.class));
+        assertNotEquals(CodegenCopierIndex.getLayoutHash(Order.class),
+                CodegenCopierIndex.getLayoutHash(Stale.class));
+    }
+
+    @Test
+    public void immutableClassesAreNotPrecompiled() {
+        assertTrue(CodegenCopierIndex.canPrecompile(Order.class));
+        assertFalse(CodegenCopierIndex.canPrecompile(Point.class));
+        assertFalse(CodegenCopierIndex.canPrecompile(Runnable.class));
+    }
+
+    @Test
+    public void whenIndexIsPresent_precompiledCopierIsUsed() throws Exception {
+        ClassLoader cl = precompile(Order.class, CodegenCopierIndex.getLayoutHash(Order.class));
+        PipelineClassCopierFactory factory = new ClassCopierFactoryPipelineImpl();
+        factory.setFieldCopierType(FieldCopierType.CODEGEN);
+
+        assertEquals(1, factory.registerPrecompiledCopiers(cl));
+
+        Order original = new Order();
+        original.lines.add("one");
+        Order copy = (Order) factory.getClassCopier(Order.class)
+                .copy(new HashMap<Object, Object>(), original);
+
+        assertEquals(3, copy.quantity);
+        assertEquals(original.lines, copy.lines);
+        assertNotSame(original.lines, copy.lines);
+
+        // The copier was not generated at runtime.
+        String className = new CodegenCopierGenerator(Order.class).getClassName();
+        try {
+            Class.forName(className, false, LibraryClassLoader.getClassLoader());
+            assertTrue("copier was generated at runtime", false);
+        } catch (ClassNotFoundException exc) {
+            // expected
+        }
+    }
+
+    @Test
+    public void whenLayoutDiffers_precompiledCopierIsIgnored() throws Exception {
+        ClassLoader cl = precompile(Stale.class, "0000000000000000");
+        PipelineClassCopierFactory factory = new ClassCopierFactoryPipelineImpl();
+
+        assertEquals(0, factory.registerPrecompiledCopiers(cl));
+    }
+
+    @Test
+    public void whenNoIndexIsPresent_nothingIsRegistered() throws Exception {
+        ClassLoader cl = new URLClassLoader(new URL[] { folder.newFolder().toURI().toURL() }, null);
+        PipelineClassCopierFactory factory = new ClassCopierFactoryPipelineImpl();
+
+        assertEquals(0, factory.registerPrecompiledCopiers(cl));
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.pfl.dynamic.copyobject.impl;
+
+import org.glassfish.pfl.dynamic.copyobject.spi.Copy;
+import org.glassfish.pfl.dynamic.copyobject.spi.CopyType;
+import org.glassfish.pfl.dynamic.copyobject.spi.LibraryClassLoader;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CodegenCopierTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private PipelineClassCopierFactory factory = new ClassCopierFactoryPipelineImpl();
+    private HashMap<Object, Object> map = new HashMap<Object, Object>();
+
+    public static class Base {
+        int count = 7;
+        long total = 1L << 40;
+        String name = new String("base");
+        TimeUnit unit = TimeUnit.SECONDS;
+        List<String> items = new ArrayList<String>();
+
+        @Copy(CopyType.IDENTITY)
+        Object shared = new Object();
+
+        @Copy(CopyType.NULL)
+        Object transientRef = new Object();
+
+        @Copy(CopyType.NULL)
+        int transientCount = 3;
+    }
+
+    public static class Derived extends Base {
+        double ratio = 0.5;
+        char letter = 'x';
+        boolean flag = true;
+        Base self = this;
+    }
+
+    private Derived copy(FieldCopierType type) {
+        factory.setFieldCopierType(type);
+        Derived original = new Derived();
+        original.items.add("a");
+        ClassCopierOrdinaryImpl copier = new ClassCopierOrdinaryImpl(factory, Derived.class);
+        return (Derived) copier.copy(map, original);
+    }
+
+    @Test
+    public void whenCodegenSelected_copiesAllFieldsOfSuperclasses() {
+        Derived copy = copy(FieldCopierType.CODEGEN);
+
+        assertEquals(7, copy.count);
+        assertEquals(1L << 40, copy.total);
+        assertEquals(0.5, copy.ratio, 0.0);
+        assertEquals('x', copy.letter);
+        assertTrue(copy.flag);
+        assertEquals(1, copy.items.size());
+        assertSame(copy, copy.self);
+    }
+
+    @Test
+    public void whenCodegenSelected_immutableFieldsAreShared() {
+        Derived original = new Derived();
+        factory.setFieldCopierType(FieldCopierType.CODEGEN);
+        Derived copy = (Derived) new ClassCopierOrdinaryImpl(factory, Derived.class).copy(map, original);
+
+        assertSame(original.name, copy.name);
+        assertSame(original.unit, copy.unit);
+        assertNotSame(original.items, copy.items);
+    }
+
+    @Test
+    public void whenCodegenSelected_honorsCopyAnnotations() {
+        Derived original = new Derived();
+        factory.setFieldCopierType(FieldCopierType.CODEGEN);
+        Derived copy = (Derived) new ClassCopierOrdinaryImpl(factory, Derived.class).copy(map, original);
+
+        assertSame(original.shared, copy.shared);
+        assertNull(copy.transientRef);
+        assertEquals(0, copy.transientCount);
+    }
+
+    @Test
+    public void whenCodegenSelected_copierClassIsGenerated() throws Exception {
+        copy(FieldCopierType.CODEGEN);
+
+        String className = new CodegenCopierGenerator(Derived.class).getClassName();
+        Class<?> cls = Class.forName(className, false, LibraryClassLoader.getClassLoader());
+
+        assertTrue(CodegenCopierBase.class.isAssignableFrom(cls));
+    }
+
+    @Test
+    public void whenCodegenSelected_generatedCopierIsUsed() throws Exception {
+        ClassCopierOrdinaryImpl.ClassFieldCopier fieldCopier =
+                ClassCopierOrdinaryImpl.getClassFieldCopier(Derived.class, factory,
+                        FieldCopierType.CODEGEN);
+
+        // Not the UNSAFE copier that is used if the generated one fails.
+        assertTrue(fieldCopier instanceof CodegenCopierBase);
+    }
+
+    @Test
+    public void whenUnsafeSelected_copiesAllFieldsOfSuperclasses() {
+        Derived copy = copy(FieldCopierType.UNSAFE);
+
+        assertEquals(7, copy.count);
+        assertEquals('x', copy.letter);
+        assertNull(copy.transientRef);
+        assertSame(copy, copy.self);
+    }
+
+    @Test
+    public void whenClassStructureIsUnchanged_generatedClassNameIsStable() {
+        assertEquals(new CodegenCopierGenerator(Derived.class).getClassName(),
+                new CodegenCopierGenerator(Derived.class).getClassName());
+    }
+
+    @Test
+    public void whenClassesDiffer_generatedClassNamesDiffer() {
+        String baseName = new CodegenCopierGenerator(Base.class).getClassName();
+        String derivedName = new CodegenCopierGenerator(Derived.class).getClassName();
+
+        assertNotEquals(baseName, derivedName);
+    }
+
+    @Test
+    public void afterPut_cacheReturnsSameByteCode() throws Exception {
+        CodegenCopierCache cache = new CodegenCopierCache(folder.newFolder("copiers"));
+        CodegenCopierGenerator generator = new CodegenCopierGenerator(Derived.class);
+        byte[] data = generator.generate(LibraryClassLoader.getClassLoader());
+        // generate() leaves the codegen copier disabled on this thread.
+        ClassCopierOrdinaryImpl.setCodegenCopierAllowed(true);
+
+        cache.put(generator.getClassName(), data);
+
+        assertArrayEquals(data, cache.get(generator.getClassName()));
+    }
+
+    @Test
+    public void whenNothingCached_cacheReturnsNull() throws Exception {
+        CodegenCopierCache cache = new CodegenCopierCache(folder.newFolder("copiers"));
+
+        assertNull(cache.get("no.such.Copier"));
+    }
+}
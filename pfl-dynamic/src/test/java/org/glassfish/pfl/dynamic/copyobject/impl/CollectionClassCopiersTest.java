@@ -0,0 +1,230 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.pfl.dynamic.copyobject.impl;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CollectionClassCopiersTest {
+
+    private PipelineClassCopierFactory factory = new ClassCopierFactoryPipelineImpl();
+    private Map<Object, Object> oldToNew = new IdentityHashMap<Object, Object>();
+
+    @SuppressWarnings("unchecked")
+    private <T> T copy(T obj) {
+        return (T) factory.getClassCopier(obj.getClass()).copy(oldToNew, obj);
+    }
+
+    static class Value {
+        int number;
+
+        Value(int number) {
+            this.number = number;
+        }
+    }
+
+    @Test
+    public void whenCopyingArrayList_elementsAreCopied() {
+        Value value = new Value(1);
+        ArrayList<Object> original = new ArrayList<Object>(Arrays.<Object>asList("a", value, null, value));
+        ArrayList<Object> copy = copy(original);
+
+        assertEquals(4, copy.size());
+        assertSame("a", copy.get(0));
+        assertNotSame(value, copy.get(1));
+        assertEquals(1, ((Value) copy.get(1)).number);
+        assertSame(copy.get(1), copy.get(3));
+        assertSame(copy, oldToNew.get(original));
+    }
+
+    @Test
+    public void whenCopyingArrayDeque_orderIsPreserved() {
+        ArrayDeque<String> original = new ArrayDeque<String>(Arrays.asList("x", "y", "z"));
+        ArrayDeque<String> copy = copy(original);
+
+        assertEquals(Arrays.asList("x", "y", "z"), new ArrayList<String>(copy));
+    }
+
+    @Test
+    public void whenCopyingHashMap_keysAndValuesAreCopied() {
+        HashMap<String, List<String>> original = new HashMap<String, List<String>>();
+        for (int i = 0; i < 100; i++) {
+            original.put("key" + i, new ArrayList<String>(Collections.singletonList("v" + i)));
+        }
+        HashMap<String, List<String>> copy = copy(original);
+
+        assertEquals(original, copy);
+        assertNotSame(original.get("key5"), copy.get("key5"));
+        copy.put("new", null);
+        assertTrue(copy.containsKey("new"));
+    }
+
+    @Test
+    public void whenCopyingTreeMap_comparatorIsKept() {
+        TreeMap<String, Integer> original = new TreeMap<String, Integer>(String.CASE_INSENSITIVE_ORDER);
+        original.put("b", 2);
+        original.put("A", 1);
+        TreeMap<String, Integer> copy = copy(original);
+
+        assertSame(String.CASE_INSENSITIVE_ORDER, copy.comparator());
+        assertEquals(Arrays.asList("A", "b"), new ArrayList<String>(copy.keySet()));
+        assertEquals(Integer.valueOf(1), copy.get("a"));
+    }
+
+    static class ReversingComparator implements Comparator<String> {
+        int calls;
+
+        @Override
+        public int compare(String first, String second) {
+            calls++;
+            return second.compareTo(first);
+        }
+    }
+
+    @Test
+    public void whenTreeMapComparatorHasState_comparatorIsCopied() {
+        ReversingComparator comparator = new ReversingComparator();
+        TreeMap<String, Integer> original = new TreeMap<String, Integer>(comparator);
+        original.put("a", 1);
+        original.put("b", 2);
+        TreeMap<String, Integer> copy = copy(original);
+
+        assertNotSame(comparator, copy.comparator());
+        assertSame(copy.comparator(), oldToNew.get(comparator));
+        assertEquals(comparator.calls, ((ReversingComparator) copy.comparator()).calls);
+        assertEquals(Arrays.asList("b", "a"), new ArrayList<String>(copy.keySet()));
+    }
+
+    static class SelfKey {
+        // Declared before name, so that a copy of map is made before the
+        // name of the copied key is set.
+        Map<SelfKey, String> map = new HashMap<SelfKey, String>();
+        String name;
+
+        SelfKey(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof SelfKey && ((SelfKey) obj).name.equals(name);
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode();
+        }
+    }
+
+    @Test
+    public void whenMapKeyIsInACycle_keyIsNotHashedBeforeItIsComplete() {
+        SelfKey original = new SelfKey("self");
+        original.map.put(original, "value");
+        SelfKey copy = copy(original);
+
+        assertNotSame(original, copy);
+        assertEquals("value", copy.map.get(copy));
+        assertSame(copy, copy.map.keySet().iterator().next());
+    }
+
+    @Test
+    public void whenCopyingConcurrentHashMap_entriesAreCopied() {
+        ConcurrentHashMap<Integer, Value> original = new ConcurrentHashMap<Integer, Value>();
+        original.put(1, new Value(10));
+        ConcurrentHashMap<Integer, Value> copy = copy(original);
+
+        assertNotSame(original.get(1), copy.get(1));
+        assertEquals(10, copy.get(1).number);
+    }
+
+    @Test
+    public void whenCopyingEnumMap_valuesAreCopied() {
+        EnumMap<TimeUnit, Value> original = new EnumMap<TimeUnit, Value>(TimeUnit.class);
+        original.put(TimeUnit.SECONDS, new Value(2));
+        EnumMap<TimeUnit, Value> copy = copy(original);
+
+        assertEquals(1, copy.size());
+        assertNotSame(original.get(TimeUnit.SECONDS), copy.get(TimeUnit.SECONDS));
+        assertEquals(2, copy.get(TimeUnit.SECONDS).number);
+        copy.put(TimeUnit.DAYS, null);
+        assertEquals(1, original.size());
+    }
+
+    @Test
+    public void whenCopyingSelfReferencingList_copyReferencesItself() {
+        ArrayList<Object> original = new ArrayList<Object>();
+        original.add(original);
+        ArrayList<Object> copy = copy(original);
+
+        assertSame(copy, copy.get(0));
+    }
+
+    static class NamedMap extends HashMap<String, String> {
+        String name = "named";
+    }
+
+    @Test
+    public void whenCopyingHashMapSubclass_fieldsAreCopied() {
+        NamedMap original = new NamedMap();
+        original.put("k", "v");
+        NamedMap copy = copy(original);
+
+        assertEquals("named", copy.name);
+        assertEquals("v", copy.get("k"));
+    }
+}
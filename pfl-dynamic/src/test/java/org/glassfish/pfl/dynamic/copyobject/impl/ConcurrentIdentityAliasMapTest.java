@@ -0,0 +1,134 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.pfl.dynamic.copyobject.impl;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentIdentityAliasMapTest {
+
+    private ConcurrentIdentityAliasMap map = new ConcurrentIdentityAliasMap();
+
+    @Test
+    public void whenKeysAreEqualButNotSame_keepBoth() {
+        String key1 = new String("key");
+        String key2 = new String("key");
+        map.put(key1, "a");
+        map.put(key2, "b");
+
+        assertEquals(2, map.size());
+        assertSame("a", map.get(key1));
+        assertSame("b", map.get(key2));
+    }
+
+    @Test
+    public void whenKeyIsPresent_putIfAbsentReturnsExistingValue() {
+        Object key = new Object();
+        Object first = new Object();
+
+        assertNull(map.putIfAbsent(key, first));
+        assertSame(first, map.putIfAbsent(key, new Object()));
+        assertSame(first, map.get(key));
+    }
+
+    @Test
+    public void whenRemoving_compareValuesByIdentity() {
+        Object key = new Object();
+        String value = new String("v");
+        map.put(key, value);
+
+        assertFalse(map.remove(key, new String("v")));
+        assertTrue(map.remove(key, value));
+        assertFalse(map.containsKey(key));
+    }
+
+    @Test
+    public void whenManyKeysAreAdded_entrySetContainsAll() {
+        Set<Object> keys = new HashSet<Object>();
+        for (int i = 0; i < 1000; i++) {
+            Object key = new Object();
+            keys.add(key);
+            map.put(key, key);
+        }
+
+        assertEquals(1000, map.size());
+        for (Map.Entry<Object, Object> entry : map.entrySet()) {
+            assertTrue(keys.contains(entry.getKey()));
+            assertSame(entry.getKey(), entry.getValue());
+        }
+        map.clear();
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void whenThreadsRaceOnOneKey_onlyOneValueWins() throws Exception {
+        final Object key = new Object();
+        final Object[] results = new Object[8];
+        Thread[] threads = new Thread[results.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    Object mine = new Object();
+                    Object existing = map.putIfAbsent(key, mine);
+                    results[index] = existing == null ? mine : existing;
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (Object result : results) {
+            assertSame(map.get(key), result);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.pfl.dynamic.copyobject.impl;
+
+import org.glassfish.pfl.dynamic.copyobject.spi.ObjectCopier;
+import org.glassfish.pfl.dynamic.copyobject.spi.ReflectiveCopyException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CopyInstrumentationTest {
+
+    static class Node {
+        int number;
+        Node next;
+    }
+
+    static class Root {
+        Node first;
+        Node second;
+    }
+
+    private static final ObjectCopier FAILING = new ObjectCopier() {
+        @Override
+        public Object copy(Object obj) {
+            throw new ReflectiveCopyException("cannot copy");
+        }
+    };
+
+    @Before
+    public void setUp() {
+        CopyInstrumentation.reset();
+        CopyInstrumentation.setEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+        CopyInstrumentation.setEnabled(false);
+        CopyInstrumentation.reset();
+    }
+
+    private static Root makeRoot() {
+        Root root = new Root();
+        root.first = new Node();
+        root.second = new Node();
+        root.first.next = root.second;
+        return root;
+    }
+
+    @Test
+    public void whenCopying_classesAndGraphsAreCounted() {
+        new ObjectCopierImpl().copy(makeRoot());
+        new ObjectCopierImpl().copy(makeRoot());
+
+        CopyInstrumentation.Snapshot snapshot = CopyInstrumentation.getSnapshot();
+        CopyInstrumentation.ClassSnapshot root = snapshot.getClasses().get(Root.class.getName());
+        CopyInstrumentation.ClassSnapshot node = snapshot.getClasses().get(Node.class.getName());
+        assertEquals(2, root.getCopyCount());
+        assertEquals(2, root.getGraphCount());
+        assertEquals(6, root.getGraphObjects());
+        assertTrue(root.getGraphNanos() > 0);
+        assertEquals(4, node.getCopyCount());
+        assertEquals(0, node.getGraphCount());
+
+        // Both alias tables held 3 objects: bucket 2 counts sizes 2 and 3.
+        assertEquals(2, snapshot.getTableSizeHistogram()[2]);
+    }
+
+    @Test
+    public void whenDisabled_nothingIsRecorded() {
+        CopyInstrumentation.setEnabled(false);
+        new ObjectCopierImpl().copy(makeRoot());
+
+        assertNull(CopyInstrumentation.getSnapshot().getClasses().get(Root.class.getName()));
+    }
+
+    @Test
+    public void whenFallingBack_reasonIsRecorded() {
+        new FallbackObjectCopierImpl(FAILING, new ObjectCopierImpl()).copy(makeRoot());
+
+        CopyInstrumentation.ClassSnapshot root = CopyInstrumentation.getSnapshot()
+            .getClasses().get(Root.class.getName());
+        assertEquals(1, root.getFallbackCount());
+        assertEquals(Long.valueOf(1), root.getFallbackReasons().get("cannot copy"));
+    }
+
+    @Test
+    public void whenReset_countersAreCleared() {
+        new ObjectCopierImpl().copy(makeRoot());
+        CopyInstrumentation.reset();
+
+        assertTrue(CopyInstrumentation.getSnapshot().getClasses().isEmpty());
+        assertFalse(CopyInstrumentation.getSnapshot().toString().isEmpty());
+    }
+
+    @Test
+    public void whenManyThreadsCount_stripedCountersSumAllUpdates() throws InterruptedException {
+        final StripedCounters counters = new StripedCounters(3);
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        counters.increment(1);
+                        counters.add(2, 2);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(0, counters.get(0));
+        assertEquals(40000, counters.get(1));
+        assertEquals(80000, counters.get(2));
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.pfl.dynamic.copyobject.impl;
+
+import org.glassfish.pfl.dynamic.copyobject.spi.Copy;
+import org.glassfish.pfl.dynamic.copyobject.spi.CopyType;
+import org.glassfish.pfl.dynamic.copyobject.spi.ReflectiveCopyException;
+import org.junit.Test;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CopyPlanTest {
+
+    static final class Point {
+        final int x;
+        final int y;
+        final String label;
+
+        Point(int x, int y, String label) {
+            this.x = x;
+            this.y = y;
+            this.label = label;
+        }
+    }
+
+    static final class ImmutableNode {
+        final Point value;
+        final ImmutableNode next;
+
+        ImmutableNode(Point value, ImmutableNode next) {
+            this.value = value;
+            this.next = next;
+        }
+    }
+
+    static final class MutablePoint {
+        int x;
+    }
+
+    static final class HasArray {
+        final int[] values = new int[2];
+    }
+
+    static class Open {
+        final int x = 1;
+    }
+
+    static final class HasOpenField {
+        final Open open = new Open();
+    }
+
+    static final class HasNullField {
+        @Copy(CopyType.NULL)
+        final String name = "name";
+    }
+
+    static final class Line {
+        final MutablePoint start = new MutablePoint();
+        final MutablePoint end = new MutablePoint();
+    }
+
+    static final class Fields {
+        int count;
+        String name;
+        Point point;
+        MutablePoint mutable;
+        @Copy(CopyType.IDENTITY)
+        MutablePoint shared;
+        @Copy(CopyType.NULL)
+        MutablePoint cleared;
+        @Copy(CopyType.SOURCE)
+        Object source;
+    }
+
+    static final class BadResult {
+        @Copy(CopyType.RESULT)
+        String name;
+    }
+
+    private static CopyPlan.FieldAction actionOf(CopyPlan plan, String name) {
+        for (CopyPlan.FieldPlan fp : plan.getFields()) {
+            if (fp.getField().getName().equals(name)) {
+                return fp.getAction();
+            }
+        }
+        throw new AssertionError("No field " + name);
+    }
+
+    @Test
+    public void whenAllFieldsAreFinalAndImmutable_classIsDeeplyImmutable() {
+        assertTrue(CopyPlan.getCopyPlan(Point.class).isDeeplyImmutable());
+    }
+
+    @Test
+    public void whenTypeGraphHasCycle_classMayStillBeDeeplyImmutable() {
+        CopyPlan plan = CopyPlan.getCopyPlan(ImmutableNode.class);
+        assertTrue(plan.isDeeplyImmutable());
+        assertFalse(plan.isAcyclic());
+    }
+
+    static final class Token {
+    }
+
+    @Test
+    public void whenClassHasNoFields_classIsNotImmutable() {
+        assertFalse(CopyPlan.getCopyPlan(Token.class).isDeeplyImmutable());
+        assertFalse(CopyPlan.getCopyPlan(Object.class).isDeeplyImmutable());
+    }
+
+    @Test
+    public void whenCopyingStatelessObject_copyIsNotShared() {
+        ClassCopierFactoryPipelineImpl ccf = new ClassCopierFactoryPipelineImpl();
+        Token token = new Token();
+
+        assertNotSame(token, ccf.getClassCopier(Token.class)
+            .copy(new IdentityHashMap<Object, Object>(), token));
+    }
+
+    @Test
+    public void whenFieldIsNotFinal_classIsNotImmutable() {
+        assertFalse(CopyPlan.getCopyPlan(MutablePoint.class).isDeeplyImmutable());
+    }
+
+    @Test
+    public void whenFieldIsArray_classIsNotImmutable() {
+        assertFalse(CopyPlan.getCopyPlan(HasArray.class).isDeeplyImmutable());
+    }
+
+    @Test
+    public void whenFieldTypeIsNotFinal_classIsNotImmutable() {
+        assertFalse(CopyPlan.getCopyPlan(HasOpenField.class).isDeeplyImmutable());
+    }
+
+    @Test
+    public void whenFieldIsCopyNull_classIsNotImmutable() {
+        assertFalse(CopyPlan.getCopyPlan(HasNullField.class).isDeeplyImmutable());
+    }
+
+    @Test
+    public void whenFieldTypesAreFinalAndNotCyclic_classIsAcyclic() {
+        CopyPlan plan = CopyPlan.getCopyPlan(Line.class);
+        assertFalse(plan.isDeeplyImmutable());
+        assertTrue(plan.isAcyclic());
+    }
+
+    @Test
+    public void whenFieldTypeIsNotFinal_classIsNotProvablyAcyclic() {
+        assertFalse(CopyPlan.getCopyPlan(HasOpenField.class).isAcyclic());
+    }
+
+    @Test
+    public void whenPlanningFields_actionsFollowTypesAndAnnotations() {
+        CopyPlan plan = CopyPlan.getCopyPlan(Fields.class);
+        assertEquals(CopyPlan.FieldAction.PRIMITIVE, actionOf(plan, "count"));
+        assertEquals(CopyPlan.FieldAction.REFERENCE, actionOf(plan, "name"));
+        assertEquals(CopyPlan.FieldAction.REFERENCE, actionOf(plan, "point"));
+        assertEquals(CopyPlan.FieldAction.COPY, actionOf(plan, "mutable"));
+        assertEquals(CopyPlan.FieldAction.REFERENCE, actionOf(plan, "shared"));
+        assertEquals(CopyPlan.FieldAction.NULL, actionOf(plan, "cleared"));
+        assertEquals(CopyPlan.FieldAction.SOURCE, actionOf(plan, "source"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void whenCopyAnnotationDoesNotFitField_actionIsRejected() {
+        actionOf(CopyPlan.getCopyPlan(BadResult.class), "name");
+    }
+
+    @Test
+    public void whenReportingPlan_reportNamesEveryField() {
+        CopyPlan plan = CopyPlan.getCopyPlan(Fields.class);
+        String report = plan.getReport();
+        List<CopyPlan.FieldPlan> fields = plan.getFields();
+        assertEquals(7, fields.size());
+        for (CopyPlan.FieldPlan fp : fields) {
+            assertTrue(report.contains(fp.getField().getName()));
+        }
+        assertTrue(report.contains("deeply immutable: no"));
+    }
+
+    @Test
+    public void whenCopyingImmutableObject_itIsSharedWithoutAliasEntry()
+        throws ReflectiveCopyException {
+        PipelineClassCopierFactory ccf =
+            DefaultClassCopierFactories.getPipelineClassCopierFactory();
+        ImmutableNode node = new ImmutableNode(new Point(1, 2, "a"), null);
+        Map<Object, Object> oldToNew = new IdentityHashMap<Object, Object>();
+
+        assertSame(node, ccf.getClassCopier(ImmutableNode.class)
+            .copy(oldToNew, node));
+        assertTrue(oldToNew.isEmpty());
+    }
+
+    @Test
+    public void whenCopyingMutableObject_immutableFieldsAreShared()
+        throws ReflectiveCopyException {
+        Line line = new Line();
+        Fields fields = new Fields();
+        fields.point = new Point(3, 4, "b");
+        fields.mutable = new MutablePoint();
+
+        Fields copy = (Fields) new ObjectCopierImpl().copy(fields);
+        assertNotSame(fields, copy);
+        assertSame(fields.point, copy.point);
+        assertNotSame(fields.mutable, copy.mutable);
+        assertNotSame(line, new ObjectCopierImpl().copy(line));
+    }
+}
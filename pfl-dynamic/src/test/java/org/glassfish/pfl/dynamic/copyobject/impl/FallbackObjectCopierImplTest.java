@@ -0,0 +1,110 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.pfl.dynamic.copyobject.impl;
+
+import org.glassfish.pfl.dynamic.copyobject.spi.ObjectCopier;
+import org.glassfish.pfl.dynamic.copyobject.spi.ReflectiveCopyException;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FallbackObjectCopierImplTest {
+
+    private static final ObjectCopier FAILING = new ObjectCopier() {
+        @Override
+        public Object copy(Object obj) {
+            throw new ReflectiveCopyException("cannot copy");
+        }
+    };
+
+    private static final ObjectCopier IDENTITY = new ObjectCopier() {
+        @Override
+        public Object copy(Object obj) {
+            return obj;
+        }
+    };
+
+    @Before
+    public void setUp() {
+        FallbackObjectCopierImpl.resetStatistics();
+    }
+
+    @Test
+    public void whenFirstCopierSucceeds_noFallbackIsCounted() {
+        new FallbackObjectCopierImpl(IDENTITY, FAILING).copy("value");
+
+        FallbackObjectCopierImpl.Statistics stats = FallbackObjectCopierImpl.getStatistics();
+        assertEquals(1, stats.getCopyCount());
+        assertEquals(0, stats.getFallbackCount());
+        assertTrue(stats.getFallbackCounts().isEmpty());
+    }
+
+    @Test
+    public void whenFirstCopierFails_fallbackIsCountedByClass() {
+        ObjectCopier copier = new FallbackObjectCopierImpl(FAILING, IDENTITY);
+        copier.copy("value");
+        copier.copy("other");
+        copier.copy(1);
+        new FallbackObjectCopierImpl(IDENTITY, FAILING).copy("value");
+
+        FallbackObjectCopierImpl.Statistics stats = FallbackObjectCopierImpl.getStatistics();
+        assertEquals(4, stats.getCopyCount());
+        assertEquals(3, stats.getFallbackCount());
+        assertEquals(0.75, stats.getFallbackRate(), 0.0);
+        assertEquals(Long.valueOf(2), stats.getFallbackCounts().get("java.lang.String"));
+        assertEquals(Long.valueOf(1), stats.getFallbackCounts().get("java.lang.Integer"));
+    }
+
+    @Test
+    public void whenFirstCopierFailsInBatch_wholeBatchFallsBack() {
+        Object[] args = { "value", 1 };
+
+        Object[] copy = new FallbackObjectCopierImpl(FAILING, IDENTITY).copyAll(args);
+
+        assertSame(args[0], copy[0]);
+        assertSame(args[1], copy[1]);
+        FallbackObjectCopierImpl.Statistics stats = FallbackObjectCopierImpl.getStatistics();
+        assertEquals(1, stats.getCopyCount());
+        assertEquals(Long.valueOf(1), stats.getFallbackCounts().get(Object[].class.getName()));
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.pfl.dynamic.copyobject.impl;
+
+import org.glassfish.pfl.dynamic.copyobject.spi.Copy;
+import org.glassfish.pfl.dynamic.copyobject.spi.CopyType;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(Parameterized.class)
+public class FieldCopierTypeTest {
+
+    @Parameters(name = "{0}")
+    public static Collection<Object[]> types() {
+        List<Object[]> result = new ArrayList<Object[]>();
+        for (FieldCopierType type : FieldCopierType.values()) {
+            result.add(new Object[]{type});
+        }
+        return result;
+    }
+
+    private PipelineClassCopierFactory factory = new ClassCopierFactoryPipelineImpl();
+    private HashMap<Object, Object> map = new HashMap<Object, Object>();
+
+    public FieldCopierTypeTest(FieldCopierType type) {
+        factory.setFieldCopierType(type);
+    }
+
+    public static class Base {
+        private final int count;
+        long total = 1L << 40;
+        byte small = 3;
+        short medium = 300;
+        float fraction = 0.25F;
+        String name = new String("base");
+        TimeUnit unit = TimeUnit.SECONDS;
+        List<String> items = new ArrayList<String>(Arrays.asList("a"));
+
+        @Copy(CopyType.IDENTITY)
+        Object shared = new Object();
+
+        @Copy(CopyType.NULL)
+        Object transientRef = new Object();
+
+        @Copy(CopyType.NULL)
+        long transientTotal = 3;
+
+        @Copy(CopyType.SOURCE)
+        Base source;
+
+        Base() {
+            count = 7;
+        }
+
+        int getCount() {
+            return count;
+        }
+    }
+
+    public static class Derived extends Base {
+        double ratio = 0.5;
+        char letter = 'x';
+        boolean flag = true;
+        Base self = this;
+        int[] values = {1, 2, 3};
+    }
+
+    public static class Empty {
+    }
+
+    private Object copy(Object original) {
+        return new ClassCopierOrdinaryImpl(factory, original.getClass()).copy(map, original);
+    }
+
+    @Test
+    public void whenCopied_allFieldsOfSuperclassesAreCopied() {
+        Derived copy = (Derived) copy(new Derived());
+
+        assertEquals(7, copy.getCount());
+        assertEquals(1L << 40, copy.total);
+        assertEquals(3, copy.small);
+        assertEquals(300, copy.medium);
+        assertEquals(0.25F, copy.fraction, 0.0F);
+        assertEquals(0.5, copy.ratio, 0.0);
+        assertEquals('x', copy.letter);
+        assertTrue(copy.flag);
+        assertEquals(Arrays.asList("a"), copy.items);
+        assertEquals(3, copy.values.length);
+    }
+
+    @Test
+    public void whenCopied_mutableReferencesAreCopied() {
+        Derived original = new Derived();
+        Derived copy = (Derived) copy(original);
+
+        assertNotSame(original.items, copy.items);
+        assertNotSame(original.values, copy.values);
+        assertSame(copy, copy.self);
+    }
+
+    @Test
+    public void whenCopied_immutableFieldsAreShared() {
+        Derived original = new Derived();
+        Derived copy = (Derived) copy(original);
+
+        assertSame(original.name, copy.name);
+        assertSame(original.unit, copy.unit);
+    }
+
+    @Test
+    public void whenCopied_copyAnnotationsAreHonored() {
+        Derived original = new Derived();
+        Derived copy = (Derived) copy(original);
+
+        assertSame(original.shared, copy.shared);
+        assertNull(copy.transientRef);
+        assertEquals(0, copy.transientTotal);
+        assertSame(original, copy.source);
+    }
+
+    @Test
+    public void whenClassHasNoFields_copyIsCreated() {
+        Empty original = new Empty();
+
+        assertNotSame(original, copy(original));
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.pfl.dynamic.copyobject.impl;
+
+import org.junit.Test;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class IdentityAliasMapTest {
+
+    private IdentityAliasMap map = new IdentityAliasMap();
+
+    @Test
+    public void whenEqualButNotIdenticalKeys_keepSeparateEntries() {
+        String key1 = new String("key");
+        String key2 = new String("key");
+
+        map.put(key1, "a");
+        map.put(key2, "b");
+
+        assertEquals(2, map.size());
+        assertEquals("a", map.get(key1));
+        assertEquals("b", map.get(key2));
+        assertNull(map.get("key"));
+    }
+
+    @Test
+    public void whenNullKeyPut_mayRetrieveIt() {
+        map.put(null, "value");
+
+        assertTrue(map.containsKey(null));
+        assertEquals("value", map.get(null));
+    }
+
+    @Test
+    public void afterManyPuts_allEntriesAreRetrievable() {
+        Object[] keys = new Object[10000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = new Object();
+            map.put(keys[i], i);
+        }
+
+        assertEquals(keys.length, map.size());
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(i, map.get(keys[i]));
+        }
+    }
+
+    @Test
+    public void afterRandomPutsAndRemoves_matchesIdentityHashMap() {
+        Random random = new Random(42);
+        Object[] keys = new Object[500];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = new Object();
+        }
+
+        Map<Object, Object> expected = new IdentityHashMap<Object, Object>();
+        for (int i = 0; i < 20000; i++) {
+            Object key = keys[random.nextInt(keys.length)];
+            if (random.nextInt(3) == 0) {
+                assertSame(expected.remove(key), map.remove(key));
+            } else {
+                Object value = i;
+                assertSame(expected.put(key, value), map.put(key, value));
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (Object key : keys) {
+            assertSame(expected.get(key), map.get(key));
+        }
+        assertEquals(expected.entrySet(), map.entrySet());
+    }
+
+    @Test
+    public void afterReset_mapIsEmptyAndReusable() {
+        Object key = new Object();
+        map.put(key, "value");
+
+        map.reset(Integer.MAX_VALUE);
+
+        assertTrue(map.isEmpty());
+        assertFalse(map.containsKey(key));
+        map.put(key, "other");
+        assertEquals("other", map.get(key));
+    }
+
+    @Test
+    public void whenResetAfterLargeGraph_shrinksToInitialCapacity() {
+        for (int i = 0; i < 10000; i++) {
+            map.put(new Object(), i);
+        }
+        int initialCapacity = new IdentityAliasMap().capacity();
+
+        map.reset(1000);
+
+        assertTrue(map.isEmpty());
+        assertEquals(initialCapacity, map.capacity());
+    }
+
+    @Test
+    public void afterEnsureCapacity_holdsExpectedSizeWithoutResizing() {
+        Object key = new Object();
+        map.put(key, "value");
+
+        map.ensureCapacity(5000);
+        int capacity = map.capacity();
+        for (int i = 1; i < 5000; i++) {
+            map.put(new Object(), i);
+        }
+
+        assertTrue(capacity >= 5000);
+        assertEquals(capacity, map.capacity());
+        assertEquals("value", map.get(key));
+    }
+
+    @Test
+    public void whenCapacityIsSufficient_ensureCapacityKeepsTable() {
+        int capacity = map.capacity();
+
+        map.ensureCapacity(capacity);
+
+        assertEquals(capacity, map.capacity());
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.pfl.dynamic.copyobject.impl;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.UUID;
+
+import org.glassfish.pfl.dynamic.copyobject.spi.Immutable;
+import org.glassfish.pfl.dynamic.copyobject.spi.ImmutabilityRule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ImmutableTypeRegistryTest {
+
+    /** Registered in META-INF/services for this test. */
+    public static class ClaimingRule implements ImmutabilityRule {
+        @Override
+        public boolean isImmutable(Class<?> cls) {
+            return cls == Claimed.class || cls == BadlyClaimed.class;
+        }
+    }
+
+    static final class Claimed {
+        private int cachedHash;
+        private final String name;
+
+        Claimed(String name) {
+            this.name = name;
+        }
+    }
+
+    static final class BadlyClaimed {
+        int value;
+    }
+
+    static final class LateClaimed {
+        private final Object value = new Object();
+    }
+
+    enum Color { RED, GREEN }
+
+    @Immutable
+    static class Annotated {
+        Object value;
+    }
+
+    static class Holder {
+        BigDecimal amount;
+        UUID id;
+        java.time.LocalDate date;
+        Date mutableDate;
+    }
+
+    @Test
+    public void whenJdkValueClass_isImmutable() {
+        assertTrue(ImmutableTypeRegistry.isImmutable(String.class));
+        assertTrue(ImmutableTypeRegistry.isImmutable(BigDecimal.class));
+        assertTrue(ImmutableTypeRegistry.isImmutable(UUID.class));
+        assertTrue(ImmutableTypeRegistry.isImmutable(java.time.LocalDate.class));
+        assertTrue(ImmutableTypeRegistry.isImmutable(java.time.ZoneOffset.class));
+    }
+
+    @Test
+    public void whenEnumOrAnnotated_isImmutable() {
+        assertTrue(ImmutableTypeRegistry.isImmutable(Color.class));
+        assertTrue(ImmutableTypeRegistry.isImmutable(Annotated.class));
+    }
+
+    @Test
+    public void whenMutableOrNotOrdinaryClass_isNotImmutable() {
+        assertFalse(ImmutableTypeRegistry.isImmutable(Date.class));
+        assertFalse(ImmutableTypeRegistry.isImmutable(ArrayList.class));
+        assertFalse(ImmutableTypeRegistry.isImmutable(String[].class));
+        assertFalse(ImmutableTypeRegistry.isImmutable(Runnable.class));
+    }
+
+    @Test
+    public void whenRuleFromServiceLoaderClaimsClass_isImmutable() {
+        assertTrue(ImmutableTypeRegistry.isImmutable(Claimed.class));
+    }
+
+    @Test
+    public void whenClaimedClassHasMutableVisibleField_claimIsRejected() {
+        assertFalse(ImmutableTypeRegistry.isImmutable(BadlyClaimed.class));
+    }
+
+    @Test
+    public void whenRuleIsRegistered_laterClassesUseIt() {
+        ImmutableTypeRegistry.registerRule(new ImmutabilityRule() {
+            @Override
+            public boolean isImmutable(Class<?> cls) {
+                return cls == LateClaimed.class;
+            }
+        });
+
+        assertTrue(ImmutableTypeRegistry.isImmutable(LateClaimed.class));
+    }
+
+    @Test
+    public void whenCopied_immutableValuesAreShared() {
+        Holder holder = new Holder();
+        holder.amount = new BigDecimal("12.50");
+        holder.id = UUID.randomUUID();
+        holder.date = java.time.LocalDate.of(2020, 1, 31);
+        holder.mutableDate = new Date();
+
+        Holder copy = (Holder) new ObjectCopierImpl().copy(holder);
+
+        assertSame(holder.amount, copy.amount);
+        assertSame(holder.id, copy.id);
+        assertSame(holder.date, copy.date);
+        assertNotSame(holder.mutableDate, copy.mutableDate);
+    }
+}
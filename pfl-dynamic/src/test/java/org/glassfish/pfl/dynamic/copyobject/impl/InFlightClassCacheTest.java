@@ -0,0 +1,205 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.pfl.dynamic.copyobject.impl;
+
+import org.glassfish.pfl.dynamic.copyobject.spi.ReflectiveCopyException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class InFlightClassCacheTest {
+
+    private final InFlightClassCache<String> cache = new InFlightClassCache<String>();
+
+    @Test
+    public void whenThreadsRace_valueIsBuiltOnce() throws Exception {
+        final AtomicInteger builds = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        final InFlightClassCache.Builder<String> builder = new InFlightClassCache.Builder<String>() {
+            @Override
+            public String build(Class<?> cls) {
+                builds.incrementAndGet();
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException exc) {
+                    Thread.currentThread().interrupt();
+                }
+                return new String(cls.getName());
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<Future<String>>();
+            for (int ctr = 0; ctr < 8; ctr++) {
+                results.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        start.await();
+                        return cache.get(Integer.class, builder);
+                    }
+                }));
+            }
+            start.countDown();
+
+            String first = results.get(0).get(10, TimeUnit.SECONDS);
+            for (Future<String> result : results) {
+                assertSame(first, result.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, builds.get());
+    }
+
+    @Test
+    public void differentClassesAreBuiltInParallel() throws Exception {
+        // Each build waits until both builds have started, which would 
+        // never happen if builds were serialized.
+        final CountDownLatch started = new CountDownLatch(2);
+        final InFlightClassCache.Builder<String> builder = new InFlightClassCache.Builder<String>() {
+            @Override
+            public String build(Class<?> cls) {
+                started.countDown();
+                try {
+                    if (!started.await(10, TimeUnit.SECONDS)) {
+                        throw new ReflectiveCopyException("builds were serialized");
+                    }
+                } catch (InterruptedException exc) {
+                    Thread.currentThread().interrupt();
+                }
+                return cls.getName();
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> first = executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return cache.get(Integer.class, builder);
+                }
+            });
+            Future<String> second = executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return cache.get(Long.class, builder);
+                }
+            });
+
+            assertEquals(Integer.class.getName(), first.get(20, TimeUnit.SECONDS));
+            assertEquals(Long.class.getName(), second.get(20, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void buildMayUseValuesOfOtherClasses() {
+        String result = cache.get(Integer.class, new InFlightClassCache.Builder<String>() {
+            @Override
+            public String build(Class<?> cls) {
+                if (cls == Integer.class) {
+                    return "Integer extends " + cache.get(Number.class, this);
+                }
+                return cls.getSimpleName();
+            }
+        });
+
+        assertEquals("Integer extends Number", result);
+        assertEquals("Number", cache.peek(Number.class));
+    }
+
+    @Test
+    public void whenBuildNeedsItsOwnValue_recursionIsReported() {
+        try {
+            cache.get(Integer.class, new InFlightClassCache.Builder<String>() {
+                @Override
+                public String build(Class<?> cls) {
+                    return cache.get(cls, this);
+                }
+            });
+            fail("expected ReflectiveCopyException");
+        } catch (ReflectiveCopyException exc) {
+            // expected
+        }
+
+        // The failure was not cached.
+        assertNull(cache.peek(Integer.class));
+    }
+
+    @Test
+    public void whenBuildFails_nextCallBuildsAgain() {
+        final AtomicInteger builds = new AtomicInteger();
+        InFlightClassCache.Builder<String> builder = new InFlightClassCache.Builder<String>() {
+            @Override
+            public String build(Class<?> cls) {
+                if (builds.incrementAndGet() == 1) {
+                    throw new ReflectiveCopyException("first build fails");
+                }
+                return "built";
+            }
+        };
+
+        try {
+            cache.get(Integer.class, builder);
+            fail("expected ReflectiveCopyException");
+        } catch (ReflectiveCopyException exc) {
+            // expected
+        }
+
+        assertEquals("built", cache.get(Integer.class, builder));
+        assertEquals(2, builds.get());
+    }
+}
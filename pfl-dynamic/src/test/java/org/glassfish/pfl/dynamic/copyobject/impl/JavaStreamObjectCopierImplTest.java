@@ -0,0 +1,172 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.pfl.dynamic.copyobject.impl;
+
+import org.glassfish.pfl.dynamic.copyobject.spi.ReflectiveCopyException;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class JavaStreamObjectCopierImplTest {
+
+    static class Item implements Serializable {
+        private static final long serialVersionUID = 1L;
+        String name;
+        Item other;
+
+        Item(String name) {
+            this.name = name;
+        }
+    }
+
+    static class Holder implements Serializable {
+        private static final long serialVersionUID = 1L;
+        Object value;
+    }
+
+    static class Nested implements Serializable {
+        private static final long serialVersionUID = 1L;
+        Item item;
+        transient Item copiedDuringWrite;
+
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            // Copying from inside a copy must not disturb the outer copy.
+            copiedDuringWrite = (Item) new JavaStreamObjectCopierImpl().copy(item);
+            out.defaultWriteObject();
+        }
+    }
+
+    private final JavaStreamObjectCopierImpl copier = new JavaStreamObjectCopierImpl();
+
+    @Test
+    public void whenCopyingGraph_aliasingIsPreserved() {
+        Item first = new Item("first");
+        Item second = new Item("second");
+        first.other = second;
+        second.other = first;
+
+        Item copy = (Item) copier.copy(first);
+        assertNotSame(first, copy);
+        assertEquals("second", copy.other.name);
+        assertSame(copy, copy.other.other);
+    }
+
+    @Test
+    public void whenCopyingRepeatedly_copiesAreIndependent() {
+        Item item = new Item("item");
+        Item copy1 = (Item) copier.copy(item);
+        Item copy2 = (Item) copier.copy(item);
+        assertNotSame(copy1, copy2);
+        assertEquals("item", copy2.name);
+    }
+
+    @Test
+    public void whenCopyingNull_resultIsNull() {
+        assertNull(copier.copy(null));
+    }
+
+    @Test
+    public void whenCopyingLargeObject_bufferGrows() {
+        byte[] data = new byte[3 * 1024 * 1024];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        assertArrayEquals(data, (byte[]) copier.copy(data));
+        assertEquals("small", ((Item) copier.copy(new Item("small"))).name);
+    }
+
+    @Test
+    public void whenObjectIsNotSerializable_copyThrowsAndCopierRecovers() {
+        Holder holder = new Holder();
+        holder.value = new Object();
+        try {
+            copier.copy(holder);
+            fail("expected ReflectiveCopyException");
+        } catch (ReflectiveCopyException exc) {
+            // expected
+        }
+
+        holder.value = "value";
+        assertEquals("value", ((Holder) copier.copy(holder)).value);
+    }
+
+    @Test
+    public void whenCopyReentersCopier_bothCopiesSucceed() {
+        Nested nested = new Nested();
+        nested.item = new Item("inner");
+        Nested copy = (Nested) copier.copy(nested);
+        assertEquals("inner", copy.item.name);
+        assertEquals("inner", nested.copiedDuringWrite.name);
+        assertNotSame(nested.item, nested.copiedDuringWrite);
+    }
+
+    @Test
+    public void whenCopyingManyTimes_streamsAreReplacedTransparently() {
+        List<String> list = new ArrayList<String>();
+        list.add("a");
+        for (int i = 0; i < 10000; i++) {
+            assertEquals(list, copier.copy(list));
+        }
+    }
+
+    @Test
+    public void whenCopyingAll_aliasingIsPreservedAcrossRoots() {
+        Item item = new Item("item");
+        Holder holder = new Holder();
+        holder.value = item;
+
+        Object[] copy = copier.copyAll(new Object[] { item, holder, null });
+
+        assertNotSame(item, copy[0]);
+        assertSame(copy[0], ((Holder) copy[1]).value);
+        assertNull(copy[2]);
+    }
+}
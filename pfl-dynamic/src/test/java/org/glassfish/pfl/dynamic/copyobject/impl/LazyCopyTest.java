@@ -0,0 +1,294 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.pfl.dynamic.copyobject.impl;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import org.glassfish.pfl.dynamic.copyobject.spi.LazyCopy;
+import org.glassfish.pfl.dynamic.copyobject.spi.ReadOnly;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LazyCopyTest {
+
+    @LazyCopy
+    public interface Account {
+        @ReadOnly
+        String getName();
+
+        @ReadOnly
+        int getBalance();
+
+        @ReadOnly
+        List<String> getHistory();
+
+        void deposit(int amount);
+    }
+
+    public interface Audited {
+        String audit();
+    }
+
+    static class AccountImpl implements Account, Audited {
+        private final String name;
+        private int balance;
+        private final List<String> history = new ArrayList<String>();
+
+        AccountImpl(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public int getBalance() {
+            return balance;
+        }
+
+        @Override
+        public List<String> getHistory() {
+            return history;
+        }
+
+        @Override
+        public void deposit(int amount) {
+            balance += amount;
+            history.add("deposit " + amount);
+        }
+
+        @Override
+        public String audit() {
+            return name + ":" + balance;
+        }
+    }
+
+    static class Holder {
+        Account account;
+    }
+
+    static class ConcreteHolder {
+        AccountImpl account;
+        Audited audited;
+        Account lazy;
+        Object any;
+    }
+
+    static class LazyFirstHolder {
+        Account lazy;
+        AccountImpl account;
+    }
+
+    private static AccountImpl makeAccount() {
+        AccountImpl account = new AccountImpl("checking");
+        account.deposit(10);
+        return account;
+    }
+
+    @Test
+    public void whenReadOnlyMethodsAreCalled_originalIsNotCopied() {
+        AccountImpl original = makeAccount();
+        Account copy = (Account) new ObjectCopierImpl().copy(original);
+
+        assertNotSame(original, copy);
+        assertEquals("checking", copy.getName());
+        assertEquals(10, copy.getBalance());
+        assertFalse(((LazyCopyProxyBase) copy).isCopied());
+    }
+
+    @Test
+    public void whenProxyIsCreated_itOnlyImplementsLazyCopyInterfaces() {
+        Object copy = new ObjectCopierImpl().copy(makeAccount());
+
+        assertTrue(copy instanceof Account);
+        assertFalse(copy instanceof Audited);
+        assertFalse(copy instanceof AccountImpl);
+    }
+
+    @Test
+    public void whenWriteMethodIsCalled_copyIsMadeAndOriginalIsUnchanged() {
+        AccountImpl original = makeAccount();
+        Account copy = (Account) new ObjectCopierImpl().copy(original);
+
+        copy.deposit(5);
+
+        assertTrue(((LazyCopyProxyBase) copy).isCopied());
+        assertEquals(15, copy.getBalance());
+        assertEquals(2, copy.getHistory().size());
+        assertEquals(10, original.getBalance());
+        assertEquals(1, original.getHistory().size());
+    }
+
+    @Test
+    public void whenMutableResultIsReturned_itIsCopiedOnceAndSharedWithTheCopy() {
+        AccountImpl original = makeAccount();
+        Account copy = (Account) new ObjectCopierImpl().copy(original);
+
+        List<String> history = copy.getHistory();
+        assertNotSame(original.getHistory(), history);
+        assertSame(history, copy.getHistory());
+        assertFalse(((LazyCopyProxyBase) copy).isCopied());
+
+        copy.deposit(5);
+        assertSame(history, copy.getHistory());
+        assertEquals(2, history.size());
+        assertEquals(1, original.getHistory().size());
+    }
+
+    @Test
+    public void whenProxyIsReferencedTwice_aliasingIsPreserved() {
+        AccountImpl original = makeAccount();
+        Holder[] holders = new Holder[] { new Holder(), new Holder() };
+        holders[0].account = original;
+        holders[1].account = original;
+
+        Holder[] copy = (Holder[]) new ObjectCopierImpl().copy(holders);
+
+        assertTrue(copy[0].account instanceof LazyCopyProxyBase);
+        assertSame(copy[0].account, copy[1].account);
+    }
+
+    @Test
+    public void whenProxyIsCopied_copiesAreIndependent() {
+        AccountImpl original = makeAccount();
+        Account first = (Account) new ObjectCopierImpl().copy(original);
+        Account second = (Account) new ObjectCopierImpl().copy(first);
+        first.deposit(5);
+
+        Account third = (Account) new ObjectCopierImpl().copy(first);
+        first.deposit(5);
+        second.deposit(1);
+
+        assertEquals(20, first.getBalance());
+        assertEquals(11, second.getBalance());
+        assertEquals(15, third.getBalance());
+        assertEquals(10, original.getBalance());
+    }
+
+    @Test
+    public void whenProxiesAreCompared_equalsAndHashCodeUseTheTarget() {
+        AccountImpl original = makeAccount();
+        Account copy = (Account) new ObjectCopierImpl().copy(original);
+
+        assertEquals(copy, copy);
+        assertEquals(original.hashCode(), copy.hashCode());
+        assertFalse(((LazyCopyProxyBase) copy).isCopied());
+    }
+
+    @Test
+    public void whenFieldIsNotDeclaredAsLazyCopyInterface_valueIsCopiedEagerly() {
+        for (FieldCopierType type : FieldCopierType.values()) {
+            PipelineClassCopierFactory factory = new ClassCopierFactoryPipelineImpl();
+            factory.setFieldCopierType(type);
+            AccountImpl original = makeAccount();
+            ConcreteHolder holder = new ConcreteHolder();
+            holder.account = original;
+            holder.audited = original;
+            holder.lazy = original;
+            holder.any = original;
+
+            ConcreteHolder copy = (ConcreteHolder) factory
+                .getLazyClassCopier(ConcreteHolder.class)
+                .copy(new IdentityHashMap<Object, Object>(), holder);
+
+            String msg = type.toString();
+            assertTrue(msg, copy.account instanceof AccountImpl);
+            assertNotSame(msg, original, copy.account);
+            assertSame(msg, copy.account, copy.audited);
+            assertSame(msg, copy.account, copy.any);
+            assertEquals(msg, "checking:10", copy.audited.audit());
+
+            // Whichever field is copied first, the lazy field refers to the
+            // same copy as the others.
+            copy.lazy.deposit(5);
+            assertEquals(msg, 15, copy.account.getBalance());
+            assertEquals(msg, 10, original.getBalance());
+        }
+    }
+
+    @Test
+    public void whenArrayComponentTypeIsConcrete_elementsAreCopiedEagerly() {
+        AccountImpl original = makeAccount();
+
+        AccountImpl[] concrete = (AccountImpl[]) new ObjectCopierImpl()
+            .copy(new AccountImpl[] { original });
+        Audited[] other = (Audited[]) new ObjectCopierImpl()
+            .copy(new Audited[] { original });
+        Account[] lazy = (Account[]) new ObjectCopierImpl()
+            .copy(new Account[] { original });
+
+        assertNotSame(original, concrete[0]);
+        assertEquals("checking:10", other[0].audit());
+        assertTrue(lazy[0] instanceof LazyCopyProxyBase);
+    }
+
+    @Test
+    public void whenObjectIsFirstCopiedLazily_concreteFieldGetsTheProxysCopy() {
+        for (FieldCopierType type : FieldCopierType.values()) {
+            PipelineClassCopierFactory factory = new ClassCopierFactoryPipelineImpl();
+            factory.setFieldCopierType(type);
+            AccountImpl original = makeAccount();
+            LazyFirstHolder holder = new LazyFirstHolder();
+            holder.lazy = original;
+            holder.account = original;
+
+            LazyFirstHolder copy = (LazyFirstHolder) factory
+                .getLazyClassCopier(LazyFirstHolder.class)
+                .copy(new IdentityHashMap<Object, Object>(), holder);
+
+            String msg = type.toString();
+            assertTrue(msg, copy.lazy instanceof LazyCopyProxyBase);
+            assertTrue(msg, copy.account instanceof AccountImpl);
+            assertNotSame(msg, original, copy.account);
+            copy.lazy.deposit(5);
+            assertEquals(msg, 15, copy.account.getBalance());
+            assertEquals(msg, 10, original.getBalance());
+        }
+    }
+}
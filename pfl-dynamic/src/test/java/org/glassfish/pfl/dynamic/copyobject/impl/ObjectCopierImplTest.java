@@ -0,0 +1,328 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.pfl.dynamic.copyobject.impl;
+
+import org.glassfish.pfl.dynamic.copyobject.spi.ReflectiveCopyException;
+import org.junit.Test;
+
+import java.io.Serializable;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ObjectCopierImplTest {
+
+    private static final int DEEP = 200000;
+
+    static class Node {
+        int number;
+        Node next;
+
+        Node(int number) {
+            this.number = number;
+        }
+    }
+
+    static class Key {
+        String name;
+
+        Key(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key && ((Key) obj).name.equals(name);
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode();
+        }
+    }
+
+    static class Holder {
+        Key key;
+        Map<Key, String> map;
+    }
+
+    static class Link {
+        Link next;
+        Object payload;
+    }
+
+    static class Resolved implements Serializable {
+        private static final long serialVersionUID = 1L;
+        Node node;
+        int resolvedNumber;
+
+        private Object readResolve() {
+            resolvedNumber = node.next.number;
+            return this;
+        }
+    }
+
+    private Node makeChain(int length) {
+        Node head = new Node(0);
+        Node current = head;
+        for (int i = 1; i < length; i++) {
+            current.next = new Node(i);
+            current = current.next;
+        }
+        return head;
+    }
+
+    @Test
+    public void whenCopyingDeepChainIteratively_copyIsComplete() {
+        Node copy = (Node) new ObjectCopierImpl(true).copy(makeChain(DEEP));
+
+        int count = 0;
+        for (Node node = copy; node != null; node = node.next) {
+            assertEquals(count++, node.number);
+        }
+        assertEquals(DEEP, count);
+    }
+
+    @Test(expected = ReflectiveCopyException.class)
+    public void whenCopyingDeepChainRecursively_stackOverflows() {
+        new ObjectCopierImpl(false).copy(makeChain(DEEP));
+    }
+
+    @Test
+    public void whenCopyingLongLinkedList_copyIsComplete() {
+        LinkedList<Integer> original = new LinkedList<Integer>();
+        for (int i = 0; i < DEEP; i++) {
+            original.add(i);
+        }
+
+        @SuppressWarnings("unchecked")
+        LinkedList<Integer> copy = (LinkedList<Integer>) new ObjectCopierImpl(true).copy(original);
+
+        assertEquals(original, copy);
+    }
+
+    @Test
+    public void whenMapKeyIsSharedWithAField_keyIsCompleteWhenPut() {
+        Holder original = makeHolder();
+
+        Holder copy = (Holder) new ObjectCopierImpl(true).copy(original);
+
+        assertNotSame(original.key, copy.key);
+        assertSame(copy.key, copy.map.keySet().iterator().next());
+        assertEquals("v", copy.map.get(new Key("k")));
+    }
+
+    private Holder makeHolder() {
+        Holder holder = new Holder();
+        holder.key = new Key("k");
+        holder.map = new HashMap<Key, String>();
+        holder.map.put(holder.key, "v");
+        return holder;
+    }
+
+    @Test
+    public void whenMapsAreCopiedBelowTheRecursionLimit_keysAreCompleteWhenPut() {
+        Link head = new Link();
+        Link current = head;
+        for (int i = 0; i < 3 * WorkStackAliasMap.MAX_RECURSION_DEPTH; i++) {
+            current.next = new Link();
+            current.payload = (i % 50 == 0) ? makeHolder() : makeMapKeyedByMaps();
+            current = current.next;
+        }
+
+        Link copy = (Link) new ObjectCopierImpl(true).copy(head);
+
+        Link original = head;
+        for (Link link = copy; link.next != null; link = link.next) {
+            if (link.payload instanceof Holder) {
+                Holder holder = (Holder) link.payload;
+                assertSame(holder.key, holder.map.keySet().iterator().next());
+                assertEquals("v", holder.map.get(new Key("k")));
+            } else {
+                assertEquals(original.payload, link.payload);
+            }
+            original = original.next;
+        }
+    }
+
+    private Map<Map<String, String>, String> makeMapKeyedByMaps() {
+        Map<Map<String, String>, String> result = new TreeMap<Map<String, String>, String>(
+            new Comparator<Map<String, String>>() {
+                @Override
+                public int compare(Map<String, String> m1, Map<String, String> m2) {
+                    return m1.get("name").compareTo(m2.get("name"));
+                }
+            });
+        for (int i = 0; i < 10; i++) {
+            Map<String, String> key = new HashMap<String, String>();
+            key.put("name", "n" + i);
+            result.put(key, "v" + i);
+        }
+        return result;
+    }
+
+    @Test
+    public void whenMapKeysContainMaps_innerMapsAreFilledFirst() {
+        Map<Map<String, String>, String> original = makeMapKeyedByMaps();
+
+        @SuppressWarnings("unchecked")
+        Map<Map<String, String>, String> copy =
+            (Map<Map<String, String>, String>) new ObjectCopierImpl(true).copy(original);
+
+        assertEquals(original, copy);
+    }
+
+    @Test
+    public void whenClassHasReadResolve_itSeesCompleteFields() {
+        Resolved original = new Resolved();
+        original.node = makeChain(3);
+
+        Resolved copy = (Resolved) new ObjectCopierImpl(true).copy(original);
+
+        assertEquals(1, copy.resolvedNumber);
+        assertEquals(2, copy.node.next.next.number);
+    }
+
+    @Test
+    public void whenCopyFails_nextCopyIsNotAffected() {
+        ObjectCopierImpl copier = new ObjectCopierImpl(true);
+        Object[] bad = new Object[]{makeChain(10), new Thread()};
+        try {
+            copier.copy(bad);
+        } catch (ReflectiveCopyException exc) {
+            // expected
+        }
+
+        Node copy = (Node) copier.copy(new Node(5));
+        assertEquals(5, copy.number);
+        assertFalse(copier.isCopying());
+    }
+
+    @Test
+    public void whenCopyingAll_aliasingIsPreservedAcrossRoots() {
+        Node shared = new Node(1);
+        Holder holder = makeHolder();
+        Object[] args = { shared, null, "text", holder, shared, holder.key };
+
+        Object[] copy = new ObjectCopierImpl().copyAll(args);
+
+        assertEquals(args.length, copy.length);
+        assertNotSame(shared, copy[0]);
+        assertSame(copy[0], copy[4]);
+        assertNull(copy[1]);
+        assertSame(args[2], copy[2]);
+        assertSame(((Holder) copy[3]).key, copy[5]);
+        assertSame(copy[5], ((Holder) copy[3]).map.keySet().iterator().next());
+    }
+
+    @Test
+    public void whenCopyingAll_aliasingIsPreservedWithEarlierCopies() {
+        ObjectCopierImpl copier = new ObjectCopierImpl();
+        Node node = new Node(1);
+        Object first = copier.copy(node);
+
+        Object[] copy = copier.copyAll(new Object[] { node });
+
+        assertSame(first, copy[0]);
+    }
+
+    @Test
+    public void whenAllArgumentsAreImmutable_copyAllReturnsThem() {
+        Object[] args = { "a", 1, null, Boolean.TRUE };
+
+        Object[] copy = new ObjectCopierImpl().copyAll(args);
+
+        assertNotSame(args, copy);
+        assertSame(args[0], copy[0]);
+        assertSame(args[1], copy[1]);
+        assertSame(args[3], copy[3]);
+    }
+
+    @Test
+    public void whenPooledCopierIsReused_sessionEndsAtMakeOrRelease() {
+        PooledObjectCopierFactoryImpl factory = new PooledObjectCopierFactoryImpl();
+        ObjectCopierImpl copier = (ObjectCopierImpl) factory.make();
+        Node node = new Node(1);
+
+        Object first = copier.copy(node);
+        assertSame(first, copier.copy(node));
+
+        assertSame(copier, factory.make());
+        Object second = copier.copy(node);
+        assertNotSame(first, second);
+
+        factory.release();
+        assertNotSame(second, copier.copy(node));
+    }
+
+    static class SizedNode {
+        SizedNode next;
+    }
+
+    private static SizedNode makeSizedChain(int length) {
+        SizedNode head = null;
+        for (int i = 0; i < length; i++) {
+            SizedNode node = new SizedNode();
+            node.next = head;
+            head = node;
+        }
+        return head;
+    }
+
+    @Test
+    public void afterCopy_graphSizeHintIsLearnedForRootClass() {
+        AliasSizeHints.reset();
+
+        new ObjectCopierImpl().copy(makeSizedChain(1000));
+        new ObjectCopierImpl().copy(makeSizedChain(2000));
+
+        assertEquals(1250, AliasSizeHints.getHint(SizedNode.class));
+        assertEquals(Integer.valueOf(1250), CopyInstrumentation.getSnapshot()
+            .getAliasSizeHints().get(SizedNode.class.getName()));
+    }
+}
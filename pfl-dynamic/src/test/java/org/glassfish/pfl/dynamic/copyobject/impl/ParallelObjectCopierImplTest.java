@@ -0,0 +1,258 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.pfl.dynamic.copyobject.impl;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ParallelObjectCopierImplTest {
+
+    private static final int THRESHOLD = 16;
+    private static final int SIZE = 10000;
+
+    private ForkJoinPool pool = new ForkJoinPool(4);
+    private ParallelObjectCopierImpl copier = new ParallelObjectCopierImpl(pool, THRESHOLD);
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    static class Node {
+        int number;
+        Node next;
+
+        Node(int number) {
+            this.number = number;
+        }
+    }
+
+    private Node[] makeNodes(Node shared) {
+        Node[] nodes = new Node[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            nodes[i] = (i % 100 == 0) ? shared : new Node(i);
+        }
+        return nodes;
+    }
+
+    @Test
+    public void whenCopyingNull_returnNull() {
+        assertNull(copier.copy(null));
+    }
+
+    @Test
+    public void whenCopyingLargeArray_sharedElementsAreCopiedOnce() {
+        Node shared = new Node(-1);
+        shared.next = shared;
+        Node[] original = makeNodes(shared);
+
+        Node[] copy = (Node[]) copier.copy(original);
+
+        assertNotSame(original, copy);
+        Node sharedCopy = copy[0];
+        assertNotSame(shared, sharedCopy);
+        assertSame(sharedCopy, sharedCopy.next);
+        for (int i = 0; i < SIZE; i++) {
+            if (i % 100 == 0) {
+                assertSame(sharedCopy, copy[i]);
+            } else {
+                assertNotSame(original[i], copy[i]);
+                assertEquals(i, copy[i].number);
+            }
+        }
+    }
+
+    @Test
+    public void whenElementsReferToEachOther_aliasingIsPreserved() {
+        Node[] original = makeNodes(new Node(-1));
+        for (int i = 0; i < SIZE; i++) {
+            original[i].next = original[(i * 7919) % SIZE];
+        }
+
+        Node[] copy = (Node[]) copier.copy(original);
+
+        for (int i = 0; i < SIZE; i++) {
+            assertSame(copy[(i * 7919) % SIZE], copy[i].next);
+        }
+    }
+
+    @Test
+    public void whenCopyingLargeCollections_elementsAreCopied() {
+        Node shared = new Node(-1);
+        List<Node> list = new ArrayList<Node>();
+        Map<String, Node> map = new HashMap<String, Node>();
+        for (int i = 0; i < SIZE; i++) {
+            list.add(new Node(i));
+            map.put("key" + i, (i % 2 == 0) ? shared : list.get(i));
+        }
+        Object[] original = new Object[]{list, map};
+
+        Object[] copy = (Object[]) copier.copy(original);
+        @SuppressWarnings("unchecked") List<Node> listCopy = (List<Node>) copy[0];
+        @SuppressWarnings("unchecked") Map<String, Node> mapCopy = (Map<String, Node>) copy[1];
+
+        assertEquals(SIZE, listCopy.size());
+        assertEquals(SIZE, mapCopy.size());
+        for (int i = 0; i < SIZE; i++) {
+            assertEquals(i, listCopy.get(i).number);
+            assertNotSame(list.get(i), listCopy.get(i));
+            Node value = mapCopy.get("key" + i);
+            if (i % 2 == 0) {
+                assertSame(mapCopy.get("key0"), value);
+            } else {
+                assertSame(listCopy.get(i), value);
+            }
+        }
+    }
+
+    @Test
+    public void whenCopyingTwice_aliasingIsPreservedAcrossCalls() {
+        Node[] original = makeNodes(new Node(-1));
+
+        Node[] first = (Node[]) copier.copy(original);
+        Node[] second = (Node[]) copier.copy(original);
+
+        assertSame(first, second);
+    }
+
+    @Test
+    public void whenBelowThreshold_copyIsStillDeep() {
+        Node[] original = new Node[]{new Node(1), new Node(2)};
+
+        Node[] copy = (Node[]) copier.copy(original);
+
+        assertNotSame(original[0], copy[0]);
+        assertEquals(2, copy[1].number);
+    }
+
+    static class Key {
+        static final AtomicInteger hashCodeCalls = new AtomicInteger();
+        int number;
+
+        Key(int number) {
+            this.number = number;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key && ((Key) obj).number == number;
+        }
+
+        @Override
+        public int hashCode() {
+            hashCodeCalls.incrementAndGet();
+            return number;
+        }
+    }
+
+    @Test
+    public void whenMutableKeysAreShared_mapCopyFindsThem() {
+        List<Key> keys = new ArrayList<Key>();
+        Map<Key, Integer> map = new HashMap<Key, Integer>();
+        for (int i = 0; i < SIZE; i++) {
+            Key key = new Key(i);
+            keys.add(key);
+            map.put(key, i);
+        }
+
+        Key.hashCodeCalls.set(0);
+        Object[] copy = (Object[]) copier.copy(new Object[]{keys, map});
+        // Another task may not have filled in a copied key yet, so the
+        // copy must not hash it.
+        assertEquals(0, Key.hashCodeCalls.get());
+        @SuppressWarnings("unchecked") List<Key> keysCopy = (List<Key>) copy[0];
+        @SuppressWarnings("unchecked") Map<Key, Integer> mapCopy = (Map<Key, Integer>) copy[1];
+
+        assertEquals(SIZE, mapCopy.size());
+        for (int i = 0; i < SIZE; i++) {
+            assertEquals(Integer.valueOf(i), mapCopy.get(keysCopy.get(i)));
+        }
+        for (Key key : mapCopy.keySet()) {
+            assertSame(keysCopy.get(key.number), key);
+        }
+    }
+
+    static class PoolRecorder implements Serializable {
+        private static final long serialVersionUID = 1L;
+        static volatile ForkJoinPool copyPool;
+
+        private Object readResolve() {
+            copyPool = ForkJoinTask.getPool();
+            return this;
+        }
+    }
+
+    @Test
+    public void whenCalledFromAnotherPool_copyRunsInConfiguredPool() throws Exception {
+        ForkJoinPool other = new ForkJoinPool(1);
+        try {
+            other.submit(new Callable<Object>() {
+                @Override
+                public Object call() {
+                    return copier.copy(new PoolRecorder());
+                }
+            }).get();
+        } finally {
+            other.shutdown();
+        }
+
+        assertSame(pool, PoolRecorder.copyPool);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void whenThresholdIsNotPositive_throwException() {
+        new ParallelObjectCopierImpl(pool, 0);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package dynamic.copyobject  ;
+
+import java.util.concurrent.ForkJoinPool ;
+
+import junit.framework.Test ;
+import org.glassfish.pfl.dynamic.copyobject.spi.CopyobjectDefaults;
+import org.glassfish.pfl.dynamic.copyobject.spi.ObjectCopierFactory;
+
+public class ParallelReflectTest extends Client
+{
+    // A very small threshold, so that even small arrays and collections
+    // are copied in parallel.
+    private static final ObjectCopierFactory factory =
+	CopyobjectDefaults.makeParallelReflectObjectCopierFactory( 
+	    new ForkJoinPool( 4 ), 2 ) ;
+
+    private static final String[] EXCLUDE_LIST = new String[] {
+    } ;
+
+    private static final String[] EXPECTED_EXCEPTION_LIST = new String[] {
+	"testTransientThread",
+	"testTransientThreadGroup",
+	"testTransientProcessBuilder" } ;
+
+    public ParallelReflectTest( ) 
+    { 
+    }
+
+    public ParallelReflectTest( String name ) { super( name ) ; }
+
+    public static void main( String[] args ) 
+    { 
+	Client root = new ParallelReflectTest() ;
+	Client.doMain( args, root ) ; 
+    }
+
+    public static Test suite() {
+	Client root = new ParallelReflectTest() ;
+	return root.makeSuite() ;
+    }
+
+    public boolean isTestExcluded()
+    {
+	return findInArray( getName(), EXCLUDE_LIST ) ;
+    }
+
+    public boolean shouldThrowReflectiveCopyException()
+    {
+	return findInArray( getName(), EXPECTED_EXCEPTION_LIST ) ;
+    }
+
+    public ObjectCopierFactory getCopierFactory( )
+    {
+	return factory ;
+    }
+
+    public Client makeTest( String name ) 
+    {
+	return new ParallelReflectTest( name ) ;
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package org.glassfish.pfl.tf.tools.copier ;
+
+import org.glassfish.pfl.basic.tools.argparser.DefaultValue ;
+import org.glassfish.pfl.basic.tools.argparser.Help ;
+import org.glassfish.pfl.basic.tools.argparser.ArgParser ;
+import org.glassfish.pfl.basic.tools.file.Scanner ;
+import org.glassfish.pfl.basic.tools.file.FileWrapper ;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import org.glassfish.pfl.dynamic.copyobject.impl.ClassCopierOrdinaryImpl;
+import org.glassfish.pfl.dynamic.copyobject.impl.CodegenCopierGenerator;
+import org.glassfish.pfl.dynamic.copyobject.impl.CodegenCopierIndex;
+import org.glassfish.pfl.tf.spi.Util;
+
+/** Tool for generating the copiers of the object copier at build time.
+ * This scans a directory of compiled classes, and generates a copier 
+ * (see CodegenCopierGenerator) for every class in the given packages that
+ * the object copier copies with a generated copier.  The copier classes 
+ * are written to the output directory, together with the index resource 
+ * (see CodegenCopierIndex) that ClassCopierFactoryPipelineImpl reads when
+ * it is created.  The output directory is normally the scanned directory,
+ * so that the copiers are packaged with the classes they copy.
+ * <p>
+ * The classes are loaded (but not initialized) from the scanned directory,
+ * so all of their dependencies must be on the classpath of the tool.
+ * The generated copiers depend on the field offsets of the VM that runs
+ * the tool.  A VM with a different layout ignores the precompiled copiers
+ * and generates its own.
+ */
+public class CopierGenerationTool {
+    private static int errorCount = 0 ;
+    private Util util ;
+
+    public interface Arguments {
+        @DefaultValue( "false" )
+        @Help( "Debug flag" ) 
+        boolean debug() ;
+
+        @DefaultValue( "0" )
+        @Help( "Verbose flag" ) 
+        int verbose() ;
+
+        @DefaultValue( "false" )
+        @Help( "Indicates a run that only prints out actions, "
+            + "but does not perform them")
+        boolean dryrun() ;
+
+        @DefaultValue( "." )
+        @Help( "Directory to scan for class files" ) 
+        File dir() ;
+
+        @DefaultValue( "" )
+        @Help( "Directory in which to write the copiers and the index "
+            + "(the scanned directory if empty)" ) 
+        String out() ;
+
+        @DefaultValue( "" )
+        @Help( "Packages whose classes should have copiers generated.  "
+            + "Subpackages are included" )
+        List<String> packages() ;
+    }
+
+    private Arguments args ;
+
+    private boolean isSelected( String className ) {
+        for (String pkg : args.packages()) {
+            if (pkg.length() > 0 && className.startsWith( pkg + "." )) {
+                return true ;
+            }
+        }
+
+        return false ;
+    }
+
+    // Collect the names of the selected classes in the scanned directory.
+    private List<String> getClassNames() throws IOException {
+        final List<String> result = new ArrayList<String>() ;
+        final String root = args.dir().getCanonicalPath() + File.separator ;
+        final Scanner scanner = new Scanner( args.verbose(), args.dir() ) ;
+        scanner.scan( new Scanner.Action() {
+            @Override
+            public boolean evaluate( FileWrapper fw ) {
+                String name = fw.getAbsoluteName() ;
+                if (name.endsWith( ".class" ) && name.startsWith( root )) {
+                    String className = name.substring( root.length(),
+                        name.length() - ".class".length() )
+                        .replace( File.separatorChar, '.' ) ;
+                    if (isSelected( className )) {
+                        result.add( className ) ;
+                    }
+                }
+
+                return true ;
+            }
+        } ) ;
+
+        return result ;
+    }
+
+    private void writeFile( File file, byte[] data ) throws IOException {
+        util.info( 1, "Writing " + file ) ;
+        if (args.dryrun()) {
+            return ;
+        }
+
+        File parent = file.getParentFile() ;
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException( "Could not create directory " + parent ) ;
+        }
+
+        OutputStream os = new FileOutputStream( file ) ;
+        try {
+            os.write( data ) ;
+        } finally {
+            os.close() ;
+        }
+    }
+
+    private void generateCopier( ClassLoader cl, String className,
+        File outDir, CodegenCopierIndex index ) {
+
+        try {
+            Class<?> cls = Class.forName( className, false, cl ) ;
+            if (!CodegenCopierIndex.canPrecompile( cls )) {
+                util.info( 2, "Skipping " + className ) ;
+                return ;
+            }
+
+            CodegenCopierGenerator generator = 
+                new CodegenCopierGenerator( cls ) ;
+            byte[] data ;
+            try {
+                data = generator.generate( cl ) ;
+            } finally {
+                // Generating a copier disables the codegen copier on
+                // this thread (see ClassCopierOrdinaryImpl).
+                ClassCopierOrdinaryImpl.setCodegenCopierAllowed( true ) ;
+            }
+
+            String copierName = generator.getClassName() ;
+            writeFile( new File( outDir, copierName.replace( '.', 
+                File.separatorChar ) + ".class" ), data ) ;
+            index.add( new CodegenCopierIndex.Entry( className, copierName,
+                CodegenCopierIndex.getLayoutHash( cls ) ) ) ;
+        } catch (Exception exc) {
+            util.info( 1, "Exception " + exc + " while generating copier for "
+                + className ) ;
+            errorCount++ ;
+        } catch (LinkageError err) {
+            util.info( 1, "Error " + err + " while generating copier for "
+                + className ) ;
+            errorCount++ ;
+        }
+    }
+
+    public void run( String[] strs ) {
+        try {
+            final ArgParser ap = new ArgParser( Arguments.class ) ;
+            args = ap.parse( strs, Arguments.class ) ;
+            util = new Util( args.debug(), args.verbose() ) ;
+
+            final File outDir = args.out().equals( "" ) 
+                ? args.dir() : new File( args.out() ) ;
+            final ClassLoader cl = new URLClassLoader( 
+                new URL[] { args.dir().toURI().toURL() },
+                CopierGenerationTool.class.getClassLoader() ) ;
+
+            final CodegenCopierIndex index = new CodegenCopierIndex() ;
+            for (String className : getClassNames()) {
+                generateCopier( cl, className, outDir, index ) ;
+            }
+
+            util.info( 1, "Generated " + index.getEntries().size() 
+                + " copiers" ) ;
+
+            if (!args.dryrun()) {
+                File indexFile = new File( outDir, 
+                    CodegenCopierIndex.RESOURCE_NAME.replace( '/', 
+                        File.separatorChar ) ) ;
+                File parent = indexFile.getParentFile() ;
+                if (!parent.isDirectory() && !parent.mkdirs()) {
+                    throw new IOException( "Could not create directory " 
+                        + parent ) ;
+                }
+
+                OutputStream os = new FileOutputStream( indexFile ) ;
+                try {
+                    index.write( os ) ;
+                } finally {
+                    os.close() ;
+                }
+            }
+        } catch (Exception exc) {
+            if (util == null) {
+                util = new Util( true, 1 ) ;
+            }
+
+            util.info( 1, "Exception: " + exc ) ;
+            if (args != null && args.debug()) {
+                exc.printStackTrace() ;
+            }
+
+            errorCount++ ;
+        }
+    }
+
+    public static void main( String[] strs ) {
+        (new CopierGenerationTool()).run( strs ) ;
+        if (errorCount > 0) {
+            System.exit(errorCount);
+        }
+    }
+}
@@ -40,77 +40,249 @@
 
 package org.glassfish.pfl.tf.timer.impl ;
 
+import java.util.Arrays ;
 import java.util.Iterator ;
+import java.util.LinkedHashMap ;
+import java.util.Map ;
 import java.util.Stack ;
+import java.util.concurrent.atomic.AtomicLong ;
+import java.util.concurrent.atomic.AtomicLongArray ;
 
+import java.io.IOException ;
 import java.io.PrintStream ;
 import org.glassfish.pfl.tf.timer.spi.LogEventHandler;
 import org.glassfish.pfl.tf.timer.spi.NamedBase;
+import org.glassfish.pfl.tf.timer.spi.PrimitiveTimerEventHandler;
 import org.glassfish.pfl.tf.timer.spi.TimerEvent;
 import org.glassfish.pfl.tf.timer.spi.TimerFactory;
+import org.glassfish.pfl.tf.timer.spi.TraceWriter;
 
-// XXX This needs to be able to properly handle multiple reporting threads!
+/** A LogEventHandler backed by a fixed-size ring buffer that any number
+ * of threads may log to without locking.  A writer claims the next
+ * sequence number with a single atomic increment, then fills in the slot
+ * at (sequence & mask).  Each slot carries a stamp of sequence+1, written
+ * after the slot data and cleared before it, so that a reader can tell a
+ * completely written event from one that is in progress or has been
+ * overwritten, and simply leave the latter out of its snapshot.
+ * <p>
+ * The stamps only protect against a reader racing a writer: two writers
+ * that land on the same slot at once (one lapping the other by the whole
+ * capacity in the middle of a single event) may still leave a torn event.
+ */
 public class LogEventHandlerImpl extends NamedBase
-    implements LogEventHandler {
-    // Default number of entries in data
-    private static final int DEFAULT_SIZE = 1000 ;
+    implements LogEventHandler, PrimitiveTimerEventHandler {
+    // Default number of events held in the log
+    static final int DEFAULT_CAPACITY = 1 << 14 ;
+
+    private final OverflowPolicy policy ;
+    private final int capacity ;
+    private final int mask ;
+
+    // All event data is interleaved here: data[2n] is the id, data[2n+1]
+    // is the timestamp for slot n.  The low 32 bits of the id are 2*id
+    // for enter, 2*id+1 for exit; the high 32 bits are the (truncated)
+    // id of the thread that logged the event.
+    private final AtomicLongArray data ;
+
+    // stamps[n] is sequence+1 for the event held in slot n, or 0 while
+    // slot n is empty or being written.
+    private final AtomicLongArray stamps ;
 
-    // Default increment to number of entries in data
-    private static final int DEFAULT_INCREMENT = 1000 ;
+    // Next sequence number to claim.  Never reset, so that stale stamps
+    // can never match a sequence claimed after a clear().  Under the 
+    // DROP_NEWEST policy, a dropped event does not claim a sequence 
+    // number, so every claimed sequence number is eventually written.
+    private final AtomicLong next = new AtomicLong() ;
 
-    // This is an array for speed.  All data is interleaved here:
-    // data[2n] is the id, data[2n+1] is the timestamp for all n >= 0.
-    // The array will be resized as needed.
-    // id is actually 2*id for enter, 2*id+1 for exit.
-    private long[] data ;
+    // Sequence number of the first event logged since the last clear().
+    private volatile long start = 0 ;
 
-    private int size ;
-    private int increment ;
-    
-    // Index of the next free slot in data 
-    private int nextFree ;
+    // Sequence number of the first event not yet passed to drainTo().
+    private long drained = 0 ;
+
+    // Under the DROP_NEWEST policy, the sequence number of the oldest 
+    // event that must not be overwritten: the first event logged since
+    // the last clear() that has not been drained.
+    private volatile long keepFrom = 0 ;
+
+    // Number of events dropped since the last clear() under the 
+    // DROP_NEWEST policy.
+    private final AtomicLong dropped = new AtomicLong() ;
 
     LogEventHandlerImpl( TimerFactory factory, String name ) {
+	this( factory, name, DEFAULT_CAPACITY, OverflowPolicy.OVERWRITE_OLDEST ) ;
+    }
+
+    LogEventHandlerImpl( TimerFactory factory, String name, int capacity,
+	OverflowPolicy policy ) {
+
 	super( factory, name ) ;
-	initData( DEFAULT_SIZE, DEFAULT_INCREMENT ) ;
+	if (capacity <= 0 || capacity > (1 << 29)) {
+	    throw new IllegalArgumentException( "Log capacity " + capacity
+		+ " is not in the range 1 to " + (1 << 29) ) ;
+	}
+
+	if (policy == null) {
+	    throw new IllegalArgumentException( "Overflow policy is null" ) ;
+	}
+
+	this.policy = policy ;
+	this.capacity = capacity == 1 ? 1
+	    : Integer.highestOneBit( capacity - 1 ) << 1 ;
+	this.mask = this.capacity - 1 ;
+	this.data = new AtomicLongArray( 2*this.capacity ) ;
+	this.stamps = new AtomicLongArray( this.capacity ) ;
     }
 
-    public synchronized Iterator<TimerEvent> iterator() {
-	return new LogEventHandlerIterator( factory(), data, nextFree ) ;
+    public int capacity() {
+	return capacity ;
+    }
+
+    public OverflowPolicy overflowPolicy() {
+	return policy ;
+    }
+
+    public long droppedCount() {
+	if (policy == OverflowPolicy.DROP_NEWEST) {
+	    return dropped.get() ;
+	}
+
+	final long first = start ;
+	return Math.max( 0, next.get() - first - capacity ) ;
+    }
+
+    public Iterator<TimerEvent> iterator() {
+	final long[] snapshot = snapshot( start, false ) ;
+	return new LogEventHandlerIterator( factory(), snapshot, 
+	    snapshot.length ) ;
+    }
+
+    public synchronized void drainTo( TraceWriter writer ) throws IOException {
+	final long[] snapshot = snapshot( Math.max( start, drained ), true ) ;
+
+	// Split the events by thread, keeping their order within each thread.
+	final Map<Integer,int[]> counts = new LinkedHashMap<Integer,int[]>() ;
+	for (int ctr=0; ctr<snapshot.length; ctr+=2) {
+	    final int thread = (int)(snapshot[ctr] >>> 32) ;
+	    int[] count = counts.get( thread ) ;
+	    if (count == null) {
+		count = new int[1] ;
+		counts.put( thread, count ) ;
+	    }
+
+	    count[0]++ ;
+	}
+
+	for (Map.Entry<Integer,int[]> entry : counts.entrySet()) {
+	    final int thread = entry.getKey() ;
+	    final long[] stream = new long[ 2*entry.getValue()[0] ] ;
+	    int nextFree = 0 ;
+	    for (int ctr=0; ctr<snapshot.length; ctr+=2) {
+		if ((int)(snapshot[ctr] >>> 32) == thread) {
+		    stream[ nextFree++ ] = snapshot[ctr] ;
+		    stream[ nextFree++ ] = snapshot[ctr+1] ;
+		}
+	    }
+
+	    // Only the low 32 bits of the thread id are logged.
+	    writer.write( thread & 0xFFFFFFFFL, 
+		new LogEventHandlerIterator( factory(), stream, nextFree ) ) ;
+	}
     }
 
-    private void initData( int size, int increment ) {
-        this.size = 2*size ;
-        this.increment = 2*increment ;
-	data = new long[ this.size ] ;
-	nextFree = 0 ;
+    // Copy out every fully written event from sequence first on, in
+    // sequence order and in the interleaved form expected by
+    // LogEventHandlerIterator.  If drain is set, stop at the first event
+    // that is still being written and record where we stopped, so that
+    // the next drain picks it up.  Otherwise just skip such events.
+    private long[] snapshot( final long first, final boolean drain ) {
+	final long end = next.get() ;
+	final long from = Math.max( first, end - capacity ) ;
+	final long to = end ;
+
+	final long[] snapshot = new long[ 2*(int)Math.max( 0, to - from ) ] ;
+	int nextFree = 0 ;
+	long seq = from ;
+	for (; seq < to; seq++) {
+	    final int slot = (int)seq & mask ;
+	    final long stamp = stamps.get( slot ) ;
+	    if (stamp != seq + 1) {
+		if (drain && stamp < seq + 1) {
+		    break ;
+		}
+
+		continue ;
+	    }
+
+	    final long id = data.get( 2*slot ) ;
+	    final long time = data.get( 2*slot + 1 ) ;
+	    if (stamps.get( slot ) != seq + 1) {
+		continue ;
+	    }
+
+	    snapshot[ nextFree++ ] = id ;
+	    snapshot[ nextFree++ ] = time ;
+	}
+
+	if (drain) {
+	    drained = seq ;
+	    keepFrom = Math.max( start, drained ) ;
+	}
+
+	return nextFree == snapshot.length ? snapshot 
+	    : Arrays.copyOf( snapshot, nextFree ) ;
     }
 
     public void notify( TimerEvent event ) {
-	final int id = 2*event.timer().id() + 
-	    ((event.type() == TimerEvent.TimerEventType.ENTER) ? 0 : 1) ;
-	log( id, event.time() ) ;
+	notify( event.timer().id(), event.type(), event.time() ) ;
+    }
+
+    public void notify( int timerId, TimerEvent.TimerEventType type, 
+	long time ) {
+
+	final long id = 2*timerId + 
+	    ((type == TimerEvent.TimerEventType.ENTER) ? 0 : 1) ;
+	log( (Thread.currentThread().getId() << 32) | id, time ) ;
     }
 
     // XXX ignore old compensation idea; do we need it here?
-    private synchronized void log( int id, long time ) {
-        if (data.length - nextFree < 2) {
-            // grow the array
-	    int newSize = data.length + 2*increment ;
-	    long[] newData = new long[ newSize ] ;
-	    System.arraycopy( data, 0, newData, 0, data.length ) ;
-	    data = newData ;
+    private void log( long id, long time ) {
+	final long seq = policy == OverflowPolicy.DROP_NEWEST 
+	    ? claimIfRoom() : next.getAndIncrement() ;
+	if (seq < 0) {
+	    return ;
 	}
 
-        int index = nextFree ;
-        nextFree += 2 ;
-        
-	data[ index ] = id ;
-        data[ index + 1 ] = time ;
+	// Ordered stores: the stamp is cleared before the data is written,
+	// and set again only after all of the data is visible.
+	final int slot = (int)seq & mask ;
+	stamps.lazySet( slot, 0 ) ;
+	data.lazySet( 2*slot, id ) ;
+	data.lazySet( 2*slot + 1, time ) ;
+	stamps.lazySet( slot, seq + 1 ) ;
+    }
+
+    // Claim the next sequence number, unless its slot still holds an 
+    // event that DROP_NEWEST must keep, in which case the event is 
+    // dropped and this returns -1.
+    private long claimIfRoom() {
+	while (true) {
+	    final long seq = next.get() ;
+	    if (seq - keepFrom >= capacity) {
+		dropped.incrementAndGet() ;
+		return -1 ;
+	    }
+
+	    if (next.compareAndSet( seq, seq + 1 )) {
+		return seq ;
+	    }
+	}
     }
 
     public synchronized void clear() {
-	initData( size, increment ) ;
+	start = next.get() ;
+	keepFrom = start ;
+	dropped.set( 0 ) ;
     }
 
     // Class used to maintain a variable-length indent.
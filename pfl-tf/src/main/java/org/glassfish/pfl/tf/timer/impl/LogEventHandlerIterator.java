@@ -80,7 +80,8 @@ public class LogEventHandlerIterator implements Iterator<TimerEvent> {
 		    TimerEvent.TimerEventType.EXIT :
 		    TimerEvent.TimerEventType.ENTER ;
 
-	    int id = (int)(elem >> 1) ;
+	    // The upper 32 bits may hold the id of the logging thread.
+	    int id = (int)((elem & 0xFFFFFFFFL) >>> 1) ;
 
 	    Controllable con = factory.getControllable( id ) ;
 	    if (!(con instanceof Timer))
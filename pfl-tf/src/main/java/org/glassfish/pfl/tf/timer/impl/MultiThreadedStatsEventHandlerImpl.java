@@ -40,60 +40,274 @@
 
 package org.glassfish.pfl.tf.timer.impl ;
 
-import java.util.ArrayList ;
-import java.util.Stack ;
+import java.util.Arrays ;
+import java.util.HashMap ;
+import java.util.Iterator ;
+import java.util.Map ;
+import java.util.Queue ;
+import java.util.concurrent.ConcurrentLinkedQueue ;
+import org.glassfish.pfl.tf.timer.spi.Controllable;
+import org.glassfish.pfl.tf.timer.spi.Statistics;
 import org.glassfish.pfl.tf.timer.spi.StatisticsAccumulator;
 import org.glassfish.pfl.tf.timer.spi.Timer;
 import org.glassfish.pfl.tf.timer.spi.TimerEvent;
 import org.glassfish.pfl.tf.timer.spi.TimerFactory;
 
+/** A stats event handler that may be used by any number of threads.  Each
+ * thread records its samples in its own shard of StatisticsAccumulators,
+ * without taking any lock, and stats() merges the shards with 
+ * StatisticsAccumulator.augment.  Each shard is read as a whole between
+ * two samples of its thread (see Shard), so a sample that is recorded 
+ * while stats() runs is either completely included or not at all.
+ * This relies on the memory ordering of the platform rather than on the
+ * Java memory model alone: the accumulators are read with plain reads 
+ * between two volatile reads of the shard's sequence number, and the model
+ * does not forbid a plain read from being moved after the second one. 
+ * Current JVMs on x86 and SPARC do not do this; elsewhere a sample might 
+ * rarely be seen only in part.
+ * <p>
+ * clear() does not touch the shards of other threads.  It starts a new
+ * generation instead: stats() ignores shards of older generations, and 
+ * each thread clears its own shard when it next records an event.  The
+ * shards of threads that have died are merged into a single set of 
+ * retired accumulators, so their samples are kept without keeping a shard
+ * per dead thread.
+ */
 public class MultiThreadedStatsEventHandlerImpl extends StatsEventHandlerBase {
-    private Object saListLock ;
-    
-    // ArrayList indexed by Timer.id 
-    private ThreadLocal<ArrayList<Stack<TimerEvent>>> tlsteList ; 
+    // The samples and timer stacks of one thread.  All fields other than
+    // published are only written by the owner thread.  published is a
+    // sequence number that is odd while the owner changes the 
+    // accumulators, and even otherwise.  Another thread reads the 
+    // accumulators by copying them, and only uses the copy if published
+    // had the same even value before and after the copy, so that it never
+    // sees a sample that is only partly recorded.  published is always made
+    // even again, even if recording fails, so that no reader waits for a
+    // sample that will never be completed.
+    private static final class Shard {
+	private final Thread owner ;
+	private StatisticsAccumulator[] accumulators ;
+	// indexed by Timer.id
+	private TimerStack[] stacks ;
+	private int generation ;
+	private volatile long published ;
+
+	Shard( Thread owner, int size, int generation ) {
+	    this.owner = owner ;
+	    this.accumulators = new StatisticsAccumulator[size] ;
+	    this.stacks = new TimerStack[size] ;
+	    this.generation = generation ;
+	}
+
+	TimerStack getStack( int id ) {
+	    if (id >= stacks.length) {
+		stacks = Arrays.copyOf( stacks, id + 1 ) ;
+	    }
+
+	    TimerStack result = stacks[id] ;
+	    if (result == null) {
+		result = new TimerStack() ;
+		stacks[id] = result ;
+	    }
+	    return result ;
+	}
+
+	void sample( int id, long duration ) {
+	    published = published + 1 ;
+	    try {
+		if (id >= accumulators.length) {
+		    accumulators = Arrays.copyOf( accumulators, id + 1 ) ;
+		}
+
+		StatisticsAccumulator acc = accumulators[id] ;
+		if (acc == null) {
+		    acc = new StatisticsAccumulator( UNITS, PRECISION_BITS ) ;
+		    accumulators[id] = acc ;
+		}
+
+		acc.sample( duration ) ;
+	    } finally {
+		published = published + 1 ;
+	    }
+	}
+
+	void reset( int generation ) {
+	    published = published + 1 ;
+	    try {
+		Arrays.fill( accumulators, null ) ;
+		this.generation = generation ;
+	    } finally {
+		published = published + 1 ;
+	    }
+	}
+
+	// Add the samples of this shard to merged, if it belongs to the
+	// given generation.  This retries until it has copied the 
+	// accumulators without the owner recording a sample at the same 
+	// time.  The copy may fail if the owner changes an accumulator while
+	// it is copied (for example, when the histogram grows), which is only
+	// an error if published did not change.  If the owner has died while
+	// published was odd, its samples are dropped instead of waiting.
+	void mergeInto( StatisticsAccumulator[] merged, int generation ) {
+	    StatisticsAccumulator[] copy ;
+	    while (true) {
+		long before = published ;
+		if ((before & 1) != 0) {
+		    // Everything the owner did happens-before isAlive 
+		    // returning false, so published is final from then on.
+		    if (!owner.isAlive() && (published & 1) != 0) {
+			return ;
+		    }
+
+		    Thread.yield() ;
+		    continue ;
+		}
+
+		if (before == 0 || this.generation != generation) {
+		    return ;
+		}
+
+		try {
+		    copy = copyAccumulators() ;
+		} catch (RuntimeException exc) {
+		    if (published == before) {
+			throw exc ;
+		    }
+		    continue ;
+		}
+
+		if (published == before) {
+		    break ;
+		}
+	    }
+
+	    int size = Math.min( copy.length, merged.length ) ;
+	    for (int ctr=0; ctr<size; ctr++) {
+		if (copy[ctr] != null) {
+		    merged[ctr].augment( copy[ctr] ) ;
+		}
+	    }
+	}
+
+	private StatisticsAccumulator[] copyAccumulators() {
+	    StatisticsAccumulator[] accs = accumulators ;
+	    StatisticsAccumulator[] result = 
+		new StatisticsAccumulator[accs.length] ;
+	    for (int ctr=0; ctr<accs.length; ctr++) {
+		if (accs[ctr] != null) {
+		    result[ctr] = new StatisticsAccumulator( UNITS, 
+			PRECISION_BITS ) ;
+		    result[ctr].augment( accs[ctr] ) ;
+		}
+	    }
+	    return result ;
+	}
+    }
+
+    private final int size ;
+    private volatile int generation = 0 ;
+
+    private final Queue<Shard> shards = new ConcurrentLinkedQueue<Shard>() ;
+    private final ThreadLocal<Shard> tlShard ;
+
+    // Samples of threads that have died.  Guarded by mergeLock, which is
+    // only taken by stats(), clear(), and the first event of a thread,
+    // never on the sample path.
+    private final Object mergeLock = new Object() ;
+    private StatisticsAccumulator[] retired ;
 
     MultiThreadedStatsEventHandlerImpl( TimerFactory factory, String name ) {
 	super( factory, name ) ;
-	final int size = factory.numberOfIds() ;
-
-	saListLock = new Object() ;
-	tlsteList = new ThreadLocal<ArrayList<Stack<TimerEvent>>>() {
-	    public ArrayList<Stack<TimerEvent>> initialValue() {
-		ArrayList<Stack<TimerEvent>> result = new ArrayList<Stack<TimerEvent>>( size ) ;
-		for (int ctr=0; ctr<size; ctr++) {
-		    result.add( new Stack<TimerEvent>() ) ;
-		}
-		return result ;
+	size = factory.numberOfIds() ;
+	retired = makeAccumulators( size ) ;
+
+	tlShard = new ThreadLocal<Shard>() {
+	    public Shard initialValue() {
+		return newShard() ;
 	    }
 	} ;
     }
 
-    private Stack<TimerEvent> getSteElement( int id ) {
-	ArrayList<Stack<TimerEvent>> ste = tlsteList.get() ;
-	ste.ensureCapacity( id + 1 ) ;
-	for (int ctr=ste.size(); ctr<=id; ctr++)
-	    ste.add( new Stack<TimerEvent>() ) ;
-	return ste.get( id ) ;
+    private static StatisticsAccumulator[] makeAccumulators( int size ) {
+	StatisticsAccumulator[] result = new StatisticsAccumulator[size] ;
+	for (int ctr=0; ctr<size; ctr++) {
+	    result[ctr] = new StatisticsAccumulator( UNITS, PRECISION_BITS ) ;
+	}
+	return result ;
+    }
+
+    private Shard newShard() {
+	synchronized (mergeLock) {
+	    retireDeadShards() ;
+	    Shard result = new Shard( Thread.currentThread(), size, 
+		generation ) ;
+	    shards.add( result ) ;
+	    return result ;
+	}
+    }
+
+    // Move the samples of every shard whose thread has died into retired.
+    // A thread that has terminated can no longer write to its shard, and
+    // everything it did happens-before isAlive returning false.
+    private void retireDeadShards() {
+	Iterator<Shard> iter = shards.iterator() ;
+	while (iter.hasNext()) {
+	    Shard shard = iter.next() ;
+	    if (!shard.owner.isAlive()) {
+		shard.mergeInto( retired, generation ) ;
+		iter.remove() ;
+	    }
+	}
     }
 
     public void clear() {
-	synchronized (saListLock) {
-	    super.clear() ;
+	synchronized (mergeLock) {
+	    generation++ ;
+	    retireDeadShards() ;
+	    retired = makeAccumulators( size ) ;
 	}
     }
 
-    protected void recordDuration( int id, long duration ) {
-	synchronized (saListLock) {
-	    StatisticsAccumulator acc = saList.get( id ) ;
-	    acc.sample( duration ) ;
+    private Shard currentShard() {
+	Shard shard = tlShard.get() ;
+	int current = generation ;
+	if (shard.generation != current) {
+	    shard.reset( current ) ;
 	}
+	return shard ;
     }
 
-    public void notify( TimerEvent event ) {
-	Timer timer = event.timer() ;
-	int id = timer.id() ;
-	notify( getSteElement( id ), event ) ;
+    protected void recordDuration( int id, long duration ) {
+	tlShard.get().sample( id, duration ) ;
     }
-}
 
+    public void notify( int id, TimerEvent.TimerEventType type, long time ) {
+	notify( currentShard().getStack( id ), id, type, time ) ;
+    }
+
+    public Map<Timer,Statistics> stats() {
+	StatisticsAccumulator[] merged = makeAccumulators( size ) ;
+	synchronized (mergeLock) {
+	    retireDeadShards() ;
+	    int current = generation ;
+	    for (int ctr=0; ctr<size; ctr++) {
+		merged[ctr].augment( retired[ctr] ) ;
+	    }
+
+	    for (Shard shard : shards) {
+		shard.mergeInto( merged, current ) ;
+	    }
+	}
+
+	Map<Timer,Statistics> result = new HashMap<Timer,Statistics>() ;
+	for (int ctr=0; ctr<size; ctr++) {
+	    Controllable con = factory().getControllable( ctr ) ;
+
+	    // ignore IDs of TimerGroups	
+	    if (con instanceof Timer) {
+		result.put( Timer.class.cast( con ), merged[ctr].getStats() ) ;
+	    }
+	}
+
+	return result ;
+    }
+}
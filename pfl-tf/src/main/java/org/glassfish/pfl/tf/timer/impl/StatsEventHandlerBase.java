@@ -41,11 +41,12 @@
 package org.glassfish.pfl.tf.timer.impl ;
 
 import java.util.ArrayList ;
-import java.util.Stack ;
 import java.util.Map ;
 import java.util.HashMap ;
 import org.glassfish.pfl.tf.timer.spi.Controllable;
+import org.glassfish.pfl.tf.timer.spi.Histogram;
 import org.glassfish.pfl.tf.timer.spi.NamedBase;
+import org.glassfish.pfl.tf.timer.spi.PrimitiveTimerEventHandler;
 import org.glassfish.pfl.tf.timer.spi.Statistics;
 import org.glassfish.pfl.tf.timer.spi.StatisticsAccumulator;
 import org.glassfish.pfl.tf.timer.spi.StatsEventHandler;
@@ -54,8 +55,13 @@ import org.glassfish.pfl.tf.timer.spi.TimerEvent;
 import org.glassfish.pfl.tf.timer.spi.TimerFactory;
 
 public abstract class StatsEventHandlerBase extends NamedBase
-    implements StatsEventHandler {
+    implements StatsEventHandler, PrimitiveTimerEventHandler {
     protected static final String UNITS = "nanoseconds" ;
+
+    // Precision of the histograms of the StatisticsAccumulators, so that
+    // stats() can report percentiles.
+    protected static final int PRECISION_BITS = 
+	Histogram.DEFAULT_PRECISION_BITS ;
     
     // indexed by Timer.id()
     protected ArrayList<StatisticsAccumulator> saList ; 
@@ -68,7 +74,7 @@ public abstract class StatsEventHandlerBase extends NamedBase
 	int size = factory.numberOfIds() ;
 	saList = new ArrayList<StatisticsAccumulator>( size ) ;
 	for (int ctr=0; ctr<size; ctr++) {
-	    saList.add( new StatisticsAccumulator(UNITS) ) ;
+	    saList.add( new StatisticsAccumulator( UNITS, PRECISION_BITS ) ) ;
 	}
     } 
 
@@ -81,38 +87,46 @@ public abstract class StatsEventHandlerBase extends NamedBase
     // pair.  Called from notify().
     protected abstract void recordDuration( int id, long duration ) ;
 
-    protected final void notify( Stack<TimerEvent> teStack, TimerEvent event ) {
-	Timer timer = event.timer() ;
-	int id = timer.id() ;
+    /** Handle an event for the timer with the given id, using stack to
+     * match EXIT events with ENTER events.  Nothing is allocated, unless
+     * stack must grow.
+     */
+    final void notify( TimerStack stack, int id, 
+	TimerEvent.TimerEventType type, long time ) {
 
-	if (event.type() == TimerEvent.TimerEventType.ENTER) {
+	if (type == TimerEvent.TimerEventType.ENTER) {
 	    // push this event onto the Timer stack
-	    teStack.push( event ) ;
+	    stack.push( id, time ) ;
 	} else {
 	    // pop off the ENTER event, record duration
-	    if (teStack.empty()) {
+	    if (stack.isEmpty()) {
 		throw new IllegalStateException( 
-		    "Unexpected empty stack for EXIT event on timer " + timer ) ;
+		    "Unexpected empty stack for EXIT event on timer " 
+			+ factory().getControllable( id ) ) ;
 	    } else {
-		TimerEvent enter = teStack.pop() ;
-		if (!timer.equals( enter.timer() ))
+		int enterId = stack.peekId() ;
+		if (enterId != id)
 		    throw new IllegalStateException(
-			"Expected timer " + timer + " but found timer "
-			    + enter.timer() + " on the TimerEvent stack" ) ;
+			"Expected timer " + factory().getControllable( id ) 
+			    + " but found timer " 
+			    + factory().getControllable( enterId )
+			    + " on the TimerEvent stack" ) ;
 
-		long duration = event.time() - enter.time() ;
+		long duration = time - stack.pop() ;
 
 		// Remove the contribution of nested calls from
 		// the time for all outer calls.
-		for (TimerEvent ev : teStack) {
-		    ev.incrementTime( duration ) ;
-		}
+		stack.addToAll( duration ) ;
 
 		recordDuration( id, duration ) ;
 	    }
 	}
     }
 
+    public void notify( TimerEvent event ) {
+	notify( event.timer().id(), event.type(), event.time() ) ;
+    }
+
     public Map<Timer,Statistics> stats() {
 	Map<Timer,Statistics> result = new HashMap<Timer,Statistics>() ;
 	for (int ctr=0; ctr<saList.size(); ctr++) {
@@ -40,7 +40,6 @@
 
 package org.glassfish.pfl.tf.timer.impl ;
 
-import java.util.Stack ;
 import org.glassfish.pfl.tf.timer.spi.StatisticsAccumulator;
 import org.glassfish.pfl.tf.timer.spi.TimerEvent;
 import org.glassfish.pfl.tf.timer.spi.TimerFactory;
@@ -48,17 +47,16 @@ import org.glassfish.pfl.tf.timer.spi.TimerFactory;
 // This is a single threaded version of the stats event handler.  It will not
 // work correctly if multiple threads are generating timer events!
 public class StatsEventHandlerImpl extends StatsEventHandlerBase {
-    private Stack<TimerEvent> teStack ; 
+    private TimerStack stack ; 
 
     StatsEventHandlerImpl( TimerFactory factory, String name ) {
 	super( factory, name ) ;
-	teStack = new Stack<TimerEvent>() ;
+	stack = new TimerStack() ;
     }
 
     public void clear() {
 	super.clear() ;
-	while (!teStack.empty())
-	    teStack.pop() ;
+	stack.clear() ;
     }
 
     protected void recordDuration( int id, long duration ) {
@@ -66,7 +64,7 @@ public class StatsEventHandlerImpl extends StatsEventHandlerBase {
 	acc.sample( duration ) ;
     }
 
-    public void notify( TimerEvent event ) {
-	notify( teStack, event ) ;
+    public void notify( int id, TimerEvent.TimerEventType type, long time ) {
+	notify( stack, id, type, time ) ;
     }
 }
@@ -187,13 +187,21 @@ public class TimerFactoryImpl extends TimerGroupImpl implements TimerFactory {
     }
 
     @Override
-    public synchronized LogEventHandler makeLogEventHandler( String name ) {
+    public LogEventHandler makeLogEventHandler( String name ) {
+	return makeLogEventHandler( name, LogEventHandlerImpl.DEFAULT_CAPACITY,
+	    LogEventHandler.OverflowPolicy.OVERWRITE_OLDEST ) ;
+    }
+
+    @Override
+    public synchronized LogEventHandler makeLogEventHandler( String name,
+	int capacity, LogEventHandler.OverflowPolicy policy ) {
 	if (timerEventHandlers.keySet().contains( name )) {
             throw new IllegalArgumentException("Name " + name +
                 " is already in use.");
         }
 
-	LogEventHandler result = new LogEventHandlerImpl( factory(), name ) ;
+	LogEventHandler result = new LogEventHandlerImpl( factory(), name,
+	    capacity, policy ) ;
         orm.manage( this, result ) ;
 	timerEventHandlers.put( name, result ) ;
 	return result ;
@@ -0,0 +1,101 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.pfl.tf.timer.impl ;
+
+/** A stack of timer entries, each of which is a timer id and the time of 
+ * its ENTER event.  This is used by the stats event handlers to match 
+ * EXIT events to ENTER events without allocating an object per event.
+ * This class is not synchronized: each instance must only be used by 
+ * one thread at a time.
+ */
+class TimerStack {
+    private static final int INITIAL_SIZE = 16 ;
+
+    private int[] ids = new int[INITIAL_SIZE] ;
+    private long[] times = new long[INITIAL_SIZE] ;
+    private int size = 0 ;
+
+    boolean isEmpty() {
+	return size == 0 ;
+    }
+
+    void push( int id, long time ) {
+	if (size == ids.length) {
+	    int newLength = 2 * size ;
+	    int[] newIds = new int[newLength] ;
+	    long[] newTimes = new long[newLength] ;
+	    System.arraycopy( ids, 0, newIds, 0, size ) ;
+	    System.arraycopy( times, 0, newTimes, 0, size ) ;
+	    ids = newIds ;
+	    times = newTimes ;
+	}
+
+	ids[size] = id ;
+	times[size] = time ;
+	size++ ;
+    }
+
+    /** The timer id of the top entry.  The stack must not be empty.
+     */
+    int peekId() {
+	return ids[size - 1] ;
+    }
+
+    /** Remove the top entry, and return its time.  The stack must not be 
+     * empty.
+     */
+    long pop() {
+	size-- ;
+	return times[size] ;
+    }
+
+    /** Add delta to the time of every entry in the stack.
+     */
+    void addToAll( long delta ) {
+	for (int ctr=0; ctr<size; ctr++) {
+	    times[ctr] += delta ;
+	}
+    }
+
+    void clear() {
+	size = 0 ;
+    }
+}
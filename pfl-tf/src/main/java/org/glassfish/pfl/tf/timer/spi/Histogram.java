@@ -0,0 +1,275 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.pfl.tf.timer.spi ;
+
+import java.util.Arrays ;
+
+/** A histogram of non-negative long values with log-linear buckets, in 
+ * the style of HdrHistogram.  Values below 2**precisionBits have a bucket
+ * each.  Above that, every power of 2 range is divided into 
+ * 2**precisionBits equal buckets, so that any value is known to within a
+ * relative error of 2**-precisionBits.  Values of 2**MAX_VALUE_BITS or 
+ * more (about 78 hours in nanoseconds) are counted in the last bucket.
+ * <p>
+ * The memory used is bounded by (MAX_VALUE_BITS - precisionBits + 1) * 
+ * 2**precisionBits counts, but the counts are only allocated up to the 
+ * largest value recorded so far.  Histograms with the same precision may
+ * be merged with add.  Like StatisticsAccumulator, this class is not 
+ * synchronized.
+ */
+public class Histogram {
+    /** Precision used when none is given: values are known to within 
+     * 1/32, or about 3%.
+     */
+    public static final int DEFAULT_PRECISION_BITS = 5 ;
+
+    /** Largest supported precision.
+     */
+    public static final int MAX_PRECISION_BITS = 12 ;
+
+    /** Values at or above 2**MAX_VALUE_BITS share the last bucket.
+     */
+    public static final int MAX_VALUE_BITS = 48 ;
+
+    private final int precisionBits ;
+    private final int subBucketCount ;
+    private final int maxBuckets ;
+    private long[] counts ;
+    private long totalCount ;
+
+    public Histogram() {
+	this( DEFAULT_PRECISION_BITS ) ;
+    }
+
+    /** Create an empty histogram that records values to within a 
+     * relative error of 2**-precisionBits.
+     */
+    public Histogram( int precisionBits ) {
+	if (precisionBits < 1 || precisionBits > MAX_PRECISION_BITS) {
+	    throw new IllegalArgumentException( "precisionBits must be "
+		+ "between 1 and " + MAX_PRECISION_BITS ) ;
+	}
+
+	this.precisionBits = precisionBits ;
+	subBucketCount = 1 << precisionBits ;
+	maxBuckets = (MAX_VALUE_BITS - precisionBits + 1) * subBucketCount ;
+	counts = new long[0] ;
+    }
+
+    /** Create a copy of histogram.
+     */
+    public Histogram( Histogram histogram ) {
+	this( histogram.precisionBits ) ;
+	counts = histogram.counts.clone() ;
+	totalCount = histogram.totalCount ;
+    }
+
+    public int precisionBits() { return precisionBits ; }
+
+    /** Return the number of values recorded.
+     */
+    public long count() { return totalCount ; }
+
+    /** Return the number of buckets in which values have been recorded 
+     * (including empty buckets below the largest value).
+     */
+    public int bucketCount() { return counts.length ; }
+
+    /** Return the number of values recorded in bucket index.
+     */
+    public long countAt( int index ) {
+	return index < counts.length ? counts[index] : 0 ;
+    }
+
+    /** Return the smallest value counted in bucket index.
+     */
+    public long lowestValueAt( int index ) {
+	if (index < subBucketCount) {
+	    return index ;
+	}
+
+	int shift = index / subBucketCount - 1 ;
+	long mantissa = subBucketCount + index % subBucketCount ;
+	return mantissa << shift ;
+    }
+
+    /** Return the largest value counted in bucket index (other than the
+     * last bucket, which also counts all larger values).
+     */
+    public long highestValueAt( int index ) {
+	if (index < subBucketCount) {
+	    return index ;
+	}
+
+	int shift = index / subBucketCount - 1 ;
+	return lowestValueAt( index ) + (1L << shift) - 1 ;
+    }
+
+    /** Return the index of the bucket that counts value.
+     */
+    public int indexOf( long value ) {
+	if (value < subBucketCount) {
+	    return value <= 0 ? 0 : (int)value ;
+	}
+
+	int exponent = 63 - Long.numberOfLeadingZeros( value ) ;
+	int shift = exponent - precisionBits ;
+	int index = (shift + 1) * subBucketCount 
+	    + (int)(value >>> shift) - subBucketCount ;
+	return Math.min( index, maxBuckets - 1 ) ;
+    }
+
+    /** Record value.  Negative values are counted as 0.
+     */
+    public void record( long value ) {
+	int index = indexOf( value ) ;
+	if (index >= counts.length) {
+	    grow( index ) ;
+	}
+
+	counts[index]++ ;
+	totalCount++ ;
+    }
+
+    // Make room for index, rounded up to a whole power of 2 range.
+    private void grow( int index ) {
+	int length = (index / subBucketCount + 1) * subBucketCount ;
+	counts = Arrays.copyOf( counts, Math.min( length, maxBuckets ) ) ;
+    }
+
+    /** Add all values recorded in other to this histogram.
+     */
+    public void add( Histogram other ) {
+	if (other.precisionBits != precisionBits) {
+	    throw new IllegalArgumentException( "Precisions must match: this = "
+		+ precisionBits + " other = " + other.precisionBits ) ;
+	}
+
+	long[] otherCounts = other.counts ;
+	if (otherCounts.length > counts.length) {
+	    counts = Arrays.copyOf( counts, otherCounts.length ) ;
+	}
+
+	for (int ctr=0; ctr<otherCounts.length; ctr++) {
+	    counts[ctr] += otherCounts[ctr] ;
+	}
+	totalCount += other.totalCount ;
+    }
+
+    public void clear() {
+	Arrays.fill( counts, 0 ) ;
+	totalCount = 0 ;
+    }
+
+    /** Return a value that is greater than or equal to percentile percent
+     * of the recorded values (to within the precision of the histogram), 
+     * or -1 if nothing has been recorded.  percentile must be between 0 
+     * and 100.
+     */
+    public long valueAtPercentile( double percentile ) {
+	if (percentile < 0 || percentile > 100) {
+	    throw new IllegalArgumentException( 
+		"percentile must be between 0 and 100" ) ;
+	}
+
+	if (totalCount == 0) {
+	    return -1 ;
+	}
+
+	long target = Math.max( 1, 
+	    (long)Math.ceil( percentile / 100 * totalCount ) ) ;
+	long seen = 0 ;
+	for (int ctr=0; ctr<counts.length; ctr++) {
+	    seen += counts[ctr] ;
+	    if (seen >= target) {
+		return highestValueAt( ctr ) ;
+	    }
+	}
+
+	return highestValueAt( counts.length - 1 ) ;
+    }
+
+    @Override
+    public boolean equals( Object obj ) {
+	if (obj == this) {
+	    return true ;
+	}
+
+	if (!(obj instanceof Histogram)) {
+	    return false ;
+	}
+
+	Histogram other = Histogram.class.cast( obj ) ;
+	if (precisionBits != other.precisionBits 
+	    || totalCount != other.totalCount) {
+	    return false ;
+	}
+
+	int length = Math.max( counts.length, other.counts.length ) ;
+	for (int ctr=0; ctr<length; ctr++) {
+	    if (countAt( ctr ) != other.countAt( ctr )) {
+		return false ;
+	    }
+	}
+
+	return true ;
+    }
+
+    @Override
+    public int hashCode() {
+	int result = precisionBits ;
+	for (int ctr=0; ctr<counts.length; ctr++) {
+	    if (counts[ctr] != 0) {
+		result = 31 * result + ctr ;
+		result = 31 * result + (int)(counts[ctr] ^ (counts[ctr] >>> 32)) ;
+	    }
+	}
+	return result ;
+    }
+
+    @Override
+    public String toString() {
+	return "Histogram[count=" + totalCount 
+	    + " p50=" + valueAtPercentile( 50 ) 
+	    + " p99=" + valueAtPercentile( 99 ) 
+	    + " p99.9=" + valueAtPercentile( 99.9 ) + "]" ;
+    }
+}
@@ -40,16 +40,60 @@
 
 package org.glassfish.pfl.tf.timer.spi ;
 
+import java.io.IOException ;
 import java.io.PrintStream ;
 
-/** A TimerEventHandler that stores all events that is receives.  It can
- * be used in the JDK 5 for loop.
+/** A TimerEventHandler that stores the events that it receives in a
+ * bounded ring buffer.  It can be used in the JDK 5 for loop: each
+ * iteration sees a consistent snapshot of the log, taken without
+ * blocking the threads that are still logging events.
  */
 public interface LogEventHandler extends TimerEventHandler, Iterable<TimerEvent> {
+    /** What to do with a new event once the log holds capacity() events.
+     */
+    enum OverflowPolicy {
+        /** Replace the oldest event in the log with the new event.
+         */
+        OVERWRITE_OLDEST,
+
+        /** Discard the new event, keeping the events already logged.
+         * Events that have been passed to drainTo() no longer need to be
+         * kept, so a log that is drained often enough drops nothing.
+         */
+        DROP_NEWEST
+    }
+
+    /** Maximum number of events held in the log.
+     */
+    int capacity() ;
+
+    /** The policy applied once the log is full.
+     */
+    OverflowPolicy overflowPolicy() ;
+
+    /** Number of events received since the last clear() that are not
+     * in the log because it was full: either overwritten or dropped,
+     * depending on the overflowPolicy().
+     */
+    long droppedCount() ;
+
     /** Discard the contents of the log.
      */
     void clear() ;
 
+    /** Append the events logged since the previous drainTo() (or since
+     * the log was created or cleared) to writer, one EVENTS record per
+     * thread.  Draining does not remove the events from the log, but 
+     * under the DROP_NEWEST policy, new events may then overwrite them,
+     * just as under OVERWRITE_OLDEST.
+     * <p>
+     * The log only keeps the low 32 bits of the id of the thread that
+     * logged each event, so the thread ids in the trace are 
+     * Thread.getId() modulo 2^32, and the events of two threads whose 
+     * ids only differ above that are written as one thread.
+     */
+    void drainTo( TraceWriter writer ) throws IOException ;
+
     /** Display the contents of this log in formatted form to the PrintStream.
      */
     void display( PrintStream arg, String msg ) ;
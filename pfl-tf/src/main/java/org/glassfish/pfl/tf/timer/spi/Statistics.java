@@ -48,15 +48,26 @@ public class Statistics {
     private final double max ;
     private final double average ;
     private final double standardDeviation ;
+    private final Histogram histogram ;
 
     public Statistics( long count, double min, double max,
 	double average, double standardDeviation ) {
 
+	this( count, min, max, average, standardDeviation, null ) ;
+    }
+
+    /** Create Statistics that include a copy of histogram, which may be 
+     * null if there is no histogram of the data.
+     */
+    public Statistics( long count, double min, double max,
+	double average, double standardDeviation, Histogram histogram ) {
+
 	this.count = count ;
 	this.min = min ;
 	this.max = max ;
 	this.average = average ;
 	this.standardDeviation = standardDeviation ;
+	this.histogram = histogram == null ? null : new Histogram( histogram ) ;
     }
 
     /** Return the number of data points recorded.
@@ -81,6 +92,25 @@ public class Statistics {
      */
     public double standardDeviation() { return standardDeviation ; }
 
+    /** Return a value that is greater than or equal to percentile percent
+     * of the data (to within the precision of the histogram, and at most 
+     * max()), or -1 if there is no data or no histogram.
+     */
+    public double percentile( double percentile ) { 
+	if (histogram == null || histogram.count() == 0) {
+	    return -1 ;
+	}
+
+	return Math.min( max, histogram.valueAtPercentile( percentile ) ) ;
+    }
+
+    /** Return a copy of the histogram of the data, or null if there is no
+     * histogram.
+     */
+    public Histogram histogram() { 
+	return histogram == null ? null : new Histogram( histogram ) ;
+    }
+
     @Override
     public boolean equals( Object obj ) {
 	if (obj == this) {
@@ -96,7 +126,9 @@ public class Statistics {
 	    (min==other.min()) &&
 	    (max==other.max()) &&
 	    (average==other.average()) &&
-	    (standardDeviation==other.standardDeviation()) ;
+	    (standardDeviation==other.standardDeviation()) &&
+	    (histogram == null ? other.histogram == null 
+		: histogram.equals( other.histogram )) ;
     }
 
     @Override
@@ -47,7 +47,8 @@ package org.glassfish.pfl.tf.timer.spi ;
  * </p>
  * <p>
  * StatisticsAccumulator accumulates the samples provided by the user and
- * computes the value of minimum, maximum, sum and sample square sum. When
+ * computes the value of minimum, maximum, sum and sample square sum (and
+ * optionally a Histogram of the samples, for percentiles). When
  * the StatisticMonitoredAttribute calls getValue(), it will compute all
  * the statistics for the collected samples (Which are Minimum, Maximum,
  * Average, StandardDeviation) and provides a nice printable record as a
@@ -70,6 +71,9 @@ public class StatisticsAccumulator {
     private String unit;
     private Statistics stats ;
 
+    // Null unless a precision was given to the constructor.
+    private final Histogram histogram ;
+
     public String unit() { return unit ; }
 
     public long count() { return sampleCount ; } 
@@ -94,11 +98,14 @@ public class StatisticsAccumulator {
 	    max = value;
         sampleSum += value;
         sampleSquareSum += (value * value);
+        if (histogram != null)
+            histogram.record( Math.round( value ) ) ;
     }
 
     public synchronized Statistics getStats() {
 	if ((stats == null) || (stats.count() != sampleCount)) {
-	    stats = new Statistics( sampleCount, min, max, average(), standardDeviation() ) ; 
+	    stats = new Statistics( sampleCount, min, max, average(), 
+		standardDeviation(), histogram ) ; 
 	}
 
 	return stats ;
@@ -116,6 +123,8 @@ public class StatisticsAccumulator {
 	    max = acc.max ;
 	sampleSum += acc.sampleSum ;
 	sampleSquareSum += acc.sampleSquareSum ;
+	if (histogram != null && acc.histogram != null)
+	    histogram.add( acc.histogram ) ;
     }
 
     /**
@@ -135,7 +144,14 @@ public class StatisticsAccumulator {
             "Maximum Value = " + max + " " + unit + " " +
             "Average Value = " + average() + " " +  unit + " " +
             "Standard Deviation = " + standardDeviation() + " " + unit + 
-            " " + "Samples Collected = " + sampleCount;
+            " " + "Samples Collected = " + sampleCount +
+            (histogram == null ? "" : 
+                " 50th Percentile = " + histogram.valueAtPercentile( 50 ) 
+                + " " + unit + 
+                " 99th Percentile = " + histogram.valueAtPercentile( 99 ) 
+                + " " + unit + 
+                " 99.9th Percentile = " + histogram.valueAtPercentile( 99.9 ) 
+                + " " + unit) ;
     }
 
 
@@ -148,9 +164,31 @@ public class StatisticsAccumulator {
  */
     public StatisticsAccumulator( String unit ) {
         this.unit = unit;
+        this.histogram = null ;
 	clearState() ;
     }
 
+/** Construct a Statistics Accumulator that also keeps a Histogram of the
+ * samples (rounded to whole units) with the given precision, so that 
+ * the Statistics it returns can report percentiles.  Accumulators that 
+ * are combined with augment must use the same precision.
+ * <p>
+ * @param unit a String representing the units for the samples collected
+ * @param precisionBits the precision of the histogram (see Histogram)
+ */
+    public StatisticsAccumulator( String unit, int precisionBits ) {
+        this.unit = unit;
+        this.histogram = new Histogram( precisionBits ) ;
+	clearState() ;
+    }
+
+    /** Return a copy of the histogram of the samples, or null if this 
+     * accumulator does not keep one.
+     */
+    public Histogram histogram() {
+        return histogram == null ? null : new Histogram( histogram ) ;
+    }
+
 
     /**
      *  Clears the samples and starts fresh on new samples.
@@ -161,6 +199,8 @@ public class StatisticsAccumulator {
         sampleCount = 0;
         sampleSum = 0;
         sampleSquareSum = 0;
+        if (histogram != null)
+            histogram.clear() ;
 
 	synchronized (this) {
 	    stats = null ;
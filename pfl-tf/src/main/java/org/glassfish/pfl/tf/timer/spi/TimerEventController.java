@@ -52,7 +52,8 @@ public class TimerEventController extends TimerEventControllerBase {
 
     /** Generate a TimerEvent representing the entry to a 
      * particular timer.  This event is sent to all registered
-     * TimerEventHandlers.  An event is only generated in
+     * TimerEventHandlers (as a primitive notification to 
+     * PrimitiveTimerEventHandlers).  An event is only generated in
      * case timer.isActivated() is true.
      */
     public void enter( Timer timer ) {
@@ -61,17 +62,19 @@ public class TimerEventController extends TimerEventControllerBase {
 
     /** Generate a TimerEvent representing the exit from a 
      * particular timer.  This event is sent to all registered
-     * TimerEventHandlers.  An event is only generated in
+     * TimerEventHandlers (as a primitive notification to 
+     * PrimitiveTimerEventHandlers).  An event is only generated in
      * case timer.isActivated() is true.
      */
     public void exit( Timer timer ) {
 	handle( timer, TimerEvent.TimerEventType.EXIT ) ;
     }
    
+    // Nothing is allocated here unless a handler that is not a
+    // PrimitiveTimerEventHandler is registered.
     private void handle( Timer timer, TimerEvent.TimerEventType type ) {
 	if (timer.isActivated()) {
-	    TimerEvent te = new TimerEvent( timer, type ) ;
-	    propagate( te ) ;
+	    propagate( timer, type, System.nanoTime() ) ;
 	}
     }
 }
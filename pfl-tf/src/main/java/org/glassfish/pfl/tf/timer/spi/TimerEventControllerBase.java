@@ -54,11 +54,15 @@ import org.glassfish.pfl.tf.timer.impl.TimerFactoryImpl ;
  * extra data to the extended event.
  */
 public abstract class TimerEventControllerBase extends NamedBase {
-    // XXX We will need to explore the efficiency and synchronization
-    // here.  Should we use read/write locks around handlers?
-    // 
-    private Set<TimerEventHandler> handlers ;
-    private Set<TimerEventHandler> roHandlers ;
+    private static final TimerEventHandler[] NO_HANDLERS = 
+        new TimerEventHandler[0] ;
+
+    // Guarded by this.  handlerArray is a copy of handlers that is 
+    // replaced whenever handlers changes, so that events can be propagated
+    // without locking or allocating an iterator.
+    private final Set<TimerEventHandler> handlers ;
+    private final Set<TimerEventHandler> roHandlers ;
+    private volatile TimerEventHandler[] handlerArray = NO_HANDLERS ;
 
     public TimerEventControllerBase( TimerFactory factory, String name ) {
 	super( factory, name ) ;
@@ -71,15 +75,19 @@ public abstract class TimerEventControllerBase extends NamedBase {
     /** Register the handler to start receiving events from this
      * controller.
      */
-    public void register( TimerEventHandler handler ) {
-	handlers.add( handler ) ;
+    public synchronized void register( TimerEventHandler handler ) {
+	if (handlers.add( handler )) {
+	    handlerArray = handlers.toArray( NO_HANDLERS ) ;
+	}
     }	
 
     /** Deregister the handler to stop receiving events from this
      * controller.
      */
-    public void deregister( TimerEventHandler handler ) {
-	handlers.remove( handler ) ;
+    public synchronized void deregister( TimerEventHandler handler ) {
+	if (handlers.remove( handler )) {
+	    handlerArray = handlers.toArray( NO_HANDLERS ) ;
+	}
     }
 
     /** Read-only image of the set of Handlers.
@@ -91,9 +99,30 @@ public abstract class TimerEventControllerBase extends NamedBase {
     /** Send the event to all registered handlers.
      */
     protected void propagate( TimerEvent ev ) {
-	for (TimerEventHandler handler : handlers) {
+	for (TimerEventHandler handler : handlerArray) {
 	    handler.notify( ev ) ;
 	}
     }
-}
 
+    /** Send an event of the given type for timer at time to all registered 
+     * handlers.  PrimitiveTimerEventHandlers are notified without creating
+     * a TimerEvent.  A single TimerEvent is created for the other handlers,
+     * and only if there are any.
+     */
+    protected void propagate( Timer timer, TimerEvent.TimerEventType type, 
+	long time ) {
+
+	TimerEvent ev = null ;
+	for (TimerEventHandler handler : handlerArray) {
+	    if (handler instanceof PrimitiveTimerEventHandler) {
+		((PrimitiveTimerEventHandler)handler).notify( timer.id(), type,
+		    time ) ;
+	    } else {
+		if (ev == null) {
+		    ev = new TimerEvent( timer, type, time ) ;
+		}
+		handler.notify( ev ) ;
+	    }
+	}
+    }
+}
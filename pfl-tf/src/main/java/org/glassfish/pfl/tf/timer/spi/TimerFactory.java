@@ -65,6 +65,14 @@ public interface TimerFactory extends TimerGroup {
      */
     LogEventHandler makeLogEventHandler( String name ) ;
 
+    /** Create a new LogEventHandler that holds at most capacity events
+     * (rounded up to a power of 2), applying policy once it is full.
+     * All LogEventHandler names must be unique within the same TimerFactory.
+     * @throws IllegalArgumentException if capacity is not positive.
+     */
+    LogEventHandler makeLogEventHandler( String name, int capacity,
+        LogEventHandler.OverflowPolicy policy ) ;
+
     TimerEventHandler makeTracingEventHandler( String name ) ;
 
     /** Create a new StatsEventHandler.  A StatsEventHandler records 
@@ -0,0 +1,285 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.pfl.tf.timer.spi ;
+
+import java.io.EOFException ;
+import java.io.IOException ;
+import java.nio.ByteBuffer ;
+import java.nio.channels.ReadableByteChannel ;
+import java.util.Arrays ;
+import java.util.Collections ;
+import java.util.HashMap ;
+import java.util.Iterator ;
+import java.util.LinkedHashMap ;
+import java.util.Map ;
+import java.util.Set ;
+
+import org.glassfish.pfl.tf.timer.impl.LogEventHandlerIterator ;
+
+/** Loads a trace written by TraceWriter, so that it can be analyzed
+ * away from the process that recorded it.  Each timer in the trace is
+ * mapped by name to a Timer in the TimerFactory passed to the
+ * constructor; timers that the factory does not know yet are created
+ * in it.  The events of each thread can then be iterated as TimerEvents,
+ * just like the contents of a LogEventHandler.
+ */
+public class TraceReader {
+    private static final int BUFFER_SIZE = 1 << 16 ;
+
+    private final TimerFactory factory ;
+    private final ReadableByteChannel channel ;
+    private final ByteBuffer buffer ;
+
+    // Maps the timer ids in the trace to Timers in factory
+    private final Map<Integer,Timer> timers = new HashMap<Integer,Timer>() ;
+
+    private final Map<Long,EventStream> streams = 
+	new LinkedHashMap<Long,EventStream>() ;
+
+    // The events of one thread, in the interleaved form used by
+    // LogEventHandlerIterator.
+    private static class EventStream {
+	private long[] data = new long[ 64 ] ;
+	private int nextFree = 0 ;
+	private long lastTime = 0 ;
+
+	void add( long code, long time ) {
+	    if (nextFree == data.length) {
+		long[] newData = new long[ 2*data.length ] ;
+		System.arraycopy( data, 0, newData, 0, data.length ) ;
+		data = newData ;
+	    }
+
+	    data[ nextFree++ ] = code ;
+	    data[ nextFree++ ] = time ;
+	}
+    }
+
+    /** Read the whole trace from channel, which is left open.
+     * @throws IOException if the channel cannot be read, or does not
+     * contain a complete, valid trace.
+     */
+    public TraceReader( TimerFactory factory, ReadableByteChannel channel ) 
+	throws IOException {
+
+	this.factory = factory ;
+	this.channel = channel ;
+	buffer = ByteBuffer.allocate( BUFFER_SIZE ) ;
+	buffer.flip() ;
+
+	if (readInt() != TraceWriter.MAGIC) {
+	    throw new IOException( "Channel does not contain a timer trace" ) ;
+	}
+
+	final byte version = readByte() ;
+	if (version != TraceWriter.VERSION) {
+	    throw new IOException( "Unsupported timer trace version " 
+		+ version ) ;
+	}
+
+	while (fill( 1 )) {
+	    final byte tag = buffer.get() ;
+	    switch (tag) {
+		case TraceWriter.TIMER_RECORD :
+		    readTimer() ;
+		    break ;
+		case TraceWriter.EVENTS_RECORD :
+		    readEvents() ;
+		    break ;
+		default :
+		    throw new IOException( "Unknown timer trace record type " 
+			+ tag ) ;
+	    }
+	}
+    }
+
+    /** The ids of all threads that have events in the trace, in the
+     * order in which they first appear.
+     */
+    public Set<Long> threadIds() {
+	return Collections.unmodifiableSet( streams.keySet() ) ;
+    }
+
+    /** The events of thread threadId, in the order in which they
+     * happened.  As with LogEventHandler, the iterator returns the same
+     * TimerEvent each time, updated in place.
+     */
+    public Iterable<TimerEvent> events( final long threadId ) {
+	final EventStream stream = streams.get( threadId ) ;
+	return new Iterable<TimerEvent>() {
+	    public Iterator<TimerEvent> iterator() {
+		if (stream == null) {
+		    return new LogEventHandlerIterator( factory, new long[0], 0 ) ;
+		}
+
+		return new LogEventHandlerIterator( factory, stream.data, 
+		    stream.nextFree ) ;
+	    }
+	} ;
+    }
+
+    private void readTimer() throws IOException {
+	final int id = readVarInt( "timer id" ) ;
+	final String name = readString() ;
+	final String description = readString() ;
+
+	Timer timer = factory.timers().get( name ) ;
+	if (timer == null) {
+	    timer = factory.makeTimer( name, description ) ;
+	}
+
+	timers.put( id, timer ) ;
+    }
+
+    private void readEvents() throws IOException {
+	final long threadId = readVarLong() ;
+	EventStream stream = streams.get( threadId ) ;
+	if (stream == null) {
+	    stream = new EventStream() ;
+	    streams.put( threadId, stream ) ;
+	}
+
+	long code ;
+	while ((code = readVarLong()) != 0) {
+	    code-- ;
+	    if (code < 0 || (code >> 1) > Integer.MAX_VALUE) {
+		throw new IOException( "Invalid timer trace event code " 
+		    + code ) ;
+	    }
+
+	    final Timer timer = timers.get( (int)(code >> 1) ) ;
+	    if (timer == null) {
+		throw new IOException( "Timer trace event for undefined timer id "
+		    + (code >> 1) ) ;
+	    }
+
+	    final long zigzag = readVarLong() ;
+	    stream.lastTime += (zigzag >>> 1) ^ -(zigzag & 1) ;
+	    stream.add( 2*timer.id() + (code & 1), stream.lastTime ) ;
+	}
+    }
+
+    // The length is not trusted to allocate the string: the array only
+    // grows as the bytes are actually read, so a corrupt length fails with
+    // EOFException instead of exhausting the heap.
+    private String readString() throws IOException {
+	final int length = readVarInt( "string length" ) ;
+	byte[] bytes = new byte[ Math.min( length, BUFFER_SIZE ) ] ;
+	int pos = 0 ;
+	while (pos < length) {
+	    if (!fill( 1 )) {
+		throw new EOFException( "Truncated timer trace" ) ;
+	    }
+
+	    if (pos == bytes.length) {
+		bytes = Arrays.copyOf( bytes, 
+		    (int)Math.min( length, 2L*bytes.length ) ) ;
+	    }
+
+	    final int count = Math.min( bytes.length - pos, 
+		buffer.remaining() ) ;
+	    buffer.get( bytes, pos, count ) ;
+	    pos += count ;
+	}
+
+	return new String( bytes, TraceWriter.UTF8 ) ;
+    }
+
+    private int readVarInt( String what ) throws IOException {
+	final long value = readVarLong() ;
+	if (value < 0 || value > Integer.MAX_VALUE) {
+	    throw new IOException( "Invalid " + what + " " + value 
+		+ " in timer trace" ) ;
+	}
+
+	return (int)value ;
+    }
+
+    private long readVarLong() throws IOException {
+	long result = 0 ;
+	for (int shift = 0; shift < 64; shift += 7) {
+	    final byte b = readByte() ;
+	    result |= (long)(b & 0x7F) << shift ;
+	    if ((b & 0x80) == 0) {
+		return result ;
+	    }
+	}
+
+	throw new IOException( "Malformed varint in timer trace" ) ;
+    }
+
+    private int readInt() throws IOException {
+	if (!fill( 4 )) {
+	    throw new EOFException( "Truncated timer trace" ) ;
+	}
+
+	return buffer.getInt() ;
+    }
+
+    private byte readByte() throws IOException {
+	if (!fill( 1 )) {
+	    throw new EOFException( "Truncated timer trace" ) ;
+	}
+
+	return buffer.get() ;
+    }
+
+    // Make sure that buffer holds at least size bytes, reading more from
+    // the channel as needed.  Returns false if the channel ends first.
+    private boolean fill( int size ) throws IOException {
+	if (buffer.remaining() >= size) {
+	    return true ;
+	}
+
+	buffer.compact() ;
+	try {
+	    while (buffer.position() < size) {
+		if (channel.read( buffer ) < 0) {
+		    return false ;
+		}
+	    }
+	} finally {
+	    buffer.flip() ;
+	}
+
+	return true ;
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.pfl.tf.timer.spi ;
+
+import java.io.Closeable ;
+import java.io.IOException ;
+import java.nio.ByteBuffer ;
+import java.nio.channels.WritableByteChannel ;
+import java.nio.charset.Charset ;
+import java.util.BitSet ;
+import java.util.HashMap ;
+import java.util.Iterator ;
+import java.util.Map ;
+
+/** Writes timer events to a channel in a compact binary trace format,
+ * which a TraceReader can load back into TimerEvents.  A trace may be
+ * written incrementally while the timers are still running, for example
+ * by periodically calling LogEventHandler.drainTo( writer ) followed by
+ * flush().
+ * <p>
+ * A trace is a header followed by a sequence of records:
+ * <pre>
+ * header:  int MAGIC, byte VERSION
+ * TIMER:   byte 1, varint id, string name, string description
+ * EVENTS:  byte 2, varlong threadId, event*, varint 0
+ * event:   varint (2*id + (EXIT ? 1 : 0) + 1), zigzag varlong time delta
+ * string:  varint length, UTF-8 bytes
+ * </pre>
+ * The TIMER record for a timer id precedes its first event.  Each
+ * EVENTS record belongs to a single thread, and times are nanosecond
+ * deltas from the previous event of the same thread, so that the events
+ * of a busy thread take only a few bytes each.
+ */
+public class TraceWriter implements Closeable {
+    static final int MAGIC = 0x50464c54 ; // "PFLT"
+    static final byte VERSION = 1 ;
+    static final byte TIMER_RECORD = 1 ;
+    static final byte EVENTS_RECORD = 2 ;
+    static final Charset UTF8 = Charset.forName( "UTF-8" ) ;
+
+    private static final int BUFFER_SIZE = 1 << 16 ;
+
+    // Longest encodings of a varint and a varlong
+    private static final int MAX_VARINT_SIZE = 5 ;
+    private static final int MAX_VARLONG_SIZE = 10 ;
+
+    private final WritableByteChannel channel ;
+    private ByteBuffer buffer ;
+
+    // Timer ids whose TIMER record has already been written
+    private final BitSet timersWritten = new BitSet() ;
+
+    // Time of the last event written for each thread
+    private final Map<Long,Long> lastTimes = new HashMap<Long,Long>() ;
+
+    /** Start a new trace on channel.  Nothing reaches the channel until
+     * the first flush() or close().
+     */
+    public TraceWriter( WritableByteChannel channel ) {
+	this.channel = channel ;
+	buffer = ByteBuffer.allocate( BUFFER_SIZE ) ;
+	buffer.putInt( MAGIC ) ;
+	buffer.put( VERSION ) ;
+    }
+
+    /** Append events, all of which happened on the thread identified by
+     * threadId, to the trace.  The events may be flyweights: each one is
+     * encoded before the next one is requested.
+     */
+    public synchronized void write( long threadId, Iterator<TimerEvent> events )
+	throws IOException {
+
+	Long last = lastTimes.get( threadId ) ;
+	long lastTime = last == null ? 0 : last ;
+	boolean inRecord = false ;
+	while (events.hasNext()) {
+	    final TimerEvent te = events.next() ;
+	    final Timer timer = te.timer() ;
+	    final int id = timer.id() ;
+	    if (!timersWritten.get( id )) {
+		if (inRecord) {
+		    endEvents() ;
+		    inRecord = false ;
+		}
+
+		writeTimer( timer ) ;
+	    }
+
+	    if (!inRecord) {
+		ensure( 1 + MAX_VARLONG_SIZE ) ;
+		buffer.put( EVENTS_RECORD ) ;
+		putVarLong( threadId ) ;
+		inRecord = true ;
+	    }
+
+	    final int code = 2*id + 
+		((te.type() == TimerEvent.TimerEventType.ENTER) ? 0 : 1) ;
+	    final long delta = te.time() - lastTime ;
+	    lastTime = te.time() ;
+
+	    ensure( MAX_VARINT_SIZE + MAX_VARLONG_SIZE ) ;
+	    putVarLong( code + 1 ) ;
+	    putVarLong( (delta << 1) ^ (delta >> 63) ) ;
+	}
+
+	if (inRecord) {
+	    endEvents() ;
+	}
+
+	lastTimes.put( threadId, lastTime ) ;
+    }
+
+    /** Write everything appended so far to the channel.
+     */
+    public synchronized void flush() throws IOException {
+	buffer.flip() ;
+	while (buffer.hasRemaining()) {
+	    channel.write( buffer ) ;
+	}
+	buffer.clear() ;
+    }
+
+    /** Flush the trace and close the channel.
+     */
+    public synchronized void close() throws IOException {
+	try {
+	    flush() ;
+	} finally {
+	    channel.close() ;
+	}
+    }
+
+    private void endEvents() throws IOException {
+	ensure( 1 ) ;
+	putVarLong( 0 ) ;
+    }
+
+    private void writeTimer( Timer timer ) throws IOException {
+	ensure( 1 + MAX_VARINT_SIZE ) ;
+	buffer.put( TIMER_RECORD ) ;
+	putVarLong( timer.id() ) ;
+	putString( timer.name() ) ;
+	putString( timer.description() == null ? "" : timer.description() ) ;
+	timersWritten.set( timer.id() ) ;
+    }
+
+    private void putString( String str ) throws IOException {
+	final byte[] bytes = str.getBytes( UTF8 ) ;
+	ensure( MAX_VARINT_SIZE + bytes.length ) ;
+	putVarLong( bytes.length ) ;
+	buffer.put( bytes ) ;
+    }
+
+    private void putVarLong( long value ) {
+	while ((value & ~0x7FL) != 0) {
+	    buffer.put( (byte)((value & 0x7F) | 0x80) ) ;
+	    value >>>= 7 ;
+	}
+
+	buffer.put( (byte)value ) ;
+    }
+
+    // Make room for size more bytes in buffer, flushing it (and growing
+    // it, for very long strings) as needed.
+    private void ensure( int size ) throws IOException {
+	if (buffer.remaining() < size) {
+	    flush() ;
+	    if (buffer.capacity() < size) {
+		buffer = ByteBuffer.allocate( size ) ;
+	    }
+	}
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.pfl.tf.timer.spi;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class HistogramTest {
+
+    @Test
+    public void smallValuesAreExact() {
+        Histogram histogram = new Histogram(5);
+        for (int value = 0; value < 32; value++) {
+            int index = histogram.indexOf(value);
+            Assert.assertEquals(value, histogram.lowestValueAt(index));
+            Assert.assertEquals(value, histogram.highestValueAt(index));
+        }
+    }
+
+    @Test
+    public void everyValueIsWithinItsBucketAndThePrecision() {
+        Histogram histogram = new Histogram(5);
+        Random random = new Random(1);
+        for (int ctr = 0; ctr < 100000; ctr++) {
+            long value = random.nextLong() >>> (16 + random.nextInt(47));
+            int index = histogram.indexOf(value);
+            long low = histogram.lowestValueAt(index);
+            long high = histogram.highestValueAt(index);
+            Assert.assertTrue(low <= value && value <= high);
+            Assert.assertTrue(high - low <= value / 32);
+        }
+    }
+
+    @Test
+    public void percentilesAreWithinThePrecision() {
+        Histogram histogram = new Histogram(7);
+        for (long value = 1; value <= 10000; value++) {
+            histogram.record(value * 1000);
+        }
+
+        Assert.assertEquals(10000, histogram.count());
+        assertNear(5000000, histogram.valueAtPercentile(50), 1.0 / 128);
+        assertNear(9900000, histogram.valueAtPercentile(99), 1.0 / 128);
+        assertNear(9990000, histogram.valueAtPercentile(99.9), 1.0 / 128);
+        assertNear(10000000, histogram.valueAtPercentile(100), 1.0 / 128);
+    }
+
+    private static void assertNear(long expected, long actual, double error) {
+        Assert.assertTrue("expected " + expected + " but was " + actual,
+            actual >= expected && actual <= expected * (1 + error));
+    }
+
+    @Test
+    public void mergedHistogramEqualsHistogramOfAllValues() {
+        Histogram all = new Histogram();
+        Histogram first = new Histogram();
+        Histogram second = new Histogram();
+        for (long value = 0; value < 5000; value++) {
+            all.record(value * value);
+            (value % 2 == 0 ? first : second).record(value * value);
+        }
+
+        first.add(second);
+
+        Assert.assertEquals(all, first);
+        Assert.assertEquals(all.valueAtPercentile(99), 
+            first.valueAtPercentile(99));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void histogramsWithDifferentPrecisionsCannotBeMerged() {
+        new Histogram(5).add(new Histogram(6));
+    }
+
+    @Test
+    public void hugeAndNegativeValuesAreClamped() {
+        Histogram histogram = new Histogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        Assert.assertEquals(0, histogram.valueAtPercentile(50));
+        Assert.assertEquals(2, histogram.count());
+        Assert.assertTrue(histogram.valueAtPercentile(100) 
+            >= (1L << Histogram.MAX_VALUE_BITS) - 1);
+    }
+
+    @Test
+    public void statisticsReportPercentilesFromTheAccumulatorHistogram() {
+        StatisticsAccumulator acc = new StatisticsAccumulator("ns", 5);
+        for (int value = 1; value <= 100; value++) {
+            acc.sample(value);
+        }
+
+        Statistics stats = acc.getStats();
+        Assert.assertEquals(50, stats.percentile(50), 0);
+        Assert.assertEquals(100, stats.percentile(100), 0);
+        Assert.assertEquals(100, stats.histogram().count());
+        Assert.assertEquals(-1, 
+            new StatisticsAccumulator("ns").getStats().percentile(50), 0);
+    }
+}
@@ -45,8 +45,14 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 
 // import corba.framework.TimerUtils ;
 
@@ -119,6 +125,12 @@ public class LogEventHandlerTest {
     };
 
     private void checkLogEventHandler(LogEventHandler leh, int size) {
+        checkLogEventHandler(leh, 0, size);
+    }
+
+    // Check that leh holds exactly the size events of timerCallData
+    // starting at first.
+    private void checkLogEventHandler(LogEventHandler leh, int first, int size) {
         int ctr = 0;
         boolean done = false;
         for (TimerEvent te : leh) {
@@ -127,7 +139,7 @@ public class LogEventHandlerTest {
                 done = true;
             }
 
-            int[] data = timerCallData[ctr];
+            int[] data = timerCallData[first + ctr];
 
             if (data[0] == 0) {
                 Assert.assertTrue(te.type() == TimerEvent.TimerEventType.EXIT);
@@ -195,4 +207,305 @@ public class LogEventHandlerTest {
         leh.clear();
         checkLogEventHandler(leh, 0);
     }
+
+    @Test()
+    public void capacityIsRoundedToPowerOfTwo() {
+        LogEventHandler leh = tf.makeLogEventHandler("CAPLEH", 10,
+            LogEventHandler.OverflowPolicy.OVERWRITE_OLDEST);
+        Assert.assertEquals(16, leh.capacity());
+        Assert.assertEquals(LogEventHandler.OverflowPolicy.OVERWRITE_OLDEST,
+            leh.overflowPolicy());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nonPositiveCapacityIsRejected() {
+        tf.makeLogEventHandler("BADLEH", 0,
+            LogEventHandler.OverflowPolicy.DROP_NEWEST);
+    }
+
+    @Test()
+    public void overwriteKeepsNewestEvents() {
+        LogEventHandler leh = tf.makeLogEventHandler("OWLEH", 8,
+            LogEventHandler.OverflowPolicy.OVERWRITE_OLDEST);
+        controller.register(leh);
+        enableTimers();
+        callTimers();
+        disableTimers();
+
+        int length = timerCallData.length;
+        checkLogEventHandler(leh, length - 8, 8);
+        Assert.assertEquals(length - 8, leh.droppedCount());
+
+        leh.clear();
+        checkLogEventHandler(leh, 0);
+        Assert.assertEquals(0, leh.droppedCount());
+    }
+
+    @Test()
+    public void dropKeepsOldestEvents() {
+        LogEventHandler leh = tf.makeLogEventHandler("DROPLEH", 8,
+            LogEventHandler.OverflowPolicy.DROP_NEWEST);
+        controller.register(leh);
+        enableTimers();
+        callTimers();
+
+        int length = timerCallData.length;
+        checkLogEventHandler(leh, 0, 8);
+        Assert.assertEquals(length - 8, leh.droppedCount());
+
+        // After a clear, the log accepts events again.
+        leh.clear();
+        callTimers();
+        disableTimers();
+        checkLogEventHandler(leh, 0, 8);
+        Assert.assertEquals(length - 8, leh.droppedCount());
+    }
+
+    @Test()
+    public void multiThreadedLogging() throws InterruptedException {
+        final int numThreads = 4;
+        final int cycles = 100;
+        final LogEventHandler leh = tf.makeLogEventHandler("MTLEH",
+            numThreads * cycles * timerCallData.length,
+            LogEventHandler.OverflowPolicy.DROP_NEWEST);
+        controller.register(leh);
+        enableTimers();
+
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int ctr = 0; ctr < numThreads; ctr++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        startLatch.await();
+                    } catch (InterruptedException exc) {
+                        return;
+                    }
+
+                    for (int cycle = 0; cycle < cycles; cycle++) {
+                        callTimers();
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+
+        startLatch.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        disableTimers();
+
+        int enters = 0;
+        int exits = 0;
+        for (TimerEvent te : leh) {
+            if (te.type() == TimerEvent.TimerEventType.ENTER) {
+                enters++;
+            } else {
+                exits++;
+            }
+        }
+
+        int expected = numThreads * cycles * timerCallData.length / 2;
+        Assert.assertEquals(expected, enters);
+        Assert.assertEquals(expected, exits);
+        Assert.assertEquals(0, leh.droppedCount());
+    }
+
+    private TraceReader readTrace(byte[] trace, TimerFactory readerFactory)
+        throws IOException {
+        return new TraceReader(readerFactory,
+            Channels.newChannel(new ByteArrayInputStream(trace)));
+    }
+
+    // Check that events repeats timerCallData cycles times, matching
+    // timers by name, and return the number of events.
+    private int checkTraceEvents(Iterable<TimerEvent> events, int cycles) {
+        int ctr = 0;
+        for (TimerEvent te : events) {
+            int[] data = timerCallData[ctr % timerCallData.length];
+            TimerEvent.TimerEventType expected = data[0] == 0
+                ? TimerEvent.TimerEventType.EXIT
+                : TimerEvent.TimerEventType.ENTER;
+            Assert.assertEquals(expected, te.type());
+            Assert.assertEquals(timers.get(data[1]).name(), te.timer().name());
+            ctr++;
+        }
+
+        Assert.assertEquals(cycles * timerCallData.length, ctr);
+        return ctr;
+    }
+
+    @Test()
+    public void traceRoundTrip() throws IOException {
+        LogEventHandler leh = tf.makeLogEventHandler("TRACELEH");
+        controller.register(leh);
+        enableTimers();
+        callTimers();
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        TraceWriter writer = new TraceWriter(Channels.newChannel(bos));
+        leh.drainTo(writer);
+        writer.flush();
+        int firstSize = bos.size();
+
+        // A second drain only writes the events logged since the first.
+        leh.drainTo(writer);
+        writer.flush();
+        Assert.assertEquals(firstSize, bos.size());
+
+        callTimers();
+        disableTimers();
+        leh.drainTo(writer);
+        writer.close();
+        Assert.assertTrue(bos.size() > firstSize);
+
+        TimerFactory readerFactory = TimerFactoryBuilder.make("TRACETF",
+            "Factory for reading traces");
+        try {
+            TraceReader reader = readTrace(bos.toByteArray(), readerFactory);
+            long threadId = Thread.currentThread().getId();
+            Assert.assertEquals(1, reader.threadIds().size());
+            Assert.assertTrue(reader.threadIds().contains(threadId));
+            checkTraceEvents(reader.events(threadId), 2);
+
+            // Times survive the delta encoding exactly.
+            List<Long> times = new ArrayList<Long>();
+            for (TimerEvent te : leh) {
+                times.add(te.time());
+            }
+
+            int ctr = 0;
+            for (TimerEvent te : reader.events(threadId)) {
+                Assert.assertEquals((long) times.get(ctr++), te.time());
+            }
+        } finally {
+            TimerFactoryBuilder.destroy(readerFactory);
+        }
+    }
+
+    @Test()
+    public void whenDrained_dropNewestLogAcceptsNewEvents() throws IOException {
+        final int cycles = 3;
+        LogEventHandler leh = tf.makeLogEventHandler("STREAMLEH",
+            timerCallData.length, LogEventHandler.OverflowPolicy.DROP_NEWEST);
+        controller.register(leh);
+        enableTimers();
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        TraceWriter writer = new TraceWriter(Channels.newChannel(bos));
+        for (int ctr = 0; ctr < cycles; ctr++) {
+            callTimers();
+            leh.drainTo(writer);
+        }
+        disableTimers();
+        writer.close();
+        Assert.assertEquals(0, leh.droppedCount());
+
+        TimerFactory readerFactory = TimerFactoryBuilder.make("STREAMTF",
+            "Factory for reading traces");
+        try {
+            TraceReader reader = readTrace(bos.toByteArray(), readerFactory);
+            checkTraceEvents(reader.events(Thread.currentThread().getId()),
+                cycles);
+        } finally {
+            TimerFactoryBuilder.destroy(readerFactory);
+        }
+    }
+
+    @Test()
+    public void traceSplitsEventsByThread() throws Exception {
+        final LogEventHandler leh = tf.makeLogEventHandler("MTTRACELEH");
+        controller.register(leh);
+        enableTimers();
+
+        final List<Long> threadIds = new ArrayList<Long>();
+        for (int ctr = 0; ctr < 3; ctr++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    callTimers();
+                }
+            };
+            thread.start();
+            thread.join();
+            threadIds.add(thread.getId());
+        }
+        disableTimers();
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        TraceWriter writer = new TraceWriter(Channels.newChannel(bos));
+        leh.drainTo(writer);
+        writer.close();
+
+        TimerFactory readerFactory = TimerFactoryBuilder.make("MTTRACETF",
+            "Factory for reading traces");
+        try {
+            TraceReader reader = readTrace(bos.toByteArray(), readerFactory);
+            Assert.assertEquals(threadIds.size(), reader.threadIds().size());
+            for (long threadId : threadIds) {
+                checkTraceEvents(reader.events(threadId), 1);
+            }
+        } finally {
+            TimerFactoryBuilder.destroy(readerFactory);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedTraceIsRejected() throws IOException {
+        LogEventHandler leh = tf.makeLogEventHandler("TRUNCLEH");
+        controller.register(leh);
+        enableTimers();
+        callTimers();
+        disableTimers();
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        TraceWriter writer = new TraceWriter(Channels.newChannel(bos));
+        leh.drainTo(writer);
+        writer.close();
+
+        byte[] trace = bos.toByteArray();
+        byte[] truncated = new byte[trace.length - 3];
+        System.arraycopy(trace, 0, truncated, 0, truncated.length);
+        readTrace(truncated, tf);
+    }
+
+    // A trace holding a single timer record whose id and name length are
+    // the given varints, followed by the name "X" and an empty description.
+    private byte[] timerRecord(byte[] id, byte[] nameLength)
+        throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeInt(TraceWriter.MAGIC);
+        dos.writeByte(TraceWriter.VERSION);
+        dos.writeByte(TraceWriter.TIMER_RECORD);
+        dos.write(id);
+        dos.write(nameLength);
+        dos.writeByte('X');
+        dos.writeByte(0);
+        dos.close();
+        return bos.toByteArray();
+    }
+
+    @Test(expected = IOException.class)
+    public void corruptStringLengthIsRejected() throws IOException {
+        // 0x7FFFFFFF: longer than the rest of the trace
+        readTrace(timerRecord(new byte[] { 1 },
+            new byte[] { -1, -1, -1, -1, 7 }), tf);
+    }
+
+    @Test(expected = IOException.class)
+    public void negativeStringLengthIsRejected() throws IOException {
+        // 0xFFFFFFFF: negative if cast to int
+        readTrace(timerRecord(new byte[] { 1 },
+            new byte[] { -1, -1, -1, -1, 15 }), tf);
+    }
+
+    @Test(expected = IOException.class)
+    public void oversizedTimerIdIsRejected() throws IOException {
+        readTrace(timerRecord(new byte[] { -1, -1, -1, -1, 15 },
+            new byte[] { 1 }), tf);
+    }
 }
@@ -41,12 +41,14 @@
 package org.glassfish.pfl.tf.timer.spi;
 
 import org.junit.After;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class StatsEventHandlerTest {
     private static final int WARMUP_ITERATIONS = 10000;
@@ -219,6 +221,10 @@ public class StatsEventHandlerTest {
         disableTimers();
 
         Map<Timer, Statistics> map = seh.stats();
+        Statistics stats = map.get(timers.get(2));
+        Assert.assertEquals(5 * ITERATIONS, stats.count());
+        Assert.assertEquals(stats.count(), stats.histogram().count());
+        Assert.assertTrue(stats.percentile(99.9) >= stats.percentile(50));
     }
 
     @Test
@@ -226,4 +232,104 @@ public class StatsEventHandlerTest {
         StatsEventHandler seh = tf.makeMultiThreadedStatsEventHandler("SEH");
         controller.register(seh);
     }
+
+    private void enterExit(Timer timer, int count) {
+        for (int ctr = 0; ctr < count; ctr++) {
+            controller.enter(timer);
+            controller.exit(timer);
+        }
+    }
+
+    @Test
+    public void whenThreadsDie_multiThreadedStatsKeepTheirSamples() 
+            throws InterruptedException {
+        StatsEventHandler seh = tf.makeMultiThreadedStatsEventHandler("SEH");
+        controller.register(seh);
+        final Timer timer = timers.get(0);
+        timer.enable();
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int ctr = 0; ctr < 4; ctr++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    enterExit(timer, ITERATIONS);
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        enterExit(timer, 1);
+
+        Statistics stats = seh.stats().get(timer);
+        Assert.assertEquals(4 * ITERATIONS + 1, stats.count());
+        Assert.assertEquals(4 * ITERATIONS + 1, stats.histogram().count());
+        Assert.assertTrue(stats.percentile(50) <= stats.percentile(99));
+        Assert.assertTrue(stats.percentile(99) <= stats.max());
+        Assert.assertEquals(0, seh.stats().get(timers.get(1)).count());
+    }
+
+    @Test
+    public void afterClear_multiThreadedStatsOnlyCountNewSamples() 
+            throws InterruptedException {
+        StatsEventHandler seh = tf.makeMultiThreadedStatsEventHandler("SEH");
+        controller.register(seh);
+        final Timer timer = timers.get(0);
+        timer.enable();
+
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                enterExit(timer, 3);
+            }
+        };
+        thread.start();
+        thread.join();
+        enterExit(timer, 5);
+        Assert.assertEquals(8, seh.stats().get(timer).count());
+
+        seh.clear();
+        Assert.assertEquals(0, seh.stats().get(timer).count());
+
+        enterExit(timer, 2);
+        Assert.assertEquals(2, seh.stats().get(timer).count());
+    }
+
+    @Test
+    public void whileAThreadRecords_multiThreadedStatsAreConsistent() 
+            throws InterruptedException {
+        final StatsEventHandler seh = tf.makeMultiThreadedStatsEventHandler("SEH");
+        controller.register(seh);
+        final Timer timer = timers.get(0);
+        timer.enable();
+
+        final AtomicBoolean done = new AtomicBoolean();
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                while (!done.get()) {
+                    enterExit(timer, 1);
+                }
+            }
+        };
+        thread.start();
+
+        try {
+            long last = 0;
+            for (int ctr = 0; ctr < 1000; ctr++) {
+                Statistics stats = seh.stats().get(timer);
+                // A sample that is only partly merged would be counted
+                // in one of these, but not in the other.
+                Assert.assertEquals(stats.count(), stats.histogram().count());
+                Assert.assertTrue(stats.count() >= last);
+                last = stats.count();
+            }
+        } finally {
+            done.set(true);
+            thread.join();
+        }
+    }
 }
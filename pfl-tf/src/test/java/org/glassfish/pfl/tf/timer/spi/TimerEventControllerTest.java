@@ -0,0 +1,152 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.pfl.tf.timer.spi;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TimerEventControllerTest {
+    private TimerFactory tf;
+    private Timer t1;
+    private TimerEventController controller;
+
+    static class RecordingHandler extends NamedBase
+            implements PrimitiveTimerEventHandler {
+        private final List<String> events = new ArrayList<String>();
+        private int timerEvents = 0;
+
+        RecordingHandler(TimerFactory factory, String name) {
+            super(factory, name);
+        }
+
+        @Override
+        public void notify(int timerId, TimerEvent.TimerEventType type, long time) {
+            events.add(type + " " + timerId);
+        }
+
+        @Override
+        public void notify(TimerEvent event) {
+            timerEvents++;
+            notify(event.timer().id(), event.type(), event.time());
+        }
+    }
+
+    static class LegacyHandler extends NamedBase implements TimerEventHandler {
+        private final List<TimerEvent> events = new ArrayList<TimerEvent>();
+
+        LegacyHandler(TimerFactory factory, String name) {
+            super(factory, name);
+        }
+
+        @Override
+        public void notify(TimerEvent event) {
+            events.add(event);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        tf = TimerFactoryBuilder.make("TECT", "TimerEventController test");
+        t1 = tf.makeTimer("t1", "Timer one");
+        controller = tf.makeController("Controller");
+        t1.enable();
+    }
+
+    @After
+    public void tearDown() {
+        TimerFactoryBuilder.destroy(tf);
+    }
+
+    @Test
+    public void primitiveHandlerIsNotifiedWithoutTimerEvents() {
+        RecordingHandler handler = new RecordingHandler(tf, "recording");
+        controller.register(handler);
+
+        controller.enter(t1);
+        controller.exit(t1);
+
+        Assert.assertEquals(2, handler.events.size());
+        Assert.assertEquals("ENTER " + t1.id(), handler.events.get(0));
+        Assert.assertEquals("EXIT " + t1.id(), handler.events.get(1));
+        Assert.assertEquals(0, handler.timerEvents);
+    }
+
+    @Test
+    public void legacyHandlerReceivesTimerEvents() {
+        RecordingHandler primitive = new RecordingHandler(tf, "recording");
+        LegacyHandler legacy = new LegacyHandler(tf, "legacy");
+        controller.register(primitive);
+        controller.register(legacy);
+
+        controller.enter(t1);
+        controller.exit(t1);
+
+        Assert.assertEquals(2, legacy.events.size());
+        Assert.assertEquals(t1, legacy.events.get(0).timer());
+        Assert.assertEquals(TimerEvent.TimerEventType.EXIT, 
+            legacy.events.get(1).type());
+        Assert.assertTrue(legacy.events.get(0).time() 
+            <= legacy.events.get(1).time());
+        Assert.assertEquals(2, primitive.events.size());
+    }
+
+    @Test
+    public void deregisteredOrInactiveHandlersAreNotNotified() {
+        RecordingHandler handler = new RecordingHandler(tf, "recording");
+        controller.register(handler);
+        controller.deregister(handler);
+
+        controller.enter(t1);
+        controller.exit(t1);
+        Assert.assertTrue(handler.events.isEmpty());
+        Assert.assertTrue(controller.handlers().isEmpty());
+
+        controller.register(handler);
+        t1.disable();
+        controller.enter(t1);
+        Assert.assertTrue(handler.events.isEmpty());
+    }
+}